@@ -31,6 +31,18 @@ classdef CsvTableReader < handle
         csvFormat
         % A map of forced column types to use instead of autodetection
         colTypeMap
+        % Whether to buffer string columns in packed form, to save Java memory
+        packStrings
+        % Number of threads to parse files with; 0 means one per processor
+        parallelism
+        % Whether to tokenize files from memory-mapped bytes instead of with commons-csv
+        useMappedTokenizer
+        % Number of values to detect the type of AUTO columns from
+        typeInferenceSampleSize
+        % Whether to pass date/time columns from Java as datenums instead of java.time arrays
+        datesAsDatenums
+        % Number of parsed values to cache per date/time column, for non-ISO formats
+        dateCacheSize
     end
     
     methods
@@ -42,25 +54,7 @@ classdef CsvTableReader < handle
         data = {};
         for iBuf = 0:bufs.size()-1
             buf = bufs.get(iBuf);
-            x = buf.getValues();
-            if isa(x, 'java.lang.String[]')
-                %TODO: Switch to a more efficient conversion
-                mx = cellstr(string(x));
-            elseif isa(x, 'java.time.LocalDate[]')
-                mx = jl.time.localdate.fromJavaLocalDate(x);
-            elseif isa(x, 'java.time.LocalTime[]')
-                mx = jl.time.localtime.fromJavaLocalTime(x);
-            elseif isa(x, 'java.time.LocalDateTime[]')
-                mx = jl.time.util.javaLocalDateTime2datetime(x);
-            elseif isa(x, 'net.janklab.util.SymbolArrayList')
-                mx = symbol(x);
-            elseif isnumeric(x)
-                mx = x;
-            else
-                error('Unsupported type coming back from column buffer %d: %s', ...
-                    iBuf, class(x));
-            end
-            data{iBuf+1} = mx; %#ok<AGROW>
+            data{iBuf+1} = colValuesToMatlab(buf.getValues(), iBuf); %#ok<AGROW>
         end
         
         colNames = cellstr(char(this.javaReader.getEffectiveColNames()));
@@ -68,6 +62,34 @@ classdef CsvTableReader < handle
         out = table(data{:}, 'VariableNames', colNames);
         end
         
+        function readFileInBatches(this, file, batchRows, fcn)
+        %READFILEINBATCHES Read a CSV file a batch of rows at a time.
+        %
+        % readFileInBatches(this, file, batchRows, fcn)
+        %
+        % Reads the file in batches of up to batchRows rows, and calls fcn on each
+        % batch as a table. Only one batch is held in memory at a time, so this can
+        % process files that are too big to read with readFile(). The next batch is
+        % parsed in the background while fcn is working on the current one.
+        %
+        % Column types are fixed by the first batch; it is an error if a later batch
+        % has a value that doesn't parse as its column's detected type.
+        this.javaReader.attachFile(file);
+        jBatches = this.javaReader.openBatches(batchRows);
+        batchesCleanup = onCleanup(@() jBatches.close()); %#ok<NASGU>
+        jBatches.startPrefetching();
+        colNames = tablifyColNames(cellstr(char(jBatches.getColNames())));
+        while jBatches.hasNextBatch()
+            jBatch = jBatches.nextBatch();
+            jData = jBatch.columnData;
+            data = cell(1, numel(jData));
+            for iCol = 1:numel(jData)
+                data{iCol} = colValuesToMatlab(jData(iCol), iCol-1);
+            end
+            fcn(table(data{:}, 'VariableNames', colNames));
+        end
+        end
+        
         function setColTypesByName(this, colTypes)
         %SETCOLTYPESBYNAME Set column type mapping by column names
         mustBeCellrec(colTypes);
@@ -160,6 +182,54 @@ classdef CsvTableReader < handle
         this.javaReader.columnOffset = colOffset;
         end
         
+        function out = get.packStrings(this)
+        out = this.javaReader.packStrings;
+        end
+        
+        function set.packStrings(this, packStrings)
+        this.javaReader.packStrings = packStrings;
+        end
+        
+        function out = get.parallelism(this)
+        out = this.javaReader.parallelism;
+        end
+        
+        function set.parallelism(this, parallelism)
+        this.javaReader.parallelism = parallelism;
+        end
+        
+        function out = get.useMappedTokenizer(this)
+        out = this.javaReader.useMappedTokenizer;
+        end
+        
+        function set.useMappedTokenizer(this, useMappedTokenizer)
+        this.javaReader.useMappedTokenizer = useMappedTokenizer;
+        end
+        
+        function out = get.typeInferenceSampleSize(this)
+        out = this.javaReader.typeInferenceSampleSize;
+        end
+        
+        function set.typeInferenceSampleSize(this, typeInferenceSampleSize)
+        this.javaReader.typeInferenceSampleSize = typeInferenceSampleSize;
+        end
+        
+        function out = get.datesAsDatenums(this)
+        out = this.javaReader.datesAsDatenums;
+        end
+        
+        function set.datesAsDatenums(this, datesAsDatenums)
+        this.javaReader.datesAsDatenums = datesAsDatenums;
+        end
+        
+        function out = get.dateCacheSize(this)
+        out = this.javaReader.dateCacheSize;
+        end
+        
+        function set.dateCacheSize(this, dateCacheSize)
+        this.javaReader.dateCacheSize = dateCacheSize;
+        end
+        
         function out = get.colTypeMap(this)
         out = this.javaReader.colTypeMap;
         end
@@ -192,6 +262,44 @@ classdef CsvTableReader < handle
     
 end
 
+function mx = colValuesToMatlab(x, iBuf)
+    if isa(x, 'java.lang.String[]')
+        %TODO: Switch to a more efficient conversion
+        mx = cellstr(string(x));
+    elseif isa(x, 'net.janklab.util.PackedStrings')
+        mx = jl.util.packedStrings2cellstr(x);
+    elseif isa(x, 'java.time.LocalDate[]')
+        mx = jl.time.localdate.fromJavaLocalDate(x);
+    elseif isa(x, 'java.time.LocalTime[]')
+        mx = jl.time.localtime.fromJavaLocalTime(x);
+    elseif isa(x, 'java.time.LocalDateTime[]')
+        mx = jl.time.util.javaLocalDateTime2datetime(x);
+    elseif isa(x, 'net.janklab.etl.csvtable.DatenumValues')
+        mx = datenumValuesToMatlab(x);
+    elseif isa(x, 'net.janklab.util.SymbolArrayList')
+        mx = symbol(x);
+    elseif isnumeric(x)
+        mx = x;
+    else
+        error('Unsupported type coming back from column buffer %d: %s', ...
+            iBuf, class(x));
+    end
+end
+
+function mx = datenumValuesToMatlab(x)
+    switch char(x.colType.name())
+        case 'LOCALDATE'
+            mx = jl.time.localdate(x.datenums);
+        case 'LOCALTIME'
+            mx = jl.time.localtime.ofNanosOfDay(double(x.nanosOfDay));
+        case 'LOCALDATETIME'
+            mx = datetime(x.datenums, 'ConvertFrom', 'datenum') ...
+                + seconds(double(x.nanosOfDay) / 1e9);
+        otherwise
+            error('Unsupported datenum column type: %s', char(x.colType.name()));
+    end
+end
+
 function out = tablifyColNames(colNames)
     out = regexprep(colNames, '[^a-zA-Z0-9_]', '_');
 end
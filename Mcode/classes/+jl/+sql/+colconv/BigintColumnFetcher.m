@@ -1,17 +1,31 @@
 classdef BigintColumnFetcher < jl.sql.ColumnFetcher
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData) %#ok<INUSL>
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL>
         % Fetch column data.
         % 
-        % Assumes the data has been buffered as long[] on the Java side.
+        % Assumes the data has been buffered as long[] on the Java side, with
+        % NULLs buffered as 0 and flagged in nullMask.
+        %
+        % Integer types have no missing value, so chunks with NULLs come back
+        % as double, with NaN for NULL. Values that doubles can't hold exactly
+        % raise a warning.
         x = columnBufferData;
-        if columnMetaData.isSigned
+        if ~columnMetaData.isSigned
+            x = typecast(x, 'uint64');
+        end
+        if isempty(nullMask)
             out = x;
         else
-            out = typecast(x, 'uint64');
+            out = double(x);
+            out(nullMask) = NaN;
+            if any(abs(out) > flintmax)
+                warning('jl:sql:BigintPrecisionLoss', ['BIGINT column ''%s'' has NULLs ' ...
+                    'and values too large for double; they were rounded'], ...
+                    columnMetaData.label);
+            end
         end
         end
     end
     
-end
\ No newline at end of file
+end
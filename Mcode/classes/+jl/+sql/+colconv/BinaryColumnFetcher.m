@@ -3,7 +3,7 @@ classdef BinaryColumnFetcher < jl.sql.ColumnFetcher
     %
     % Converts the bytes to uint8 on the Matlab side.
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData) %#ok<INUSL>
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL,INUSD>
         % Fetch column data.
         out = cell(size(columnBufferData));
         for i = 1:numel(out)
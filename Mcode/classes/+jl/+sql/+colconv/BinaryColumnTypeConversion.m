@@ -2,11 +2,12 @@ classdef BinaryColumnTypeConversion < jl.sql.ColumnTypeConversion
     
     methods
         function out = getColumnBuffer(this) %#ok<MANU>
-        out = net.janklab.mdbc.colbuf.BinaryColumnBuffer();
+        out = net.janklab.mdbc.colbuf.PackedBlobColumnBuffer();
+        out.binaryColumn = true;
         end
         
         function out = getColumnFetcher(this) %#ok<MANU>
-        out = jl.sql.colconv.BinaryColumnFetcher;
+        out = jl.sql.colconv.PackedBinaryColumnFetcher;
         end
     end
 end
\ No newline at end of file
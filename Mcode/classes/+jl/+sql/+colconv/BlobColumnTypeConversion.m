@@ -2,11 +2,11 @@ classdef BlobColumnTypeConversion < jl.sql.ColumnTypeConversion
     
     methods
         function out = getColumnBuffer(this) %#ok<MANU>
-        out = net.janklab.mdbc.colbuf.BlobToBytesColumnBuffer();
+        out = net.janklab.mdbc.colbuf.PackedBlobColumnBuffer();
         end
         
         function out = getColumnFetcher(this) %#ok<MANU>
-        out = jl.sql.colconv.BinaryColumnFetcher;
+        out = jl.sql.colconv.PackedBinaryColumnFetcher;
         end
     end
 end
\ No newline at end of file
@@ -0,0 +1,17 @@
+classdef BooleanColumnFetcher < jl.sql.ColumnFetcher
+    % Fetches columns that were buffered as boolean[]
+    %
+    % Logicals have no missing value, so chunks with NULLs come back as double,
+    % with NaN for NULL.
+    
+    methods
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL>
+        out = columnBufferData(:);
+        if ~isempty(nullMask)
+            out = double(out);
+            out(nullMask) = NaN;
+        end
+        end
+    end
+    
+end
@@ -6,7 +6,7 @@ classdef BooleanColumnTypeConversion < jl.sql.ColumnTypeConversion
         end
         
         function out = getColumnFetcher(this) %#ok<MANU>
-        out = jl.sql.colconv.RawColumnFetcher;
+        out = jl.sql.colconv.BooleanColumnFetcher;
         end
     end
 end
\ No newline at end of file
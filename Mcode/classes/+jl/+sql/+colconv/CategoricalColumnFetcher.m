@@ -0,0 +1,19 @@
+classdef CategoricalColumnFetcher
+    % Fetches columns that were returned as DictionaryEncodedStrings.
+    methods
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
+        % Java codes are zero-indexed with -1 for NULL, so +1 gives Matlab
+        % categorical codes, with NULL as 0 (<undefined>)
+        codes = double(columnBufferData.codes) + 1;
+        levels = cellstr(string(columnBufferData.dictionary));
+        % Categories can't be empty, so empty strings come back as <undefined>
+        iEmpty = find(cellfun('isempty', levels));
+        if ~isempty(iEmpty)
+            codes(codes == iEmpty) = 0;
+            codes(codes > iEmpty) = codes(codes > iEmpty) - 1;
+            levels(iEmpty) = [];
+        end
+        out = categorical(codes(:), 1:numel(levels), levels);
+        end
+    end
+end
@@ -0,0 +1,13 @@
+classdef CategoricalColumnTypeConversion < jl.sql.ColumnTypeConversion
+    
+    methods
+        function out = getColumnBuffer(this) %#ok<MANU>
+        out = net.janklab.mdbc.colbuf.SymbolColumnBuffer();
+        out.useLocalDictionary = true;
+        end
+        
+        function out = getColumnFetcher(this) %#ok<MANU>
+        out = jl.sql.colconv.CategoricalColumnFetcher;
+        end
+    end
+end
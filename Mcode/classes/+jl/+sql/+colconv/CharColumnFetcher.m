@@ -1,7 +1,7 @@
 classdef CharColumnFetcher
     % Fetches columns that were returned as java.lang.String[].
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData)
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
         out = string(columnBufferData);
         out = cellstr(out);
         out = out(:);
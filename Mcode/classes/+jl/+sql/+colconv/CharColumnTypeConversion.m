@@ -3,10 +3,11 @@ classdef CharColumnTypeConversion < jl.sql.ColumnTypeConversion
     methods
         function out = getColumnBuffer(this) %#ok<MANU>
         out = net.janklab.mdbc.colbuf.StringColumnBuffer();
+        out.packed = true;
         end
         
         function out = getColumnFetcher(this) %#ok<MANU>
-        out = jl.sql.colconv.CharColumnFetcher;
+        out = jl.sql.colconv.PackedCharColumnFetcher;
         end
     end
 end
\ No newline at end of file
@@ -2,11 +2,12 @@ classdef ClobColumnTypeConversion < jl.sql.ColumnTypeConversion
     
     methods
         function out = getColumnBuffer(this) %#ok<MANU>
-        out = net.janklab.mdbc.colbuf.ClobToStringColumnBuffer();
+        out = net.janklab.mdbc.colbuf.ClobToStringsColumnBuffer();
+        out.packed = true;
         end
         
         function out = getColumnFetcher(this) %#ok<MANU>
-        out = jl.sql.colconv.CharColumnFetcher;
+        out = jl.sql.colconv.PackedCharColumnFetcher;
         end
     end
 end
\ No newline at end of file
@@ -5,7 +5,7 @@ classdef DatenumToDatetimeColumnFetcher < jl.sql.ColumnFetcher
     % doubles.
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData)
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
         datenums = columnBufferData(:);
         out = datetime(datenums, 'convertFrom','datenum');
         end
@@ -5,7 +5,7 @@ classdef DatenumToLocaldateColumnFetcher < jl.sql.ColumnFetcher
     % doubles.
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData)
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
         datenums = columnBufferData(:);
         out = jl.time.localdate(datenums);
         end
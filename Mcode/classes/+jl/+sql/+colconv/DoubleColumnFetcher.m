@@ -1,9 +1,12 @@
 classdef DoubleColumnFetcher < jl.sql.ColumnFetcher
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData) %#ok<INUSD,INUSL>
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL>
         out = columnBufferData;
         out = out(:);
+        if ~isempty(nullMask)
+            out(nullMask) = NaN;
+        end
         end
     end
-end
\ No newline at end of file
+end
@@ -2,12 +2,13 @@ classdef NClobColumnTypeConversion < jl.sql.ColumnTypeConversion
     
     methods
         function out = getColumnBuffer(this) %#ok<MANU>
-        out = net.janklab.mdbc.colbuf.ClobToStringColumnBuffer();
+        out = net.janklab.mdbc.colbuf.ClobToStringsColumnBuffer();
+        out.packed = true;
         out.useNClob = true;
         end
         
         function out = getColumnFetcher(this) %#ok<MANU>
-        out = jl.sql.colconv.CharColumnFetcher;
+        out = jl.sql.colconv.PackedCharColumnFetcher;
         end
     end
 end
\ No newline at end of file
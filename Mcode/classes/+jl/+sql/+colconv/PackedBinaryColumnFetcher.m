@@ -0,0 +1,27 @@
+classdef PackedBinaryColumnFetcher < jl.sql.ColumnFetcher
+    % Fetches column data that's stored as a PackedBytes
+    %
+    % Converts each value to a uint8 column vector on the Matlab side.
+    methods
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL,INUSD>
+        % Fetch column data.
+        packed = columnBufferData;
+        n = packed.size();
+        out = cell(n, 1);
+        if packed.isSpilled()
+            % Spilled data is in a mapped file; copy the values out one at a time
+            for i = 1:n
+                out{i} = typecast(packed.get(i-1), 'uint8');
+            end
+        else
+            % Convert the chunk's packed block at once and slice it up. The
+            % heap array is reused across chunks, so only take the filled part.
+            offsets = double(packed.offsets);
+            data = typecast(packed.getTrimmedData(), 'uint8');
+            for i = 1:n
+                out{i} = data(offsets(i)+1:offsets(i+1));
+            end
+        end
+        end
+    end
+end
@@ -0,0 +1,9 @@
+classdef PackedCharColumnFetcher < jl.sql.ColumnFetcher
+    % Fetches columns that were returned as net.janklab.util.PackedStrings.
+    methods
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL,INUSD>
+        % Fetch column data.
+        out = jl.util.packedStrings2cellstr(columnBufferData);
+        end
+    end
+end
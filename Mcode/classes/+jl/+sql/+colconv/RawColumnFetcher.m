@@ -2,7 +2,7 @@ classdef RawColumnFetcher < jl.sql.ColumnFetcher
     % A ColumnFetcher that does no conversion of the retrieved data
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData)
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
         out = columnBufferData;
         out = out(:);
         end
@@ -1,7 +1,7 @@
 classdef SymbolColumnFetcher
     % Fetches columns that were returned encoded symbols in int[].
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData)
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
         symbolCodes = columnBufferData;
         out = symbol.ofSymbolCode(symbolCodes);
         end
@@ -2,7 +2,7 @@ classdef TimenumToLocaltimeColumnFetcher < jl.sql.ColumnFetcher
     % Retrieves micros-of-day and converts to jl.time.localtime
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData)
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask)
         microsOfDay = columnBufferData(:);
         nanosOfDay = microsOfDay * 10^3;
         out = jl.time.localtime.ofNanosOfDay(nanosOfDay);
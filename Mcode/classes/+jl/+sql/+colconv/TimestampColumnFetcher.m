@@ -1,11 +1,13 @@
 classdef TimestampColumnFetcher < jl.sql.ColumnFetcher
     
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData) %#ok<INUSL>
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL>
         % Fetch column data.
         datenums = columnBufferData.datenums;
         nanosOfDays = double(columnBufferData.nanosOfDays);
-        nanosOfDays(isnan(datenums)) = NaN;
+        if ~isempty(nullMask)
+            nanosOfDays(nullMask) = NaN;
+        end
         date = jl.time.localdate(datenums);
         time = jl.time.localtime.ofNanosOfDay(double(nanosOfDays));
         out = jl.time.timestamp.ofDateAndTime(date, time);
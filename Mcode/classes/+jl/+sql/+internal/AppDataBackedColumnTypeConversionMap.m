@@ -56,6 +56,7 @@ classdef AppDataBackedColumnTypeConversionMap < jl.sql.ColumnTypeConversionMap
                     this.registerForSqlType(sqlType, conversionName);
                 end
                 this.strategyMap = storedConversions.strategyMap;
+                this.jval.invalidate();
                 this.doPersistence = true;
             end
         end
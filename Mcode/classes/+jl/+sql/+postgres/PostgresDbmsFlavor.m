@@ -33,6 +33,44 @@ classdef PostgresDbmsFlavor < jl.sql.DbmsFlavor
             'uuid'      'jl.sql.postgres.UuidColumnTypeConversion'
             });
         end
+        
+        function out = supportsBulkCopy(this)
+        out = true;
+        end
+        
+        function out = bulkInsert(this, conn, table, colNames, params)
+            %BULKINSERT Insert data using COPY FROM STDIN
+            %
+            % The params are converted with the connection's param conversions,
+            % just like for a batched insert, and the converted data is streamed
+            % to the server in COPY text format.
+            %
+            % Returns [] without loading anything if any column converts to a
+            % param binder that COPY can't load; the caller then does a
+            % batched insert instead.
+            binders = cell(1, numel(params));
+            for i = 1:numel(params)
+                p = params{i};
+                if ischar(p) || iscellstr(p)
+                    p = string(p);
+                end
+                conversionType = conn.paramConversionSelector.selectConversion(i, p);
+                converter = feval(conversionType);
+                binder = converter.getBinder();
+                if ~net.janklab.mdbc.copy.PgCopyLoader.supports(binder)
+                    out = [];
+                    return
+                end
+                binder.setBuffer(converter.convertParamData(p));
+                binders{i} = binder;
+            end
+            loader = net.janklab.mdbc.copy.PgCopyLoader;
+            for i = 1:numel(binders)
+                loader.addColumn(binders{i});
+            end
+            sql = loader.copySql(table, colNames);
+            out = loader.load(conn.jdbcConn, sql);
+        end
     end
     
 end
\ No newline at end of file
@@ -1,6 +1,6 @@
 classdef UuidColumnFetcher < jl.sql.ColumnFetcher
     methods
-        function out = fetchColumn(this, columnBufferData, columnMetaData) %#ok<INUSL>
+        function out = fetchColumn(this, columnBufferData, columnMetaData, nullMask) %#ok<INUSL,INUSD>
         % Fetch column data.
         % 
         % Assumes the data has been buffered as Object[] on the Java side.
@@ -1,6 +1,10 @@
 classdef (Abstract) ColumnFetcher
    % Fetcher/converter for buffered Java ResultSet column data
+   %
+   % fetchColumn() gets the column's buffered data for a chunk, and a nullMask
+   % that is a logical column vector, true for each NULL row, or [] if the chunk
+   % had no NULLs in that column.
     methods
-        out = fetchColumn(this, columnBuffer, columnMetaData);
+        out = fetchColumn(this, columnBuffer, columnMetaData, nullMask);
     end
-end
\ No newline at end of file
+end
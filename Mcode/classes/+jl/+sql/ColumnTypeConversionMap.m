@@ -39,6 +39,16 @@ classdef ColumnTypeConversionMap < handle
             out = char(this.jval.lookupConversion(colIndex, colName, sqlType, vendorType));
         end
         
+        function out = resolveConversions(this, rsMeta)
+            %RESOLVECONVERSIONS Resolve the conversions for a whole result set
+            %
+            % Returns a Java net.janklab.mdbc.ResolvedColumnConversions. Results
+            % are cached by schema, and invalidated when any map in the chain
+            % changes.
+            mustBeA(rsMeta, 'jl.sql.jdbc.RSMetaData');
+            out = this.jval.resolveConversions(rsMeta.jdbc);
+        end
+        
         function out = lookupStrategy(this, strategyName)
             if isfield(this.strategyMap, strategyName)
                 out = this.strategyMap.(strategyName);
@@ -101,6 +111,8 @@ classdef ColumnTypeConversionMap < handle
             s = this.strategyMap;
             s.(strategyName) = strategyClassName;
             this.strategyMap = s;
+            % Cached resolutions hold buffers built from the old strategies
+            this.jval.invalidate();
         end
         
         function registerStrategies(this, strategies)
@@ -150,6 +162,19 @@ classdef ColumnTypeConversionMap < handle
                 'CHAR'      'jl.sql.colconv.SymbolColumnTypeConversion'
                 });
         end
+        
+        function useAllStringsAsCategoricals(this)
+            % Enable fetching strings as categoricals for all columns
+            %
+            % This changes the column type mappings to map all CHAR data to
+            % categoricals. Each chunk is dictionary-encoded on the Java side
+            % without going through the global symbol table, so this is good
+            % for retrieving high-cardinality data that would otherwise bloat
+            % it.
+            this.registerStrategies({
+                'CHAR'      'jl.sql.colconv.CategoricalColumnTypeConversion'
+                });
+        end
     end
     
     methods (Access = private)
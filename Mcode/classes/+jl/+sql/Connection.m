@@ -16,6 +16,13 @@ classdef Connection < handle
         paramConversionSelector
         % The DBMS flavor handler, for DBMS-specific behavior
         dbmsFlavor jl.sql.DbmsFlavor
+        % The net.janklab.mdbc.QueryResultCache used by query() when the
+        % useCache option is on. Defaults to the global MDBC cache.
+        queryResultCache
+        % The net.janklab.mdbc.JLConnectionPool this connection was borrowed
+        % from, or empty if it owns its connection outright. A pooled
+        % connection is given back to the pool on close instead of closed.
+        connectionPool
     end
     properties (Access = protected)
         % Logger for SQL tracing
@@ -26,6 +33,7 @@ classdef Connection < handle
         TransactionIsolation  % This' transaction isolation level, as string
         user                  % The username for this connection
         baseUrl               % The base JDBC URL for this connection
+        statementCacheSize    % Max prepared statements cached for reuse; 0 disables
     end
     
     methods
@@ -52,6 +60,7 @@ classdef Connection < handle
                 "Connection", jl.sql.Mdbc.globalColumnTypeConversionMap);
             this.paramConversionSelector = jl.sql.ParamConversionSelector(...
                 jl.sql.Mdbc.globalParamConversionSelector);
+            this.queryResultCache = jl.sql.Mdbc.globalQueryResultCache;
         end
         
         function delete(this)
@@ -62,7 +71,17 @@ classdef Connection < handle
         function close(this)
             %CLOSE Close the connection
             for i = 1:numel(this)
-                if ~isempty(this(i).jlConn)
+                if ~isempty(this(i).connectionPool) && ~isempty(this(i).jlConn)
+                    jlc = this(i).jlConn;
+                    this(i).jlConn = [];
+                    try
+                        this(i).connectionPool.releaseConnection(jlc);
+                        this(i).traceLog.debug('SQL RELEASE: %s', char(jlc.baseUrl));
+                    catch err
+                        this(i).traceLog.warning('SQL RELEASE failed on connection %s: %s', ...
+                            char(jlc.baseUrl), err.message);
+                    end
+                elseif ~isempty(this(i).jlConn)
                     if ~this(i).jdbcConn.isClosed()
                         try
                             t0 = tic;
@@ -91,7 +110,7 @@ classdef Connection < handle
                 out = sprintf('%s %s', sizestr(this), class(this));
                 return;
             end
-            if isempty(this.jdbcConn)
+            if isempty(this.jlConn) || isempty(this.jdbcConn)
                 out = '<no connection>';
                 return
             end
@@ -147,6 +166,40 @@ classdef Connection < handle
             out = char(this.jlConn.baseUrl);
         end
         
+        function out = get.statementCacheSize(this)
+            % Get the statementCacheSize
+            out = double(this.jlConn.statementCacheSize);
+        end
+        
+        function set.statementCacheSize(this, val)
+            % Set the statementCacheSize. Setting it to 0 closes cached statements.
+            this.jlConn.statementCacheSize = val;
+            if val == 0
+                this.jlConn.clearStatementCache();
+            end
+        end
+        
+        function out = statementCacheStats(this)
+            %STATEMENTCACHESTATS Hit rates for the prepared statement cache
+            %
+            % out = statementCacheStats(obj)
+            %
+            % Returns a struct with the number of statements cached, and the
+            % hits, misses, and hit rate for prepareStatement() calls and for
+            % reuse of parameter binders (counted over the statements currently
+            % in the cache).
+            jc = this.jlConn;
+            out = struct;
+            out.nStatements = double(jc.getStatementCacheCount());
+            out.statementHits = double(jc.getStatementCacheHits());
+            out.statementMisses = double(jc.getStatementCacheMisses());
+            out.statementHitRate = jc.getStatementCacheHitRate();
+            out.binderHits = double(jc.getBinderChainHits());
+            out.binderMisses = double(jc.getBinderChainMisses());
+            nBinderCalls = out.binderHits + out.binderMisses;
+            out.binderHitRate = out.binderHits / max(1, nBinderCalls);
+        end
+        
         function out = get.TransactionIsolation(this)
             % Get the TransactionIsolation
             jCode = this.jdbcConn.getTransactionIsolation();
@@ -223,8 +276,14 @@ classdef Connection < handle
             % parameters.
             %
             % Returns a jl.sql.PreparedStatement
-            jdbcPreparedStatement = this.jdbcConn.prepareStatement(sql);
-            out = jl.sql.PreparedStatement(this, sql, jdbcPreparedStatement);
+            %
+            % If the connection's statement cache is on (see statementCacheSize),
+            % repeated calls with the same SQL reuse the same underlying
+            % statement and its parameter binders, once the statement from the
+            % previous call has been closed or cleared. While it is still in
+            % use, a separate, uncached statement is prepared.
+            jlStmt = this.jlConn.prepareStatement(sql);
+            out = jl.sql.PreparedStatement(this, sql, jlStmt);
         end
         
         function out = createStatement(this, sql)
@@ -256,19 +315,7 @@ classdef Connection < handle
             if nargin < 4 || isempty(options);   options = []; end
             options = jl.sql.QueryOptions(options);
             
-            if isempty(params)
-                stmt = this.createStatement(sql);
-            else
-                stmt = this.prepareStatement(sql);
-            end
-            if isequal(options.textReturnFormat, 'symbol')
-                stmt.columnTypeConversionMap.useAllStringsAsSymbols();
-            end
-            if isempty(params)
-                out = stmt.exec();
-            else
-                out = stmt.exec(params);
-            end
+            out = this.execImpl(sql, params, options, []);
         end
         
         function out = query(this, sql, params, options)
@@ -298,7 +345,26 @@ classdef Connection < handle
             if nargin < 4 || isempty(options);   options = []; end
             options = jl.sql.QueryOptions(options);
 
-            rslts = exec(this, sql, params, options);
+            % Check the result cache
+            resultCapture = [];
+            if options.useCache
+                [cacheKeyParams, isCacheable] = queryCacheKeyParams(params, options);
+                if isCacheable
+                    cached = this.queryResultCache.get(this.baseUrl, this.user, sql, ...
+                        cacheKeyParams);
+                    if ~isempty(cached)
+                        stmt = jl.sql.Statement(this, sql, []);
+                        applyTextReturnFormat(stmt, options);
+                        out = stmt.tableFromCachedResult(cached);
+                        this.traceLog.debug('SQL: QUERY (cached)\n  %s\n  %d rows', ...
+                            sql, height(out));
+                        return
+                    end
+                    resultCapture = java.util.ArrayList;
+                end
+            end
+            
+            rslts = this.execImpl(sql, params, options, resultCapture);
             
             % TODO: Decide what to do with the result's sqlWarnings. Log them?
             % Raising a warning is wrong because they can be arbitrary
@@ -325,6 +391,39 @@ classdef Connection < handle
                     'zero result sets.']);
             end
             
+            % Only plain single-result-set queries get cached
+            if ~isempty(resultCapture) && nResultSets == 1 && resultCapture.size() == 1
+                if isempty(options.cacheTtl)
+                    ttlMillis = -1;
+                else
+                    ttlMillis = round(options.cacheTtl * 1000);
+                end
+                tags = cellstr(options.cacheTags);
+                if isempty(tags)
+                    tags = [];
+                end
+                this.queryResultCache.put(this.baseUrl, this.user, sql, cacheKeyParams, ...
+                    resultCapture.get(0), ttlMillis, tags);
+            end
+        end
+        
+        function invalidateQueryCache(this, tags)
+            %INVALIDATEQUERYCACHE Drop cached query results
+            %
+            % invalidateQueryCache(obj)
+            % invalidateQueryCache(obj, tags)
+            %
+            % With no tags, drops all results in this connection's query result
+            % cache. Otherwise, drops just the results that were cached with
+            % any of the given tags (cellstr), as set by QueryOptions.cacheTags.
+            if nargin < 2
+                this.queryResultCache.invalidateAll();
+                return
+            end
+            tags = cellstr(tags);
+            for i = 1:numel(tags)
+                this.queryResultCache.invalidateTag(tags{i});
+            end
         end
         
         function out = insert(this, table, data, options)
@@ -367,13 +466,22 @@ classdef Connection < handle
             if options.quoteColumnNames
                 colNames = sprintfv('"%s"', colNames);
             end
-            sql = sprintf('INSERT INTO %s (%s) VALUES (%s)', ...
-                table, strjoin(colNames, ', '),...
-                strjoin(repmat({'?'}, [1 nCols]), ', '));
             params = coldata(data);
             
-            stmt = this.prepareStatement(sql);
-            out = stmt.executeBatch(params, {'DoLogging',false});
+            nLoaded = [];
+            if options.useBulkCopy && this.dbmsFlavor.supportsBulkCopy
+                % Returns [] if some column type can't be bulk-loaded
+                nLoaded = this.dbmsFlavor.bulkInsert(this, table, colNames, params);
+            end
+            if ~isempty(nLoaded)
+                out = jl.sql.BatchUpdateResults.ofJdbcUpdateCount(ones(nLoaded, 1));
+            else
+                sql = sprintf('INSERT INTO %s (%s) VALUES (%s)', ...
+                    table, strjoin(colNames, ', '),...
+                    strjoin(repmat({'?'}, [1 nCols]), ', '));
+                stmt = this.prepareStatement(sql);
+                out = stmt.executeBatch(params, {'DoLogging',false});
+            end
             te = toc(t0);
             
             this.traceLog.debugj('SQL: INSERT\n%s\n%s', ...
@@ -381,6 +489,27 @@ classdef Connection < handle
                 sprintf('  %d rows in %0.3f s', nrows(data), te));
         end
     end
+    
+    methods (Access = protected)
+        function out = execImpl(this, sql, params, options, resultCapture)
+            % Create a statement for sql, apply options, and execute it
+            %
+            % If resultCapture is not empty, it is a java.util.ArrayList that
+            % gets a QueryResultCache.CachedResult added for each result set.
+            if isempty(params)
+                stmt = this.createStatement(sql);
+            else
+                stmt = this.prepareStatement(sql);
+            end
+            applyTextReturnFormat(stmt, options);
+            stmt.resultCapture = resultCapture;
+            if isempty(params)
+                out = stmt.exec();
+            else
+                out = stmt.exec(params);
+            end
+        end
+    end
 end
 
 function mustBeValidSqlTableName(str)
@@ -389,3 +518,40 @@ if isempty(regexp(str, '^[\w._]+$', 'once'))
         str);
 end
 end
+
+function applyTextReturnFormat(stmt, options)
+if isequal(options.textReturnFormat, 'symbol')
+    stmt.columnTypeConversionMap.useAllStringsAsSymbols();
+elseif isequal(options.textReturnFormat, 'categorical')
+    stmt.columnTypeConversionMap.useAllStringsAsCategoricals();
+end
+end
+
+function [out, isCacheable] = queryCacheKeyParams(params, options)
+% Build the parameter part of a query result cache key
+%
+% Each parameter is turned into an exact string representation, so they
+% compare by value on the Java side. The options that affect how results are
+% converted are added on the end, so they get separate cache entries.
+% Parameters of other types make the query uncacheable.
+if isempty(params)
+    params = {};
+end
+out = cell(1, numel(params) + 1);
+isCacheable = true;
+for i = 1:numel(params)
+    x = params{i};
+    if isnumeric(x) || islogical(x)
+        out{i} = sprintf('%s:%s', class(x), mat2str(x, 17));
+    elseif ischar(x) || (isstring(x) && isscalar(x))
+        out{i} = ['char:' char(x)];
+    elseif isa(x, 'datetime') && isscalar(x)
+        out{i} = sprintf('datetime:%s %s', ...
+            char(x, 'uuuu-MM-dd''T''HH:mm:ss.SSSSSSSSS'), x.TimeZone);
+    else
+        isCacheable = false;
+        return
+    end
+end
+out{end} = ['textReturnFormat:' char(options.textReturnFormat)];
+end
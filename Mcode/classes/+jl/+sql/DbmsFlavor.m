@@ -38,6 +38,26 @@ classdef DbmsFlavor < handle
             mustBeA(conn, 'jl.sql.Connection');
             % Default: do nothing
         end
+        
+        function out = supportsBulkCopy(this)
+            %SUPPORTSBULKCOPY Whether this flavor has a bulk-load path for inserts
+            out = false;
+        end
+        
+        function out = bulkInsert(this, conn, table, colNames, params)
+            %BULKINSERT Insert data using the DBMS's bulk-load protocol
+            %
+            % out = bulkInsert(this, conn, table, colNames, params)
+            %
+            % Params (cell) holds the column data to insert, as for
+            % PreparedStatement.executeBatch(). Returns the number of rows
+            % loaded, or [] if the data can't be bulk-loaded and the caller
+            % should do a batched insert instead.
+            %
+            % Only flavors where supportsBulkCopy() is true implement this.
+            error('jl:Unimplemented', 'Bulk copy is not supported for DBMS flavor %s', ...
+                this.flavorName);
+        end
     end
     
     methods (Static)
@@ -5,6 +5,9 @@ classdef InsertOptions
         % This is off by default because using quoted column names can make
         % the insert logic stricter and cause breakage with Postgres.
         quoteColumnNames logical = false
+        % Whether to use the DBMS's bulk-load protocol (like PostgreSQL's COPY)
+        % instead of batched INSERTs, if the DBMS flavor supports it.
+        useBulkCopy logical = false
     end
     
     methods
@@ -14,6 +14,8 @@ classdef Mdbc
         globalParamConversionSelector = ...
             jl.sql.internal.AppDataBackedParamConversionSelector('paramTypeConversions');
         traceLog = logger.Logger.getLogger('jl.sql.trace');
+        % The query result cache that Connections use by default
+        globalQueryResultCache = net.janklab.mdbc.QueryResultCache;
     end
     
     methods (Static)
@@ -123,6 +125,7 @@ classdef Mdbc
                 'BOOLEAN',          'jl.sql.colconv.BooleanColumnTypeConversion'
                 'OBJECT',           'jl.sql.colconv.ObjectColumnTypeConversion'
                 'symbol',           'jl.sql.colconv.SymbolColumnTypeConversion'
+                'categorical',      'jl.sql.colconv.CategoricalColumnTypeConversion'
                 });
         end
         
@@ -180,6 +183,7 @@ classdef Mdbc
             dbmsFlavor = jl.sql.DbmsFlavor.getFlavorHandler(dbmsFlavorName);
             jdbcConnection = java.sql.DriverManager.getConnection(jdbcUrl, jProps);
             jlConnection = net.janklab.mdbc.JLConnection(jdbcConnection, url, user);
+            jlConnection.statementCacheSize = 32;
             out = jl.sql.Connection(jlConnection, dbmsFlavor);
             out.dbmsFlavor.initializeConnection(out);
             te = toc(t0);
@@ -188,6 +192,64 @@ classdef Mdbc
                 url, dbmsFlavorName, te);
         end
         
+        function out = createConnectionPool(url, user, password, properties)
+            %CREATECONNECTIONPOOL Create a pool of connections to a JDBC URL
+            %
+            % out = createConnectionPool(url, user, password, properties)
+            %
+            % Creates a pool that keeps connections to a database open for
+            % reuse. Get connections from it with connectFromPool. The inputs
+            % are the same as for connectFromJdbcUrl.
+            %
+            % The pool's size, validation, and idle eviction settings can be
+            % changed through its fields (minSize, maxSize, maxWaitMillis,
+            % validationQuery, idleTimeoutMillis, and so on). Call close() on
+            % it when you are done with it.
+            %
+            % Returns a net.janklab.mdbc.JLConnectionPool.
+            
+            if nargin < 4 || isempty(properties);  properties = struct;  end
+            
+            jProps = java.util.Properties;
+            fields = fieldnames(properties);
+            for i = 1:numel(fields)
+                jProps.setProperty(fields{i}, properties.(fields{i}));
+            end
+            factory = net.janklab.mdbc.DriverManagerConnectionFactory(['jdbc:' url], ...
+                user, password, jProps);
+            out = net.janklab.mdbc.JLConnectionPool(factory);
+        end
+        
+        function out = connectFromPool(pool)
+            %CONNECTFROMPOOL Get a connection from a connection pool
+            %
+            % out = connectFromPool(pool)
+            %
+            % Pool is a net.janklab.mdbc.JLConnectionPool, as returned by
+            % createConnectionPool.
+            %
+            % Returns a jl.sql.Connection object. Closing it, or letting it be
+            % cleared, gives the underlying connection back to the pool.
+            
+            t0 = tic;
+            jlConnection = pool.getConnection();
+            url = regexprep(char(jlConnection.baseUrl), '^jdbc:', '');
+            dbmsFlavorName = regexprep(url, ':.*', '');
+            try
+                dbmsFlavor = jl.sql.DbmsFlavor.getFlavorHandler(dbmsFlavorName);
+                out = jl.sql.Connection(jlConnection, dbmsFlavor);
+            catch err
+                pool.releaseConnection(jlConnection);
+                rethrow(err);
+            end
+            out.connectionPool = pool;
+            out.dbmsFlavor.initializeConnection(out);
+            te = toc(t0);
+            
+            jl.sql.Mdbc.traceLog.debugj('SQL CONNECT: %s (flavor %s) (from pool in %0.3f s)', ...
+                url, dbmsFlavorName, te);
+        end
+        
     end
     
 end
\ No newline at end of file
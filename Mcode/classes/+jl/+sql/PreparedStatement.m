@@ -5,16 +5,30 @@ classdef PreparedStatement < jl.sql.Statement
         paramConversionSelector jl.sql.ParamConversionSelector
         % The JLPreparedStatement wrapping the underlying JDBC Statement
         jlStmt
+        % Rows per JDBC executeBatch() call in executeBatch()
+        rowsPerBatch = 10000;
+        % Commit every this many batches in executeBatch(). 0 means never.
+        % Ignored if the connection is in auto-commit mode.
+        batchesPerCommit = 0;
     end
     
     methods
-        function this = PreparedStatement(connection, sql, jdbcStatement)
+        function this = PreparedStatement(connection, sql, stmt)
             % Construct a new PreparedStatement
             %
             % Client code should never call this. Instead, call prepareStatement()
             % on a jl.sql.Connection object.
-            this = this@jl.sql.Statement(connection, sql, jdbcStatement);
-            this.jlStmt = net.janklab.mdbc.JLPreparedStatement(jdbcStatement);
+            %
+            % Stmt is a net.janklab.mdbc.JLPreparedStatement, which may be shared
+            % through the connection's statement cache, or a JDBC
+            % PreparedStatement to wrap in a new one.
+            if isa(stmt, 'net.janklab.mdbc.JLPreparedStatement')
+                jlStmt = stmt;
+            else
+                jlStmt = net.janklab.mdbc.JLPreparedStatement(stmt);
+            end
+            this = this@jl.sql.Statement(connection, sql, jlStmt.jdbcStatement);
+            this.jlStmt = jlStmt;
             this.paramConversionSelector = jl.sql.ParamConversionSelector(...
                 this.connection.paramConversionSelector);
         end
@@ -37,6 +51,27 @@ classdef PreparedStatement < jl.sql.Statement
             display(dispstr(this));
         end
         
+        function delete(this)
+            % Destructor: gives the underlying statement back to the connection
+            close(this);
+        end
+        
+        function close(this)
+            %CLOSE Release the underlying statement
+            %
+            % A statement from the connection's statement cache goes back to
+            % the cache for reuse; any other statement is closed.
+            for i = 1:numel(this)
+                jlStmt = this(i).jlStmt;
+                conn = this(i).connection;
+                this(i).jlStmt = [];
+                if isempty(jlStmt) || isempty(conn) || ~isvalid(conn) || isempty(conn.jlConn)
+                    continue
+                end
+                conn.jlConn.releaseStatement(jlStmt);
+            end
+        end
+        
         function out = exec(this, params)
             % Execute statement with given parameters
             %
@@ -55,6 +90,7 @@ classdef PreparedStatement < jl.sql.Statement
             t0 = tic;
             % Bind parameters
             this.bindParameters(params);
+            this.jlStmt.clearBuffers();
             
             % Execute statement
             execStatus = this.jdbc.execute();
@@ -87,8 +123,11 @@ classdef PreparedStatement < jl.sql.Statement
             
             t0 = tic;
             [~,nRows] = this.setUpParameterBinding(params);
-            this.jlStmt.bindBatch(nRows);
-            updateCounts = this.jdbc.executeBatch();
+            bufCleanup = onCleanup(@() this.jlStmt.clearBuffers()); %#ok<NASGU>
+            this.jlStmt.rowsPerBatch = this.rowsPerBatch;
+            this.jlStmt.batchesPerCommit = this.batchesPerCommit;
+            this.jlStmt.metrics = this.metrics;
+            updateCounts = this.jlStmt.executeBulk(nRows);
             out = jl.sql.BatchUpdateResults.ofJdbcUpdateCount(updateCounts);
             te = toc(t0);
             
@@ -116,17 +155,30 @@ classdef PreparedStatement < jl.sql.Statement
                 end
             end
             % Set up parameter converters
-            converters = cell(1, numel(params));
+            converterTypes = cell(1, numel(params));
+            for i = 1:numel(params)
+                converterTypes{i} = char(this.paramConversionSelector.selectConversion(...
+                    i, params{i}));
+            end
+            % Reuse the binders from an earlier execution with the same
+            % conversions, if the statement came from the connection's cache
+            signature = strjoin(converterTypes, ',');
+            haveBinders = this.jlStmt.useBinderChain(signature);
             binders = cell(1, numel(params));
             for i = 1:numel(params)
-                paramConverterType = this.paramConversionSelector.selectConversion(...
-                    i, params{i});
-                converters{i} = feval(paramConverterType);
-                binders{i} = converters{i}.getBinder();
-                binders{i}.attach(this.jdbc, i);
-                convertedData = converters{i}.convertParamData(params{i});
+                converter = paramConversionForClass(converterTypes{i});
+                if haveBinders
+                    binders{i} = this.jlStmt.binders.get(i-1);
+                else
+                    binders{i} = converter.getBinder();
+                    binders{i}.attach(this.jdbc, i);
+                    this.jlStmt.addBinder(binders{i});
+                end
+                convertedData = converter.convertParamData(params{i});
                 binders{i}.setBuffer(convertedData);
-                this.jlStmt.addBinder(binders{i});
+            end
+            if ~haveBinders
+                this.jlStmt.saveBinderChain(signature);
             end
             if isempty(params)
                 % In the degenerate case, consider that a single row with no
@@ -147,4 +199,20 @@ classdef PreparedStatement < jl.sql.Statement
         end
     end
     
-end
\ No newline at end of file
+end
+
+function out = paramConversionForClass(className)
+% Get a shared instance of a ParamConversion class
+%
+% Param conversions are stateless, so one instance of each is enough.
+persistent cache
+if isempty(cache)
+    cache = containers.Map;
+end
+if isKey(cache, className)
+    out = cache(className);
+else
+    out = feval(className);
+    cache(className) = out;
+end
+end
@@ -5,6 +5,16 @@ classdef QueryOptions
         % Format to return text (char/varchar) columns in. May be 'string',
         % 'cellstr', 'categorical', or 'symbol'.
         textReturnFormat = 'string'
+        % Whether query() may use the connection's query result cache. When
+        % on, results are looked up in the cache before running the query,
+        % and stored in it afterwards.
+        useCache = false
+        % Time to live for cached results, in seconds. Empty means use the
+        % cache's default.
+        cacheTtl = []
+        % Tags (cellstr) to store cached results under, for invalidating them
+        % with Connection.invalidateQueryCache(). Table names are a good choice.
+        cacheTags = {}
     end
     
     methods
@@ -21,8 +21,26 @@ classdef Statement < handle
         traceLog = logger.Logger.getLogger('jl.sql.trace');
     end
     properties
-        % Rows per chunk when fetching results
+        % Rows per chunk when fetching results. With adaptive chunk sizing
+        % (see targetChunkBytes), this only limits the first chunk.
         rowsPerFetchChunk = 10000;
+        % Target size of each fetched chunk's Java-side buffers, in bytes. If
+        % positive, chunk sizes and the JDBC fetch size adapt to the width of
+        % the result set's rows, and chunks may grow past rowsPerFetchChunk.
+        % 0 (the default) uses a fixed rowsPerFetchChunk and the driver's
+        % default fetch size. 64 * 2^20 is a reasonable value to opt in with.
+        targetChunkBytes = 0;
+        % Number of chunks to prefetch on a background thread. 0 disables
+        % prefetching.
+        prefetchDepth = 0;
+        % A java.util.ArrayList to collect a QueryResultCache.CachedResult for
+        % each result set into, or empty to not collect them. Used for query
+        % result caching.
+        resultCapture = [];
+        % A net.janklab.mdbc.TransferMetrics to record fetch timings, sizes,
+        % and allocation into (and bind timings, for PreparedStatements), or
+        % empty to not instrument fetching.
+        metrics = [];
     end
     
     methods
@@ -69,6 +87,60 @@ classdef Statement < handle
                 this.sql, summaryString(out), te);
         end
         
+        function out = execToFile(this, file)
+            % EXECTOFILE Execute the statement and stream its results to a file
+            %
+            % nRows = execToFile(obj, file)
+            %
+            % Executes the statement and writes its first result set directly to
+            % a columnar file on the Java side, one chunk at a time, without
+            % bringing the data in to Matlab. The columns are converted using
+            % the same column type conversions as a normal fetch. See
+            % net.janklab.mdbc.ColumnarFileExporter for the file format.
+            %
+            % Returns the number of rows written.
+            t0 = tic;
+            isResultSet = this.jdbc.execute(this.sql);
+            if ~isResultSet
+                error('jl:InvalidInput', 'Statement did not produce a result set');
+            end
+            jResultSet = this.jdbc.getResultSet();
+            rsCleanup = onCleanup(@() jResultSet.close()); %#ok<NASGU>
+            rsMeta = jl.sql.jdbc.RSMetaData(jResultSet.getMetaData());
+            jRSBuffer = net.janklab.mdbc.ResultSetBuffer(jResultSet);
+            this.setUpColumnBuffers(jRSBuffer, rsMeta);
+            jRSBuffer.targetChunkBytes = this.targetChunkBytes;
+            if ~isempty(this.metrics)
+                jRSBuffer.metrics = this.metrics;
+            end
+            exporter = net.janklab.mdbc.ColumnarFileExporter;
+            exporter.rowsPerChunk = this.rowsPerFetchChunk;
+            out = exporter.export(jRSBuffer, java.io.File(char(file)));
+            te = toc(t0);
+            this.traceLog.debug('SQL: EXEC TO FILE\n  %s\n  %d rows to %s in %0.3f s', ...
+                this.sql, out, char(file), te);
+        end
+        
+        function out = tableFromCachedResult(this, cached)
+            %TABLEFROMCACHEDRESULT Convert a cached query result to a table
+            %
+            % Cached is a net.janklab.mdbc.QueryResultCache.CachedResult. Its
+            % data is converted with the fetchers for the conversions it was
+            % buffered with, as looked up in this's conversion map.
+            rsMeta = jl.sql.jdbc.RSMetaData(cached.metaData);
+            nCols = rsMeta.columnCount;
+            colFetchers = cell(1, nCols);
+            for iCol = 1:nCols
+                colConversionClass = this.columnTypeConversionMap.lookupStrategy(...
+                    char(cached.conversionNames(iCol)));
+                colConversion = conversionForClass(colConversionClass);
+                colFetchers{iCol} = colConversion.getColumnFetcher();
+            end
+            chunks = {this.convertFetchedChunkToMatlab(cached.result, rsMeta, ...
+                nCols, colFetchers)};
+            out = this.resultTableFromChunks(chunks, rsMeta);
+        end
+        
         function useStringsAsSymbols(this, columns)
             %USESTRINGSASSYMBOLS Configure this to fetch selected strings as symbols
             %
@@ -128,50 +200,80 @@ classdef Statement < handle
             jResultSet = this.jdbc.getResultSet();
             rsMeta = jl.sql.jdbc.RSMetaData(jResultSet.getMetaData());
             nCols = rsMeta.columnCount;
-            colFetchers = cell(1, nCols);
             jRSBuffer = net.janklab.mdbc.ResultSetBuffer(jResultSet);
-            for iCol = 1:nCols
-                % Look up ColBuffer and ColFetcher to use
-                % Look up the conversion type name
-                colMeta = rsMeta.getColumnMetaData(iCol);
-                conversionName = char(this.columnTypeConversionMap.lookupConversion(...
-                    iCol, colMeta.label, colMeta.sqlType, colMeta.dbmsTypeName));
-                if isempty(conversionName)
-                    error('No column type conversion found for column %d (''%s'', sqlType=%s (%s))', ...
-                        iCol, colMeta.label, colMeta.sqlType, colMeta.dbmsTypeName);
-                end
-                % Get the ColTypeConversion based on that name
-                colConversionClass = this.columnTypeConversionMap.lookupStrategy(...
-                    conversionName);
-                colConversion = feval(colConversionClass);
-                % Get the ColBuffer and ColFetcher from the ColTypeConversion
-                colBuffer = colConversion.getColumnBuffer();
-                colFetcher = colConversion.getColumnFetcher();
-                jRSBuffer.setColumnBuffer(iCol, colBuffer);
-                colFetchers{iCol} = colFetcher;
-                if log.isDebugEnabled
-                    m = colMeta;
-                    log.debug('Col %d: "%s": %s (%d,%d) (%s) -> %s', ...
-                        iCol, m.label, m.sqlType, m.precision, m.scale, m.dbmsTypeName, ...
-                        conversionName);
-                end
+            [colFetchers, conversionNames] = this.setUpColumnBuffers(jRSBuffer, rsMeta);
+            jRSBuffer.targetChunkBytes = this.targetChunkBytes;
+            if ~isempty(this.metrics)
+                jRSBuffer.metrics = this.metrics;
+            end
+            if ~isempty(this.resultCapture)
+                % Results too big for the cache stop being captured partway
+                capture = net.janklab.mdbc.QueryResultCache.Capture(...
+                    jResultSet.getMetaData(), conversionNames, ...
+                    this.connection.queryResultCache.maxBytes);
             end
             % Fetch the current result set in chunks
+            if this.prefetchDepth > 0
+                jRSBuffer.startPrefetching(this.rowsPerFetchChunk, this.prefetchDepth);
+                % Make sure the prefetch thread stops if we error out
+                prefetchCleanup = onCleanup(@() jRSBuffer.stopPrefetching()); %#ok<NASGU>
+            end
             chunks = {};
             mayHaveMoreChunks = true;
             while mayHaveMoreChunks
                 % Fetch a chunk from the Java buffer
                 jRSFetchResult = jRSBuffer.fetch(this.rowsPerFetchChunk);
                 mayHaveMoreChunks = ~jRSFetchResult.isFinished;
+                % Report any warnings the driver raised while fetching
+                jWarnings = jRSFetchResult.warnings;
+                for iWarning = 1:numel(jWarnings)
+                    log.warning('SQL warning during fetch: %s', char(jWarnings(iWarning).toString()));
+                end
+                if jRSFetchResult.nWarningsDropped > 0
+                    log.warning('%d more SQL warnings during fetch were dropped', ...
+                        jRSFetchResult.nWarningsDropped);
+                end
+                if ~isempty(this.resultCapture)
+                    capture.add(jRSFetchResult);
+                end
                 % Convert it to Matlab types and store it
+                tAssembly = tic;
                 chunks{end+1} = this.convertFetchedChunkToMatlab(jRSFetchResult, rsMeta, ...
                     nCols, colFetchers); %#ok<AGROW>
+                if ~isempty(this.metrics)
+                    this.metrics.recordAssembly(int64(toc(tAssembly) * 1e9));
+                end
+            end
+            if ~isempty(this.resultCapture) && ~capture.isOverLimit()
+                this.resultCapture.add(capture.finish());
+            end
+            if this.targetChunkBytes > 0
+                log.debug('Adaptive fetch: %d chunks, last limit %d rows, fetch size %d, ~%.0f bytes/row', ...
+                    numel(chunks), jRSFetchResult.chunkRowLimit, jRSFetchResult.fetchSize, ...
+                    jRSFetchResult.estimatedBytesPerRow);
             end
-            % Build Matlab result from fetched chunks
+            tAssembly = tic;
+            out = this.resultTableFromChunks(chunks, rsMeta);
+            if ~isempty(this.metrics)
+                this.metrics.recordAssembly(int64(toc(tAssembly) * 1e9));
+            end
+        end
+        
+        function out = resultTableFromChunks(this, chunks, rsMeta)
+            %RESULTTABLEFROMCHUNKS Build a result table from converted chunks
+            nCols = rsMeta.columnCount;
             data = cat(1, chunks{:});
             colData = cell(1, nCols);
             for iCol = 1:nCols
-                colData{iCol} = cat(1, data{:,iCol});
+                colChunks = data(:,iCol);
+                % Integer and logical columns come back as double for chunks
+                % with NULLs; make the rest match, since cat() would convert
+                % the NaNs to integers otherwise
+                isDoubleChunk = cellfun('isclass', colChunks, 'double');
+                if any(isDoubleChunk) && ~all(isDoubleChunk)
+                    colChunks = cellfun(@double, colChunks, 'UniformOutput', false);
+                end
+                colData{iCol} = cat(1, colChunks{:});
                 if iscellstr(colData{iCol})
                   colData{iCol} = string(colData{iCol});
                 end
@@ -180,16 +282,86 @@ classdef Statement < handle
             out = table(colData{:}, 'VariableNames', columnNames);
         end
         
+        function [colFetchers, conversionNames] = setUpColumnBuffers(this, jRSBuffer, rsMeta)
+            %SETUPCOLUMNBUFFERS Set up the column buffers for a result set
+            %
+            % Looks up the column type conversion for each column, sets its
+            % ColumnBuffer on jRSBuffer, and returns the matching ColumnFetchers
+            % and the conversion names (as a Java String[]).
+            %
+            % Conversions are resolved through the map's schema-keyed cache.
+            % The first time a schema is seen, its ColumnBuffers are built from
+            % the conversions and saved as prototypes; after that, they are
+            % just copied on the Java side.
+            log = logger.Logger.getLogger('jl.sql');
+            nCols = rsMeta.columnCount;
+            resolved = this.columnTypeConversionMap.resolveConversions(rsMeta);
+            conversionNames = resolved.conversionNames;
+            haveBuffers = resolved.setUpColumnBuffers(jRSBuffer);
+            if ~haveBuffers
+                prototypes = javaArray('net.janklab.mdbc.ColumnBuffer', nCols);
+            end
+            colFetchers = cell(1, nCols);
+            for iCol = 1:nCols
+                % Get the ColTypeConversion for the resolved conversion name
+                conversionName = char(conversionNames(iCol));
+                if isempty(conversionName)
+                    colMeta = rsMeta.getColumnMetaData(iCol);
+                    error('No column type conversion found for column %d (''%s'', sqlType=%s (%s))', ...
+                        iCol, colMeta.label, colMeta.sqlType, colMeta.dbmsTypeName);
+                end
+                colConversionClass = this.columnTypeConversionMap.lookupStrategy(...
+                    conversionName);
+                colConversion = conversionForClass(colConversionClass);
+                % Get the ColBuffer and ColFetcher from the ColTypeConversion
+                if ~haveBuffers
+                    prototypes(iCol) = colConversion.getColumnBuffer();
+                end
+                colFetchers{iCol} = colConversion.getColumnFetcher();
+                if log.isDebugEnabled
+                    m = rsMeta.getColumnMetaData(iCol);
+                    log.debug('Col %d: "%s": %s (%d,%d) (%s) -> %s', ...
+                        iCol, m.label, m.sqlType, m.precision, m.scale, m.dbmsTypeName, ...
+                        conversionName);
+                end
+            end
+            if ~haveBuffers
+                resolved.setBufferPrototypes(prototypes);
+                resolved.setUpColumnBuffers(jRSBuffer);
+            end
+        end
+        
         function out = convertFetchedChunkToMatlab(this, jRSFetchResult, rsMeta, nCols, colFetchers)
             colVals = cell(1, nCols);
             for iCol = 1:nCols
                 bufferedData = jRSFetchResult.bufferedColumnData(iCol);
+                if jRSFetchResult.hasNulls(iCol)
+                    nullMask = jRSFetchResult.getNullMask(iCol);
+                else
+                    nullMask = [];
+                end
                 colVals{iCol} = colFetchers{iCol}.fetchColumn(...
                     bufferedData, ...
-                    rsMeta.getColumnMetaData(iCol));
+                    rsMeta.getColumnMetaData(iCol), nullMask);
             end
             out = colVals;
         end
     end
     
-end
\ No newline at end of file
+end
+
+function out = conversionForClass(className)
+% Get a shared instance of a ColumnTypeConversion class
+%
+% Conversions are stateless, so one instance of each is enough.
+persistent cache
+if isempty(cache)
+    cache = containers.Map;
+end
+if isKey(cache, className)
+    out = cache(className);
+else
+    out = feval(className);
+    cache(className) = out;
+end
+end
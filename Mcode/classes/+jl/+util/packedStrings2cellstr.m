@@ -0,0 +1,30 @@
+function out = packedStrings2cellstr(packed)
+%PACKEDSTRINGS2CELLSTR Convert a Java PackedStrings to a cellstr
+%
+% out = jl.util.packedStrings2cellstr(packed)
+%
+% Converts a net.janklab.util.PackedStrings to an n-by-1 cellstr. The whole
+% packed data block is decoded to chars at once and then sliced up, so no
+% intermediate java.lang.String objects are created. Nulls become ''.
+
+n = packed.size();
+if n == 0
+    out = cell(0, 1);
+    return
+end
+data = packed.data;
+if isempty(data)
+    out = repmat({''}, [n 1]);
+    return
+end
+bytes = typecast(data(:)', 'uint8');
+if packed.isLatin1
+    % Latin-1 code points are the same as the first 256 Unicode code points
+    chars = char(bytes);
+    offsets = double(packed.offsets);
+else
+    chars = native2unicode(bytes, 'UTF-8');
+    offsets = double(packed.getCharOffsets());
+end
+out = mat2cell(chars, 1, diff(offsets(:)'));
+out = out(:);
@@ -1,28 +1,56 @@
 package net.janklab.etl.csvtable;
 
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
+ * A buffer that detects its column type from the column's values.
  *
+ * The first typeInferenceSampleSize values of the column are held as samples, and
+ * the column type is the first of the candidate types that every sample parses as:
+ * the date/time types, then DOUBLE, and STRING if none fit. The samples and all
+ * later values are then parsed as that type.
+ *
+ * A later value may still fail to parse as the detected type. If the buffer keeps
+ * strings, it also holds a String copy of every value, and falls back to those.
+ * Otherwise it holds only the parsed values, and a failure marks it as needing its
+ * column read again as strings, for CsvTableReader to do in a second pass over the
+ * file. That halves the memory used for AUTO columns whose type holds up.
  */
 public class AutoColBuffer extends ColBuffer {
     /** The CsvTableReader this is being used by. */
     private final CsvTableReader reader;
-    /** The fallback String buffer. */
-    private final StringColBuffer stringBuf = new StringColBuffer();
+    /** Whether to keep a String copy of every value to fall back to. */
+    private final boolean keepStrings;
+    /** Number of values to detect the column type from. */
+    private final int sampleSize;
+    /** Values held until the column type is detected; null once it has been. */
+    private List<String> samples;
+    /** The String buffer: the fallback copy, or the values of a STRING column. */
+    private StringColBuffer stringBuf;
     /** Buffered data of detected column type. */
     private ColBuffer delegateBuf;
-    /** Whether this is the first cell or not. */
-    private boolean isFirstCell = true;
+    /** The column type detected from the samples, or null if none was. */
+    private ColType detectedColType;
+    /** Set when a value failed to parse as the detected type and there is no String copy. */
+    private boolean needsReread;
     /** (DateTimeFormatter, ColType) pairs for datetime column detection. */
     private final Object[] dateCandidates;
-    
-    AutoColBuffer(CsvTableReader reader) {
+
+    /**
+     * @param reader The CsvTableReader this is being used by
+     * @param keepStrings Whether to keep a String copy of every value, so the column
+     * can fall back to strings without being read again
+     */
+    AutoColBuffer(CsvTableReader reader, boolean keepStrings) {
         Objects.requireNonNull(reader);
         this.reader = reader;
+        this.keepStrings = keepStrings;
+        this.sampleSize = Math.max(1, reader.typeInferenceSampleSize);
+        samples = new ArrayList<>();
         dateCandidates = new Object[] {
             DateTimeFormatter.ISO_LOCAL_DATE, ColType.LOCALDATE,
             DateTimeFormatter.ofLocalizedDate(FormatStyle.FULL), ColType.LOCALDATE,
@@ -40,70 +68,211 @@ public class AutoColBuffer extends ColBuffer {
             DateTimeFormatter.ofLocalizedTime(FormatStyle.FULL), ColType.LOCALTIME,
             DateTimeFormatter.ofLocalizedTime(FormatStyle.LONG), ColType.LOCALTIME,
             DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM), ColType.LOCALTIME,
-            DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT), ColType.LOCALTIME,        
+            DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT), ColType.LOCALTIME,
         };
     }
-    
-    
+
+    /**
+     * Create a buffer for another chunk of the same column, which uses the column
+     * type the template detected instead of detecting it again.
+     */
+    private AutoColBuffer(AutoColBuffer template) {
+        reader = template.reader;
+        keepStrings = template.keepStrings;
+        sampleSize = template.sampleSize;
+        stringBuf = (template.stringBuf != null) ? template.stringBuf.newSibling() : null;
+        delegateBuf = (template.delegateBuf != null) ? template.delegateBuf.newSibling() : null;
+        detectedColType = template.detectedColType;
+        needsReread = template.needsReread;
+        dateCandidates = template.dateCandidates;
+    }
+
+
     @Override
     public void addValue(String cellValue) throws IllegalArgumentException {
         Objects.requireNonNull(cellValue);
-        // On first cell, detect column type        
-        if (isFirstCell) {
-            ColType detectedColType = null;
-            // Try dates first
-            for (int iDateFmt = 0; iDateFmt < dateCandidates.length; iDateFmt += 2) {
-                DateTimeFormatter fmt = (DateTimeFormatter) dateCandidates[iDateFmt];
-                if (fmt == null) {
-                    // Placeholder for formats not specified in parent rearder object
-                    continue;
-                }
-                ColType correspondingType = (ColType) dateCandidates[iDateFmt + 1];
-                try {
-                    fmt.parse(cellValue);
-                    detectedColType = correspondingType;
-                    break;
-                } catch (DateTimeParseException dtpe) {
-                    // quash and try next formatter
-                }
-            }
-            // Dates didn't work; try numeric
-            if (detectedColType == null) {
-                try {
-                    Double.parseDouble(cellValue);
-                    detectedColType = ColType.DOUBLE;
-                } catch (NumberFormatException nfe) {
-                    // Nope. Quash.
-                }
-            }
-            // Construct buffer for detected type
-            if (detectedColType != null) {
-                delegateBuf = reader.colBufferForType(detectedColType);
-            } else {
-                // All special formats failed; fall back to String
-                // This is done by just leaving the delegate buffer null
-                delegateBuf = null;
+        if (samples != null) {
+            samples.add(cellValue);
+            if (samples.size() >= sampleSize) {
+                detectColType();
             }
-            isFirstCell = false;
+            return;
         }
         // Buffer the value
         if (delegateBuf != null) {
             try {
                 delegateBuf.addValue(cellValue);
             } catch (RuntimeException re) {
-                // Detected type failed. Fall back to just using strings
-                //System.err.println("Caught exception: " + re.toString());
-                //System.err.println("Parsing failed for value: '" + cellValue 
-                //       + "'. Falling back to String buffering.");
-                delegateBuf = null;
+                detectedTypeFailed();
             }
         }
-        // Always buffer the string value, too, in case we need to fall back later
-        stringBuf.addValue(cellValue);
+        if (stringBuf != null) {
+            stringBuf.addValue(cellValue);
+        }
+    }
+
+    @Override
+    public void addValue(byte[] bytes, int start, int len) throws IllegalArgumentException {
+        if (samples != null) {
+            super.addValue(bytes, start, len);
+            return;
+        }
+        if (delegateBuf != null) {
+            try {
+                delegateBuf.addValue(bytes, start, len);
+            } catch (RuntimeException re) {
+                detectedTypeFailed();
+            }
+        }
+        if (stringBuf != null) {
+            stringBuf.addValue(bytes, start, len);
+        }
+    }
+
+    /**
+     * Detect the column type from the samples seen so far, and buffer them as that type.
+     */
+    private void detectColType() {
+        List<String> values = samples;
+        samples = null;
+        detectedColType = values.isEmpty() ? null : inferColType(values);
+        delegateBuf = (detectedColType != null) ? reader.colBufferForType(detectedColType) : null;
+        stringBuf = (keepStrings || delegateBuf == null) ? new StringColBuffer(reader.packStrings) : null;
+        for (String value : values) {
+            addValue(value);
+        }
+    }
+
+    /**
+     * Detect the column type from the samples seen so far, if it hasn't been yet,
+     * even if there are fewer than typeInferenceSampleSize of them. This must be
+     * done before the buffer is used as a template on multiple threads.
+     */
+    void finishSampling() {
+        if (samples != null) {
+            detectColType();
+        }
+    }
+
+    /**
+     * Find the first candidate column type that all the values parse as.
+     * @return The type, or null if none fit
+     */
+    private ColType inferColType(List<String> values) {
+        // Try dates first
+        for (int iDateFmt = 0; iDateFmt < dateCandidates.length; iDateFmt += 2) {
+            DateTimeFormatter fmt = (DateTimeFormatter) dateCandidates[iDateFmt];
+            if (fmt == null) {
+                // Placeholder for formats not specified in parent rearder object
+                continue;
+            }
+            boolean allParse = true;
+            for (String value : values) {
+                if (!CellParsers.parses(fmt, value)) {
+                    allParse = false;
+                    break;
+                }
+            }
+            if (allParse) {
+                return (ColType) dateCandidates[iDateFmt + 1];
+            }
+        }
+        // Dates didn't work; try numeric
+        try {
+            for (String value : values) {
+                Double.parseDouble(value);
+            }
+            return ColType.DOUBLE;
+        } catch (NumberFormatException nfe) {
+            // Nope. Quash.
+        }
+        return null;
+    }
+
+    /**
+     * Stop using the detected column type, after a value failed to parse as it.
+     */
+    private void detectedTypeFailed() {
+        delegateBuf = null;
+        if (stringBuf == null) {
+            // There's nothing to fall back to; the column will have to be read again
+            needsReread = true;
+        }
+    }
+
+    /**
+     * Whether a value failed to parse as the detected column type, without a String
+     * copy of the values to fall back to. If so, the buffered values are incomplete,
+     * and the column must be read again as strings.
+     */
+    boolean needsReread() {
+        return needsReread;
     }
 
     @Override
     public Object getValues() {
+        finishSampling();
+        if (needsReread) {
+            throw new IllegalStateException("Column values did not all parse as detected type "
+                    + detectedColType + ", and must be read again as strings");
+        }
         return (delegateBuf != null) ? delegateBuf.getValues() : stringBuf.getValues();
     }
+
+    /**
+     * Gets the column type this buffer has settled on: the detected type, STRING if
+     * none was detected or the detected type has failed, or AUTO if no values have
+     * been seen yet.
+     */
+    ColType getColType() {
+        if (samples != null && samples.isEmpty()) {
+            return ColType.AUTO;
+        }
+        finishSampling();
+        return (delegateBuf != null) ? detectedColType : ColType.STRING;
+    }
+
+    /**
+     * Create an empty buffer of the column type this buffer has settled on, which
+     * does not fall back to strings, and so does not keep a String copy of each
+     * value. Values that don't parse as that type raise errors instead.
+     */
+    ColBuffer newFixedTypeSibling() {
+        if (getColType() == ColType.AUTO) {
+            throw new IllegalStateException("No column type has been detected yet");
+        }
+        return (delegateBuf != null) ? delegateBuf.newSibling() : new StringColBuffer(reader.packStrings);
+    }
+
+    @Override
+    AutoColBuffer newSibling() {
+        if (samples != null && samples.isEmpty()) {
+            return new AutoColBuffer(reader, keepStrings);
+        }
+        finishSampling();
+        return new AutoColBuffer(this);
+    }
+
+    @Override
+    void append(ColBuffer other) {
+        AutoColBuffer that = (AutoColBuffer) other;
+        finishSampling();
+        that.finishSampling();
+        if (needsReread || that.needsReread) {
+            needsReread = true;
+            delegateBuf = null;
+            stringBuf = null;
+            return;
+        }
+        // If the detected type failed on any chunk, the whole column falls back to
+        // strings, the same as it would have if read in one go
+        if (delegateBuf != null && that.delegateBuf != null) {
+            delegateBuf.append(that.delegateBuf);
+        } else if (delegateBuf != null || that.delegateBuf != null) {
+            detectedTypeFailed();
+        }
+        if (stringBuf != null) {
+            stringBuf.append(that.stringBuf);
+        }
+    }
 }
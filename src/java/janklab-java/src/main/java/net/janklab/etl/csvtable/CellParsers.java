@@ -0,0 +1,289 @@
+package net.janklab.etl.csvtable;
+
+import java.text.ParsePosition;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parsers for cell values held as UTF-8 byte slices, which avoid creating a String
+ * for each cell.
+ *
+ * These only handle the common, simple forms of values, and give exactly what the
+ * String-based parsing would for them. For anything else they return a marker
+ * value, and the caller falls back to parsing the cell as a String, which also
+ * produces the usual errors for invalid values.
+ */
+final class CellParsers {
+
+    /** Powers of 10 that are exactly representable as doubles. */
+    private static final double[] EXACT_POWERS_OF_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** Days from 0000-01-01 to 1970-01-01. */
+    private static final long DAYS_0000_TO_1970 = 719528;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** Returned by the date/time parsers for cells they don't handle. */
+    static final long NO_VALUE = Long.MIN_VALUE;
+    /** Length of the longest cell the date/time parsers handle. */
+    static final int MAX_DATE_TIME_LENGTH = 29;
+
+    private CellParsers() {
+    }
+
+    /**
+     * Parse a plain decimal number, like "-12.5" or "1.5e3".
+     *
+     * This only takes the fast path where the digits fit in a double's mantissa and the
+     * power of 10 is exact, so the single multiply or divide is correctly rounded and
+     * the result is the same as Double.parseDouble().
+     * @return The value, or NaN if the cell is not in a form handled here
+     */
+    static double parseDouble(byte[] buf, int start, int len) {
+        int i = start;
+        int end = start + len;
+        if (i == end) {
+            return Double.NaN;
+        }
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int nSignificantDigits = 0;
+        int nDigits = 0;
+        int exponent = 0;
+        for (; i < end; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                break;
+            }
+            mantissa = mantissa * 10 + d;
+            nDigits++;
+            if (mantissa != 0 && ++nSignificantDigits > 18) {
+                return Double.NaN;
+            }
+        }
+        if (i < end && buf[i] == '.') {
+            for (i++; i < end; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                mantissa = mantissa * 10 + d;
+                nDigits++;
+                exponent--;
+                if (mantissa != 0 && ++nSignificantDigits > 18) {
+                    return Double.NaN;
+                }
+            }
+        }
+        if (nDigits == 0) {
+            return Double.NaN;
+        }
+        if (i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+                negativeExponent = buf[i] == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            int nExponentDigits = 0;
+            for (; i < end; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                if (explicitExponent < 100000) {
+                    explicitExponent = explicitExponent * 10 + d;
+                }
+                nExponentDigits++;
+            }
+            if (nExponentDigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (i != end) {
+            return Double.NaN;
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return Double.NaN;
+        }
+        double value = (exponent < 0)
+                ? mantissa / EXACT_POWERS_OF_10[-exponent]
+                : mantissa * EXACT_POWERS_OF_10[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a date in the "yyyy-MM-dd" form of DateTimeFormatter.ISO_LOCAL_DATE.
+     * @return The date as a count of days since 1970-01-01, or NO_VALUE if the cell
+     * is not a valid date in that form
+     */
+    static long parseIsoLocalDate(byte[] buf, int start, int len) {
+        if (len != 10 || buf[start + 4] != '-' || buf[start + 7] != '-') {
+            return NO_VALUE;
+        }
+        int year = digits(buf, start, 4);
+        int month = digits(buf, start + 5, 2);
+        int day = digits(buf, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return NO_VALUE;
+        }
+        // Same as LocalDate.toEpochDay(), for non-negative years
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Parse a time in the "HH:mm", "HH:mm:ss" or "HH:mm:ss.SSSSSSSSS" forms of
+     * DateTimeFormatter.ISO_LOCAL_TIME, with 1 to 9 fractional digits.
+     * @return The time as nanoseconds since midnight, or NO_VALUE if the cell is not a
+     * valid time in one of those forms
+     */
+    static long parseIsoLocalTime(byte[] buf, int start, int len) {
+        if (len < 5 || buf[start + 2] != ':') {
+            return NO_VALUE;
+        }
+        int hour = digits(buf, start, 2);
+        int minute = digits(buf, start + 3, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return NO_VALUE;
+        }
+        long nanos = (hour * 60L + minute) * 60L * NANOS_PER_SECOND;
+        if (len == 5) {
+            return nanos;
+        }
+        if (len < 8 || buf[start + 5] != ':') {
+            return NO_VALUE;
+        }
+        int second = digits(buf, start + 6, 2);
+        if (second < 0 || second > 59) {
+            return NO_VALUE;
+        }
+        nanos += second * NANOS_PER_SECOND;
+        if (len == 8) {
+            return nanos;
+        }
+        int nFractionDigits = len - 9;
+        if (buf[start + 8] != '.' || nFractionDigits < 1 || nFractionDigits > 9) {
+            return NO_VALUE;
+        }
+        int fraction = digits(buf, start + 9, nFractionDigits);
+        if (fraction < 0) {
+            return NO_VALUE;
+        }
+        for (int i = nFractionDigits; i < 9; i++) {
+            fraction *= 10;
+        }
+        return nanos + fraction;
+    }
+
+    /**
+     * Parse a date-time in the "yyyy-MM-ddTHH:mm:ss.SSS" form of
+     * DateTimeFormatter.ISO_LOCAL_DATE_TIME, with the time in one of the forms taken by
+     * parseIsoLocalTime().
+     * @param out Receives the date as epoch days and the time as nanoseconds since
+     * midnight
+     * @return false if the cell is not a valid date-time in that form
+     */
+    static boolean parseIsoLocalDateTime(byte[] buf, int start, int len, long[] out) {
+        // The formatter is case-insensitive, so it takes a "t" separator too
+        if (len < 16 || (buf[start + 10] != 'T' && buf[start + 10] != 't')) {
+            return false;
+        }
+        long epochDay = parseIsoLocalDate(buf, start, 10);
+        long nanoOfDay = parseIsoLocalTime(buf, start + 11, len - 11);
+        if (epochDay == NO_VALUE || nanoOfDay == NO_VALUE) {
+            return false;
+        }
+        out[0] = epochDay;
+        out[1] = nanoOfDay;
+        return true;
+    }
+
+    /**
+     * Copy a short, all-ASCII String into a byte array, so the byte parsers can be used
+     * on it.
+     * @return The number of bytes, or -1 if the String is too long for dest or has
+     * non-ASCII characters
+     */
+    static int asciiBytes(String str, byte[] dest) {
+        int len = str.length();
+        if (len > dest.length) {
+            return -1;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x80) {
+                return -1;
+            }
+            dest[i] = (byte) c;
+        }
+        return len;
+    }
+
+    /**
+     * Whether a value can be parsed by a formatter. Values are checked without
+     * resolving first, which rejects most mismatches without throwing an exception.
+     */
+    static boolean parses(DateTimeFormatter fmt, String value) {
+        ParsePosition pos = new ParsePosition(0);
+        if (fmt.parseUnresolved(value, pos) == null || pos.getIndex() != value.length()) {
+            return false;
+        }
+        try {
+            fmt.parse(value);
+            return true;
+        } catch (DateTimeParseException dtpe) {
+            return false;
+        }
+    }
+
+    static boolean isLeapYear(int year) {
+        return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Parse a fixed number of ASCII digits.
+     * @return The value, or -1 if any of the bytes is not a digit
+     */
+    static int digits(byte[] buf, int start, int n) {
+        int value = 0;
+        for (int i = start; i < start + n; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+}
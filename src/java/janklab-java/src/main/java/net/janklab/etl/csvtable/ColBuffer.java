@@ -1,5 +1,7 @@
 package net.janklab.etl.csvtable;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * A buffer for a single column of data coming from a table in a CSV.
  */
@@ -10,6 +12,18 @@ public abstract class ColBuffer {
      * @throws IllegalArgumentException 
      */
     public abstract void addValue(String cellValue) throws IllegalArgumentException;
+    /**
+     * Add a new value based on parsing the UTF-8 encoded contents of a cell. This
+     * decodes it to a String and calls addValue(String). Buffers that can parse values
+     * straight from the bytes override it, with the same results.
+     * @param buf Array holding the cell contents
+     * @param start Offset of the cell contents in buf
+     * @param len Length of the cell contents in bytes
+     * @throws IllegalArgumentException 
+     */
+    public void addValue(byte[] buf, int start, int len) throws IllegalArgumentException {
+        addValue(new String(buf, start, len, UTF_8));
+    }
     /**
      * Gets the buffered column values.
      * @return An array of some sort; particular class is subclass-specific. It will 
@@ -17,4 +31,16 @@ public abstract class ColBuffer {
      * inspection of the returned object.
      */
     public abstract Object getValues();
+    /**
+     * Create an empty buffer for another chunk of the same column. It parses values
+     * the way this buffer has settled on from the values it has seen so far, such as
+     * a detected column type or date format, instead of deciding afresh.
+     * @return The new buffer
+     */
+    abstract ColBuffer newSibling();
+    /**
+     * Append the values held by a sibling of this buffer, as from newSibling().
+     * @param other The buffer whose values are appended
+     */
+    abstract void append(ColBuffer other);
 }
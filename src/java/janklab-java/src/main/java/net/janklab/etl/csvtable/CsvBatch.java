@@ -0,0 +1,22 @@
+package net.janklab.etl.csvtable;
+
+/**
+ * A batch of rows read from a CSV table by a CsvBatchReader.
+ */
+public class CsvBatch {
+    /** Number of rows in this batch. */
+    public final int nRows;
+    /** Index of the first row of this batch within the table's data, 0-based. */
+    public final long firstRow;
+    /**
+     * Values of each column, as returned by ColBuffer.getValues(). The array types
+     * are the same for every batch from a reader.
+     */
+    public final Object[] columnData;
+
+    public CsvBatch(int nRows, long firstRow, Object[] columnData) {
+        this.nRows = nRows;
+        this.firstRow = firstRow;
+        this.columnData = columnData;
+    }
+}
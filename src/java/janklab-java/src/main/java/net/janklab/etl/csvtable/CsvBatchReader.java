@@ -0,0 +1,336 @@
+package net.janklab.etl.csvtable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Reads a CSV table a batch of rows at a time. Get one from
+ * CsvTableReader.openBatches(). Not thread-safe.
+ *
+ * Each batch is parsed into its own column buffers, which are dropped once the
+ * batch's values have been taken from them, so only one or two batches are held in
+ * memory at a time. The column types are settled by the first batch: AUTO columns
+ * keep the type detected from the samples in it, or are STRING if that type failed
+ * within it. Later batches are parsed straight into buffers of those types, without
+ * the String copy of each value that AUTO columns otherwise keep, and a value in a
+ * later batch that doesn't parse as its column's detected type is an error instead
+ * of making the whole column fall back to strings.
+ *
+ * With startPrefetching(), the next batch is parsed on a background thread while
+ * the caller works on the current one.
+ */
+public class CsvBatchReader implements Closeable {
+    /** The reader whose settings this is reading with. */
+    private final CsvTableReader tableReader;
+    /** Maximum number of rows per batch. */
+    private final int batchRows;
+    private final int nCols;
+    private final String[] colNames;
+
+    // Record source: either a CSVParser or a MappedCsvTokenizer
+    private final CSVParser parser;
+    private final Iterator<CSVRecord> records;
+    /** A record that was read ahead of the batches, or null. */
+    private CSVRecord lookahead;
+    private final FileChannel channel;
+    private final MappedCsvTokenizer tokenizer;
+    /** Whether the tokenizer is on a record that was read ahead of the batches. */
+    private boolean tokenizerHasLookahead;
+
+    /**
+     * Empty buffers of the column types settled by the first batch, which later
+     * batches' buffers are created from.
+     */
+    private List<ColBuffer> templates;
+    /** Column type detected in the first batch for each AUTO column; null for others. */
+    private ColType[] detectedColTypes;
+    /** Number of data rows read so far. */
+    private long nRowsRead;
+    /** Whether the end of the data has been reached. */
+    private boolean isSourceFinished;
+    /** The next batch, if it has been read ahead of the caller. */
+    private CsvBatch pendingBatch;
+    private boolean isClosed;
+
+    // Prefetching state
+    private ExecutorService prefetcher;
+    /** The batch being parsed in the background, or null. */
+    private Future<CsvBatch> prefetchedBatch;
+
+    CsvBatchReader(CsvTableReader tableReader, int batchRows, CSVParser parser,
+            Iterator<CSVRecord> records, CSVRecord lookahead) {
+        this.tableReader = tableReader;
+        this.batchRows = batchRows;
+        this.colNames = tableReader.getEffectiveColNames();
+        this.nCols = colNames.length;
+        this.parser = parser;
+        this.records = records;
+        this.lookahead = lookahead;
+        this.channel = null;
+        this.tokenizer = null;
+    }
+
+    CsvBatchReader(CsvTableReader tableReader, int batchRows, FileChannel channel,
+            MappedCsvTokenizer tokenizer, boolean tokenizerHasLookahead) {
+        this.tableReader = tableReader;
+        this.batchRows = batchRows;
+        this.colNames = tableReader.getEffectiveColNames();
+        this.nCols = colNames.length;
+        this.parser = null;
+        this.records = null;
+        this.channel = channel;
+        this.tokenizer = tokenizer;
+        this.tokenizerHasLookahead = tokenizerHasLookahead;
+    }
+
+    public String[] getColNames() {
+        return colNames.clone();
+    }
+
+    /**
+     * Whether there is another batch. This may have to read the next batch to find out.
+     * @throws IOException if there is an I/O error
+     * @throws IllegalArgumentException if there is an error parsing the CSV contents
+     */
+    public boolean hasNextBatch() throws IOException, IllegalArgumentException {
+        if (pendingBatch == null && !isClosed) {
+            pendingBatch = takeBatch();
+        }
+        return pendingBatch != null;
+    }
+
+    /**
+     * Read the next batch of rows. Its values stay valid after later calls.
+     * @return The batch, which has at least one row
+     * @throws NoSuchElementException if there are no more rows
+     * @throws IOException if there is an I/O error
+     * @throws IllegalArgumentException if there is an error parsing the CSV contents,
+     * including a value that doesn't parse as the column type detected from the first
+     * batch
+     */
+    public CsvBatch nextBatch() throws IOException, IllegalArgumentException {
+        if (!hasNextBatch()) {
+            throw new NoSuchElementException("No more CSV batches available");
+        }
+        CsvBatch out = pendingBatch;
+        pendingBatch = null;
+        if (prefetcher != null && !isSourceFinished) {
+            prefetchedBatch = prefetcher.submit(this::readBatch);
+        }
+        return out;
+    }
+
+    /**
+     * Start parsing each batch on a background thread while the caller works on the
+     * previous one. The batch after the one most recently returned is started right
+     * away.
+     */
+    public void startPrefetching() {
+        if (isClosed) {
+            throw new IllegalStateException("This CsvBatchReader is closed");
+        }
+        if (prefetcher != null) {
+            return;
+        }
+        prefetcher = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "csvtable-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+        if (pendingBatch == null && !isSourceFinished) {
+            prefetchedBatch = prefetcher.submit(this::readBatch);
+        }
+    }
+
+    /**
+     * Stop reading ahead and release the data source. Also closes the input source
+     * attached to the CsvTableReader.
+     * @throws IOException if there is an I/O error while closing
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        pendingBatch = null;
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+            if (prefetchedBatch != null) {
+                // Wait for the background parse to let go of the source before closing it
+                try {
+                    prefetchedBatch.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Nobody is waiting for that batch any more
+                }
+                prefetchedBatch = null;
+            }
+        }
+        if (parser != null) {
+            parser.close();
+        } else {
+            channel.close();
+        }
+    }
+
+    private CsvBatch takeBatch() throws IOException {
+        if (prefetchedBatch == null) {
+            return readBatch();
+        }
+        Future<CsvBatch> f = prefetchedBatch;
+        prefetchedBatch = null;
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for prefetched CSV batch");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Error prefetching CSV batch: " + cause, cause);
+        }
+    }
+
+    /**
+     * Read up to batchRows records into a new batch.
+     * @return The batch, or null if there were no more records
+     */
+    private CsvBatch readBatch() throws IOException {
+        if (isSourceFinished) {
+            return null;
+        }
+        List<ColBuffer> bufs = newBatchBuffers();
+        long firstRow = nRowsRead;
+        int nRows = 0;
+        while (nRows < batchRows) {
+            if (parser != null) {
+                CSVRecord rec = nextCsvRecord();
+                if (rec == null) {
+                    isSourceFinished = true;
+                    break;
+                }
+                for (int iCol = 0; iCol < nCols; iCol++) {
+                    String value = rec.get(iCol);
+                    try {
+                        bufs.get(iCol).addValue(value);
+                    } catch (RuntimeException e) {
+                        throw contradictsDetectedType(e, iCol, value);
+                    }
+                }
+            } else {
+                if (!nextTokenizerRecord()) {
+                    isSourceFinished = true;
+                    break;
+                }
+                byte[] data = tokenizer.getData();
+                for (int iCol = 0; iCol < nCols; iCol++) {
+                    if (tokenizer.isFieldNull(iCol)) {
+                        bufs.get(iCol).addValue((String) null);
+                        continue;
+                    }
+                    int start = tokenizer.getFieldStart(iCol);
+                    int len = tokenizer.getFieldLength(iCol);
+                    try {
+                        bufs.get(iCol).addValue(data, start, len);
+                    } catch (RuntimeException e) {
+                        throw contradictsDetectedType(e, iCol, tokenizer.getFieldString(iCol));
+                    }
+                }
+            }
+            nRows++;
+            nRowsRead++;
+        }
+        if (nRows == 0) {
+            return null;
+        }
+        if (templates == null) {
+            settleColTypes(bufs);
+        }
+        Object[] columnData = new Object[nCols];
+        for (int iCol = 0; iCol < nCols; iCol++) {
+            columnData[iCol] = bufs.get(iCol).getValues();
+        }
+        return new CsvBatch(nRows, firstRow, columnData);
+    }
+
+    private List<ColBuffer> newBatchBuffers() {
+        if (templates == null) {
+            return tableReader.newColBuffers(true);
+        }
+        List<ColBuffer> out = new ArrayList<>(nCols);
+        for (ColBuffer template : templates) {
+            out.add(template.newSibling());
+        }
+        return out;
+    }
+
+    /**
+     * Record the column types settled by the first batch, as empty templates, so
+     * the first batch's buffers aren't held on to after it is handed off.
+     */
+    private void settleColTypes(List<ColBuffer> firstBatch) {
+        List<ColBuffer> settled = new ArrayList<>(nCols);
+        detectedColTypes = new ColType[nCols];
+        for (int iCol = 0; iCol < nCols; iCol++) {
+            ColBuffer buf = firstBatch.get(iCol);
+            if (buf instanceof AutoColBuffer) {
+                detectedColTypes[iCol] = ((AutoColBuffer) buf).getColType();
+                settled.add(((AutoColBuffer) buf).newFixedTypeSibling());
+            } else {
+                settled.add(buf.newSibling());
+            }
+        }
+        templates = settled;
+    }
+
+    /**
+     * Describe an error parsing a value in a column whose type was detected from the
+     * first batch. Errors in other columns are returned as is.
+     */
+    private RuntimeException contradictsDetectedType(RuntimeException e, int iCol, String value) {
+        if (detectedColTypes == null || detectedColTypes[iCol] == null) {
+            return e;
+        }
+        return new IllegalArgumentException(String.format(
+                "Value '%s' in row %d of column '%s' does not parse as %s, the column type "
+                + "detected from the first batch of %d rows", value, nRowsRead + 1,
+                colNames[iCol], detectedColTypes[iCol], batchRows), e);
+    }
+
+    private CSVRecord nextCsvRecord() {
+        if (lookahead != null) {
+            CSVRecord out = lookahead;
+            lookahead = null;
+            return out;
+        }
+        return records.hasNext() ? records.next() : null;
+    }
+
+    private boolean nextTokenizerRecord() {
+        if (tokenizerHasLookahead) {
+            tokenizerHasLookahead = false;
+            return true;
+        }
+        return CsvTableReader.nextRecord(tokenizer);
+    }
+}
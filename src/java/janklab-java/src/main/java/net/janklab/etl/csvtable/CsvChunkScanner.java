@@ -0,0 +1,193 @@
+package net.janklab.etl.csvtable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import org.apache.commons.csv.CSVFormat;
+
+/**
+ * Finds record boundaries in byte ranges of a UTF-8 CSV file, so that the ranges
+ * can be parsed independently of each other.
+ *
+ * Whether a line feed ends a record depends on whether it is inside a quoted field,
+ * which depends on everything before it, so a range can't be split by looking at
+ * that range alone. Instead each range is scanned once for every state the lexer
+ * could be in at its start, recording the state each of those runs ends in and
+ * where it first sees the end of a record. Chaining the ranges together from the
+ * known state at the start of the data then picks out the real boundaries. This
+ * way the scans of all the ranges can run at the same time.
+ *
+ * The states follow commons-csv's Lexer: a quote only opens a quoted field at the
+ * start of a field, and is taken literally anywhere else outside of one. Quote,
+ * delimiter, CR and LF are all ASCII, and never show up inside a multi-byte UTF-8
+ * character, so the scan works on raw bytes.
+ */
+class CsvChunkScanner {
+
+    /** At the start of a field, where a quote opens a quoted field. */
+    static final int FIELD_START = 0;
+    /** Inside an unquoted field, where quotes are literal. */
+    static final int UNQUOTED = 1;
+    /** Inside a quoted field. */
+    static final int QUOTED = 2;
+    /** Just after a quote in a quoted field: either the closing quote or half of a "". */
+    static final int QUOTE_IN_QUOTED = 3;
+    static final int N_STATES = 4;
+
+    // Byte classes
+    private static final byte OTHER = 0;
+    private static final byte DELIMITER = 1;
+    private static final byte QUOTE = 2;
+    private static final byte LF = 3;
+    private static final byte CR = 4;
+    private static final int N_CLASSES = 5;
+
+    /** State transitions, indexed by state * N_CLASSES + byte class. */
+    private static final int[] NEXT_STATE = {
+        // OTHER     DELIMITER    QUOTE            LF           CR
+        UNQUOTED,    FIELD_START, QUOTED,          FIELD_START, FIELD_START, // FIELD_START
+        UNQUOTED,    FIELD_START, UNQUOTED,        FIELD_START, FIELD_START, // UNQUOTED
+        QUOTED,      QUOTED,      QUOTE_IN_QUOTED, QUOTED,      QUOTED,      // QUOTED
+        UNQUOTED,    FIELD_START, QUOTED,          FIELD_START, FIELD_START, // QUOTE_IN_QUOTED
+    };
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Byte class for each byte value. */
+    private final byte[] byteClasses = new byte[256];
+
+    CsvChunkScanner(CSVFormat format) {
+        if (!supports(format)) {
+            throw new IllegalArgumentException("CSV format is not supported for chunked reading: " + format);
+        }
+        byteClasses[format.getDelimiter()] = DELIMITER;
+        if (format.getQuoteCharacter() != null) {
+            byteClasses[format.getQuoteCharacter()] = QUOTE;
+        }
+        byteClasses['\n'] = LF;
+        byteClasses['\r'] = CR;
+    }
+
+    /**
+     * Whether a CSV format can be split into chunks by this scanner. The format's
+     * lexing must be supported by MappedCsvTokenizer. Trailing delimiters aren't
+     * supported either: with them, a blank line can make an empty record, which
+     * ends the data as far as CSVParser is concerned, and a later chunk can't know
+     * that happened in an earlier one.
+     * @param format The CSV format
+     * @return true if the format is supported
+     */
+    static boolean supports(CSVFormat format) {
+        return MappedCsvTokenizer.supports(format) && !format.getTrailingDelimiter();
+    }
+
+    /** The result of scanning one byte range, for each possible start state. */
+    static class RangeScan {
+        /** The state at the end of the range, by start state. */
+        final int[] endStates = new int[N_STATES];
+        /** Offset just past the first record-ending LF in the range, by start state; -1 if none. */
+        final long[] firstBoundaries = new long[N_STATES];
+    }
+
+    /**
+     * Scan a byte range of a file.
+     * @param channel The file to read from. Only positional reads are done on it, so
+     * it may be shared between threads.
+     * @param start Offset of the start of the range
+     * @param end Offset of the end of the range, exclusive
+     * @return The scan result
+     * @throws IOException if there is an I/O error
+     */
+    RangeScan scan(FileChannel channel, long start, long end) throws IOException {
+        RangeScan out = new RangeScan();
+        Arrays.fill(out.firstBoundaries, -1);
+        int[] states = {FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED};
+        // Once all the runs are in the same state and have seen a boundary, they'll
+        // stay together, and only one of them needs to be tracked.
+        boolean converged = false;
+        int state = -1;
+        ByteBuffer bb = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, end - start)));
+        byte[] buf = bb.array();
+        long pos = start;
+        while (pos < end) {
+            bb.clear();
+            bb.limit((int) Math.min(bb.capacity(), end - pos));
+            int n = channel.read(bb, pos);
+            if (n < 0) {
+                throw new EOFException("File ended at offset " + pos + " before end of range at " + end);
+            }
+            int i = 0;
+            if (!converged) {
+                for (; i < n; i++) {
+                    int cls = byteClasses[buf[i] & 0xFF];
+                    if (cls == LF) {
+                        boolean allFound = true;
+                        for (int s = 0; s < N_STATES; s++) {
+                            if (out.firstBoundaries[s] < 0 && states[s] != QUOTED) {
+                                out.firstBoundaries[s] = pos + i + 1;
+                            }
+                            states[s] = NEXT_STATE[states[s] * N_CLASSES + cls];
+                            allFound &= out.firstBoundaries[s] >= 0;
+                        }
+                        if (allFound && states[0] == states[1] && states[0] == states[2]
+                                && states[0] == states[3]) {
+                            converged = true;
+                            state = states[0];
+                            i++;
+                            break;
+                        }
+                    } else {
+                        for (int s = 0; s < N_STATES; s++) {
+                            states[s] = NEXT_STATE[states[s] * N_CLASSES + cls];
+                        }
+                    }
+                }
+            }
+            if (converged) {
+                for (; i < n; i++) {
+                    state = NEXT_STATE[state * N_CLASSES + byteClasses[buf[i] & 0xFF]];
+                }
+            }
+            pos += n;
+        }
+        if (converged) {
+            Arrays.fill(states, state);
+        }
+        System.arraycopy(states, 0, out.endStates, 0, N_STATES);
+        return out;
+    }
+
+    /**
+     * Work out the actual record boundaries from the scans of consecutive ranges.
+     * The data must start at a record boundary at the start of the first range.
+     * @param rangeStarts The start offset of each range
+     * @param scans The scan of each range
+     * @param end The end of the data
+     * @return The boundaries, one more than there are ranges. Chunk i runs from
+     * element i to element i+1, and may be empty.
+     */
+    static long[] resolveBoundaries(long[] rangeStarts, RangeScan[] scans, long end) {
+        int n = rangeStarts.length;
+        int[] startStates = new int[n];
+        startStates[0] = FIELD_START;
+        for (int i = 1; i < n; i++) {
+            startStates[i] = scans[i - 1].endStates[startStates[i - 1]];
+        }
+        long[] out = new long[n + 1];
+        out[0] = rangeStarts[0];
+        out[n] = end;
+        for (int i = 1; i < n; i++) {
+            out[i] = end;
+            for (int j = i; j < n; j++) {
+                long boundary = scans[j].firstBoundaries[startStates[j]];
+                if (boundary >= 0) {
+                    out[i] = boundary;
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -7,22 +7,54 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.io.input.BoundedInputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Knows how to read tabular data with different column types from a CSV file.
  * Not thread-safe.
+ *
+ * AUTO columns get their type from a sample of their leading values: the first
+ * typeInferenceSampleSize values are held until the type that all of them parse as
+ * is picked, and then parsed as that type. If a later value doesn't parse as the
+ * picked type, the column falls back to STRING. For files, the column's parsed
+ * values are dropped and it is read again as strings in a second pass over the
+ * file, after the rest of the table has been read. Other sources can't be read
+ * twice, so their AUTO columns keep a String copy of each value to fall back to.
+ *
+ * Files can be parsed on multiple threads; see parallelism. The file is split
+ * into byte ranges at record boundaries, each range is parsed into its own set of
+ * column buffers, and the columns are concatenated in order. How each column is
+ * parsed, including the type sampled for AUTO columns from the leading records, is
+ * settled before the ranges are parsed and shared by all of them, so the results
+ * are the same as reading the file serially.
+ *
+ * Tables too big to hold in memory can be read a batch of rows at a time with
+ * openBatches().
  */
 public class CsvTableReader {
     // Reading options
@@ -44,6 +76,45 @@ public class CsvTableReader {
     public DateTimeFormatter localDateFormat;
     /** Format to use for LOCALTIME columns; null for auto detection. */
     public DateTimeFormatter localTimeFormat;
+    /** If true, STRING columns are returned as PackedStrings instead of String[]. */
+    public boolean packStrings = false;
+    /**
+     * Number of threads to parse files with. 1 parses on the calling thread; 0 or
+     * less uses one thread per available processor. Only sources attached with
+     * attach(File) are parsed in parallel, and only for CSV formats without escape
+     * characters, comment markers, ignored surrounding spaces, trailing delimiters or
+     * a predefined header.
+     */
+    public int parallelism = 1;
+    /** Files are not split into chunks smaller than this many bytes for parallel parsing. */
+    public long minChunkBytes = 16L << 20;
+    /**
+     * If true, files are tokenized straight from memory-mapped buffers instead of
+     * through commons-csv, and numeric and ISO date cells are parsed from their bytes
+     * without creating Strings. The results are the same. Only used for sources
+     * attached with attach(File), and CSV formats without escape characters, comment
+     * markers, ignored surrounding spaces or a predefined header.
+     */
+    public boolean useMappedTokenizer = false;
+    /**
+     * Number of values AUTO columns detect their type from. The type is the first
+     * candidate all of them parse as. For sources attached with attach(File), AUTO
+     * columns keep only their parsed values, and any whose later values don't all
+     * parse as the detected type are read again as strings in a second pass over the
+     * file. For other sources, they keep a String copy of each value to fall back to.
+     */
+    public int typeInferenceSampleSize = 1000;
+    /**
+     * If true, LOCALDATE, LOCALDATETIME and LOCALTIME columns are returned as
+     * DatenumValues, holding Matlab datenums and nanoseconds of day, instead of
+     * arrays of java.time objects.
+     */
+    public boolean datesAsDatenums = false;
+    /**
+     * Number of distinct cell values each date/time column caches the parsed values
+     * of. ISO-format values are parsed directly and don't use the cache.
+     */
+    public int dateCacheSize = 1024;
     
     // Reading process state
     /** Number of columns. */
@@ -54,6 +125,8 @@ public class CsvTableReader {
     private List<ColBuffer> colBuffers;
     /** Data source that contains the CSV data. */
     private Reader reader;
+    /** The attached file, if the data source is a file. */
+    private File file;
     /** Parser for the reading process. */
     //private CSVParser parser;
         
@@ -63,6 +136,7 @@ public class CsvTableReader {
      */
     public void attach(Reader reader) {
         this.reader = reader;
+        this.file = null;
     }
     
     /**
@@ -72,7 +146,12 @@ public class CsvTableReader {
      * @throws java.io.FileNotFoundException
      */
     public void attach(File file) throws FileNotFoundException {
-        this.reader = new BufferedReader(new InputStreamReader(new BOMInputStream(
+        this.reader = newFileReader(file);
+        this.file = file;
+    }
+
+    private static Reader newFileReader(File file) throws FileNotFoundException {
+        return new BufferedReader(new InputStreamReader(new BOMInputStream(
                 new BufferedInputStream(new FileInputStream(file))), UTF_8));
     }
     
@@ -92,43 +171,20 @@ public class CsvTableReader {
      * @throws IllegalArgumentException if there is an error parsing the CSV contents
      */
     public Object read() throws IOException, IllegalArgumentException {
-        if (csvFormat == null) {
-            throw new IllegalStateException("csvFormat may not be null");
+        checkReadable();
+        int nThreads = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+        if (file != null && nThreads > 1 && CsvChunkScanner.supports(csvFormat)
+                && file.length() >= 2 * Math.max(1, minChunkBytes)) {
+            return readInParallel(nThreads);
+        }
+        if (file != null && useMappedTokenizer && MappedCsvTokenizer.supports(csvFormat)) {
+            return readMapped();
         }
-        if (reader == null) {
-            throw new IllegalStateException("no input source is attached to this CsvTableReader");
-        }        
         // Start parsing
         try (CSVParser parser = new CSVParser(reader, csvFormat)) {
-            // Determine column names
             Iterator<CSVRecord> it = parser.iterator();
-            CSVRecord lookahead = null;
-            if (hasHeader) {
-                CSVRecord headerRec = it.next();
-                nCols = headerRec.size();
-                colNames = new ArrayList<>(nCols);
-                for (int iCol = 0; iCol < nCols; iCol++) {
-                    colNames.add(headerRec.get(iCol));
-                }
-            } else {
-                if (clientProvidedColNames != null) {
-                    colNames = new ArrayList<>(clientProvidedColNames);
-                    nCols = colNames.size();
-                } else {
-                    lookahead = it.next();
-                    nCols = lookahead.size();
-                    colNames = new ArrayList<>(nCols);
-                    for (int iCol = 0; iCol < nCols; iCol++) {
-                        colNames.add("col"+(iCol+1));
-                    }
-                }
-            }
-            // Create buffers
-            colBuffers = new ArrayList<>(nCols);
-            for (int iCol = 0; iCol < nCols; iCol++) {
-                colBuffers.add(colBufferForType(
-                        colTypeMap.getTypeForColumn(iCol, colNames.get(iCol))));
-            }
+            CSVRecord lookahead = readColNames(it);
+            colBuffers = newColBuffers(file == null);
             // Parse the data
             while (lookahead != null || it.hasNext()) {
                 CSVRecord rec;
@@ -138,14 +194,432 @@ public class CsvTableReader {
                 } else {
                     rec = it.next();
                 }
-                for (int iCol = 0; iCol < nCols; iCol++) {
-                    colBuffers.get(iCol).addValue(rec.get(iCol));
+                addRecord(colBuffers, rec);
+            }
+        }
+        if (file != null) {
+            rereadFailedAutoColumns();
+        }
+        // Wrap up the output
+        // This is just a placeholder return value for now; we should be returning
+        // a DumbRelation or other public API object.
+        return colBuffers;
+    }
+
+    /**
+     * Start reading a table from the currently attached I/O source in batches of
+     * rows, so that tables that don't fit in memory all at once can be processed.
+     *
+     * The column types are fixed by the first batch, including the types detected
+     * for AUTO columns, and later batches are parsed as those types. Reading in
+     * batches is always done on a single thread; useMappedTokenizer is honored.
+     * @param batchRows The maximum number of rows in each batch
+     * @return A reader for the batches. The caller must close it when done with it.
+     * @throws IOException if there is an I/O error
+     * @throws IllegalArgumentException if there is an error parsing the header
+     */
+    public CsvBatchReader openBatches(int batchRows) throws IOException, IllegalArgumentException {
+        checkReadable();
+        if (batchRows < 1) {
+            throw new IllegalArgumentException("batchRows must be at least 1; got " + batchRows);
+        }
+        if (file != null && useMappedTokenizer && MappedCsvTokenizer.supports(csvFormat)) {
+            // The attached reader is not needed
+            reader.close();
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(channel, csvFormat,
+                        MappedCsvTokenizer.bomLength(channel), channel.size());
+                boolean haveLookahead = readColNames(tokenizer);
+                return new CsvBatchReader(this, batchRows, channel, tokenizer, haveLookahead);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        CSVParser parser = new CSVParser(reader, csvFormat);
+        try {
+            Iterator<CSVRecord> it = parser.iterator();
+            CSVRecord lookahead = readColNames(it);
+            return new CsvBatchReader(this, batchRows, parser, it, lookahead);
+        } catch (RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    private void checkReadable() {
+        if (csvFormat == null) {
+            throw new IllegalStateException("csvFormat may not be null");
+        }
+        if (reader == null) {
+            throw new IllegalStateException("no input source is attached to this CsvTableReader");
+        }
+    }
+
+    /**
+     * Determine the column names, from the header or otherwise.
+     * @return A data record that had to be read to count the columns, or null
+     */
+    private CSVRecord readColNames(Iterator<CSVRecord> it) {
+        if (!colNamesNeedFirstRecord()) {
+            setColNames(null);
+            return null;
+        }
+        CSVRecord firstRec = it.next();
+        List<String> values = new ArrayList<>(firstRec.size());
+        for (String value : firstRec) {
+            values.add(value);
+        }
+        return setColNames(values) ? firstRec : null;
+    }
+
+    /**
+     * Determine the column names, from the header or otherwise.
+     * @return true if the tokenizer was left on a data record that had to be read to
+     * count the columns
+     */
+    private boolean readColNames(MappedCsvTokenizer tokenizer) {
+        if (!colNamesNeedFirstRecord()) {
+            setColNames(null);
+            return false;
+        }
+        if (!nextRecord(tokenizer)) {
+            throw new NoSuchElementException("No more CSV records available");
+        }
+        return setColNames(tokenizer.getFieldStrings());
+    }
+
+    private boolean colNamesNeedFirstRecord() {
+        return hasHeader || clientProvidedColNames == null;
+    }
+
+    /**
+     * Determine the column names.
+     * @param firstRecord The values of the first record, if colNamesNeedFirstRecord()
+     * @return true if the first record is data instead of a header
+     */
+    private boolean setColNames(List<String> firstRecord) {
+        if (hasHeader) {
+            colNames = new ArrayList<>(firstRecord);
+            nCols = colNames.size();
+            return false;
+        } else if (clientProvidedColNames != null) {
+            colNames = new ArrayList<>(clientProvidedColNames);
+            nCols = colNames.size();
+            return false;
+        } else {
+            nCols = firstRecord.size();
+            colNames = new ArrayList<>(nCols);
+            for (int iCol = 0; iCol < nCols; iCol++) {
+                colNames.add("col"+(iCol+1));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Create buffers for all the columns.
+     * @param keepStrings Whether AUTO columns keep a String copy of their values to
+     * fall back to. If not, the data must come from the attached file, so failed
+     * columns can be read again.
+     */
+    List<ColBuffer> newColBuffers(boolean keepStrings) {
+        List<ColBuffer> out = new ArrayList<>(nCols);
+        for (int iCol = 0; iCol < nCols; iCol++) {
+            ColType colType = colTypeMap.getTypeForColumn(iCol, colNames.get(iCol));
+            out.add((colType == ColType.AUTO) ? new AutoColBuffer(this, keepStrings)
+                    : colBufferForType(colType));
+        }
+        return out;
+    }
+
+    /**
+     * Add a record's values to the buffers. Columns with a null buffer are skipped.
+     */
+    private void addRecord(List<ColBuffer> bufs, CSVRecord rec) {
+        for (int iCol = 0; iCol < nCols; iCol++) {
+            if (bufs.get(iCol) != null) {
+                bufs.get(iCol).addValue(rec.get(iCol));
+            }
+        }
+    }
+
+    private void addRecord(List<ColBuffer> bufs, MappedCsvTokenizer tokenizer) {
+        byte[] data = tokenizer.getData();
+        for (int iCol = 0; iCol < nCols; iCol++) {
+            if (bufs.get(iCol) == null) {
+                continue;
+            } else if (tokenizer.isFieldNull(iCol)) {
+                bufs.get(iCol).addValue((String) null);
+            } else {
+                bufs.get(iCol).addValue(data, tokenizer.getFieldStart(iCol), tokenizer.getFieldLength(iCol));
+            }
+        }
+    }
+
+    /**
+     * Move a tokenizer to its next record. Errors are wrapped the same way
+     * CSVParser's iterator does.
+     */
+    static boolean nextRecord(MappedCsvTokenizer tokenizer) {
+        try {
+            return tokenizer.nextRecord();
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+    }
+
+    /**
+     * Read the attached file on this thread, using MappedCsvTokenizer.
+     */
+    private Object readMapped() throws IOException {
+        // The attached reader is not needed
+        reader.close();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(channel, csvFormat,
+                    MappedCsvTokenizer.bomLength(channel), channel.size());
+            boolean haveLookahead = readColNames(tokenizer);
+            colBuffers = newColBuffers(false);
+            if (haveLookahead) {
+                addRecord(colBuffers, tokenizer);
+            }
+            while (nextRecord(tokenizer)) {
+                addRecord(colBuffers, tokenizer);
+            }
+        }
+        rereadFailedAutoColumns();
+        return colBuffers;
+    }
+
+    /**
+     * Read the AUTO columns whose detected type failed again from the attached file,
+     * as strings. This is the second pass for AUTO columns that don't keep a String
+     * copy of their values.
+     */
+    private void rereadFailedAutoColumns() throws IOException {
+        List<ColBuffer> bufs = new ArrayList<>(nCols);
+        boolean anyFailed = false;
+        for (ColBuffer colBuffer : colBuffers) {
+            boolean failed = colBuffer instanceof AutoColBuffer && ((AutoColBuffer) colBuffer).needsReread();
+            bufs.add(failed ? new StringColBuffer(packStrings) : null);
+            anyFailed |= failed;
+        }
+        if (!anyFailed) {
+            return;
+        }
+        if (useMappedTokenizer && MappedCsvTokenizer.supports(csvFormat)) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(channel, csvFormat,
+                        MappedCsvTokenizer.bomLength(channel), channel.size());
+                if (hasHeader) {
+                    nextRecord(tokenizer);
+                }
+                while (nextRecord(tokenizer)) {
+                    addRecord(bufs, tokenizer);
+                }
+            }
+        } else {
+            try (CSVParser parser = new CSVParser(newFileReader(file), csvFormat)) {
+                Iterator<CSVRecord> it = parser.iterator();
+                if (hasHeader) {
+                    it.next();
+                }
+                while (it.hasNext()) {
+                    addRecord(bufs, it.next());
+                }
+            }
+        }
+        for (int iCol = 0; iCol < nCols; iCol++) {
+            if (bufs.get(iCol) != null) {
+                colBuffers.set(iCol, bufs.get(iCol));
+            }
+        }
+    }
+
+    /**
+     * Read the attached file on multiple threads.
+     *
+     * The header and first data records are read through the attached reader, as in a
+     * serial read. Buffers that have seen the first typeInferenceSampleSize records
+     * serve as templates for the buffers of each chunk, so every chunk parses a column
+     * the same way. The data
+     * after the header is then split into ranges, which are scanned for record
+     * boundaries and parsed in parallel. If a chunk fails to parse, the error from the
+     * earliest failing chunk is raised; line numbers in it count from the start of
+     * that chunk.
+     */
+    private Object readInParallel(int nThreads) throws IOException {
+        List<ColBuffer> templates;
+        long dataStartChar;
+        try (CSVParser parser = new CSVParser(reader, csvFormat)) {
+            Iterator<CSVRecord> it = parser.iterator();
+            CSVRecord first = readColNames(it);
+            if (first == null) {
+                if (!it.hasNext()) {
+                    colBuffers = newColBuffers(false);
+                    return colBuffers;
+                }
+                first = it.next();
+            }
+            templates = newColBuffers(false);
+            addRecord(templates, first);
+            for (int i = 1; i < typeInferenceSampleSize && it.hasNext(); i++) {
+                addRecord(templates, it.next());
+            }
+            // Settle the column types before the templates are shared between threads
+            for (ColBuffer template : templates) {
+                if (template instanceof AutoColBuffer) {
+                    ((AutoColBuffer) template).finishSampling();
+                }
+            }
+            dataStartChar = first.getCharacterPosition();
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, (r) -> {
+            Thread t = new Thread(r, "csvtable-reader-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long dataStart = bytePositionOfChar(channel, dataStartChar);
+            long fileLength = channel.size();
+            // Split into more ranges than threads, so an uneven range doesn't hold up the rest
+            long nRanges = Math.max(1, Math.min(4L * nThreads,
+                    (fileLength - dataStart) / Math.max(1, minChunkBytes)));
+            long[] rangeStarts = new long[(int) nRanges];
+            for (int i = 0; i < nRanges; i++) {
+                rangeStarts[i] = dataStart + (fileLength - dataStart) * i / nRanges;
+            }
+            // Find record boundaries
+            CsvChunkScanner scanner = new CsvChunkScanner(csvFormat);
+            List<Future<CsvChunkScanner.RangeScan>> scanFutures = new ArrayList<>();
+            for (int i = 0; i < nRanges; i++) {
+                long start = rangeStarts[i];
+                long end = (i + 1 < nRanges) ? rangeStarts[i + 1] : fileLength;
+                scanFutures.add(executor.submit(() -> scanner.scan(channel, start, end)));
+            }
+            CsvChunkScanner.RangeScan[] scans = new CsvChunkScanner.RangeScan[(int) nRanges];
+            for (int i = 0; i < nRanges; i++) {
+                scans[i] = getResult(scanFutures.get(i));
+            }
+            long[] bounds = CsvChunkScanner.resolveBoundaries(rangeStarts, scans, fileLength);
+            // Parse the chunks
+            List<Future<List<ColBuffer>>> chunkFutures = new ArrayList<>();
+            for (int i = 0; i < nRanges; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                if (start < end) {
+                    chunkFutures.add(executor.submit(() -> parseChunk(channel, templates, start, end)));
+                }
+            }
+            List<List<ColBuffer>> chunks = new ArrayList<>(chunkFutures.size());
+            for (Future<List<ColBuffer>> f : chunkFutures) {
+                chunks.add(getResult(f));
+            }
+            // Concatenate the columns
+            List<Future<ColBuffer>> colFutures = new ArrayList<>(nCols);
+            for (int iCol = 0; iCol < nCols; iCol++) {
+                final int iColF = iCol;
+                colFutures.add(executor.submit(() -> {
+                    ColBuffer out = chunks.get(0).get(iColF);
+                    for (int iChunk = 1; iChunk < chunks.size(); iChunk++) {
+                        out.append(chunks.get(iChunk).get(iColF));
+                    }
+                    return out;
+                }));
+            }
+            colBuffers = new ArrayList<>(nCols);
+            for (Future<ColBuffer> f : colFutures) {
+                colBuffers.add(getResult(f));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        rereadFailedAutoColumns();
+        return colBuffers;
+    }
+
+    /**
+     * Parse the records in a byte range of the attached file.
+     */
+    private List<ColBuffer> parseChunk(FileChannel channel, List<ColBuffer> templates, long start, long end)
+            throws IOException {
+        List<ColBuffer> bufs = new ArrayList<>(nCols);
+        for (ColBuffer template : templates) {
+            bufs.add(template.newSibling());
+        }
+        if (useMappedTokenizer) {
+            MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(channel, csvFormat, start, end);
+            while (nextRecord(tokenizer)) {
+                addRecord(bufs, tokenizer);
+            }
+            return bufs;
+        }
+        try (FileInputStream in = new FileInputStream(file)) {
+            in.getChannel().position(start);
+            Reader chunkReader = new BufferedReader(new InputStreamReader(
+                    new BoundedInputStream(in, end - start), UTF_8));
+            try (CSVParser parser = new CSVParser(chunkReader, csvFormat)) {
+                for (CSVRecord rec : parser) {
+                    addRecord(bufs, rec);
                 }
             }
-            // Wrap up the output
-            // This is just a placeholder return value for now; we should be returning
-            // a DumbRelation or other public API object.
-            return colBuffers;
+        }
+        return bufs;
+    }
+
+    /**
+     * Find the byte offset in the file of a character position in the data read
+     * from it, decoding the same way the attached reader does.
+     */
+    private static long bytePositionOfChar(FileChannel channel, long charPos) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(8192);
+        channel.read(in, 0);
+        in.flip();
+        // Skip the byte order mark that BOMInputStream would have dropped
+        in.position(Math.min(in.limit(), MappedCsvTokenizer.bomLength(channel)));
+        CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.allocate(8192);
+        long nRead = in.limit();
+        long nChars = 0;
+        while (nChars < charPos) {
+            out.clear();
+            out.limit((int) Math.min(out.capacity(), charPos - nChars));
+            decoder.decode(in, out, false);
+            nChars += out.position();
+            if (nChars < charPos && out.position() < out.limit()) {
+                // Decoder wants more input
+                in.compact();
+                int n = channel.read(in, nRead);
+                if (n < 0) {
+                    throw new IOException("File ended before character position " + charPos);
+                }
+                nRead += n;
+                in.flip();
+            }
+        }
+        return nRead - in.remaining();
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading CSV in parallel");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Error reading CSV in parallel: " + cause, cause);
         }
     }
     
@@ -153,19 +627,19 @@ public class CsvTableReader {
         Objects.requireNonNull(colType);
         switch (colType) {
             case AUTO:
-                return new AutoColBuffer(this);
+                return new AutoColBuffer(this, true);
             case STRING:
-                return new StringColBuffer();
+                return new StringColBuffer(packStrings);
             case SYMBOL:
                 return new SymbolColBuffer();
             case DOUBLE:
                 return new DoubleColBuffer();
             case LOCALDATE:
-                return new LocalDateColBuffer(localDateFormat);
+                return new LocalDateColBuffer(localDateFormat, dateCacheSize, datesAsDatenums);
             case LOCALDATETIME:
-                return new LocalDateTimeColBuffer(localDateTimeFormat);
+                return new LocalDateTimeColBuffer(localDateTimeFormat, dateCacheSize, datesAsDatenums);
             case LOCALTIME:
-                return new LocalTimeColBuffer(localTimeFormat);
+                return new LocalTimeColBuffer(localTimeFormat, dateCacheSize, datesAsDatenums);
             default:
                 throw new IllegalArgumentException("Invalid ColType value");
         }
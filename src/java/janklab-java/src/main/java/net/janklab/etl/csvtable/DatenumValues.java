@@ -0,0 +1,21 @@
+package net.janklab.etl.csvtable;
+
+/**
+ * Date/time column values as Matlab datenums and times of day, which convert to
+ * Matlab types without going through java.time objects. Date/time columns return
+ * these from getValues() when CsvTableReader.datesAsDatenums is set.
+ */
+public class DatenumValues {
+    /** The column type: LOCALDATE, LOCALDATETIME or LOCALTIME. */
+    public final ColType colType;
+    /** Datenums of the dates, without any time of day; null for LOCALTIME columns. */
+    public final double[] datenums;
+    /** Times of day as nanoseconds since midnight; null for LOCALDATE columns. */
+    public final long[] nanosOfDay;
+
+    public DatenumValues(ColType colType, double[] datenums, long[] nanosOfDay) {
+        this.colType = colType;
+        this.datenums = datenums;
+        this.nanosOfDay = nanosOfDay;
+    }
+}
@@ -14,10 +14,30 @@ public class DoubleColBuffer extends ColBuffer {
         double value = Double.parseDouble(cellValue);
         buf.add(value);
     }
+
+    @Override
+    public void addValue(byte[] bytes, int start, int len) throws IllegalArgumentException {
+        double value = CellParsers.parseDouble(bytes, start, len);
+        if (Double.isNaN(value)) {
+            super.addValue(bytes, start, len);
+        } else {
+            buf.add(value);
+        }
+    }
     
     @Override
     public double[] getValues() {
         return buf.toArray();
     }
 
+    @Override
+    DoubleColBuffer newSibling() {
+        return new DoubleColBuffer();
+    }
+
+    @Override
+    void append(ColBuffer other) {
+        buf.addAll(((DoubleColBuffer) other).buf);
+    }
+
 }
@@ -2,17 +2,21 @@ package net.janklab.etl.csvtable;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.time.format.FormatStyle;
-import java.util.ArrayList;
 import java.util.Objects;
+import net.janklab.time.TimeUtil;
+import org.apache.commons.collections.primitives.ArrayLongList;
 
 /**
+ * A column buffer holding dates, buffered as epoch days.
  *
+ * ISO dates are parsed by CellParsers without going through DateTimeFormatter. Dates
+ * in other formats are parsed by the formatter, with a cache of recently seen cell
+ * values.
  */
 public class LocalDateColBuffer extends ColBuffer {
-    /** The buffered data. */
-    private final ArrayList<LocalDate> buf = new ArrayList<>();
+    /** The buffered dates, as days since 1970-01-01. */
+    private final ArrayLongList buf = new ArrayLongList();
     /** Date format specified by the caller. */
     DateTimeFormatter specifiedDateFormat;
     /** Date format being used for this column. */
@@ -26,17 +30,24 @@ public class LocalDateColBuffer extends ColBuffer {
         DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM),
         DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT)
     };
-    
-    // Caching optimization
-    /** Last-seen cell contents. */
-    private String lastSeenCellValue = null;
-    /** Last-seen parsed date value. */
-    private LocalDate lastSeenDateValue = null;
+    /** Whether getValues() returns DatenumValues instead of LocalDate[]. */
+    private final boolean asDatenums;
+    /** Recently parsed cell values, for dates not handled by CellParsers. */
+    private final ParsedValueCache<LocalDate> cache;
+    /** Scratch space for running CellParsers on String cells. */
+    private final byte[] scratch = new byte[CellParsers.MAX_DATE_TIME_LENGTH];
 
-    LocalDateColBuffer(DateTimeFormatter specifiedDateFormat) {
+    /**
+     * @param specifiedDateFormat Date format to use; null to detect it from the first value
+     * @param cacheSize Number of parsed cell values to cache
+     * @param asDatenums Whether getValues() returns DatenumValues
+     */
+    LocalDateColBuffer(DateTimeFormatter specifiedDateFormat, int cacheSize, boolean asDatenums) {
         this.specifiedDateFormat = specifiedDateFormat;
+        this.cache = new ParsedValueCache<>(cacheSize);
+        this.asDatenums = asDatenums;
     }
-    
+
     @Override
     public void addValue(String cellValue) throws IllegalArgumentException {
         Objects.requireNonNull(cellValue);
@@ -48,15 +59,12 @@ public class LocalDateColBuffer extends ColBuffer {
             }
             // Otherwise, autodetect format from cell contents
             if (dateFormat == null) {
-              for (DateTimeFormatter fmt : VALID_FORMATS) {
-                try {
-                  fmt.parse(cellValue);
-                  dateFormat = fmt;
-                  break;
-                } catch (DateTimeParseException dtpe) {
-                  // quash and try next formatter
+                for (DateTimeFormatter fmt : VALID_FORMATS) {
+                    if (CellParsers.parses(fmt, cellValue)) {
+                        dateFormat = fmt;
+                        break;
+                    }
                 }
-              }
             }
             if (dateFormat == null) {
                 // All formats failed
@@ -64,19 +72,65 @@ public class LocalDateColBuffer extends ColBuffer {
                         + cellValue + "' as a date");
             }
         }
-        // Parse and buffer value, using caching optimization
-        if (lastSeenCellValue != null && cellValue.equals(lastSeenCellValue)) {
-            buf.add(lastSeenDateValue);
-            return;
+        if (dateFormat == DateTimeFormatter.ISO_LOCAL_DATE) {
+            int len = CellParsers.asciiBytes(cellValue, scratch);
+            long epochDay = (len < 0) ? CellParsers.NO_VALUE : CellParsers.parseIsoLocalDate(scratch, 0, len);
+            if (epochDay != CellParsers.NO_VALUE) {
+                buf.add(epochDay);
+                return;
+            }
+        }
+        // Parse and buffer value, using the cache
+        LocalDate date = cache.get(cellValue);
+        if (date == null) {
+            date = LocalDate.parse(cellValue, dateFormat);
+            cache.put(cellValue, date);
         }
-        LocalDate date = LocalDate.parse(cellValue, dateFormat);
-        buf.add(date);
-        lastSeenCellValue = cellValue;
-        lastSeenDateValue = date;
+        buf.add(date.toEpochDay());
+    }
+
+    @Override
+    public void addValue(byte[] bytes, int start, int len) throws IllegalArgumentException {
+        // Plain ISO dates are parsed from the bytes once the format is known
+        if (dateFormat == DateTimeFormatter.ISO_LOCAL_DATE && !buf.isEmpty()) {
+            long epochDay = CellParsers.parseIsoLocalDate(bytes, start, len);
+            if (epochDay != CellParsers.NO_VALUE) {
+                buf.add(epochDay);
+                return;
+            }
+        }
+        super.addValue(bytes, start, len);
+    }
+
+    /**
+     * Gets the buffered dates.
+     * @return A LocalDate[], or DatenumValues if the buffer was created to return datenums
+     */
+    @Override
+    public Object getValues() {
+        int n = buf.size();
+        if (asDatenums) {
+            double[] datenums = new double[n];
+            for (int i = 0; i < n; i++) {
+                datenums[i] = buf.get(i) + TimeUtil.UNIX_TO_DATENUM_EPOCH_OFFSET_DAYS;
+            }
+            return new DatenumValues(ColType.LOCALDATE, datenums, null);
+        }
+        LocalDate[] out = new LocalDate[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = LocalDate.ofEpochDay(buf.get(i));
+        }
+        return out;
+    }
+
+    @Override
+    LocalDateColBuffer newSibling() {
+        return new LocalDateColBuffer(dateFormat != null ? dateFormat : specifiedDateFormat,
+                cache.getMaxSize(), asDatenums);
     }
 
     @Override
-    public LocalDate[] getValues() {
-        return buf.toArray(new LocalDate[0]);
+    void append(ColBuffer other) {
+        buf.addAll(((LocalDateColBuffer) other).buf);
     }
 }
@@ -1,18 +1,26 @@
 package net.janklab.etl.csvtable;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.time.format.FormatStyle;
-import java.util.ArrayList;
 import java.util.Objects;
+import net.janklab.time.TimeUtil;
+import org.apache.commons.collections.primitives.ArrayLongList;
 
 /**
+ * A column buffer holding date-times, buffered as epoch days and nanoseconds of day.
  *
+ * ISO date-times are parsed by CellParsers without going through DateTimeFormatter.
+ * Date-times in other formats are parsed by the formatter, with a cache of recently
+ * seen cell values.
  */
 public class LocalDateTimeColBuffer extends ColBuffer {
-    /** The buffered data. */
-    private final ArrayList<LocalDateTime> buf = new ArrayList<>();
+    /** The dates of the buffered date-times, as days since 1970-01-01. */
+    private final ArrayLongList epochDays = new ArrayLongList();
+    /** The times of day of the buffered date-times, as nanoseconds since midnight. */
+    private final ArrayLongList nanosOfDay = new ArrayLongList();
     /** Date format specified by the caller. */
     DateTimeFormatter specifiedDateFormat;
     /** Date format being used for this column. */
@@ -25,16 +33,31 @@ public class LocalDateTimeColBuffer extends ColBuffer {
         DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM),
         DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
     };
-    
-    LocalDateTimeColBuffer(DateTimeFormatter specifiedDateFormat) {
+    /** Whether getValues() returns DatenumValues instead of LocalDateTime[]. */
+    private final boolean asDatenums;
+    /** Recently parsed cell values, for date-times not handled by CellParsers. */
+    private final ParsedValueCache<LocalDateTime> cache;
+    /** Scratch space for running CellParsers on String cells. */
+    private final byte[] scratch = new byte[CellParsers.MAX_DATE_TIME_LENGTH];
+    /** Receives the parts of date-times parsed by CellParsers. */
+    private final long[] parsed = new long[2];
+
+    /**
+     * @param specifiedDateFormat Date format to use; null to detect it from the first value
+     * @param cacheSize Number of parsed cell values to cache
+     * @param asDatenums Whether getValues() returns DatenumValues
+     */
+    LocalDateTimeColBuffer(DateTimeFormatter specifiedDateFormat, int cacheSize, boolean asDatenums) {
         this.specifiedDateFormat = specifiedDateFormat;
+        this.cache = new ParsedValueCache<>(cacheSize);
+        this.asDatenums = asDatenums;
     }
-    
+
     @Override
     public void addValue(String cellValue) throws IllegalArgumentException {
         Objects.requireNonNull(cellValue);
         // On first cell, detect date format
-        if (buf.isEmpty()) {
+        if (epochDays.isEmpty()) {
             // Prefer format explicitly specified by caller
             if (specifiedDateFormat != null) {
                 dateFormat = specifiedDateFormat;
@@ -43,12 +66,9 @@ public class LocalDateTimeColBuffer extends ColBuffer {
             if (dateFormat == null) {
                 for (int iFormat = 0; iFormat < VALID_FORMATS.length; iFormat++) {
                     DateTimeFormatter fmt = VALID_FORMATS[iFormat];
-                    try {
-                        fmt.parse(cellValue);
+                    if (CellParsers.parses(fmt, cellValue)) {
                         dateFormat = fmt;
                         break;
-                    } catch (DateTimeParseException dtpe) {
-                        // quash and try next formatter
                     }
                 }
             }
@@ -58,13 +78,68 @@ public class LocalDateTimeColBuffer extends ColBuffer {
                         + cellValue + "' as a datetime");
             }
         }
-        // Parse and buffer value
-        LocalDateTime datetime = LocalDateTime.parse(cellValue, dateFormat);
-        buf.add(datetime);
+        if (dateFormat == DateTimeFormatter.ISO_LOCAL_DATE_TIME) {
+            int len = CellParsers.asciiBytes(cellValue, scratch);
+            if (len >= 0 && CellParsers.parseIsoLocalDateTime(scratch, 0, len, parsed)) {
+                epochDays.add(parsed[0]);
+                nanosOfDay.add(parsed[1]);
+                return;
+            }
+        }
+        // Parse and buffer value, using the cache
+        LocalDateTime datetime = cache.get(cellValue);
+        if (datetime == null) {
+            datetime = LocalDateTime.parse(cellValue, dateFormat);
+            cache.put(cellValue, datetime);
+        }
+        epochDays.add(datetime.toLocalDate().toEpochDay());
+        nanosOfDay.add(datetime.toLocalTime().toNanoOfDay());
+    }
+
+    @Override
+    public void addValue(byte[] bytes, int start, int len) throws IllegalArgumentException {
+        if (dateFormat == DateTimeFormatter.ISO_LOCAL_DATE_TIME && !epochDays.isEmpty()
+                && CellParsers.parseIsoLocalDateTime(bytes, start, len, parsed)) {
+            epochDays.add(parsed[0]);
+            nanosOfDay.add(parsed[1]);
+            return;
+        }
+        super.addValue(bytes, start, len);
+    }
+
+    /**
+     * Gets the buffered date-times.
+     * @return A LocalDateTime[], or DatenumValues if the buffer was created to return
+     * datenums
+     */
+    @Override
+    public Object getValues() {
+        int n = epochDays.size();
+        if (asDatenums) {
+            double[] datenums = new double[n];
+            for (int i = 0; i < n; i++) {
+                datenums[i] = epochDays.get(i) + TimeUtil.UNIX_TO_DATENUM_EPOCH_OFFSET_DAYS;
+            }
+            return new DatenumValues(ColType.LOCALDATETIME, datenums, nanosOfDay.toArray());
+        }
+        LocalDateTime[] out = new LocalDateTime[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = LocalDateTime.of(LocalDate.ofEpochDay(epochDays.get(i)),
+                    LocalTime.ofNanoOfDay(nanosOfDay.get(i)));
+        }
+        return out;
+    }
+
+    @Override
+    LocalDateTimeColBuffer newSibling() {
+        return new LocalDateTimeColBuffer(dateFormat != null ? dateFormat : specifiedDateFormat,
+                cache.getMaxSize(), asDatenums);
     }
 
     @Override
-    public LocalDateTime[] getValues() {
-        return buf.toArray(new LocalDateTime[0]);
+    void append(ColBuffer other) {
+        LocalDateTimeColBuffer that = (LocalDateTimeColBuffer) other;
+        epochDays.addAll(that.epochDays);
+        nanosOfDay.addAll(that.nanosOfDay);
     }
 }
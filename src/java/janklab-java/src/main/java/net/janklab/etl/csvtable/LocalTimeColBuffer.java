@@ -2,17 +2,20 @@ package net.janklab.etl.csvtable;
 
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.time.format.FormatStyle;
-import java.util.ArrayList;
 import java.util.Objects;
+import org.apache.commons.collections.primitives.ArrayLongList;
 
 /**
+ * A column buffer holding times of day, buffered as nanoseconds since midnight.
  *
+ * ISO times are parsed by CellParsers without going through DateTimeFormatter. Times
+ * in other formats are parsed by the formatter, with a cache of recently seen cell
+ * values.
  */
 public class LocalTimeColBuffer extends ColBuffer {
-    /** The buffered data. */
-    private final ArrayList<LocalTime> buf = new ArrayList<>();
+    /** The buffered times, as nanoseconds since midnight. */
+    private final ArrayLongList buf = new ArrayLongList();
     /** Date format specified by the caller. */
     DateTimeFormatter specifiedDateFormat;
     /** Date format being used for this column. */
@@ -25,11 +28,24 @@ public class LocalTimeColBuffer extends ColBuffer {
         DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM),
         DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT)
     };
-    
-    LocalTimeColBuffer(DateTimeFormatter specifiedDateFormat) {
+    /** Whether getValues() returns DatenumValues instead of LocalTime[]. */
+    private final boolean asDatenums;
+    /** Recently parsed cell values, for times not handled by CellParsers. */
+    private final ParsedValueCache<LocalTime> cache;
+    /** Scratch space for running CellParsers on String cells. */
+    private final byte[] scratch = new byte[CellParsers.MAX_DATE_TIME_LENGTH];
+
+    /**
+     * @param specifiedDateFormat Time format to use; null to detect it from the first value
+     * @param cacheSize Number of parsed cell values to cache
+     * @param asDatenums Whether getValues() returns DatenumValues
+     */
+    LocalTimeColBuffer(DateTimeFormatter specifiedDateFormat, int cacheSize, boolean asDatenums) {
         this.specifiedDateFormat = specifiedDateFormat;
+        this.cache = new ParsedValueCache<>(cacheSize);
+        this.asDatenums = asDatenums;
     }
-    
+
     @Override
     public void addValue(String cellValue) throws IllegalArgumentException {
         Objects.requireNonNull(cellValue);
@@ -43,12 +59,9 @@ public class LocalTimeColBuffer extends ColBuffer {
             if (dateFormat == null) {
                 for (int iFormat = 0; iFormat < VALID_FORMATS.length; iFormat++) {
                     DateTimeFormatter fmt = VALID_FORMATS[iFormat];
-                    try {
-                        fmt.parse(cellValue);
+                    if (CellParsers.parses(fmt, cellValue)) {
                         dateFormat = fmt;
                         break;
-                    } catch (DateTimeParseException dtpe) {
-                        // quash and try next formatter
                     }
                 }
             }
@@ -58,12 +71,60 @@ public class LocalTimeColBuffer extends ColBuffer {
                         + cellValue + "' as a time");
             }
         }
-        LocalTime time = LocalTime.parse(cellValue, dateFormat);
-        buf.add(time);
+        if (dateFormat == DateTimeFormatter.ISO_LOCAL_TIME) {
+            int len = CellParsers.asciiBytes(cellValue, scratch);
+            long nanos = (len < 0) ? CellParsers.NO_VALUE : CellParsers.parseIsoLocalTime(scratch, 0, len);
+            if (nanos != CellParsers.NO_VALUE) {
+                buf.add(nanos);
+                return;
+            }
+        }
+        // Parse and buffer value, using the cache
+        LocalTime time = cache.get(cellValue);
+        if (time == null) {
+            time = LocalTime.parse(cellValue, dateFormat);
+            cache.put(cellValue, time);
+        }
+        buf.add(time.toNanoOfDay());
+    }
+
+    @Override
+    public void addValue(byte[] bytes, int start, int len) throws IllegalArgumentException {
+        if (dateFormat == DateTimeFormatter.ISO_LOCAL_TIME && !buf.isEmpty()) {
+            long nanos = CellParsers.parseIsoLocalTime(bytes, start, len);
+            if (nanos != CellParsers.NO_VALUE) {
+                buf.add(nanos);
+                return;
+            }
+        }
+        super.addValue(bytes, start, len);
+    }
+
+    /**
+     * Gets the buffered times.
+     * @return A LocalTime[], or DatenumValues if the buffer was created to return datenums
+     */
+    @Override
+    public Object getValues() {
+        if (asDatenums) {
+            return new DatenumValues(ColType.LOCALTIME, null, buf.toArray());
+        }
+        int n = buf.size();
+        LocalTime[] out = new LocalTime[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = LocalTime.ofNanoOfDay(buf.get(i));
+        }
+        return out;
+    }
+
+    @Override
+    LocalTimeColBuffer newSibling() {
+        return new LocalTimeColBuffer(dateFormat != null ? dateFormat : specifiedDateFormat,
+                cache.getMaxSize(), asDatenums);
     }
 
     @Override
-    public LocalTime[] getValues() {
-        return buf.toArray(new LocalTime[0]);
+    void append(ColBuffer other) {
+        buf.addAll(((LocalTimeColBuffer) other).buf);
     }
 }
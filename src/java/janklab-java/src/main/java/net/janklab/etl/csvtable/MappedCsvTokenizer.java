@@ -0,0 +1,466 @@
+package net.janklab.etl.csvtable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.csv.CSVFormat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Splits a UTF-8 CSV file into records and fields by scanning its bytes through
+ * memory-mapped buffers, as an alternative to commons-csv's CSVParser.
+ *
+ * The fields of the current record are held as byte slices of one reusable array,
+ * so tokenizing allocates nothing per record or per cell. Callers hand the slices
+ * to ColBuffer.addValue(byte[], int, int), and only buffers that need text decode
+ * them to Strings.
+ *
+ * This follows commons-csv's Lexer and CSVParser closely enough to give the same
+ * records, including its handling of empty lines, CR/LF variants, doubled quotes,
+ * trim, nullString and trailingDelimiter. Formats it can't follow exactly are not
+ * supported; see supports(). Not thread-safe.
+ */
+class MappedCsvTokenizer {
+
+    private static final int END_OF_STREAM = -1;
+    private static final int UNDEFINED = -2;
+    private static final int DISABLED = Integer.MIN_VALUE;
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+
+    private static final int TOKEN = 0;
+    private static final int EORECORD = 1;
+    private static final int EOF = 2;
+
+    /** Largest region of the file mapped at once. */
+    static final int WINDOW_SIZE = 1 << 28;
+
+    private final FileChannel channel;
+    private final long end;
+    private final int delimiter;
+    private final int quote;
+    private final boolean ignoreEmptyLines;
+    private final boolean trim;
+    private final boolean trailingDelimiter;
+    /** The nullString from the format, as UTF-8; null if not set. */
+    private final byte[] nullBytes;
+    /** Bytes that end an unquoted field. */
+    private final boolean[] simpleStops = new boolean[256];
+    /** Bytes that need looking at in a quoted field. */
+    private final boolean[] quotedStops = new boolean[256];
+
+    // Reading state
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowPos;
+    private int windowLimit;
+    private int lastChar = UNDEFINED;
+    private long eolCounter;
+    private boolean tokenReady;
+
+    // The current record
+    private byte[] data = new byte[1024];
+    private int dataLength;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private boolean[] fieldNulls = new boolean[16];
+    private int nFields;
+
+    /**
+     * @param channel The file to read
+     * @param format The CSV format; must be supported
+     * @param start Offset to start reading at; must be the start of a record
+     * @param end Offset to stop reading at, exclusive
+     */
+    MappedCsvTokenizer(FileChannel channel, CSVFormat format, long start, long end) {
+        if (!supports(format)) {
+            throw new IllegalArgumentException("CSV format is not supported for mapped reading: " + format);
+        }
+        this.channel = channel;
+        this.end = end;
+        this.windowStart = start;
+        delimiter = format.getDelimiter();
+        quote = (format.getQuoteCharacter() != null) ? format.getQuoteCharacter() : DISABLED;
+        ignoreEmptyLines = format.getIgnoreEmptyLines();
+        trim = format.getTrim();
+        trailingDelimiter = format.getTrailingDelimiter();
+        nullBytes = (format.getNullString() != null) ? format.getNullString().getBytes(UTF_8) : null;
+        simpleStops[delimiter] = true;
+        simpleStops[CR] = true;
+        simpleStops[LF] = true;
+        if (quote != DISABLED) {
+            quotedStops[quote] = true;
+        }
+        quotedStops[CR] = true;
+        quotedStops[LF] = true;
+    }
+
+    /**
+     * Whether a CSV format can be read by this tokenizer. Escape characters, comment
+     * markers and ignored surrounding spaces change how the lexer treats quotes and
+     * line breaks, so formats using them aren't supported. Neither are formats with
+     * a predefined header, or non-ASCII delimiters or quotes.
+     * @param format The CSV format
+     * @return true if the format is supported
+     */
+    static boolean supports(CSVFormat format) {
+        if (format.getEscapeCharacter() != null || format.getCommentMarker() != null
+                || format.getIgnoreSurroundingSpaces() || format.getHeader() != null) {
+            return false;
+        }
+        char delim = format.getDelimiter();
+        if (delim >= 0x80 || delim == '\n' || delim == '\r') {
+            return false;
+        }
+        Character quote = format.getQuoteCharacter();
+        return quote == null || (quote < 0x80 && quote != '\n' && quote != '\r');
+    }
+
+    /**
+     * The length of the UTF-8 byte order mark at the start of a file.
+     * @param channel The file
+     * @return 3 if the file starts with a byte order mark, otherwise 0
+     * @throws IOException if there is an I/O error
+     */
+    static int bomLength(FileChannel channel) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(3);
+        while (bb.hasRemaining() && channel.read(bb, bb.position()) > 0) {
+            // keep reading
+        }
+        return (bb.position() == 3 && (bb.get(0) & 0xFF) == 0xEF && (bb.get(1) & 0xFF) == 0xBB
+                && (bb.get(2) & 0xFF) == 0xBF) ? 3 : 0;
+    }
+
+    /**
+     * Move to the next record.
+     * @return false if there are no more records
+     * @throws IOException if there is an I/O error or the CSV is malformed
+     */
+    boolean nextRecord() throws IOException {
+        nFields = 0;
+        dataLength = 0;
+        int type;
+        do {
+            type = nextToken();
+            if (type == TOKEN) {
+                addField(false);
+            } else if (type == EORECORD || tokenReady) {
+                addField(true);
+            }
+        } while (type == TOKEN);
+        // Like CSVParser, an empty record ends the data
+        return nFields > 0;
+    }
+
+    int getNFields() {
+        return nFields;
+    }
+
+    /**
+     * The array the field bytes of the current record are held in. It is reused for
+     * later records.
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    int getFieldStart(int iField) {
+        checkField(iField);
+        return fieldStarts[iField];
+    }
+
+    int getFieldLength(int iField) {
+        checkField(iField);
+        return fieldEnds[iField] - fieldStarts[iField];
+    }
+
+    /** Whether a field matched the format's nullString, and so has a null value. */
+    boolean isFieldNull(int iField) {
+        checkField(iField);
+        return fieldNulls[iField];
+    }
+
+    String getFieldString(int iField) {
+        checkField(iField);
+        return fieldNulls[iField] ? null
+                : new String(data, fieldStarts[iField], fieldEnds[iField] - fieldStarts[iField], UTF_8);
+    }
+
+    /**
+     * Get all the fields of the current record as Strings.
+     */
+    List<String> getFieldStrings() {
+        List<String> out = new ArrayList<>(nFields);
+        for (int i = 0; i < nFields; i++) {
+            out.add(getFieldString(i));
+        }
+        return out;
+    }
+
+    private void checkField(int iField) {
+        if (iField < 0 || iField >= nFields) {
+            // Index an array of the record's length, so this fails the same way
+            // CSVRecord.get() does for a short record
+            int[] fields = new int[nFields];
+            fields[iField]++;
+        }
+    }
+
+    /**
+     * Read the next token into the data array, following Lexer.nextToken().
+     */
+    private int nextToken() throws IOException {
+        tokenReady = false;
+        int last = lastChar;
+        int c = read();
+        if (c == CR && peek() == LF) {
+            c = read();
+        }
+        boolean eol = c == LF || c == CR;
+        if (ignoreEmptyLines) {
+            while (eol && (last == LF || last == CR || last == UNDEFINED)) {
+                last = c;
+                c = read();
+                if (c == CR && peek() == LF) {
+                    c = read();
+                }
+                eol = c == LF || c == CR;
+                if (c == END_OF_STREAM) {
+                    return EOF;
+                }
+            }
+        }
+        if (last == END_OF_STREAM || (last != delimiter && c == END_OF_STREAM)) {
+            return EOF;
+        }
+        if (c == delimiter) {
+            return TOKEN;
+        } else if (eol) {
+            return EORECORD;
+        } else if (c == quote) {
+            return parseEncapsulatedToken();
+        } else if (c == END_OF_STREAM) {
+            tokenReady = true;
+            return EOF;
+        }
+        return parseSimpleToken(c);
+    }
+
+    private int parseSimpleToken(int c) throws IOException {
+        while (c != END_OF_STREAM && !simpleStops[c]) {
+            append(c);
+            copyUntil(simpleStops);
+            c = read();
+        }
+        tokenReady = true;
+        if (c == END_OF_STREAM) {
+            return EOF;
+        } else if (c == delimiter) {
+            return TOKEN;
+        }
+        if (c == CR && peek() == LF) {
+            read();
+        }
+        return EORECORD;
+    }
+
+    private int parseEncapsulatedToken() throws IOException {
+        long startLineNumber = getCurrentLineNumber();
+        while (true) {
+            int c = read();
+            if (c == quote) {
+                if (peek() == quote) {
+                    // Doubled quote
+                    append(read());
+                } else {
+                    // Closing quote; only whitespace may come before the end of the field
+                    while (true) {
+                        c = read();
+                        if (c == delimiter) {
+                            tokenReady = true;
+                            return TOKEN;
+                        } else if (c == END_OF_STREAM) {
+                            tokenReady = true;
+                            return EOF;
+                        }
+                        if (c == CR && peek() == LF) {
+                            c = read();
+                        }
+                        if (c == LF || c == CR) {
+                            tokenReady = true;
+                            return EORECORD;
+                        } else if (!isWhitespace(c)) {
+                            throw new IOException("(line " + getCurrentLineNumber()
+                                    + ") invalid char between encapsulated token and delimiter");
+                        }
+                    }
+                }
+            } else if (c == END_OF_STREAM) {
+                throw new IOException("(startline " + startLineNumber
+                        + ") EOF reached before encapsulated token finished");
+            } else {
+                append(c);
+                copyUntil(quotedStops);
+            }
+        }
+    }
+
+    /**
+     * Copy bytes straight from the current window into the data array, up to the
+     * next byte that needs looking at or the end of the window. None of the bytes
+     * copied can be line breaks, so there are no lines to count.
+     */
+    private void copyUntil(boolean[] stops) {
+        MappedByteBuffer w = window;
+        int pos = windowPos;
+        int limit = windowLimit;
+        byte[] d = data;
+        int n = dataLength;
+        while (pos < limit) {
+            byte b = w.get(pos);
+            if (stops[b & 0xFF]) {
+                break;
+            }
+            if (n == d.length) {
+                d = Arrays.copyOf(d, d.length * 2);
+            }
+            d[n++] = b;
+            pos++;
+        }
+        if (pos > windowPos) {
+            lastChar = w.get(pos - 1) & 0xFF;
+            windowPos = pos;
+        }
+        data = d;
+        dataLength = n;
+    }
+
+    /**
+     * Whether the character starting with byte c is whitespace, the way the Lexer
+     * sees it. For a multi-byte character, the rest of its bytes are read.
+     */
+    private boolean isWhitespace(int c) throws IOException {
+        if (c < 0x80) {
+            return c != delimiter && Character.isWhitespace((char) c);
+        }
+        int nMore;
+        int cp;
+        if ((c & 0xE0) == 0xC0) {
+            nMore = 1;
+            cp = c & 0x1F;
+        } else if ((c & 0xF0) == 0xE0) {
+            nMore = 2;
+            cp = c & 0x0F;
+        } else {
+            // Malformed, or outside the BMP; neither decodes to a whitespace char
+            return false;
+        }
+        for (int i = 0; i < nMore; i++) {
+            int next = peek();
+            if (next == END_OF_STREAM || (next & 0xC0) != 0x80) {
+                return false;
+            }
+            cp = (cp << 6) | (read() & 0x3F);
+        }
+        return Character.isWhitespace((char) cp);
+    }
+
+    /**
+     * Finish off the token just read as a field, following CSVParser.addRecordValue().
+     */
+    private void addField(boolean lastInRecord) {
+        int start = (nFields == 0) ? 0 : fieldEnds[nFields - 1];
+        int stop = dataLength;
+        if (trim) {
+            // Same as String.trim(); UTF-8 multi-byte chars never contain bytes <= ' '
+            while (start < stop && (data[start] & 0xFF) <= ' ') {
+                start++;
+            }
+            while (stop > start && (data[stop - 1] & 0xFF) <= ' ') {
+                stop--;
+            }
+        }
+        if (lastInRecord && start == stop && trailingDelimiter) {
+            dataLength = (nFields == 0) ? 0 : fieldEnds[nFields - 1];
+            return;
+        }
+        if (nFields == fieldStarts.length) {
+            int n = nFields * 2;
+            fieldStarts = Arrays.copyOf(fieldStarts, n);
+            fieldEnds = Arrays.copyOf(fieldEnds, n);
+            fieldNulls = Arrays.copyOf(fieldNulls, n);
+        }
+        fieldStarts[nFields] = start;
+        fieldEnds[nFields] = stop;
+        fieldNulls[nFields] = nullBytes != null && stop - start == nullBytes.length
+                && rangeEquals(data, start, nullBytes);
+        // Trimmed bytes at the end are dropped, so the next field starts where this one stops
+        dataLength = stop;
+        nFields++;
+    }
+
+    private static boolean rangeEquals(byte[] a, int start, byte[] b) {
+        for (int i = 0; i < b.length; i++) {
+            if (a[start + i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(int c) {
+        if (dataLength == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[dataLength++] = (byte) c;
+    }
+
+    private int read() throws IOException {
+        if (windowPos >= windowLimit && !nextWindow()) {
+            lastChar = END_OF_STREAM;
+            return END_OF_STREAM;
+        }
+        int c = window.get(windowPos++) & 0xFF;
+        if (c == CR || (c == LF && lastChar != CR)) {
+            eolCounter++;
+        }
+        lastChar = c;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (windowPos >= windowLimit && !nextWindow()) {
+            return END_OF_STREAM;
+        }
+        return window.get(windowPos) & 0xFF;
+    }
+
+    private long getCurrentLineNumber() {
+        if (lastChar == CR || lastChar == LF || lastChar == UNDEFINED || lastChar == END_OF_STREAM) {
+            return eolCounter;
+        }
+        return eolCounter + 1;
+    }
+
+    /**
+     * Map the next region of the file.
+     * @return false if the end has been reached
+     */
+    private boolean nextWindow() throws IOException {
+        long nextStart = (window == null) ? windowStart : windowStart + windowLimit;
+        if (nextStart >= end) {
+            return false;
+        }
+        int size = (int) Math.min(WINDOW_SIZE, end - nextStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, nextStart, size);
+        windowStart = nextStart;
+        windowPos = 0;
+        windowLimit = size;
+        return true;
+    }
+}
@@ -0,0 +1,40 @@
+package net.janklab.etl.csvtable;
+
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of parsed values, keyed by the cell contents they were parsed
+ * from. When full, the least recently used entry is dropped.
+ */
+final class ParsedValueCache<V> {
+    private final int maxSize;
+    private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxSize Maximum number of entries; 0 or less disables caching
+     */
+    ParsedValueCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The cached value, or null if there is none
+     */
+    V get(String cellValue) {
+        return (maxSize > 0) ? entries.get(cellValue) : null;
+    }
+
+    void put(String cellValue, V value) {
+        if (maxSize <= 0) {
+            return;
+        }
+        entries.put(cellValue, value);
+        if (entries.size() > maxSize) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+}
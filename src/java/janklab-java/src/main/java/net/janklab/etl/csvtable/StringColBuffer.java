@@ -1,15 +1,34 @@
 package net.janklab.etl.csvtable;
 
 import java.util.ArrayList;
+import net.janklab.util.PackedStringArrayList;
 
 /**
- *
+ * Strings buffered as Strings, or, if packed, as a PackedStrings.
  */
 public class StringColBuffer extends ColBuffer {
-    private final ArrayList<String> buf = new ArrayList<>();
+    private final ArrayList<String> buf;
+    private final PackedStringArrayList packedBuf;
+
+    public StringColBuffer() {
+        this(false);
+    }
+
+    /**
+     * @param packed If true, buffer the strings packed into a single byte array,
+     * and return a PackedStrings from getValues() instead of a String[]
+     */
+    public StringColBuffer(boolean packed) {
+        buf = packed ? null : new ArrayList<>();
+        packedBuf = packed ? new PackedStringArrayList() : null;
+    }
 
     @Override
     public void addValue(String cellValue) throws IllegalArgumentException {
+        if (packedBuf != null) {
+            packedBuf.add(cellValue);
+            return;
+        }
         // Assume memory is more important than speed, especially for the Matlab-Java
         // layer transfer
         cellValue = cellValue.intern();
@@ -17,8 +36,26 @@ public class StringColBuffer extends ColBuffer {
     }
     
     @Override
-    public String[] getValues() {
+    public Object getValues() {
+        if (packedBuf != null) {
+            return packedBuf.toPackedStrings();
+        }
         return buf.toArray(new String[0]);
     }
 
+    @Override
+    StringColBuffer newSibling() {
+        return new StringColBuffer(packedBuf != null);
+    }
+
+    @Override
+    void append(ColBuffer other) {
+        StringColBuffer that = (StringColBuffer) other;
+        if (packedBuf != null) {
+            packedBuf.addAll(that.packedBuf);
+        } else {
+            buf.addAll(that.buf);
+        }
+    }
+
 }
@@ -19,7 +19,15 @@ class SymbolColBuffer extends ColBuffer {
     public Object getValues() {
         return buf;
     }
-    
-    
+
+    @Override
+    SymbolColBuffer newSibling() {
+        return new SymbolColBuffer();
+    }
+
+    @Override
+    void append(ColBuffer other) {
+        buf.addAll(((SymbolColBuffer) other).buf);
+    }
 
 }
@@ -13,15 +13,29 @@ import java.sql.SQLException;
 public interface ColumnBuffer {
   /** Attach to a ResultSet, preparing to fetch values from the given column. This
    * should clear the buffered values and reset the object's state.
+   * 
+   * The capacity is the number of rows expected to be fetched before the next
+   * getBuffer(). Implementations should size their buffers to it up front. They
+   * may reuse the primitive arrays they handed off from a previous getBuffer(),
+   * so callers must be done with those before re-attaching.
    * @param rs
    * @param colIndex 
+   * @param capacity Expected number of rows to be fetched
    * @throws java.sql.SQLException If something goes wrong
    */
-  public void attach(ResultSet rs, int colIndex) throws SQLException;
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException;
   /** Fetch the next value for the attached column from the ResultSet and buffer it.
    * @throws java.sql.SQLException */
   public void fetchNextValue() throws SQLException;
   /** Get the accumulated buffer, converted to the Matlab handoff type.
    * @return The converted accumulated buffer. */
   public Object getBuffer();
+  /** Get the validity bitmap for the accumulated buffer, with one bit per row
+   * that is set if the row is non-NULL. See {@link ValidityBitmap}.
+   * @return The validity bitmap, or null if no NULLs were fetched. */
+  public long[] getValidity();
+  /** Create a new, unattached ColumnBuffer of the same type and configuration
+   * as this one. This is used to set up additional buffer sets for prefetching.
+   * @return A new ColumnBuffer */
+  public ColumnBuffer newInstance();
 }
@@ -1,10 +1,15 @@
 package net.janklab.mdbc;
 
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import static java.util.Objects.requireNonNull;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A lookup map for selecting the column type conversion to be used for a given column. This is a
@@ -25,15 +30,32 @@ import java.util.Set;
  *
  * Each instance has a label. This label is used only for display and debugging 
  * purposes; it does not affect lookup behavior.
+ *
+ * Whole result set schemas can be resolved at once with resolveConversions(),
+ * which caches its results by schema. Each map has a version number that is
+ * bumped by every register*() call, and the cache entries are checked against
+ * the versions of the whole fallback chain, so a mutation anywhere in the
+ * chain invalidates them. The mappings are exposed as read-only views so they
+ * can only be changed through register*().
  */
 public class ColumnTypeConversionMap {
 
   public final String label;
   private final ColumnTypeConversionMap fallbackMap;
-  public final Map<String, String> byColName = new LinkedHashMap<>();
-  public final Map<Integer, String> byColIndex = new LinkedHashMap<>();
-  public final Map<String, String> byVendorType = new LinkedHashMap<>();
-  public final Map<SqlType, String> bySqlType = new LinkedHashMap<>();
+  private final Map<String, String> byColNameMap = new LinkedHashMap<>();
+  private final Map<Integer, String> byColIndexMap = new LinkedHashMap<>();
+  private final Map<String, String> byVendorTypeMap = new LinkedHashMap<>();
+  private final Map<SqlType, String> bySqlTypeMap = new LinkedHashMap<>();
+  public final Map<String, String> byColName = Collections.unmodifiableMap(byColNameMap);
+  public final Map<Integer, String> byColIndex = Collections.unmodifiableMap(byColIndexMap);
+  public final Map<String, String> byVendorType = Collections.unmodifiableMap(byVendorTypeMap);
+  public final Map<SqlType, String> bySqlType = Collections.unmodifiableMap(bySqlTypeMap);
+  /** Maximum number of schemas to keep in the resolution cache. */
+  public int maxCachedSchemas = 256;
+
+  private final AtomicLong version = new AtomicLong();
+  private final LinkedHashMap<SchemaKey, ResolvedColumnConversions> resolutionCache 
+          = new LinkedHashMap<>(16, 0.75f, true);
 
   public ColumnTypeConversionMap(String label) {
     this(label, null);
@@ -55,17 +77,19 @@ public class ColumnTypeConversionMap {
    */
   public String lookupConversion(int colIndex, String colName, SqlType sqlType,
           String vendorType) {
-    if (byColName.containsKey(colName)) {
-      return byColName.get(colName);
+    // Conversion names are never null, so a null get() means "not present"
+    String out;
+    if (!byColNameMap.isEmpty() && (out = byColNameMap.get(colName)) != null) {
+      return out;
     }
-    if (byColIndex.containsKey(colIndex)) {
-      return byColIndex.get(colIndex);
+    if (!byColIndexMap.isEmpty() && (out = byColIndexMap.get(colIndex)) != null) {
+      return out;
     }
-    if (byVendorType.containsKey(vendorType)) {
-      return byVendorType.get(vendorType);
+    if (!byVendorTypeMap.isEmpty() && (out = byVendorTypeMap.get(vendorType)) != null) {
+      return out;
     }
-    if (bySqlType.containsKey(sqlType)) {
-      return bySqlType.get(sqlType);
+    if ((out = bySqlTypeMap.get(sqlType)) != null) {
+      return out;
     }
     if (fallbackMap != null) {
       return fallbackMap.lookupConversion(colIndex, colName, sqlType, vendorType);
@@ -73,26 +97,114 @@ public class ColumnTypeConversionMap {
     return null;
   }
 
+  /**
+   * Resolve the conversions for all the columns of a result set, using the
+   * resolution cache.
+   * @param md The result set's metadata
+   * @return The resolved conversions. Columns with no matching conversion have
+   * a null conversion name.
+   * @throws SQLException If reading the metadata fails
+   */
+  public ResolvedColumnConversions resolveConversions(ResultSetMetaData md) throws SQLException {
+    int nCols = md.getColumnCount();
+    String[] labels = new String[nCols];
+    int[] sqlTypes = new int[nCols];
+    String[] vendorTypes = new String[nCols];
+    for (int i = 0; i < nCols; i++) {
+      labels[i] = md.getColumnLabel(i + 1);
+      sqlTypes[i] = md.getColumnType(i + 1);
+      vendorTypes[i] = md.getColumnTypeName(i + 1);
+    }
+    return resolveConversions(labels, sqlTypes, vendorTypes);
+  }
+
+  /**
+   * Resolve the conversions for all the columns of a result set schema, using
+   * the resolution cache.
+   * @param labels The column labels
+   * @param sqlTypes The column SQL types, as java.sql.Types constants
+   * @param vendorTypes The column vendor type names
+   * @return The resolved conversions. Columns with no matching conversion have
+   * a null conversion name.
+   */
+  public ResolvedColumnConversions resolveConversions(String[] labels, int[] sqlTypes,
+          String[] vendorTypes) {
+    if (fallbackMap != null && version.get() == 0) {
+      // Nothing has been registered here, so share the fallback's cache. This
+      // is the common case for per-Statement maps.
+      return fallbackMap.resolveConversions(labels, sqlTypes, vendorTypes);
+    }
+    SchemaKey key = new SchemaKey(labels, sqlTypes, vendorTypes);
+    long currentVersion = getVersion();
+    synchronized (resolutionCache) {
+      ResolvedColumnConversions cached = resolutionCache.get(key);
+      if (cached != null && cached.version == currentVersion) {
+        return cached;
+      }
+    }
+    String[] names = new String[labels.length];
+    for (int i = 0; i < labels.length; i++) {
+      names[i] = lookupConversion(i + 1, labels[i], SqlType.fromTypesConstant(sqlTypes[i]),
+              vendorTypes[i]);
+    }
+    ResolvedColumnConversions out = new ResolvedColumnConversions(names, currentVersion);
+    synchronized (resolutionCache) {
+      resolutionCache.put(key, out);
+      while (resolutionCache.size() > Math.max(0, maxCachedSchemas)) {
+        SchemaKey eldest = resolutionCache.keySet().iterator().next();
+        resolutionCache.remove(eldest);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Get the version of this map's mappings, including those of its fallback
+   * chain. This changes whenever a mapping is registered anywhere in the chain.
+   * @return The version
+   */
+  public long getVersion() {
+    // Each map's version only increases, so the sum changes if any of them do
+    long out = version.get();
+    if (fallbackMap != null) {
+      out += fallbackMap.getVersion();
+    }
+    return out;
+  }
+
+  /**
+   * Invalidate cached resolutions. Call this when something outside this map
+   * that the cached results depend on changes, such as the conversion strategy
+   * definitions kept by the Matlab layer.
+   */
+  public void invalidate() {
+    version.incrementAndGet();
+  }
+
   public void registerForName(String colName, String conversionName) {
     requireNonNull(colName);
     requireNonNull(conversionName);
-    byColName.put(colName, conversionName);
+    byColNameMap.put(colName, conversionName);
+    version.incrementAndGet();
   }
 
   public void registerForIndex(int colIndex, String conversionName) {
     requireNonNull(conversionName);
-    byColIndex.put(colIndex, conversionName);
+    byColIndexMap.put(colIndex, conversionName);
+    version.incrementAndGet();
   }
   
   public void registerForSqlType(SqlType sqlType, String conversionName) {
     requireNonNull(conversionName);
-    bySqlType.put(sqlType, conversionName);
+    bySqlTypeMap.put(sqlType, conversionName);
+    version.incrementAndGet();
   }
   
   public void registerForVendorType(String vendorType, String conversionName) {
     requireNonNull(vendorType);
     requireNonNull(conversionName);
-    byVendorType.put(vendorType, conversionName);
+    byVendorTypeMap.put(vendorType, conversionName);
+    version.incrementAndGet();
   }
   
   /**
@@ -161,6 +273,44 @@ public class ColumnTypeConversionMap {
     return sb.toString();
   }
   
+  /**
+   * Key for the resolution cache: the parts of a result set schema that
+   * lookupConversion() depends on.
+   */
+  private static final class SchemaKey {
+    final String[] labels;
+    final int[] sqlTypes;
+    final String[] vendorTypes;
+    final int hash;
+
+    SchemaKey(String[] labels, int[] sqlTypes, String[] vendorTypes) {
+      if (labels.length != sqlTypes.length || labels.length != vendorTypes.length) {
+        throw new IllegalArgumentException("labels, sqlTypes, and vendorTypes must be the same length");
+      }
+      this.labels = labels.clone();
+      this.sqlTypes = sqlTypes.clone();
+      this.vendorTypes = vendorTypes.clone();
+      this.hash = 31 * (31 * Arrays.hashCode(labels) + Arrays.hashCode(sqlTypes))
+              + Arrays.hashCode(vendorTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SchemaKey)) {
+        return false;
+      }
+      SchemaKey other = (SchemaKey) obj;
+      return hash == other.hash && Arrays.equals(sqlTypes, other.sqlTypes)
+              && Arrays.equals(labels, other.labels)
+              && Arrays.equals(vendorTypes, other.vendorTypes);
+    }
+  }
+  
   /**
    * Used internally by debugDumpImpl().
    */
@@ -0,0 +1,332 @@
+package net.janklab.mdbc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.BitSet;
+import net.janklab.mdbc.colbuf.BufferedTimestampComponents;
+import net.janklab.mdbc.colbuf.PackedBytes;
+import net.janklab.mdbc.colbuf.SymbolColumnBuffer;
+import net.janklab.util.DictionaryEncodedStrings;
+import net.janklab.util.PackedStrings;
+import net.janklab.util.Symbol;
+
+/**
+ * Streams the contents of a ResultSet straight to a columnar file, one chunk
+ * at a time, without bringing it in to Matlab.
+ *
+ * This uses the same ColumnBuffers as a normal fetch, so the values are written
+ * in the same converted form Matlab would get (datenums, symbol codes, and so
+ * on). Only one chunk is held in memory at a time, so tables much larger than
+ * the heap can be exported.
+ *
+ * The file format is big-endian, as written by DataOutputStream:
+ * <pre>
+ *   header:  "JLMDBCC1", int nCols, then for each column:
+ *              string label, byte typeCode
+ *   chunks:  int nRows (&gt; 0), then for each column:
+ *              byte hasValidity, [long[words(nRows)] validity bitmap],
+ *              [symbol dictionary entries], data
+ *   trailer: int 0, long totalRows
+ * </pre>
+ * Strings are written as an int byte length followed by that many bytes of
+ * UTF-8, with a length of -1 for null. The data for each type code is:
+ * <ul>
+ * <li>TYPE_DOUBLE, TYPE_FLOAT, TYPE_LONG, TYPE_INT: nRows values of that type</li>
+ * <li>TYPE_BOOLEAN: nRows bytes, 0 or 1</li>
+ * <li>TYPE_STRING: nRows strings</li>
+ * <li>TYPE_BYTES: for each row, int length (-1 for null) and that many bytes</li>
+ * <li>TYPE_TIMESTAMP: nRows double datenums, then nRows long nanos-of-day</li>
+ * <li>TYPE_SYMBOL: int nNewSymbols, then (int code, string) for each symbol
+ *     code that first appears in this chunk; then nRows int codes</li>
+ * <li>TYPE_DICTIONARY: int dictionary size, that many strings, then nRows int
+ *     codes into this chunk's dictionary, with -1 for NULL</li>
+ * </ul>
+ */
+public class ColumnarFileExporter {
+
+  public static final byte[] MAGIC = "JLMDBCC1".getBytes(StandardCharsets.US_ASCII);
+
+  public static final byte TYPE_DOUBLE = 1;
+  public static final byte TYPE_FLOAT = 2;
+  public static final byte TYPE_LONG = 3;
+  public static final byte TYPE_INT = 4;
+  public static final byte TYPE_BOOLEAN = 5;
+  public static final byte TYPE_STRING = 6;
+  public static final byte TYPE_BYTES = 7;
+  public static final byte TYPE_TIMESTAMP = 8;
+  public static final byte TYPE_SYMBOL = 9;
+  public static final byte TYPE_DICTIONARY = 10;
+
+  /** Rows per chunk when fetching and writing. */
+  public int rowsPerChunk = 10000;
+  /** Size of the output stream buffer, in bytes. */
+  public int outputBufferSize = 1 << 16;
+
+  /**
+   * Export everything remaining in a ResultSetBuffer to a file. The
+   * ResultSetBuffer's column buffers must already be set up.
+   * @param rsBuffer The buffer to fetch from
+   * @param file The file to write. It is overwritten if it exists.
+   * @return The number of rows written
+   * @throws SQLException If fetching fails
+   * @throws IOException If writing fails
+   */
+  public long export(ResultSetBuffer rsBuffer, File file) throws SQLException, IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file), outputBufferSize))) {
+      return export(rsBuffer, out);
+    }
+  }
+
+  /**
+   * Export everything remaining in a ResultSetBuffer to a stream. The stream is
+   * not closed.
+   * @param rsBuffer The buffer to fetch from
+   * @param out The stream to write to
+   * @return The number of rows written
+   * @throws SQLException If fetching fails
+   * @throws IOException If writing fails
+   */
+  public long export(ResultSetBuffer rsBuffer, DataOutputStream out)
+          throws SQLException, IOException {
+    int nCols = rsBuffer.nColumns;
+    String[] labels = rsBuffer.getColumnLabels();
+    byte[] typeCodes = null;
+    BitSet[] writtenSymbols = new BitSet[nCols];
+    long nTotal = 0;
+    boolean isFinished = false;
+    while (!isFinished) {
+      ResultSetFetchResult chunk = rsBuffer.fetch(rowsPerChunk);
+      isFinished = chunk.isFinished;
+      if (typeCodes == null) {
+        // The first chunk's buffer types determine the column types, even if it is empty
+        typeCodes = new byte[nCols];
+        for (int iCol = 0; iCol < nCols; iCol++) {
+          typeCodes[iCol] = typeCodeFor(rsBuffer.getColumnBuffer(iCol + 1),
+                  chunk.bufferedColumnData[iCol], labels[iCol]);
+          if (typeCodes[iCol] == TYPE_SYMBOL) {
+            writtenSymbols[iCol] = new BitSet();
+          }
+        }
+        writeHeader(out, labels, typeCodes);
+      }
+      if (chunk.nRows == 0) {
+        continue;
+      }
+      out.writeInt(chunk.nRows);
+      for (int iCol = 0; iCol < nCols; iCol++) {
+        long[] validity = chunk.columnValidity[iCol];
+        out.writeByte(validity == null ? 0 : 1);
+        if (validity != null) {
+          for (int i = 0; i < ValidityBitmap.words(chunk.nRows); i++) {
+            out.writeLong(validity[i]);
+          }
+        }
+        writeColumnData(out, typeCodes[iCol], chunk.bufferedColumnData[iCol],
+                validity, chunk.nRows, writtenSymbols[iCol]);
+      }
+      nTotal += chunk.nRows;
+    }
+    out.writeInt(0);
+    out.writeLong(nTotal);
+    out.flush();
+    return nTotal;
+  }
+
+  private static byte typeCodeFor(ColumnBuffer columnBuffer, Object data, String label) {
+    if (data instanceof int[]) {
+      return columnBuffer instanceof SymbolColumnBuffer ? TYPE_SYMBOL : TYPE_INT;
+    } else if (data instanceof double[]) {
+      return TYPE_DOUBLE;
+    } else if (data instanceof float[]) {
+      return TYPE_FLOAT;
+    } else if (data instanceof long[]) {
+      return TYPE_LONG;
+    } else if (data instanceof boolean[]) {
+      return TYPE_BOOLEAN;
+    } else if (data instanceof String[] || data instanceof PackedStrings) {
+      return TYPE_STRING;
+    } else if (data instanceof byte[][] || data instanceof PackedBytes) {
+      return TYPE_BYTES;
+    } else if (data instanceof BufferedTimestampComponents) {
+      return TYPE_TIMESTAMP;
+    } else if (data instanceof DictionaryEncodedStrings) {
+      return TYPE_DICTIONARY;
+    } else {
+      throw new IllegalArgumentException("Column '" + label + "': cannot export buffers of type "
+              + (data == null ? "null" : data.getClass().getName()) + " from "
+              + columnBuffer.getClass().getSimpleName());
+    }
+  }
+
+  private static void writeHeader(DataOutputStream out, String[] labels, byte[] typeCodes)
+          throws IOException {
+    out.write(MAGIC);
+    out.writeInt(labels.length);
+    for (int iCol = 0; iCol < labels.length; iCol++) {
+      writeString(out, labels[iCol]);
+      out.writeByte(typeCodes[iCol]);
+    }
+  }
+
+  private static void writeColumnData(DataOutputStream out, byte typeCode, Object data,
+          long[] validity, int n, BitSet writtenSymbols) throws IOException {
+    switch (typeCode) {
+      case TYPE_DOUBLE: {
+        double[] vals = (double[]) data;
+        for (int i = 0; i < n; i++) {
+          out.writeDouble(vals[i]);
+        }
+        break;
+      }
+      case TYPE_FLOAT: {
+        float[] vals = (float[]) data;
+        for (int i = 0; i < n; i++) {
+          out.writeFloat(vals[i]);
+        }
+        break;
+      }
+      case TYPE_LONG: {
+        long[] vals = (long[]) data;
+        for (int i = 0; i < n; i++) {
+          out.writeLong(vals[i]);
+        }
+        break;
+      }
+      case TYPE_INT: {
+        int[] vals = (int[]) data;
+        for (int i = 0; i < n; i++) {
+          out.writeInt(vals[i]);
+        }
+        break;
+      }
+      case TYPE_BOOLEAN: {
+        boolean[] vals = (boolean[]) data;
+        for (int i = 0; i < n; i++) {
+          out.writeByte(vals[i] ? 1 : 0);
+        }
+        break;
+      }
+      case TYPE_STRING: {
+        if (data instanceof PackedStrings) {
+          PackedStrings packed = (PackedStrings) data;
+          for (int i = 0; i < n; i++) {
+            writePackedString(out, packed, i);
+          }
+          break;
+        }
+        String[] vals = (String[]) data;
+        for (int i = 0; i < n; i++) {
+          writeString(out, vals[i]);
+        }
+        break;
+      }
+      case TYPE_BYTES: {
+        if (data instanceof PackedBytes) {
+          PackedBytes packed = (PackedBytes) data;
+          for (int i = 0; i < n; i++) {
+            // PackedBytes stores NULLs as empty values; the validity bitmap tells them apart
+            if (!ValidityBitmap.isValid(validity, i)) {
+              out.writeInt(-1);
+              continue;
+            }
+            out.writeInt((int) packed.length(i));
+            packed.writeTo(i, out);
+          }
+          break;
+        }
+        byte[][] vals = (byte[][]) data;
+        for (int i = 0; i < n; i++) {
+          if (vals[i] == null) {
+            out.writeInt(-1);
+          } else {
+            out.writeInt(vals[i].length);
+            out.write(vals[i]);
+          }
+        }
+        break;
+      }
+      case TYPE_TIMESTAMP: {
+        BufferedTimestampComponents vals = (BufferedTimestampComponents) data;
+        for (int i = 0; i < n; i++) {
+          out.writeDouble(vals.datenums[i]);
+        }
+        for (int i = 0; i < n; i++) {
+          out.writeLong(vals.nanosOfDays[i]);
+        }
+        break;
+      }
+      case TYPE_SYMBOL: {
+        int[] codes = (int[]) data;
+        writeNewSymbols(out, codes, n, writtenSymbols);
+        for (int i = 0; i < n; i++) {
+          out.writeInt(codes[i]);
+        }
+        break;
+      }
+      case TYPE_DICTIONARY: {
+        DictionaryEncodedStrings vals = (DictionaryEncodedStrings) data;
+        out.writeInt(vals.dictionary.length);
+        for (String str : vals.dictionary) {
+          writeString(out, str);
+        }
+        for (int i = 0; i < n; i++) {
+          out.writeInt(vals.codes[i]);
+        }
+        break;
+      }
+      default:
+        throw new IllegalStateException("Unknown type code " + typeCode);
+    }
+  }
+
+  /**
+   * Write the dictionary entries for the symbol codes in this chunk that have
+   * not been written before, so a reader can decode the file on its own.
+   */
+  private static void writeNewSymbols(DataOutputStream out, int[] codes, int n,
+          BitSet writtenSymbols) throws IOException {
+    BitSet newSymbols = new BitSet();
+    for (int i = 0; i < n; i++) {
+      if (!writtenSymbols.get(codes[i])) {
+        newSymbols.set(codes[i]);
+      }
+    }
+    out.writeInt(newSymbols.cardinality());
+    for (int code = newSymbols.nextSetBit(0); code >= 0; code = newSymbols.nextSetBit(code + 1)) {
+      out.writeInt(code);
+      writeString(out, Symbol.decodeSymbol(code));
+    }
+    writtenSymbols.or(newSymbols);
+  }
+
+  /**
+   * Write a packed string, copying its bytes directly if they are already UTF-8.
+   */
+  private static void writePackedString(DataOutputStream out, PackedStrings packed, int i)
+          throws IOException {
+    if (packed.isLatin1 || packed.isNull(i)) {
+      writeString(out, packed.get(i));
+      return;
+    }
+    int start = packed.offsets[i];
+    int len = packed.offsets[i + 1] - start;
+    out.writeInt(len);
+    out.write(packed.data, start, len);
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
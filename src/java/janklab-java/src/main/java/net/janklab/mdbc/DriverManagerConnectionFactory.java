@@ -0,0 +1,64 @@
+package net.janklab.mdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * A JLConnectionFactory that opens a new connection through DriverManager for
+ * each request, and closes it when it is released.
+ */
+public class DriverManagerConnectionFactory implements JLConnectionFactory {
+  
+  public final String url;
+  public final String user;
+  private final Properties props;
+  
+  /**
+   * @param url The JDBC URL to connect to
+   * @param user The user name, or null if it's supplied in the URL or not needed
+   * @param password The password, or null
+   */
+  public DriverManagerConnectionFactory(String url, String user, String password) {
+    this(url, user, password, null);
+  }
+  
+  /**
+   * @param url The JDBC URL to connect to
+   * @param user The user name, or null if it's supplied in the URL or not needed
+   * @param password The password, or null
+   * @param extraProps Additional driver-specific connection properties, or null
+   */
+  public DriverManagerConnectionFactory(String url, String user, String password,
+          Properties extraProps) {
+    this.url = url;
+    this.user = user;
+    this.props = new Properties();
+    if (extraProps != null) {
+      props.putAll(extraProps);
+    }
+    if (user != null) {
+      props.setProperty("user", user);
+    }
+    if (password != null) {
+      props.setProperty("password", password);
+    }
+  }
+  
+  @Override
+  public JLConnection getConnection() throws SQLException {
+    Connection conn = DriverManager.getConnection(url, props);
+    return new JLConnection(conn, url, user);
+  }
+  
+  @Override
+  public void releaseConnection(JLConnection conn) throws SQLException {
+    conn.jdbcConn.close();
+  }
+  
+  @Override
+  public String toString() {
+    return "DriverManagerConnectionFactory: " + url + " user=" + user;
+  }
+}
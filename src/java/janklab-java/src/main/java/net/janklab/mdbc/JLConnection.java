@@ -1,6 +1,11 @@
 package net.janklab.mdbc;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * A JLConnection is a thin wrapper around a java.sql.Connection object, with some additional 
@@ -9,6 +14,18 @@ import java.sql.Connection;
  * In particular, JLConnection holds on to the original URL and connection properties so the 
  * connection can be identified WRT its host in a human-readable manner.
  * 
+ * It can also keep a small LRU cache of JLPreparedStatements, keyed by SQL text,
+ * so repeated statements skip the prepare round trip. Each cached statement in
+ * turn keeps its parameter binders, keyed by parameter conversion signature
+ * (see JLPreparedStatement.useBinderChain()). This is off by default; set
+ * statementCacheSize to turn it on. JLConnectionPool and MDBC's Matlab
+ * connections turn it on.
+ * 
+ * A cached statement is checked out while a caller is using it, and goes back
+ * to the cache when the caller passes it to releaseStatement(). Preparing the
+ * same SQL while it is checked out gets a fresh, uncached statement, so two
+ * callers never share one.
+ * 
  * @author janke
  */
 public class JLConnection {
@@ -16,6 +33,13 @@ public class JLConnection {
   public final Connection jdbcConn;
   public final String user;
   public final String baseUrl;
+  /** Maximum number of prepared statements to keep open for reuse. 0 disables the cache. */
+  public int statementCacheSize = 0;
+  
+  private final LinkedHashMap<String, JLPreparedStatement> statementCache =
+          new LinkedHashMap<>(16, 0.75f, true);
+  private long statementCacheHits;
+  private long statementCacheMisses;
   
   public JLConnection(Connection jdbcConn, String baseUrl, String user) {
     this.jdbcConn = jdbcConn;
@@ -23,6 +47,150 @@ public class JLConnection {
     this.user = user;
   }
   
+  /**
+   * Prepare a statement, reusing a cached one for the same SQL if there is one.
+   * 
+   * A reused statement has its parameters, batch, and binders cleared. If the
+   * cached statement for this SQL is checked out by another caller, a new
+   * statement that is not cached is returned instead. Either way, the caller
+   * should pass the statement to releaseStatement() when done with it, rather
+   * than closing it.
+   * @param sql The SQL to prepare
+   * @return The prepared statement
+   * @throws SQLException If preparing the statement fails
+   */
+  public synchronized JLPreparedStatement prepareStatement(String sql) throws SQLException {
+    if (statementCacheSize > 0) {
+      JLPreparedStatement cached = statementCache.get(sql);
+      if (cached != null) {
+        if (cached.checkedOut) {
+          // In use elsewhere; leave it cached and hand out a private one
+          statementCacheMisses++;
+          return new JLPreparedStatement(jdbcConn.prepareStatement(sql));
+        }
+        if (!cached.jdbcStatement.isClosed()) {
+          cached.reset();
+          cached.checkedOut = true;
+          statementCacheHits++;
+          return cached;
+        }
+        statementCache.remove(sql);
+      }
+    }
+    statementCacheMisses++;
+    JLPreparedStatement out = new JLPreparedStatement(jdbcConn.prepareStatement(sql));
+    if (statementCacheSize > 0) {
+      out.checkedOut = true;
+      statementCache.put(sql, out);
+      trimStatementCache();
+    }
+    return out;
+  }
+  
+  /**
+   * Give back a statement from prepareStatement() once the caller is done with
+   * it. A cached statement is returned to the cache for reuse; any other
+   * statement is closed.
+   * @param stmt The statement to release
+   */
+  public synchronized void releaseStatement(JLPreparedStatement stmt) {
+    if (stmt.checkedOut && statementCache.containsValue(stmt)) {
+      stmt.checkedOut = false;
+    } else {
+      stmt.checkedOut = false;
+      closeQuietly(stmt);
+    }
+  }
+  
+  /**
+   * Whether a statement is held in this connection's statement cache.
+   * @param stmt The statement to check
+   * @return true if it is cached, and so should be released rather than closed
+   */
+  public synchronized boolean isCachedStatement(JLPreparedStatement stmt) {
+    return statementCache.containsValue(stmt);
+  }
+  
+  /**
+   * Close and drop all the cached statements. Statements that are checked out
+   * are dropped from the cache, and closed when they are released.
+   */
+  public synchronized void clearStatementCache() {
+    List<JLPreparedStatement> stmts = new ArrayList<>(statementCache.values());
+    statementCache.clear();
+    for (JLPreparedStatement stmt : stmts) {
+      if (!stmt.checkedOut) {
+        closeQuietly(stmt);
+      }
+    }
+  }
+  
+  public synchronized int getStatementCacheCount() {
+    return statementCache.size();
+  }
+  
+  public synchronized long getStatementCacheHits() {
+    return statementCacheHits;
+  }
+  
+  public synchronized long getStatementCacheMisses() {
+    return statementCacheMisses;
+  }
+  
+  /**
+   * The fraction of prepareStatement() calls that were served from the cache.
+   * @return The hit rate, from 0 to 1, or 0 if there have been no calls
+   */
+  public synchronized double getStatementCacheHitRate() {
+    long n = statementCacheHits + statementCacheMisses;
+    return n == 0 ? 0 : (double) statementCacheHits / n;
+  }
+  
+  /**
+   * The number of binder chain reuses, summed over the statements currently
+   * in the cache. See JLPreparedStatement.useBinderChain().
+   * @return The hit count
+   */
+  public synchronized long getBinderChainHits() {
+    long n = 0;
+    for (JLPreparedStatement stmt : statementCache.values()) {
+      n += stmt.getBinderChainHits();
+    }
+    return n;
+  }
+  
+  /**
+   * The number of binder chain misses, summed over the statements currently
+   * in the cache.
+   * @return The miss count
+   */
+  public synchronized long getBinderChainMisses() {
+    long n = 0;
+    for (JLPreparedStatement stmt : statementCache.values()) {
+      n += stmt.getBinderChainMisses();
+    }
+    return n;
+  }
+  
+  private void trimStatementCache() {
+    Iterator<JLPreparedStatement> it = statementCache.values().iterator();
+    while (statementCache.size() > statementCacheSize && it.hasNext()) {
+      JLPreparedStatement eldest = it.next();
+      it.remove();
+      if (!eldest.checkedOut) {
+        closeQuietly(eldest);
+      }
+    }
+  }
+  
+  private static void closeQuietly(JLPreparedStatement stmt) {
+    try {
+      stmt.jdbcStatement.close();
+    } catch (SQLException e) {
+      // Nothing useful to do; the statement is being discarded anyway
+    }
+  }
+  
   @Override
   public String toString() {
     return "JLConnection: " + baseUrl + " user=" + user + " conn=" + jdbcConn;
@@ -0,0 +1,26 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+
+/**
+ * A source of JLConnections, for code that needs to open its own connections,
+ * like PartitionedQuery.
+ */
+public interface JLConnectionFactory {
+  
+  /**
+   * Get a connection.
+   * @return A connection that the caller has exclusive use of until it is released
+   * @throws SQLException If something goes wrong
+   */
+  JLConnection getConnection() throws SQLException;
+  
+  /**
+   * Give back a connection obtained from getConnection(). The caller must not
+   * use it afterwards.
+   * @param conn The connection to release
+   * @throws SQLException If something goes wrong
+   */
+  void releaseConnection(JLConnection conn) throws SQLException;
+  
+}
@@ -0,0 +1,621 @@
+package net.janklab.mdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool of JLConnections, which hands out already-open connections instead of
+ * opening a new one for every request. This saves the network, TLS, and
+ * authentication round trips of a fresh connection, which can dominate the
+ * time for short queries.
+ *
+ * Physical connections come from a source JLConnectionFactory (usually a
+ * DriverManagerConnectionFactory), and are given back to it when the pool
+ * closes them. The pool keeps between minSize and maxSize connections open.
+ * When all maxSize are in use, getConnection() waits up to maxWaitMillis for
+ * one to be released.
+ *
+ * Idle connections are handed out most-recently-used first, and are checked
+ * before they are handed out if validateOnBorrow is set, with validationQuery
+ * or Connection.isValid(). Connections that have sat idle for longer than
+ * idleTimeoutMillis are closed by a background task, down to minSize.
+ *
+ * On release, any open transaction is rolled back and auto-commit is turned
+ * back on. Other session state, like the schema or isolation level, is left
+ * as is. Each pooled connection keeps a cache of statementCacheSize prepared
+ * statements; see JLConnection.prepareStatement().
+ *
+ * The pool records how long each borrow waited, for tuning maxSize. Call
+ * close() when done with the pool, to close its connections and stop its
+ * eviction task. This class is thread-safe.
+ */
+public class JLConnectionPool implements JLConnectionFactory {
+
+  /** Upper bounds of the borrow wait histogram buckets, in milliseconds. The last bucket is unbounded. */
+  public static final long[] WAIT_HISTOGRAM_BOUNDS_MILLIS = {1, 10, 100, 1000};
+
+  private static final ScheduledExecutorService EVICTOR =
+          Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "mdbc-pool-evictor");
+            t.setDaemon(true);
+            return t;
+          });
+
+  public final JLConnectionFactory source;
+  /** Number of connections to keep open even when idle. */
+  public int minSize = 0;
+  /** Maximum number of connections open at once, idle or in use. */
+  public int maxSize = 8;
+  /** How long getConnection() waits for a connection when all are in use. Negative means forever. */
+  public long maxWaitMillis = 30000;
+  /** Whether to check idle connections before handing them out. */
+  public boolean validateOnBorrow = true;
+  /** Query run to validate a connection, or null to use Connection.isValid(). */
+  public String validationQuery = null;
+  /** Timeout for validating a connection, in seconds. */
+  public int validationTimeoutSeconds = 5;
+  /** Close connections idle for longer than this, in milliseconds. 0 means never. */
+  public long idleTimeoutMillis = 10 * 60 * 1000;
+  /** How often the background task checks for idle connections, in milliseconds. */
+  public long evictionIntervalMillis = 60 * 1000;
+  /** Size of each pooled connection's prepared statement cache. */
+  public int statementCacheSize = 32;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  /** Idle connections, most recently released first. */
+  private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+  private final Map<JLConnection, PooledConnection> all = new IdentityHashMap<>();
+  /** Connections being opened, which count towards maxSize. */
+  private int nPending;
+  private boolean isClosed;
+  private ScheduledFuture<?> evictionTask;
+
+  private long nBorrows;
+  private long totalWaitNanos;
+  private long maxWaitNanos;
+  private final long[] waitHistogram = new long[WAIT_HISTOGRAM_BOUNDS_MILLIS.length + 1];
+  private long nTimeouts;
+  private long nCreated;
+  private long nDestroyed;
+  private long nValidationFailures;
+
+  public JLConnectionPool(JLConnectionFactory source) {
+    if (source == null) {
+      throw new IllegalArgumentException("source must not be null");
+    }
+    this.source = source;
+  }
+
+  /**
+   * Borrow a connection from the pool, opening a new one if none are idle and
+   * the pool is not full.
+   * @return A connection that the caller has exclusive use of until it is released
+   * @throws SQLTimeoutException If no connection became available within maxWaitMillis
+   * @throws SQLException If opening a connection fails, or the pool is closed
+   */
+  @Override
+  public JLConnection getConnection() throws SQLException {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive; got " + maxSize);
+    }
+    long t0 = System.nanoTime();
+    long deadline = t0 + TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+    while (true) {
+      PooledConnection pooled = null;
+      lock.lock();
+      try {
+        startEvictionTask();
+        while (pooled == null) {
+          if (isClosed) {
+            throw new SQLException("Connection pool is closed");
+          }
+          pooled = idle.pollFirst();
+          if (pooled != null) {
+            pooled.inUse = true;
+          } else if (all.size() + nPending < maxSize) {
+            nPending++;
+            break;
+          } else if (maxWaitMillis < 0) {
+            available.await();
+          } else {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+              nTimeouts++;
+              throw new SQLTimeoutException("Timed out after " + maxWaitMillis
+                      + " ms waiting for a connection; all " + maxSize + " are in use");
+            }
+            available.awaitNanos(remaining);
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a connection", e);
+      } finally {
+        lock.unlock();
+      }
+      if (pooled == null) {
+        // We reserved a slot for a new connection
+        pooled = openConnection(true);
+      } else if (validateOnBorrow && !isValid(pooled.conn)) {
+        lock.lock();
+        try {
+          nValidationFailures++;
+        } finally {
+          lock.unlock();
+        }
+        destroy(pooled);
+        continue;
+      }
+      recordBorrow(System.nanoTime() - t0);
+      return pooled.conn;
+    }
+  }
+
+  /**
+   * Give a connection back to the pool. Any open transaction is rolled back.
+   * If the connection has been closed or can't be reset, it is dropped from
+   * the pool instead.
+   * @param conn A connection obtained from this pool's getConnection()
+   * @throws SQLException If something goes wrong
+   */
+  @Override
+  public void releaseConnection(JLConnection conn) throws SQLException {
+    PooledConnection pooled = checkOut(conn);
+    boolean isReusable = resetForReuse(conn);
+    lock.lock();
+    try {
+      if (isReusable && !isClosed) {
+        pooled.lastReleasedNanos = System.nanoTime();
+        idle.addFirst(pooled);
+        available.signal();
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+    destroy(pooled);
+  }
+
+  /**
+   * Give back a connection that the caller knows is broken. It is closed and
+   * dropped from the pool, instead of being reused.
+   * @param conn A connection obtained from this pool's getConnection()
+   */
+  public void invalidateConnection(JLConnection conn) {
+    destroy(checkOut(conn));
+  }
+
+  /**
+   * Open connections until there are at least minSize. This is done in the
+   * background by the eviction task; call it directly to warm up the pool.
+   * @throws SQLException If opening a connection fails
+   */
+  public void fillToMinSize() throws SQLException {
+    while (true) {
+      lock.lock();
+      try {
+        if (isClosed || all.size() + nPending >= Math.min(minSize, maxSize)) {
+          return;
+        }
+        nPending++;
+      } finally {
+        lock.unlock();
+      }
+      PooledConnection pooled = openConnection(false);
+      lock.lock();
+      try {
+        if (!isClosed) {
+          pooled.lastReleasedNanos = System.nanoTime();
+          idle.addFirst(pooled);
+          available.signal();
+          continue;
+        }
+      } finally {
+        lock.unlock();
+      }
+      destroy(pooled);
+      return;
+    }
+  }
+
+  /**
+   * Close connections that have been idle for longer than idleTimeoutMillis,
+   * leaving at least minSize open. This is done periodically in the background.
+   * @return The number of connections closed
+   */
+  public int evictIdle() {
+    List<PooledConnection> evicted = new ArrayList<>();
+    lock.lock();
+    try {
+      if (idleTimeoutMillis <= 0) {
+        return 0;
+      }
+      long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+      // The longest-idle connections are at the end
+      Iterator<PooledConnection> it = idle.descendingIterator();
+      while (it.hasNext() && all.size() + nPending - evicted.size() > minSize) {
+        PooledConnection pooled = it.next();
+        if (pooled.lastReleasedNanos - cutoff > 0) {
+          break;
+        }
+        it.remove();
+        evicted.add(pooled);
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (PooledConnection pooled : evicted) {
+      destroy(pooled);
+    }
+    return evicted.size();
+  }
+
+  /**
+   * Close all idle connections and stop the eviction task. Connections still
+   * in use are closed when they are released. After this, getConnection() fails.
+   */
+  public void close() {
+    List<PooledConnection> toClose;
+    lock.lock();
+    try {
+      isClosed = true;
+      if (evictionTask != null) {
+        evictionTask.cancel(false);
+        evictionTask = null;
+      }
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    for (PooledConnection pooled : toClose) {
+      destroy(pooled);
+    }
+  }
+
+  public boolean isClosed() {
+    lock.lock();
+    try {
+      return isClosed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Open a new connection for a slot already reserved by incrementing nPending.
+   */
+  private PooledConnection openConnection(boolean inUse) throws SQLException {
+    JLConnection conn;
+    try {
+      conn = source.getConnection();
+    } catch (SQLException | RuntimeException e) {
+      lock.lock();
+      try {
+        nPending--;
+        available.signal();
+      } finally {
+        lock.unlock();
+      }
+      throw e;
+    }
+    conn.statementCacheSize = statementCacheSize;
+    PooledConnection pooled = new PooledConnection(conn);
+    pooled.inUse = inUse;
+    lock.lock();
+    try {
+      nPending--;
+      all.put(conn, pooled);
+      nCreated++;
+    } finally {
+      lock.unlock();
+    }
+    return pooled;
+  }
+
+  /**
+   * Mark a borrowed connection as no longer in use by its borrower.
+   */
+  private PooledConnection checkOut(JLConnection conn) {
+    lock.lock();
+    try {
+      PooledConnection pooled = all.get(conn);
+      if (pooled == null) {
+        throw new IllegalArgumentException("Connection was not obtained from this pool: " + conn);
+      }
+      if (!pooled.inUse) {
+        throw new IllegalStateException("Connection has already been released: " + conn);
+      }
+      pooled.inUse = false;
+      return pooled;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drop a connection from the pool and close it.
+   */
+  private void destroy(PooledConnection pooled) {
+    lock.lock();
+    try {
+      if (all.remove(pooled.conn) == null) {
+        return;
+      }
+      nDestroyed++;
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+    pooled.conn.clearStatementCache();
+    try {
+      source.releaseConnection(pooled.conn);
+    } catch (SQLException | RuntimeException e) {
+      // The connection is being discarded, probably because it's already broken
+    }
+  }
+
+  private boolean isValid(JLConnection conn) {
+    try {
+      Connection jdbcConn = conn.jdbcConn;
+      if (jdbcConn.isClosed()) {
+        return false;
+      }
+      if (validationQuery == null) {
+        return jdbcConn.isValid(validationTimeoutSeconds);
+      }
+      try (Statement stmt = jdbcConn.createStatement()) {
+        stmt.setQueryTimeout(validationTimeoutSeconds);
+        stmt.execute(validationQuery);
+      }
+      return true;
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Roll back and restore auto-commit on a released connection.
+   * @return false if the connection is closed or could not be reset
+   */
+  private static boolean resetForReuse(JLConnection conn) {
+    try {
+      Connection jdbcConn = conn.jdbcConn;
+      if (jdbcConn.isClosed()) {
+        return false;
+      }
+      if (!jdbcConn.getAutoCommit()) {
+        jdbcConn.rollback();
+        jdbcConn.setAutoCommit(true);
+      }
+      jdbcConn.clearWarnings();
+      return true;
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Start the background eviction task, if it is needed and not running. Must
+   * be called with the lock held.
+   */
+  private void startEvictionTask() {
+    if (evictionTask != null || isClosed || evictionIntervalMillis <= 0
+            || (idleTimeoutMillis <= 0 && minSize <= 0)) {
+      return;
+    }
+    evictionTask = EVICTOR.scheduleWithFixedDelay(() -> {
+      evictIdle();
+      try {
+        fillToMinSize();
+      } catch (SQLException | RuntimeException e) {
+        // Try again next time; getConnection() will report the error if it persists
+      }
+    }, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void recordBorrow(long waitNanos) {
+    lock.lock();
+    try {
+      nBorrows++;
+      totalWaitNanos += waitNanos;
+      maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+      long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+      int iBucket = 0;
+      while (iBucket < WAIT_HISTOGRAM_BOUNDS_MILLIS.length
+              && waitMillis >= WAIT_HISTOGRAM_BOUNDS_MILLIS[iBucket]) {
+        iBucket++;
+      }
+      waitHistogram[iBucket]++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The number of connections open, idle or in use.
+   * @return The connection count
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return all.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getIdleCount() {
+    lock.lock();
+    try {
+      return idle.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getActiveCount() {
+    lock.lock();
+    try {
+      return all.size() - idle.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getBorrows() {
+    lock.lock();
+    try {
+      return nBorrows;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The mean time getConnection() took, including validation and opening
+   * new connections.
+   * @return The mean wait, in milliseconds
+   */
+  public double getMeanWaitMillis() {
+    lock.lock();
+    try {
+      return nBorrows == 0 ? 0 : totalWaitNanos / 1e6 / nBorrows;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The longest time getConnection() took.
+   * @return The max wait, in milliseconds
+   */
+  public double getMaxWaitMillis() {
+    lock.lock();
+    try {
+      return maxWaitNanos / 1e6;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Counts of borrows by how long they waited. Element i counts waits shorter
+   * than WAIT_HISTOGRAM_BOUNDS_MILLIS[i] (and not shorter than the previous
+   * bound); the last element counts the rest.
+   * @return The histogram counts
+   */
+  public long[] getWaitHistogram() {
+    lock.lock();
+    try {
+      return waitHistogram.clone();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The number of getConnection() calls that gave up after maxWaitMillis.
+   * @return The timeout count
+   */
+  public long getTimeouts() {
+    lock.lock();
+    try {
+      return nTimeouts;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getCreated() {
+    lock.lock();
+    try {
+      return nCreated;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getDestroyed() {
+    lock.lock();
+    try {
+      return nDestroyed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The number of idle connections that failed validation and were dropped.
+   * @return The validation failure count
+   */
+  public long getValidationFailures() {
+    lock.lock();
+    try {
+      return nValidationFailures;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reset the borrow, wait, timeout, created, destroyed, and validation
+   * failure counters.
+   */
+  public void resetStats() {
+    lock.lock();
+    try {
+      nBorrows = 0;
+      totalWaitNanos = 0;
+      maxWaitNanos = 0;
+      Arrays.fill(waitHistogram, 0);
+      nTimeouts = 0;
+      nCreated = 0;
+      nDestroyed = 0;
+      nValidationFailures = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    lock.lock();
+    try {
+      return String.format("JLConnectionPool: %s; %d open (%d idle) of %d-%d, %d borrows, "
+              + "mean wait %.3f ms, max wait %.3f ms, %d timeouts, %d created, %d destroyed, "
+              + "%d validation failures%s", source, all.size(), idle.size(), minSize, maxSize,
+              nBorrows, nBorrows == 0 ? 0.0 : totalWaitNanos / 1e6 / nBorrows, maxWaitNanos / 1e6,
+              nTimeouts, nCreated, nDestroyed, nValidationFailures, isClosed ? " (CLOSED)" : "");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static class PooledConnection {
+    final JLConnection conn;
+    boolean inUse;
+    long lastReleasedNanos;
+
+    PooledConnection(JLConnection conn) {
+      this.conn = conn;
+    }
+  }
+}
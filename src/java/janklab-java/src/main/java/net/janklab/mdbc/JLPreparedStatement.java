@@ -1,8 +1,13 @@
 package net.janklab.mdbc;
 
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import static java.util.Objects.requireNonNull;
 
@@ -14,6 +19,30 @@ public class JLPreparedStatement {
   
   public final PreparedStatement jdbcStatement;
   public final List<ParamBinder> binders = new ArrayList<>();
+  /** Rows per executeBatch() call in executeBulk(). */
+  public int rowsPerBatch = 10000;
+  /** 
+   * In executeBulk(), commit after this many batches, and at the end. 0 means
+   * never commit. Ignored if the connection is in auto-commit mode.
+   */
+  public int batchesPerCommit = 0;
+  /**
+   * Maximum number of binder chains to keep for reuse, one per parameter
+   * conversion signature. 0 disables reuse.
+   */
+  public int maxBinderChains = 4;
+  /**
+   * If set, bindBatch() and executeBulk() record their per-parameter bind
+   * times here. Null (the default) means no instrumentation.
+   */
+  public TransferMetrics metrics;
+  
+  private final LinkedHashMap<String, ParamBinder[]> binderChains =
+          new LinkedHashMap<>(8, 0.75f, true);
+  private long binderChainHits;
+  private long binderChainMisses;
+  /** Set while a JLConnection has handed this out. Guarded by that connection's lock. */
+  boolean checkedOut;
   
   public JLPreparedStatement(PreparedStatement jdbcStatement) {
     requireNonNull(jdbcStatement);
@@ -25,15 +54,198 @@ public class JLPreparedStatement {
     binders.add(binder);
   }
   
+  /**
+   * Clear the parameters, pending batch, and binders, so the statement can be
+   * set up and executed again. Saved binder chains are kept.
+   * @throws SQLException If the driver fails to clear the statement
+   */
+  public void reset() throws SQLException {
+    jdbcStatement.clearParameters();
+    jdbcStatement.clearBatch();
+    clearBuffers();
+    binders.clear();
+  }
+  
+  /**
+   * Switch to the binders saved for a parameter conversion signature, if there
+   * are any. The signature is an opaque string that identifies the conversion
+   * used for each parameter, in order; binders saved under it are already
+   * attached, and just need their buffers set.
+   * 
+   * On a miss, the binders are cleared, and the caller should add new ones
+   * and then call saveBinderChain() with the same signature.
+   * @param signature The parameter conversion signature
+   * @return true if saved binders were restored, false if not
+   */
+  public boolean useBinderChain(String signature) {
+    ParamBinder[] chain = maxBinderChains > 0 ? binderChains.get(signature) : null;
+    binders.clear();
+    if (chain == null) {
+      binderChainMisses++;
+      return false;
+    }
+    binders.addAll(Arrays.asList(chain));
+    binderChainHits++;
+    return true;
+  }
+  
+  /**
+   * Save the current binders for reuse by useBinderChain().
+   * @param signature The parameter conversion signature they were set up for
+   */
+  public void saveBinderChain(String signature) {
+    if (maxBinderChains <= 0) {
+      return;
+    }
+    binderChains.put(signature, binders.toArray(new ParamBinder[0]));
+    Iterator<String> it = binderChains.keySet().iterator();
+    while (binderChains.size() > maxBinderChains && it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+  }
+  
+  /**
+   * Drop the binders' references to their value buffers, so a statement kept
+   * for reuse doesn't hold on to the data from its last execution.
+   */
+  public void clearBuffers() {
+    for (ParamBinder binder : binders) {
+      binder.clearBuffer();
+    }
+  }
+  
+  public int getBinderChainCount() {
+    return binderChains.size();
+  }
+  
+  public long getBinderChainHits() {
+    return binderChainHits;
+  }
+  
+  public long getBinderChainMisses() {
+    return binderChainMisses;
+  }
+  
+  /**
+   * Start recording bind metrics into a new TransferMetrics.
+   * @return The metrics object, which is also set as this' metrics field
+   */
+  public TransferMetrics enableMetrics() {
+    metrics = new TransferMetrics();
+    return metrics;
+  }
+  
   public void bindBatch(int batchSize) throws SQLException {
+    ParamBindPlan plan = new ParamBindPlan(binders);
+    TransferMetrics m = metrics;
+    if (m != null) {
+      bindRowsTimed(plan, 0, batchSize, m);
+      return;
+    }
     for (int i = 0; i < batchSize; i++) {
-      for (int iParam = 0; iParam < binders.size(); iParam++) {
-        binders.get(iParam).bindParam(i);
-      }
+      plan.bindRow(i);
       jdbcStatement.addBatch();
     }
   }
   
+  /**
+   * Bind and add rows [iStart, iEnd) to the batch, recording the time taken.
+   */
+  private void bindRowsTimed(ParamBindPlan plan, int iStart, int iEnd, TransferMetrics m)
+          throws SQLException {
+    long alloc0 = TransferMetrics.currentThreadAllocatedBytes();
+    long[] paramNanos = new long[plan.getNParams()];
+    long t0 = System.nanoTime();
+    long t = t0;
+    for (int i = iStart; i < iEnd; i++) {
+      plan.bindRowTimed(i, t, paramNanos);
+      jdbcStatement.addBatch();
+      t = System.nanoTime();
+    }
+    long alloc1 = TransferMetrics.currentThreadAllocatedBytes();
+    m.recordBind(iEnd - iStart, t - t0, paramNanos,
+            alloc0 < 0 ? -1 : alloc1 - alloc0);
+  }
+  
+  /**
+   * Bind and execute nRows rows as a series of batches of rowsPerBatch rows,
+   * so the driver never has to buffer the whole data set at once.
+   * 
+   * If a batch fails, the BatchUpdateException that is raised has the update
+   * counts for all the rows executed so far, including those from earlier
+   * batches. On any failure, the statement's pending batch is cleared.
+   * @param nRows The number of rows to bind from the binders' buffers
+   * @return The update counts for all the rows, in order
+   * @throws SQLException If something goes wrong
+   */
+  public int[] executeBulk(int nRows) throws SQLException {
+    if (rowsPerBatch < 1) {
+      throw new IllegalArgumentException("rowsPerBatch must be positive; got " + rowsPerBatch);
+    }
+    ParamBindPlan plan = new ParamBindPlan(binders);
+    TransferMetrics m = metrics;
+    Connection conn = jdbcStatement.getConnection();
+    boolean doCommits = batchesPerCommit > 0 && !conn.getAutoCommit();
+    int[] updateCounts = new int[nRows];
+    int nCounts = 0;
+    int nBatches = 0;
+    try {
+      for (int iStart = 0; iStart < nRows; iStart += rowsPerBatch) {
+        int iEnd = Math.min(nRows, iStart + rowsPerBatch);
+        if (m != null) {
+          bindRowsTimed(plan, iStart, iEnd, m);
+        } else {
+          for (int i = iStart; i < iEnd; i++) {
+            plan.bindRow(i);
+            jdbcStatement.addBatch();
+          }
+        }
+        long tExecute = m != null ? System.nanoTime() : 0;
+        int[] batchCounts;
+        try {
+          batchCounts = jdbcStatement.executeBatch();
+        } catch (BatchUpdateException e) {
+          int[] failedCounts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+          int[] soFar = Arrays.copyOf(updateCounts, nCounts + failedCounts.length);
+          System.arraycopy(failedCounts, 0, soFar, nCounts, failedCounts.length);
+          throw new BatchUpdateException("Batch " + (nBatches+1) + " (rows " + (iStart+1) + "-"
+                  + iEnd + ") failed: " + e.getMessage(), e.getSQLState(), e.getErrorCode(),
+                  soFar, e);
+        }
+        if (m != null) {
+          m.recordExecute(System.nanoTime() - tExecute);
+        }
+        updateCounts = appendCounts(updateCounts, nCounts, batchCounts);
+        nCounts += batchCounts.length;
+        nBatches++;
+        if (doCommits && nBatches % batchesPerCommit == 0) {
+          conn.commit();
+        }
+      }
+      if (doCommits && nBatches % batchesPerCommit != 0) {
+        conn.commit();
+      }
+    } catch (SQLException | RuntimeException e) {
+      // Don't leave rows queued on a statement that may be handed out again
+      try {
+        jdbcStatement.clearBatch();
+      } catch (SQLException e2) {
+        e.addSuppressed(e2);
+      }
+      throw e;
+    }
+    return nCounts == updateCounts.length ? updateCounts : Arrays.copyOf(updateCounts, nCounts);
+  }
+  
+  private static int[] appendCounts(int[] counts, int nCounts, int[] more) {
+    if (nCounts + more.length > counts.length) {
+      counts = Arrays.copyOf(counts, nCounts + more.length);
+    }
+    System.arraycopy(more, 0, counts, nCounts, more.length);
+    return counts;
+  }
+  
   public void bindSingle() throws SQLException {
       for (int iParam = 0; iParam < binders.size(); iParam++) {
         binders.get(iParam).bindParam(0);
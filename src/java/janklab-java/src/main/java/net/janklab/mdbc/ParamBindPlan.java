@@ -0,0 +1,126 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import java.util.List;
+import net.janklab.mdbc.params.DoubleParamBinder;
+import net.janklab.mdbc.params.LocaldatenumToSqlDateParamBinder;
+import net.janklab.mdbc.params.StringParamBinder;
+import net.janklab.mdbc.params.SymbolParamBinder;
+import net.janklab.mdbc.params.TimeParamBinder;
+import net.janklab.mdbc.params.TimestampParamBinder;
+
+/**
+ * Binds whole rows of parameters from a fixed set of binders, resolving each
+ * parameter's binder type once up front instead of on every value.
+ *
+ * This is the binding counterpart of RowFetchPlan. The binders are snapshotted
+ * into an array, each is tagged with its concrete class, and the row loop
+ * switches on the tag, so each case has a call site that only ever sees one
+ * binder class and can be inlined. The attachment check is done once here
+ * instead of once per value. Binder classes that aren't known here, including
+ * subclasses of the known ones, fall back to the generic call.
+ */
+final class ParamBindPlan {
+
+  private static final int GENERIC = 0;
+  private static final int DOUBLE = 1;
+  private static final int STRING = 2;
+  private static final int SYMBOL = 3;
+  private static final int TIMESTAMP = 4;
+  private static final int TIME = 5;
+  private static final int DATE = 6;
+
+  private final ParamBinder[] binders;
+  private final int[] kinds;
+
+  ParamBindPlan(List<ParamBinder> binders) throws SQLException {
+    this.binders = binders.toArray(new ParamBinder[0]);
+    this.kinds = new int[this.binders.length];
+    for (int i = 0; i < this.binders.length; i++) {
+      this.binders[i].requireAttached();
+      kinds[i] = kindOf(this.binders[i]);
+    }
+  }
+
+  private static int kindOf(ParamBinder binder) {
+    Class<?> klass = binder.getClass();
+    if (klass == DoubleParamBinder.class) {
+      return DOUBLE;
+    } else if (klass == StringParamBinder.class) {
+      return STRING;
+    } else if (klass == SymbolParamBinder.class) {
+      return SYMBOL;
+    } else if (klass == TimestampParamBinder.class) {
+      return TIMESTAMP;
+    } else if (klass == TimeParamBinder.class) {
+      return TIME;
+    } else if (klass == LocaldatenumToSqlDateParamBinder.class) {
+      return DATE;
+    } else {
+      return GENERIC;
+    }
+  }
+
+  /**
+   * Bind all the parameters for one row.
+   * @param index The row index into the binders' buffers
+   * @throws SQLException If something goes wrong
+   */
+  void bindRow(int index) throws SQLException {
+    final ParamBinder[] bs = binders;
+    final int[] ks = kinds;
+    for (int i = 0; i < bs.length; i++) {
+      bindParam(bs[i], ks[i], index);
+    }
+  }
+
+  /**
+   * Bind all the parameters for one row, adding the time spent on each
+   * parameter to paramNanos.
+   * @param index The row index into the binders' buffers
+   * @param t The System.nanoTime() at which the row's binding started
+   * @param paramNanos Per-parameter time accumulators
+   * @return The System.nanoTime() at which the row's binding ended
+   * @throws SQLException If something goes wrong
+   */
+  long bindRowTimed(int index, long t, long[] paramNanos) throws SQLException {
+    final ParamBinder[] bs = binders;
+    final int[] ks = kinds;
+    for (int i = 0; i < bs.length; i++) {
+      bindParam(bs[i], ks[i], index);
+      long t2 = System.nanoTime();
+      paramNanos[i] += t2 - t;
+      t = t2;
+    }
+    return t;
+  }
+
+  int getNParams() {
+    return binders.length;
+  }
+
+  private static void bindParam(ParamBinder binder, int kind, int index) throws SQLException {
+    switch (kind) {
+      case DOUBLE:
+        ((DoubleParamBinder) binder).bindAttachedParam(index);
+        break;
+      case STRING:
+        ((StringParamBinder) binder).bindAttachedParam(index);
+        break;
+      case SYMBOL:
+        ((SymbolParamBinder) binder).bindAttachedParam(index);
+        break;
+      case TIMESTAMP:
+        ((TimestampParamBinder) binder).bindAttachedParam(index);
+        break;
+      case TIME:
+        ((TimeParamBinder) binder).bindAttachedParam(index);
+        break;
+      case DATE:
+        ((LocaldatenumToSqlDateParamBinder) binder).bindAttachedParam(index);
+        break;
+      default:
+        binder.bindParam(index);
+    }
+  }
+}
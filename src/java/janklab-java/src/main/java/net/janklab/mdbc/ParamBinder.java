@@ -26,4 +26,24 @@ public abstract class ParamBinder {
   }
   
   public abstract void bindParam(int index) throws SQLException;
+  
+  /**
+   * Drop the reference to the buffer of values to bind, so a binder kept for
+   * reuse doesn't hold on to the last call's data. Subclasses with a buffer
+   * should override this to null it out.
+   */
+  public void clearBuffer() {
+  }
+  
+  /**
+   * Bind a value, skipping the check that this is attached. ParamBindPlan
+   * calls this after checking all its binders once up front. Subclasses
+   * should override it with their binding logic, and have bindParam() call
+   * requireAttached() and then this. The default just calls bindParam().
+   * @param index The index of the value in the buffer to bind
+   * @throws SQLException If something goes wrong
+   */
+  public void bindAttachedParam(int index) throws SQLException {
+    bindParam(index);
+  }
 }
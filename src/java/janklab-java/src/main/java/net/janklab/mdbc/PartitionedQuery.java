@@ -0,0 +1,246 @@
+package net.janklab.mdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a parameterized query once per partition, concurrently on several
+ * connections, and returns the combined results.
+ *
+ * This is for big extracts that are split up by key range (or some other
+ * partitioning), like "SELECT ... WHERE id >= ? AND id < ?". Each partition
+ * is one set of parameter values for the query. The partitions are run on up
+ * to nThreads connections at once, each fetching into its own ResultSetBuffer,
+ * and the results are concatenated in partition order.
+ *
+ * The column buffers set with setColumnBuffer() are used as prototypes; each
+ * partition fetches into its own copies of them, made with
+ * ColumnBuffer.newInstance().
+ */
+public class PartitionedQuery {
+
+  public final JLConnectionFactory connectionFactory;
+  public final String sql;
+  /** Maximum number of partitions to run at once. */
+  public int nThreads = 4;
+  /** JDBC fetch size hint for each partition's ResultSet, or 0 to use the driver's default. */
+  public int fetchSize = 0;
+  /**
+   * Rows per chunk when fetching each partition. A partition's chunks are
+   * concatenated once it is done, so this bounds the buffers' preallocation,
+   * not the partition size.
+   */
+  public int rowsPerChunk = 10000;
+
+  private final List<Object[]> partitionParams = new ArrayList<>();
+  private final List<ColumnBuffer> columnBuffers = new ArrayList<>();
+
+  public PartitionedQuery(JLConnectionFactory connectionFactory, String sql) {
+    this.connectionFactory = connectionFactory;
+    this.sql = sql;
+  }
+
+  /**
+   * Add a partition to run.
+   * @param params The values to bind to the query's parameters for this partition,
+   * in order. They are bound with PreparedStatement.setObject().
+   */
+  public void addPartition(Object[] params) {
+    partitionParams.add(params.clone());
+  }
+
+  /**
+   * Get the number of partitions that have been added.
+   * @return The number of partitions
+   */
+  public int getNPartitions() {
+    return partitionParams.size();
+  }
+
+  /**
+   * Sets the prototype column buffer to use for a given column.
+   * @param colIndex The column index, 1-indexed
+   * @param columnBuffer The buffer to copy for each partition
+   */
+  public void setColumnBuffer(int colIndex, ColumnBuffer columnBuffer) {
+    while (columnBuffers.size() < colIndex) {
+      columnBuffers.add(null);
+    }
+    columnBuffers.set(colIndex - 1, columnBuffer);
+  }
+
+  /**
+   * Run all the partitions and combine their results.
+   *
+   * If any partition fails, the others are cancelled, and its error is raised.
+   * @return The combined results, in partition order
+   * @throws SQLException If any partition fails
+   */
+  public ResultSetFetchResult execute() throws SQLException {
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("nThreads must be positive; got " + nThreads);
+    }
+    if (rowsPerChunk < 1) {
+      throw new IllegalArgumentException("rowsPerChunk must be positive; got " + rowsPerChunk);
+    }
+    for (int iCol = 0; iCol < columnBuffers.size(); iCol++) {
+      if (columnBuffers.get(iCol) == null) {
+        throw new IllegalStateException("No column buffer set for column " + (iCol+1));
+      }
+    }
+    int nPartitions = partitionParams.size();
+    if (nPartitions == 0) {
+      throw new IllegalStateException("No partitions have been added");
+    }
+    ResultSetFetchResult[] results = new ResultSetFetchResult[nPartitions];
+    PreparedStatement[] activeStatements = new PreparedStatement[nPartitions];
+    AtomicInteger threadCounter = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(nThreads, nPartitions),
+            (r) -> {
+              Thread t = new Thread(r, "mdbc-partition-" + threadCounter.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+    try {
+      CompletionService<Integer> completions = new ExecutorCompletionService<>(executor);
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < nPartitions; i++) {
+        final int iPartition = i;
+        futures.add(completions.submit(() -> {
+          results[iPartition] = fetchPartition(iPartition, activeStatements);
+          return iPartition;
+        }));
+      }
+      for (int i = 0; i < nPartitions; i++) {
+        try {
+          completions.take().get();
+        } catch (ExecutionException e) {
+          cancelAll(futures, activeStatements);
+          Throwable cause = e.getCause();
+          if (cause instanceof PartitionException) {
+            PartitionException pe = (PartitionException) cause;
+            SQLException se = pe.sqlException;
+            throw new SQLException("Error in partition " + (pe.iPartition+1) + ": "
+                    + se.getMessage(), se.getSQLState(), se.getErrorCode(), se);
+          }
+          throw new SQLException("Error in partitioned query: " + cause, cause);
+        } catch (InterruptedException e) {
+          cancelAll(futures, activeStatements);
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while running partitioned query", e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return combine(results);
+  }
+
+  /**
+   * Run a single partition and fetch all its results.
+   */
+  private ResultSetFetchResult fetchPartition(int iPartition, PreparedStatement[] activeStatements)
+          throws PartitionException {
+    JLConnection conn = null;
+    try {
+      conn = connectionFactory.getConnection();
+      try (PreparedStatement stmt = conn.jdbcConn.prepareStatement(sql)) {
+        synchronized (activeStatements) {
+          activeStatements[iPartition] = stmt;
+        }
+        Object[] params = partitionParams.get(iPartition);
+        for (int i = 0; i < params.length; i++) {
+          stmt.setObject(i + 1, params[i]);
+        }
+        if (fetchSize > 0) {
+          stmt.setFetchSize(fetchSize);
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          ResultSetBuffer rsBuffer = new ResultSetBuffer(rs);
+          if (rsBuffer.nColumns != columnBuffers.size()) {
+            throw new SQLException("Partition " + (iPartition+1) + " returned "
+                    + rsBuffer.nColumns + " columns, but column buffers were set for "
+                    + columnBuffers.size());
+          }
+          // Fresh buffers for each chunk, since fetch() reuses its buffers'
+          // arrays and these chunks are held until the partition is done
+          List<ResultSetFetchResult> chunks = new ArrayList<>();
+          ResultSetFetchResult chunk;
+          do {
+            for (int iCol = 0; iCol < rsBuffer.nColumns; iCol++) {
+              rsBuffer.setColumnBuffer(iCol + 1, columnBuffers.get(iCol).newInstance());
+            }
+            chunk = rsBuffer.fetch(rowsPerChunk);
+            chunks.add(chunk);
+          } while (!chunk.isFinished);
+          return chunks.size() == 1 ? chunk : ResultSetFetchResult.concat(chunks);
+        } finally {
+          synchronized (activeStatements) {
+            activeStatements[iPartition] = null;
+          }
+        }
+      }
+    } catch (SQLException e) {
+      throw new PartitionException(iPartition, e);
+    } finally {
+      if (conn != null) {
+        try {
+          connectionFactory.releaseConnection(conn);
+        } catch (SQLException e) {
+          // Ignore; the partition's own result or error is more important
+        }
+      }
+    }
+  }
+
+  private static void cancelAll(List<Future<Integer>> futures, PreparedStatement[] activeStatements) {
+    for (Future<Integer> future : futures) {
+      future.cancel(true);
+    }
+    synchronized (activeStatements) {
+      for (PreparedStatement stmt : activeStatements) {
+        if (stmt != null) {
+          try {
+            stmt.cancel();
+          } catch (SQLException e) {
+            // Not all drivers support cancellation
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Concatenate the per-partition results, in order.
+   */
+  private static ResultSetFetchResult combine(ResultSetFetchResult[] results) {
+    return ResultSetFetchResult.concat(Arrays.asList(results));
+  }
+
+  /**
+   * Carries a partition's SQLException, and which partition it was, out of the
+   * worker thread.
+   */
+  private static class PartitionException extends Exception {
+    private static final long serialVersionUID = 1L;
+    final int iPartition;
+    final SQLException sqlException;
+
+    PartitionException(int iPartition, SQLException sqlException) {
+      super(sqlException);
+      this.iPartition = iPartition;
+      this.sqlException = sqlException;
+    }
+  }
+}
@@ -0,0 +1,459 @@
+package net.janklab.mdbc;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import net.janklab.mdbc.colbuf.BufferArrays;
+
+/**
+ * A client-side cache of fully-fetched query results, for reference data
+ * queries that get run over and over.
+ *
+ * Results are keyed on the connection URL, user, SQL text, and bound parameter
+ * values. Each cached result holds all of a result set's rows in the same
+ * columnar buffer format a normal fetch hands off (primitive arrays, packed
+ * strings, and so on), along with a snapshot of the result set's metadata, so
+ * a hit can be converted to Matlab exactly like a fresh fetch.
+ *
+ * The cache is bounded by the estimated size of the results it holds, and
+ * evicts least-recently-used results to stay under maxBytes. Results may also
+ * have a time to live, and may be tagged (with table names, say) so they can
+ * be invalidated together when the underlying data changes.
+ *
+ * Caching is opt-in: nothing is cached unless put() is called. This class is
+ * thread-safe.
+ */
+public class QueryResultCache {
+
+  /** Maximum estimated size of all cached results, in bytes. */
+  public long maxBytes = 256L << 20;
+  /** Time to live for results put without an explicit TTL, in milliseconds. 0 means forever. */
+  public long defaultTtlMillis = 0;
+
+  private final LinkedHashMap<Key, Node> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long nBytes;
+  private long nHits;
+  private long nMisses;
+  private long nEvictions;
+  private long nExpirations;
+  private long nInvalidations;
+
+  /**
+   * Look up a cached result.
+   * @param url The connection's base URL
+   * @param user The connection's user
+   * @param sql The SQL text
+   * @param params The bound parameter values, or null if there are none
+   * @return The cached result, or null if there is none or it has expired
+   */
+  public synchronized CachedResult get(String url, String user, String sql, Object[] params) {
+    Key key = new Key(url, user, sql, params);
+    Node node = entries.get(key);
+    if (node != null && node.isExpired(System.currentTimeMillis())) {
+      remove(key);
+      nExpirations++;
+      node = null;
+    }
+    if (node == null) {
+      nMisses++;
+      return null;
+    }
+    nHits++;
+    return node.result;
+  }
+
+  /**
+   * Cache a result, with the default TTL and no tags.
+   * @param url The connection's base URL
+   * @param user The connection's user
+   * @param sql The SQL text
+   * @param params The bound parameter values, or null if there are none
+   * @param result The result to cache
+   * @return true if the result was cached; false if it was too big
+   */
+  public boolean put(String url, String user, String sql, Object[] params, CachedResult result) {
+    return put(url, user, sql, params, result, -1, null);
+  }
+
+  /**
+   * Cache a result. Any existing result for the same key is replaced.
+   * @param url The connection's base URL
+   * @param user The connection's user
+   * @param sql The SQL text
+   * @param params The bound parameter values, or null if there are none
+   * @param result The result to cache
+   * @param ttlMillis Time to live in milliseconds; 0 means forever, and
+   * negative means use defaultTtlMillis
+   * @param tags Tags to invalidate the result by, or null for none
+   * @return true if the result was cached; false if it was too big
+   */
+  public synchronized boolean put(String url, String user, String sql, Object[] params,
+          CachedResult result, long ttlMillis, String[] tags) {
+    Objects.requireNonNull(result);
+    Key key = new Key(url, user, sql, params);
+    remove(key);
+    if (result.bytes > maxBytes) {
+      return false;
+    }
+    long ttl = ttlMillis < 0 ? defaultTtlMillis : ttlMillis;
+    long expiresAt = ttl == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + ttl;
+    Set<String> tagSet = tags == null ? Collections.emptySet()
+            : new HashSet<>(Arrays.asList(tags));
+    entries.put(key, new Node(result, expiresAt, tagSet));
+    nBytes += result.bytes;
+    evictToFit();
+    return true;
+  }
+
+  /**
+   * Remove all results with a given tag.
+   * @param tag The tag
+   * @return The number of results removed
+   */
+  public synchronized int invalidateTag(String tag) {
+    int n = 0;
+    for (Iterator<Node> it = entries.values().iterator(); it.hasNext(); ) {
+      Node node = it.next();
+      if (node.tags.contains(tag)) {
+        it.remove();
+        nBytes -= node.result.bytes;
+        n++;
+      }
+    }
+    nInvalidations += n;
+    return n;
+  }
+
+  /**
+   * Remove the cached result for a single query, if there is one.
+   * @param url The connection's base URL
+   * @param user The connection's user
+   * @param sql The SQL text
+   * @param params The bound parameter values, or null if there are none
+   * @return true if a result was removed
+   */
+  public synchronized boolean invalidate(String url, String user, String sql, Object[] params) {
+    boolean removed = remove(new Key(url, user, sql, params));
+    if (removed) {
+      nInvalidations++;
+    }
+    return removed;
+  }
+
+  /**
+   * Remove all cached results.
+   */
+  public synchronized void invalidateAll() {
+    nInvalidations += entries.size();
+    entries.clear();
+    nBytes = 0;
+  }
+
+  /**
+   * Evict least-recently-used results until the cache fits in maxBytes.
+   */
+  private void evictToFit() {
+    Iterator<Node> it = entries.values().iterator();
+    while (nBytes > maxBytes && it.hasNext()) {
+      Node node = it.next();
+      it.remove();
+      nBytes -= node.result.bytes;
+      nEvictions++;
+    }
+  }
+
+  private boolean remove(Key key) {
+    Node old = entries.remove(key);
+    if (old != null) {
+      nBytes -= old.result.bytes;
+    }
+    return old != null;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * The estimated size of all cached results.
+   * @return The size, in bytes
+   */
+  public synchronized long getBytes() {
+    return nBytes;
+  }
+
+  public synchronized long getHits() {
+    return nHits;
+  }
+
+  public synchronized long getMisses() {
+    return nMisses;
+  }
+
+  /**
+   * The number of results evicted to make room for others.
+   * @return The eviction count
+   */
+  public synchronized long getEvictions() {
+    return nEvictions;
+  }
+
+  /**
+   * The number of results dropped because their TTL was up.
+   * @return The expiration count
+   */
+  public synchronized long getExpirations() {
+    return nExpirations;
+  }
+
+  /**
+   * The number of results removed by invalidate(), invalidateTag(), or
+   * invalidateAll().
+   * @return The invalidation count
+   */
+  public synchronized long getInvalidations() {
+    return nInvalidations;
+  }
+
+  /**
+   * Reset the hit, miss, eviction, expiration, and invalidation counters.
+   */
+  public synchronized void resetStats() {
+    nHits = 0;
+    nMisses = 0;
+    nEvictions = 0;
+    nExpirations = 0;
+    nInvalidations = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("QueryResultCache: %d results, %d/%d bytes, %d hits, %d misses, "
+            + "%d evictions, %d expirations, %d invalidations", entries.size(), nBytes, maxBytes,
+            nHits, nMisses, nEvictions, nExpirations, nInvalidations);
+  }
+
+  /**
+   * Estimate the memory used by a fetch result's buffered data.
+   * @param result The fetch result
+   * @return The estimated size, in bytes
+   */
+  public static long estimateBytes(ResultSetFetchResult result) {
+    long out = 0;
+    for (Object data : result.bufferedColumnData) {
+      out += BufferArrays.estimateBytes(data);
+    }
+    for (long[] validity : result.columnValidity) {
+      if (validity != null) {
+        out += 16 + 8L * validity.length;
+      }
+    }
+    return out;
+  }
+
+  /**
+   * A fully-fetched result set, ready to be cached.
+   */
+  public static class CachedResult {
+    /** All the result set's rows, as a single fetch result. */
+    public final ResultSetFetchResult result;
+    /** A detached copy of the result set's metadata. */
+    public final ResultSetMetaData metaData;
+    /** The conversion name used to buffer each column. */
+    public final String[] conversionNames;
+    /** Estimated size, in bytes. */
+    public final long bytes;
+
+    public CachedResult(ResultSetFetchResult result, ResultSetMetaData metaData,
+            String[] conversionNames) {
+      this.result = result;
+      this.metaData = metaData;
+      this.conversionNames = conversionNames;
+      this.bytes = estimateBytes(result);
+    }
+  }
+
+  /**
+   * Collects the chunks of a result set as they are fetched, to build a
+   * CachedResult from once the fetch is done.
+   *
+   * Column buffers reuse their primitive arrays from chunk to chunk, so each
+   * chunk's data is copied as it is added. Once the copies would pass maxBytes,
+   * the result is too big to cache anyway, so they are dropped and nothing more
+   * is captured.
+   */
+  public static class Capture {
+    private final List<ResultSetFetchResult> chunks = new ArrayList<>();
+    private final ResultSetMetaData metaData;
+    private final String[] conversionNames;
+    private final long maxBytes;
+    private long nBytes;
+    private boolean isOverLimit;
+
+    /**
+     * @param metaData The metadata of the result set being fetched. A detached
+     * copy is taken, so this may be closed afterwards.
+     * @param conversionNames The conversion name used for each column
+     * @throws SQLException If reading the metadata fails
+     */
+    public Capture(ResultSetMetaData metaData, String[] conversionNames) throws SQLException {
+      this(metaData, conversionNames, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param metaData The metadata of the result set being fetched. A detached
+     * copy is taken, so this may be closed afterwards.
+     * @param conversionNames The conversion name used for each column
+     * @param maxBytes Estimated size past which to give up capturing; usually
+     * the maxBytes of the cache the result is for
+     * @throws SQLException If reading the metadata fails
+     */
+    public Capture(ResultSetMetaData metaData, String[] conversionNames, long maxBytes)
+            throws SQLException {
+      this.metaData = snapshotMetaData(metaData);
+      this.conversionNames = conversionNames.clone();
+      this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Add a fetched chunk. Does nothing once the capture has gone over its
+     * size limit.
+     * @param chunk The chunk, as returned by ResultSetBuffer.fetch()
+     */
+    public void add(ResultSetFetchResult chunk) {
+      if (isOverLimit) {
+        return;
+      }
+      nBytes += estimateBytes(chunk);
+      if (nBytes > maxBytes) {
+        isOverLimit = true;
+        chunks.clear();
+        return;
+      }
+      Object[] data = new Object[chunk.bufferedColumnData.length];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = BufferArrays.concat(Collections.singletonList(chunk.bufferedColumnData[i]));
+      }
+      chunks.add(new ResultSetFetchResult(data, chunk.columnValidity.clone(), chunk.nRows,
+              chunk.isFinished, chunk.warnings, chunk.warningRows, chunk.nWarningsDropped));
+    }
+
+    /**
+     * Whether the chunks added have gone over the size limit, so the result
+     * won't be cached.
+     * @return true if over the limit
+     */
+    public boolean isOverLimit() {
+      return isOverLimit;
+    }
+
+    /**
+     * Combine the chunks added so far into a CachedResult.
+     * @return The result, or null if the capture went over its size limit
+     */
+    public CachedResult finish() {
+      if (isOverLimit) {
+        return null;
+      }
+      if (chunks.isEmpty()) {
+        throw new IllegalStateException("No chunks have been added");
+      }
+      return new CachedResult(ResultSetFetchResult.concat(chunks), metaData, conversionNames);
+    }
+  }
+
+  /**
+   * Take a detached copy of a ResultSetMetaData, which stays usable after its
+   * result set is closed.
+   * @param md The metadata to copy
+   * @return The copy
+   * @throws SQLException If reading the metadata fails
+   */
+  public static ResultSetMetaData snapshotMetaData(ResultSetMetaData md) throws SQLException {
+    RowSetMetaDataImpl out = new RowSetMetaDataImpl();
+    int nCols = md.getColumnCount();
+    out.setColumnCount(nCols);
+    for (int i = 1; i <= nCols; i++) {
+      out.setColumnLabel(i, md.getColumnLabel(i));
+      out.setColumnName(i, md.getColumnName(i));
+      out.setColumnType(i, md.getColumnType(i));
+      out.setColumnTypeName(i, md.getColumnTypeName(i));
+      out.setPrecision(i, Math.max(0, md.getPrecision(i)));
+      out.setScale(i, Math.max(0, md.getScale(i)));
+      out.setSigned(i, md.isSigned(i));
+      out.setNullable(i, md.isNullable(i));
+      out.setColumnDisplaySize(i, Math.max(0, md.getColumnDisplaySize(i)));
+      out.setTableName(i, nullToEmpty(md.getTableName(i)));
+      out.setSchemaName(i, nullToEmpty(md.getSchemaName(i)));
+      out.setCatalogName(i, nullToEmpty(md.getCatalogName(i)));
+      out.setAutoIncrement(i, md.isAutoIncrement(i));
+      out.setCaseSensitive(i, md.isCaseSensitive(i));
+      out.setCurrency(i, md.isCurrency(i));
+      out.setSearchable(i, md.isSearchable(i));
+    }
+    return out;
+  }
+
+  private static String nullToEmpty(String str) {
+    return str == null ? "" : str;
+  }
+
+  /**
+   * Identifies a query: where it was run, and what was run.
+   */
+  private static final class Key {
+    final String url;
+    final String user;
+    final String sql;
+    final Object[] params;
+    final int hash;
+
+    Key(String url, String user, String sql, Object[] params) {
+      this.url = url;
+      this.user = user;
+      this.sql = Objects.requireNonNull(sql);
+      this.params = params == null ? new Object[0] : params.clone();
+      this.hash = Objects.hash(url, user, sql) * 31 + Arrays.deepHashCode(this.params);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && sql.equals(other.sql) && Objects.equals(url, other.url)
+              && Objects.equals(user, other.user) && Arrays.deepEquals(params, other.params);
+    }
+  }
+
+  private static final class Node {
+    final CachedResult result;
+    final long expiresAt;
+    final Set<String> tags;
+
+    Node(CachedResult result, long expiresAt, Set<String> tags) {
+      this.result = result;
+      this.expiresAt = expiresAt;
+      this.tags = tags;
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package net.janklab.mdbc;
+
+/**
+ * The column type conversions resolved for one result set schema, as cached by
+ * ColumnTypeConversionMap.
+ *
+ * Besides the conversion names, this can hold a prototype ColumnBuffer for
+ * each column, set by the caller the first time the schema is seen. Later
+ * result sets with the same schema get their buffers from newColumnBuffers(),
+ * which copies the prototypes, instead of building them from the conversions
+ * again.
+ */
+public class ResolvedColumnConversions {
+
+  /** The conversion name for each column, in column order. */
+  public final String[] conversionNames;
+  /** The map version these were resolved at. */
+  final long version;
+  private volatile ColumnBuffer[] bufferPrototypes;
+
+  ResolvedColumnConversions(String[] conversionNames, long version) {
+    this.conversionNames = conversionNames;
+    this.version = version;
+  }
+
+  public int getNColumns() {
+    return conversionNames.length;
+  }
+
+  /**
+   * Get the prototype column buffers.
+   * @return The prototypes, or null if they have not been set yet
+   */
+  public ColumnBuffer[] getBufferPrototypes() {
+    ColumnBuffer[] protos = bufferPrototypes;
+    return protos == null ? null : protos.clone();
+  }
+
+  /**
+   * Set the prototype column buffers for this schema. The prototypes themselves
+   * are never fetched into; only copies made with newInstance() are.
+   * @param prototypes One prototype buffer per column
+   */
+  public void setBufferPrototypes(ColumnBuffer[] prototypes) {
+    if (prototypes.length != conversionNames.length) {
+      throw new IllegalArgumentException("Expected " + conversionNames.length
+              + " buffer prototypes; got " + prototypes.length);
+    }
+    for (int i = 0; i < prototypes.length; i++) {
+      if (prototypes[i] == null) {
+        throw new IllegalArgumentException("Buffer prototype for column " + (i+1) + " is null");
+      }
+    }
+    bufferPrototypes = prototypes.clone();
+  }
+
+  /**
+   * Create a fresh set of column buffers from the prototypes.
+   * @return New column buffers, one per column, or null if the prototypes have
+   * not been set yet
+   */
+  public ColumnBuffer[] newColumnBuffers() {
+    ColumnBuffer[] protos = bufferPrototypes;
+    if (protos == null) {
+      return null;
+    }
+    ColumnBuffer[] out = new ColumnBuffer[protos.length];
+    for (int i = 0; i < protos.length; i++) {
+      out[i] = protos[i].newInstance();
+    }
+    return out;
+  }
+
+  /**
+   * Set up a ResultSetBuffer with fresh copies of the prototype buffers.
+   * @param rsBuffer The buffer to set up
+   * @return true if the buffers were set up, false if the prototypes have not
+   * been set yet
+   */
+  public boolean setUpColumnBuffers(ResultSetBuffer rsBuffer) {
+    ColumnBuffer[] buffers = newColumnBuffers();
+    if (buffers == null) {
+      return false;
+    }
+    for (int i = 0; i < buffers.length; i++) {
+      rsBuffer.setColumnBuffer(i + 1, buffers[i]);
+    }
+    return true;
+  }
+}
@@ -1,62 +1,487 @@
 package net.janklab.mdbc;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import net.janklab.mdbc.colbuf.BufferArrays;
 
 /**
- * Handles fetching and buffering the contents of a ResultSet, converting it to 
+ * Handles fetching and buffering the contents of a ResultSet, converting it to
  * Matlab-friendly types.
+ *
+ * By default, fetching is synchronous: each call to fetch() pulls the next chunk
+ * from the ResultSet. Calling startPrefetching() switches to a pipelined mode in
+ * which a background thread fetches upcoming chunks into additional sets of
+ * column buffers while the caller is still consuming the current one.
+ *
+ * Chunk sizes can also adapt to the width of the rows; see targetChunkBytes.
  */
-public class ResultSetBuffer {
+public class ResultSetBuffer implements AutoCloseable {
   private final ResultSet rs;
   int nColumns;
   private final ColumnBuffer[] columnBuffers;
   
+  /** 
+   * If true, check for SQLWarnings after every row, so they can be attributed
+   * to the row that raised them. Otherwise, they are checked once per chunk.
+   * Some drivers' getWarnings() is synchronized or allocates, so per-row
+   * checking can noticeably slow down fetching.
+   */
+  public boolean checkWarningsPerRow = false;
+  /** Maximum number of warnings to collect per fetch. Extra ones are counted and dropped. */
+  public int maxWarningsPerFetch = 100;
+  /** 
+   * If set, each fetched chunk is recorded here, with per-column timings. Null
+   * (the default) means no instrumentation. See enableMetrics().
+   */
+  public volatile TransferMetrics metrics;
+  /**
+   * Target estimated size of each fetched chunk's buffered data, in bytes. If
+   * positive, chunk sizes adapt to the rows' width. The first chunk is a probe
+   * of at most probeChunkRows rows, and after each chunk the bytes per row are
+   * estimated from the buffers fetched so far. Later chunks get as many rows
+   * as fit in this budget, between minAdaptiveChunkRows and
+   * maxAdaptiveChunkRows, regardless of the maxRows passed to fetch(). The
+   * JDBC fetch size is set so each chunk takes about targetRoundTripsPerChunk
+   * driver round trips. 0 (the default) disables adaptive sizing, and leaves
+   * the fetch size alone.
+   */
+  public long targetChunkBytes = 0;
+  /** Maximum rows in the first chunk with adaptive sizing, before the row width is known. */
+  public int probeChunkRows = 1000;
+  /** Fewest rows per chunk that adaptive sizing will choose. */
+  public int minAdaptiveChunkRows = 100;
+  /** Most rows per chunk that adaptive sizing will choose. */
+  public int maxAdaptiveChunkRows = 1 << 20;
+  /** Number of driver round trips per chunk that adaptive sizing aims for. */
+  public int targetRoundTripsPerChunk = 10;
+  /** Largest JDBC fetch size that adaptive sizing will set. */
+  public int maxFetchSize = 10000;
+
+  // Adaptive sizing state; only touched by the thread doing the fetching
+  private long nRowsMeasured;
+  private long nBytesMeasured;
+  private int currentFetchSize;
+  private boolean isFetchSizeUnsupported;
+
+  // Prefetching state
+  /** The background prefetch thread, or null if not prefetching. */
+  private Thread prefetchThread;
+  /** Column buffer sets that are free for the prefetch thread to fill. */
+  private BlockingQueue<ColumnBuffer[]> freeBufferSets;
+  /** Chunks that have been fetched but not yet handed to the caller. */
+  private BlockingQueue<PrefetchedChunk> prefetchedChunks;
+  /** The buffer set backing the chunk most recently handed to the caller. */
+  private ColumnBuffer[] bufferSetInUse;
+  /** Set when prefetching has been cancelled. */
+  private volatile boolean prefetchCancelled;
+  /** The error that stopped prefetching, if any. */
+  private SQLException prefetchError;
+  /** Whether the last chunk has been handed to the caller. */
+  private boolean isFinished;
+
   public ResultSetBuffer(ResultSet rs) throws SQLException {
     this.rs = rs;
     nColumns = rs.getMetaData().getColumnCount();
     this.columnBuffers = new ColumnBuffer[nColumns];
   }
-  
+
   /**
    * Sets the column buffer object to use for a given column.
    * @param colIndex The column index, 1-indexed
    * @param columnBuffer The buffer object to use for that column
    */
   public void setColumnBuffer(int colIndex, ColumnBuffer columnBuffer) {
+    if (prefetchThread != null) {
+      throw new IllegalStateException("Cannot change column buffers while prefetching");
+    }
     columnBuffers[colIndex-1] = columnBuffer;
   }
-  
+
+  /**
+   * Gets the column buffer object used for a given column.
+   * @param colIndex The column index, 1-indexed
+   * @return The column buffer, or null if none has been set
+   */
+  public ColumnBuffer getColumnBuffer(int colIndex) {
+    return columnBuffers[colIndex-1];
+  }
+
+  /**
+   * Gets the labels of the ResultSet's columns.
+   * @return The column labels, in column order
+   * @throws SQLException If something goes wrong
+   */
+  public String[] getColumnLabels() throws SQLException {
+    ResultSetMetaData meta = rs.getMetaData();
+    String[] out = new String[nColumns];
+    for (int i = 0; i < nColumns; i++) {
+      out[i] = meta.getColumnLabel(i+1);
+    }
+    return out;
+  }
+
+  /**
+   * Start recording fetch metrics into a new TransferMetrics, labeled with
+   * this result set's column labels.
+   * @return The metrics object, which is also set as this' metrics field
+   * @throws SQLException If getting the column labels fails
+   */
+  public TransferMetrics enableMetrics() throws SQLException {
+    TransferMetrics m = new TransferMetrics(getColumnLabels());
+    metrics = m;
+    return m;
+  }
+
+  /**
+   * Fetch the next chunk of up to maxRows rows from the ResultSet.
+   *
+   * The column buffers are sized to maxRows up front and are reused from chunk
+   * to chunk, so the primitive arrays in the returned result are only valid
+   * until the next call to fetch(). Copy them if you need to hold on to them
+   * longer. (Matlab does this automatically when it converts them.)
+   *
+   * When prefetching, the chunk size was fixed by startPrefetching(), and
+   * maxRows is ignored. With adaptive sizing (see targetChunkBytes), maxRows
+   * only limits the first chunk.
+   * @param maxRows The maximum number of rows to fetch
+   * @return The buffered column data for the fetched rows
+   * @throws SQLException If something goes wrong
+   */
   public ResultSetFetchResult fetch(int maxRows) throws SQLException {
+    if (prefetchThread != null) {
+      return takePrefetchedChunk();
+    }
+    return fetchInto(columnBuffers, chooseChunkRows(maxRows));
+  }
+
+  /**
+   * Pick the row limit for the next chunk, and set the JDBC fetch size to
+   * match, if adaptive sizing is on.
+   * @param requestedRows The row limit the caller asked for
+   * @return The row limit to use
+   */
+  private int chooseChunkRows(int requestedRows) {
+    if (targetChunkBytes <= 0 || requestedRows <= 0) {
+      return requestedRows;
+    }
+    int rows;
+    if (nRowsMeasured == 0) {
+      rows = Math.min(requestedRows, Math.max(1, probeChunkRows));
+    } else {
+      double bytesPerRow = Math.max(1.0, (double) nBytesMeasured / nRowsMeasured);
+      double fit = targetChunkBytes / bytesPerRow;
+      int min = Math.max(1, minAdaptiveChunkRows);
+      rows = (int) Math.max(min, Math.min(Math.max(min, maxAdaptiveChunkRows), fit));
+    }
+    int fetchSize = Math.min(Math.max(1, maxFetchSize),
+            Math.max(1, (rows + targetRoundTripsPerChunk - 1) / Math.max(1, targetRoundTripsPerChunk)));
+    if (fetchSize != currentFetchSize && !isFetchSizeUnsupported) {
+      try {
+        rs.setFetchSize(fetchSize);
+        currentFetchSize = fetchSize;
+      } catch (SQLException e) {
+        // The driver doesn't support changing it here; go with its default
+        isFetchSizeUnsupported = true;
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Update the bytes-per-row estimate with a fetched chunk, if adaptive sizing is on.
+   */
+  private void measureChunk(Object[] bufferedData, long[][] validity, int nRows) {
+    if (targetChunkBytes <= 0 || nRows == 0) {
+      return;
+    }
+    long bytes = 0;
+    for (int iCol = 0; iCol < nColumns; iCol++) {
+      bytes += BufferArrays.estimateBytes(bufferedData[iCol]);
+      if (validity[iCol] != null) {
+        bytes += 8L * validity[iCol].length;
+      }
+    }
+    nRowsMeasured += nRows;
+    nBytesMeasured += bytes;
+  }
+
+  private ResultSetFetchResult fetchInto(ColumnBuffer[] buffers, int maxRows)
+          throws SQLException {
+    TransferMetrics m = maxRows > 0 ? metrics : null;
+    if (m != null) {
+      return fetchIntoTimed(buffers, maxRows, m);
+    }
+    boolean isFinished = false;
+    for (int iCol = 0; iCol < nColumns; iCol++) {
+      buffers[iCol].attach(rs, iCol+1, maxRows);
+    }
+    RowFetchPlan plan = new RowFetchPlan(buffers);
+    WarningAccumulator warnings = new WarningAccumulator(maxWarningsPerFetch);
+    int iRow = 0;
+    if (checkWarningsPerRow) {
+      while (iRow < maxRows) {
+        if (!rs.next()) {
+          isFinished = true;
+          break;
+        }
+        plan.fetchRow();
+        warnings.collect(rs, iRow);
+        iRow++;
+      }
+    } else {
+      while (iRow < maxRows) {
+        if (!rs.next()) {
+          isFinished = true;
+          break;
+        }
+        plan.fetchRow();
+        iRow++;
+      }
+    }
+    warnings.collect(rs, -1);
+    return handOff(buffers, maxRows, iRow, isFinished, warnings);
+  }
+
+  /**
+   * Like fetchInto(), but timing each ResultSet.next() call and each column's
+   * fetch, and recording them in m.
+   */
+  private ResultSetFetchResult fetchIntoTimed(ColumnBuffer[] buffers, int maxRows,
+          TransferMetrics m) throws SQLException {
+    long t0 = System.nanoTime();
+    long alloc0 = TransferMetrics.currentThreadAllocatedBytes();
+    long[] columnNanos = new long[nColumns];
+    long nextNanos = 0;
     boolean isFinished = false;
     for (int iCol = 0; iCol < nColumns; iCol++) {
-      columnBuffers[iCol].attach(rs, iCol+1);
+      buffers[iCol].attach(rs, iCol+1, maxRows);
     }
+    RowFetchPlan plan = new RowFetchPlan(buffers);
+    WarningAccumulator warnings = new WarningAccumulator(maxWarningsPerFetch);
     int iRow = 0;
     while (iRow < maxRows) {
-      if (!rs.next()) {
+      long t = System.nanoTime();
+      boolean hasRow = rs.next();
+      long t2 = System.nanoTime();
+      nextNanos += t2 - t;
+      if (!hasRow) {
         isFinished = true;
         break;
       }
+      plan.fetchRowTimed(t2, columnNanos);
+      if (checkWarningsPerRow) {
+        warnings.collect(rs, iRow);
+      }
       iRow++;
+    }
+    warnings.collect(rs, -1);
+    ResultSetFetchResult out = handOff(buffers, maxRows, iRow, isFinished, warnings);
+    long alloc1 = TransferMetrics.currentThreadAllocatedBytes();
+    m.recordFetch(iRow, System.nanoTime() - t0, nextNanos, columnNanos, out,
+            alloc0 < 0 ? -1 : alloc1 - alloc0);
+    return out;
+  }
+
+  private ResultSetFetchResult handOff(ColumnBuffer[] buffers, int maxRows, int nRows,
+          boolean isFinished, WarningAccumulator warnings) {
+    Object[] bufferedData = new Object[nColumns];
+    long[][] validity = new long[nColumns][];
+    for (int iCol = 0; iCol < nColumns; iCol++) {
+      bufferedData[iCol] = buffers[iCol].getBuffer();
+      validity[iCol] = buffers[iCol].getValidity();
+    }
+    measureChunk(bufferedData, validity, nRows);
+    double bytesPerRow = nRowsMeasured == 0 ? Double.NaN : (double) nBytesMeasured / nRowsMeasured;
+    return new ResultSetFetchResult(bufferedData, validity, nRows, isFinished,
+            warnings.getWarnings(), warnings.getWarningRows(), warnings.getNDropped(),
+            maxRows, currentFetchSize, bytesPerRow);
+  }
+
+  /**
+   * Start fetching chunks on a background thread.
+   *
+   * A daemon thread will fetch chunks of rowsPerChunk rows (or adaptively
+   * sized chunks, if targetChunkBytes is set), keeping up to queueDepth chunks
+   * ready ahead of the caller. Subsequent fetch() calls take chunks from that
+   * queue. Each queued chunk has its own set of column buffers,
+   * created with ColumnBuffer.newInstance(), so a chunk's data stays valid until
+   * the caller's next fetch() call, just like in synchronous mode.
+   *
+   * Once prefetching has started, the ResultSet must not be used by anyone
+   * else until the prefetch thread has finished or close() or stopPrefetching()
+   * has been called.
+   * @param rowsPerChunk Number of rows to fetch per chunk
+   * @param queueDepth Maximum number of fetched chunks to hold ahead of the caller
+   */
+  public synchronized void startPrefetching(int rowsPerChunk, int queueDepth) {
+    if (prefetchThread != null) {
+      throw new IllegalStateException("Prefetching has already been started");
+    }
+    if (rowsPerChunk < 1) {
+      throw new IllegalArgumentException("rowsPerChunk must be positive; got " + rowsPerChunk);
+    }
+    if (queueDepth < 1) {
+      throw new IllegalArgumentException("queueDepth must be positive; got " + queueDepth);
+    }
+    for (int iCol = 0; iCol < nColumns; iCol++) {
+      if (columnBuffers[iCol] == null) {
+        throw new IllegalStateException("No column buffer set for column " + (iCol+1));
+      }
+    }
+    // One set in use by the caller, queueDepth sets waiting in the queue, and
+    // one set being filled by the prefetch thread
+    int nSets = queueDepth + 2;
+    freeBufferSets = new ArrayBlockingQueue<>(nSets);
+    freeBufferSets.add(columnBuffers);
+    for (int iSet = 1; iSet < nSets; iSet++) {
+      ColumnBuffer[] set = new ColumnBuffer[nColumns];
       for (int iCol = 0; iCol < nColumns; iCol++) {
-        columnBuffers[iCol].fetchNextValue();
+        set[iCol] = columnBuffers[iCol].newInstance();
       }
-      // HACK/TODO: This warning code is a hack; it should be replaced by a real 
-      // warning handler
-      // that sends warnings to the log via SLF4J, or accumulates them on the
-      // ResultSetFetchResult object.
-      // TODO: Find a test case that produces per-row SqlWarnings and test this.
-      SQLWarning warning = rs.getWarnings();
-      if (warning != null) {
-        System.err.println("WARNING: SQL Warning on row " + iRow + ": " + warning);
+      freeBufferSets.add(set);
+    }
+    prefetchedChunks = new ArrayBlockingQueue<>(queueDepth);
+    prefetchCancelled = false;
+    prefetchThread = new Thread(() -> runPrefetch(rowsPerChunk), "mdbc-prefetch");
+    prefetchThread.setDaemon(true);
+    prefetchThread.start();
+  }
+
+  /**
+   * Body of the prefetch thread.
+   */
+  private void runPrefetch(int rowsPerChunk) {
+    try {
+      while (!prefetchCancelled) {
+        ColumnBuffer[] set = freeBufferSets.take();
+        PrefetchedChunk chunk;
+        try {
+          chunk = new PrefetchedChunk(fetchInto(set, chooseChunkRows(rowsPerChunk)), set, null);
+        } catch (SQLException e) {
+          chunk = new PrefetchedChunk(null, set, e);
+        } catch (RuntimeException e) {
+          chunk = new PrefetchedChunk(null, set, new SQLException(e.toString(), e));
+        }
+        prefetchedChunks.put(chunk);
+        if (chunk.error != null || chunk.result.isFinished) {
+          return;
+        }
       }
+    } catch (InterruptedException e) {
+      // Cancelled; just exit
     }
-    Object[] bufferedData = new Object[nColumns];
-    for (int iCol = 0; iCol < nColumns; iCol++) {
-      bufferedData[iCol] = columnBuffers[iCol].getBuffer();
+  }
+
+  private ResultSetFetchResult takePrefetchedChunk() throws SQLException {
+    if (prefetchError != null) {
+      throw prefetchError;
+    }
+    if (isFinished) {
+      return emptyResult();
+    }
+    if (prefetchCancelled) {
+      throw new SQLException("Prefetching was cancelled");
+    }
+    // The caller is done with the previous chunk; recycle its buffers
+    if (bufferSetInUse != null) {
+      freeBufferSets.add(bufferSetInUse);
+      bufferSetInUse = null;
+    }
+    PrefetchedChunk chunk;
+    try {
+      chunk = prefetchedChunks.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for prefetched chunk", e);
+    }
+    bufferSetInUse = chunk.bufferSet;
+    if (chunk.error != null) {
+      SQLException e = chunk.error;
+      prefetchError = new SQLException("Error while prefetching: " + e.getMessage(),
+              e.getSQLState(), e.getErrorCode(), e);
+      throw prefetchError;
+    }
+    isFinished = chunk.result.isFinished;
+    return chunk.result;
+  }
+
+  /**
+   * Produce an empty, finished result, for fetches past the end of the results.
+   * Fetching zero rows does not touch the ResultSet's cursor.
+   */
+  private ResultSetFetchResult emptyResult() throws SQLException {
+    ResultSetFetchResult empty = fetchInto(bufferSetInUse, 0);
+    return new ResultSetFetchResult(empty.bufferedColumnData, empty.columnValidity, 0, true,
+            empty.warnings, empty.warningRows, empty.nWarningsDropped, 0, empty.fetchSize,
+            empty.estimatedBytesPerRow);
+  }
+
+  /**
+   * Whether this is in prefetching mode.
+   * @return true if startPrefetching() has been called
+   */
+  public boolean isPrefetching() {
+    return prefetchThread != null;
+  }
+
+  /**
+   * Stop the prefetch thread, if it is running, and wait for it to exit.
+   *
+   * This asks the driver to cancel any in-progress fetch, using
+   * Statement.cancel(). After this, fetch() will raise an error unless all the
+   * chunks were already fetched.
+   * @throws SQLException If interrupted while waiting for the thread to exit
+   */
+  public synchronized void stopPrefetching() throws SQLException {
+    Thread thread = prefetchThread;
+    if (thread == null || !thread.isAlive()) {
+      return;
+    }
+    prefetchCancelled = true;
+    try {
+      Statement stmt = rs.getStatement();
+      if (stmt != null) {
+        stmt.cancel();
+      }
+    } catch (SQLException e) {
+      // Not all drivers support cancellation; interruption below may still work
+    }
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while stopping prefetch thread", e);
+    }
+  }
+
+  /**
+   * Stop any prefetching and close the underlying ResultSet.
+   * @throws SQLException If something goes wrong
+   */
+  @Override
+  public void close() throws SQLException {
+    stopPrefetching();
+    rs.close();
+  }
+
+  /**
+   * A chunk fetched by the prefetch thread, or the error that stopped it.
+   */
+  private static class PrefetchedChunk {
+    final ResultSetFetchResult result;
+    final ColumnBuffer[] bufferSet;
+    final SQLException error;
+
+    PrefetchedChunk(ResultSetFetchResult result, ColumnBuffer[] bufferSet,
+            SQLException error) {
+      this.result = result;
+      this.bufferSet = bufferSet;
+      this.error = error;
     }
-    return new ResultSetFetchResult(bufferedData, isFinished);
   }
 }
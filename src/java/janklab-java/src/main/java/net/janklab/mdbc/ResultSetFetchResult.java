@@ -1,5 +1,11 @@
 package net.janklab.mdbc;
 
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.janklab.mdbc.colbuf.BufferArrays;
+
 /**
  * The result of fetching some data from a result set.
  */
@@ -8,9 +14,139 @@ public class ResultSetFetchResult {
   public final boolean isFinished;
   /** Buffered column data for each column, in Matlab handoff format. */
   public final Object[] bufferedColumnData;
+  /** 
+   * Validity bitmap for each column, marking which rows are non-NULL. An
+   * element is null if that column had no NULLs. See {@link ValidityBitmap}.
+   */
+  public final long[][] columnValidity;
+  /** Number of rows fetched. */
+  public final int nRows;
+  /** SQL warnings raised by the ResultSet during this fetch. */
+  public final SQLWarning[] warnings;
+  /** 
+   * The 0-based row within this fetch that raised each warning, or -1 if the
+   * warnings were only checked at the end of the chunk.
+   */
+  public final int[] warningRows;
+  /** Number of warnings dropped because the per-fetch limit was reached. */
+  public final int nWarningsDropped;
+  /** The maximum number of rows this chunk was fetched with. */
+  public final int chunkRowLimit;
+  /** 
+   * The JDBC fetch size set on the ResultSet for this chunk, or 0 if it was
+   * left at the driver's default.
+   */
+  public final int fetchSize;
+  /** 
+   * The estimated size of a row's buffered data, in bytes, from the chunks
+   * fetched so far, or NaN if it was not estimated. Only adaptive chunk sizing
+   * estimates it; see ResultSetBuffer.targetChunkBytes.
+   */
+  public final double estimatedBytesPerRow;
+  
+  public ResultSetFetchResult(Object[] bufferedColumnData, long[][] columnValidity,
+          int nRows, boolean isFinished) {
+    this(bufferedColumnData, columnValidity, nRows, isFinished, 
+            new SQLWarning[0], new int[0], 0);
+  }
   
-  public ResultSetFetchResult(Object[] bufferedColumnData, boolean isFinished) {
+  public ResultSetFetchResult(Object[] bufferedColumnData, long[][] columnValidity,
+          int nRows, boolean isFinished, SQLWarning[] warnings, int[] warningRows, 
+          int nWarningsDropped) {
+    this(bufferedColumnData, columnValidity, nRows, isFinished, warnings, warningRows,
+            nWarningsDropped, nRows, 0, Double.NaN);
+  }
+  
+  public ResultSetFetchResult(Object[] bufferedColumnData, long[][] columnValidity,
+          int nRows, boolean isFinished, SQLWarning[] warnings, int[] warningRows, 
+          int nWarningsDropped, int chunkRowLimit, int fetchSize, double estimatedBytesPerRow) {
     this.bufferedColumnData = bufferedColumnData;
+    this.columnValidity = columnValidity;
+    this.nRows = nRows;
     this.isFinished = isFinished;
+    this.warnings = warnings;
+    this.warningRows = warningRows;
+    this.nWarningsDropped = nWarningsDropped;
+    this.chunkRowLimit = chunkRowLimit;
+    this.fetchSize = fetchSize;
+    this.estimatedBytesPerRow = estimatedBytesPerRow;
+  }
+  
+  /**
+   * Whether a column had any NULLs in this fetch.
+   * @param colIndex The column index, 1-indexed
+   * @return true if the column has one or more NULLs
+   */
+  public boolean hasNulls(int colIndex) {
+    return columnValidity[colIndex-1] != null;
+  }
+  
+  /**
+   * Get the NULL mask for a column, as a boolean[] that is true for NULL rows.
+   * @param colIndex The column index, 1-indexed
+   * @return The NULL mask
+   */
+  public boolean[] getNullMask(int colIndex) {
+    return ValidityBitmap.toNullMask(columnValidity[colIndex-1], nRows);
+  }
+
+  /**
+   * Concatenate several fetch results for the same columns into one, in order.
+   * The column data is combined with BufferArrays.concat(), and the warning
+   * rows are offset to index into the combined rows. The result is finished if
+   * the last part is, and has the last part's fetch size and row size estimate.
+   * @param parts The fetch results to concatenate
+   * @return The combined result
+   */
+  public static ResultSetFetchResult concat(List<ResultSetFetchResult> parts) {
+    if (parts.isEmpty()) {
+      throw new IllegalArgumentException("No fetch results to concatenate");
+    }
+    int nCols = parts.get(0).bufferedColumnData.length;
+    int[] counts = new int[parts.size()];
+    long nTotal = 0;
+    for (int i = 0; i < counts.length; i++) {
+      ResultSetFetchResult part = parts.get(i);
+      if (part.bufferedColumnData.length != nCols) {
+        throw new IllegalArgumentException("Fetch results have different numbers of columns: "
+                + nCols + " and " + part.bufferedColumnData.length);
+      }
+      counts[i] = part.nRows;
+      nTotal += counts[i];
+    }
+    if (nTotal > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Too many rows to combine: " + nTotal);
+    }
+    Object[] data = new Object[nCols];
+    long[][] validity = new long[nCols][];
+    for (int iCol = 0; iCol < nCols; iCol++) {
+      List<Object> colParts = new ArrayList<>(parts.size());
+      long[][] validityParts = new long[parts.size()][];
+      for (int i = 0; i < parts.size(); i++) {
+        colParts.add(parts.get(i).bufferedColumnData[iCol]);
+        validityParts[i] = parts.get(i).columnValidity[iCol];
+      }
+      data[iCol] = parts.size() == 1 ? colParts.get(0) : BufferArrays.concat(colParts);
+      validity[iCol] = ValidityBitmap.concat(validityParts, counts);
+    }
+    List<SQLWarning> warnings = new ArrayList<>();
+    int[] warningRows = new int[0];
+    int nDropped = 0;
+    int offset = 0;
+    for (ResultSetFetchResult part : parts) {
+      int nBefore = warnings.size();
+      warnings.addAll(Arrays.asList(part.warnings));
+      warningRows = Arrays.copyOf(warningRows, warnings.size());
+      for (int i = 0; i < part.warningRows.length; i++) {
+        int row = part.warningRows[i];
+        warningRows[nBefore + i] = row < 0 ? row : row + offset;
+      }
+      nDropped += part.nWarningsDropped;
+      offset += part.nRows;
+    }
+    ResultSetFetchResult last = parts.get(parts.size() - 1);
+    return new ResultSetFetchResult(data, validity, (int) nTotal, last.isFinished,
+            warnings.toArray(new SQLWarning[0]), warningRows, nDropped,
+            (int) nTotal, last.fetchSize, last.estimatedBytesPerRow);
   }
 }
@@ -0,0 +1,150 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import net.janklab.mdbc.colbuf.BooleanColumnBuffer;
+import net.janklab.mdbc.colbuf.DoubleColumnBuffer;
+import net.janklab.mdbc.colbuf.FloatColumnBuffer;
+import net.janklab.mdbc.colbuf.LongColumnBuffer;
+import net.janklab.mdbc.colbuf.LoudBigDecimalToDoubleColumnBuffer;
+import net.janklab.mdbc.colbuf.SqlDateToLocaldatenumColumnBuffer;
+import net.janklab.mdbc.colbuf.StringColumnBuffer;
+import net.janklab.mdbc.colbuf.SymbolColumnBuffer;
+import net.janklab.mdbc.colbuf.TimestampColumnBuffer;
+import net.janklab.mdbc.colbuf.TimestampToLocaldatenumColumnBuffer;
+
+/**
+ * Fetches whole rows into a fixed set of column buffers, resolving each
+ * column's buffer type once up front instead of on every cell.
+ *
+ * Calling fetchNextValue() through the ColumnBuffer interface from one loop
+ * makes that call site megamorphic as soon as a query mixes more than two
+ * buffer types, which stops the JIT from inlining the buffers' getXxx() calls.
+ * This instead tags each column with its concrete buffer class and switches on
+ * the tag, so each case has its own call site that only ever sees one class.
+ * Columns are still fetched in column order, which some drivers require.
+ * Buffer classes that aren't known here, including subclasses of the known
+ * ones, fall back to the generic interface call.
+ */
+final class RowFetchPlan {
+
+  private static final int GENERIC = 0;
+  private static final int DOUBLE = 1;
+  private static final int LONG = 2;
+  private static final int FLOAT = 3;
+  private static final int BOOLEAN = 4;
+  private static final int STRING = 5;
+  private static final int SYMBOL = 6;
+  private static final int TIMESTAMP = 7;
+  private static final int DATE_TO_DATENUM = 8;
+  private static final int TIMESTAMP_TO_DATENUM = 9;
+  private static final int BIGDECIMAL_TO_DOUBLE = 10;
+
+  private final ColumnBuffer[] buffers;
+  private final int[] kinds;
+
+  RowFetchPlan(ColumnBuffer[] buffers) {
+    this.buffers = buffers.clone();
+    this.kinds = new int[buffers.length];
+    for (int iCol = 0; iCol < buffers.length; iCol++) {
+      kinds[iCol] = kindOf(buffers[iCol]);
+    }
+  }
+
+  private static int kindOf(ColumnBuffer buffer) {
+    // Exact class matches only, so subclasses that override fetchNextValue()
+    // don't get folded into the specialized call sites
+    Class<?> klass = buffer.getClass();
+    if (klass == DoubleColumnBuffer.class) {
+      return DOUBLE;
+    } else if (klass == LongColumnBuffer.class) {
+      return LONG;
+    } else if (klass == FloatColumnBuffer.class) {
+      return FLOAT;
+    } else if (klass == BooleanColumnBuffer.class) {
+      return BOOLEAN;
+    } else if (klass == StringColumnBuffer.class) {
+      return STRING;
+    } else if (klass == SymbolColumnBuffer.class) {
+      return SYMBOL;
+    } else if (klass == TimestampColumnBuffer.class) {
+      return TIMESTAMP;
+    } else if (klass == SqlDateToLocaldatenumColumnBuffer.class) {
+      return DATE_TO_DATENUM;
+    } else if (klass == TimestampToLocaldatenumColumnBuffer.class) {
+      return TIMESTAMP_TO_DATENUM;
+    } else if (klass == LoudBigDecimalToDoubleColumnBuffer.class) {
+      return BIGDECIMAL_TO_DOUBLE;
+    } else {
+      return GENERIC;
+    }
+  }
+
+  /**
+   * Fetch the ResultSet's current row into the buffers.
+   * @throws SQLException If something goes wrong
+   */
+  void fetchRow() throws SQLException {
+    final ColumnBuffer[] bufs = buffers;
+    final int[] ks = kinds;
+    for (int iCol = 0; iCol < bufs.length; iCol++) {
+      fetchColumn(bufs[iCol], ks[iCol]);
+    }
+  }
+
+  /**
+   * Fetch the ResultSet's current row into the buffers, adding the time spent
+   * on each column to columnNanos.
+   * @param t The System.nanoTime() at which the row's fetch started
+   * @param columnNanos Per-column time accumulators
+   * @return The System.nanoTime() at which the row's fetch ended
+   * @throws SQLException If something goes wrong
+   */
+  long fetchRowTimed(long t, long[] columnNanos) throws SQLException {
+    final ColumnBuffer[] bufs = buffers;
+    final int[] ks = kinds;
+    for (int iCol = 0; iCol < bufs.length; iCol++) {
+      fetchColumn(bufs[iCol], ks[iCol]);
+      long t2 = System.nanoTime();
+      columnNanos[iCol] += t2 - t;
+      t = t2;
+    }
+    return t;
+  }
+
+  private static void fetchColumn(ColumnBuffer buf, int kind) throws SQLException {
+    switch (kind) {
+      case DOUBLE:
+        ((DoubleColumnBuffer) buf).fetchNextValue();
+        break;
+      case LONG:
+        ((LongColumnBuffer) buf).fetchNextValue();
+        break;
+      case FLOAT:
+        ((FloatColumnBuffer) buf).fetchNextValue();
+        break;
+      case BOOLEAN:
+        ((BooleanColumnBuffer) buf).fetchNextValue();
+        break;
+      case STRING:
+        ((StringColumnBuffer) buf).fetchNextValue();
+        break;
+      case SYMBOL:
+        ((SymbolColumnBuffer) buf).fetchNextValue();
+        break;
+      case TIMESTAMP:
+        ((TimestampColumnBuffer) buf).fetchNextValue();
+        break;
+      case DATE_TO_DATENUM:
+        ((SqlDateToLocaldatenumColumnBuffer) buf).fetchNextValue();
+        break;
+      case TIMESTAMP_TO_DATENUM:
+        ((TimestampToLocaldatenumColumnBuffer) buf).fetchNextValue();
+        break;
+      case BIGDECIMAL_TO_DOUBLE:
+        ((LoudBigDecimalToDoubleColumnBuffer) buf).fetchNextValue();
+        break;
+      default:
+        buf.fetchNextValue();
+    }
+  }
+}
@@ -0,0 +1,337 @@
+package net.janklab.mdbc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import net.janklab.mdbc.colbuf.BufferArrays;
+
+/**
+ * Optional instrumentation for the fetch and bind paths, to tell where the time
+ * in a slow query goes: the driver and network (ResultSet.next() and
+ * executeBatch()), the column buffers' conversions, or the parameter binders.
+ *
+ * Attach one to a ResultSetBuffer or JLPreparedStatement by setting its
+ * metrics field (or calling its enableMetrics()); each fetched chunk or bound
+ * batch is then recorded here, and snapshot() returns the totals so far. When
+ * no metrics object is attached, the fetch and bind loops are the plain
+ * uninstrumented ones. When one is, every column of every row is timed with
+ * System.nanoTime(), which costs some tens of nanoseconds per value, so the
+ * totals somewhat overstate the time of cheap columns.
+ *
+ * Memory allocation is measured per thread, where the JVM supports it (as
+ * HotSpot does); otherwise the allocation counts are -1. Byte counts are
+ * estimates of the size of the buffered data handed off to Matlab.
+ *
+ * This is thread-safe, so it can be shared with a prefetch thread.
+ */
+public class TransferMetrics {
+
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = findThreadMXBean();
+
+  /** Number of recent chunks to keep per-chunk figures for. */
+  public int maxChunkHistory = 1000;
+
+  private String[] columnLabels;
+  private long nChunks;
+  private long nRows;
+  private long fetchNanos;
+  private long nextNanos;
+  private long[] columnNanos = new long[0];
+  private long[] columnBytes = new long[0];
+  private long fetchAllocatedBytes;
+  private long assemblyNanos;
+  /** Recent chunks, as {nRows, nanos, bytes}. */
+  private final ArrayDeque<long[]> chunkHistory = new ArrayDeque<>();
+
+  private long nBatches;
+  private long nBindRows;
+  private long bindNanos;
+  private long executeNanos;
+  private long[] paramNanos = new long[0];
+  private long bindAllocatedBytes;
+
+  public TransferMetrics() {
+  }
+
+  /**
+   * @param columnLabels The labels of the columns being fetched, for display. May be null.
+   */
+  public TransferMetrics(String[] columnLabels) {
+    this.columnLabels = columnLabels == null ? null : columnLabels.clone();
+  }
+
+  private static com.sun.management.ThreadMXBean findThreadMXBean() {
+    try {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+          return sunBean;
+        }
+      }
+    } catch (LinkageError | RuntimeException e) {
+      // Not a HotSpot-style JVM; allocation tracking is unavailable
+    }
+    return null;
+  }
+
+  /**
+   * The number of bytes allocated so far by the current thread.
+   * @return The allocated bytes, or -1 if the JVM doesn't track them
+   */
+  static long currentThreadAllocatedBytes() {
+    return THREAD_MX_BEAN == null ? -1
+            : THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Record a fetched chunk.
+   * @param nChunkRows Rows fetched
+   * @param nanos Total time for the chunk, including attaching and handing off the buffers
+   * @param chunkNextNanos Time spent in ResultSet.next()
+   * @param chunkColumnNanos Time spent fetching each column's values
+   * @param chunkData The chunk's handed-off column data, for estimating its size
+   * @param allocatedBytes Bytes allocated while fetching the chunk, or -1 if unknown
+   */
+  synchronized void recordFetch(int nChunkRows, long nanos, long chunkNextNanos,
+          long[] chunkColumnNanos, ResultSetFetchResult chunkData, long allocatedBytes) {
+    int nCols = chunkColumnNanos.length;
+    if (columnNanos.length < nCols) {
+      columnNanos = Arrays.copyOf(columnNanos, nCols);
+      columnBytes = Arrays.copyOf(columnBytes, nCols);
+    }
+    long chunkBytes = 0;
+    for (int iCol = 0; iCol < nCols; iCol++) {
+      columnNanos[iCol] += chunkColumnNanos[iCol];
+      long bytes = BufferArrays.estimateBytes(chunkData.bufferedColumnData[iCol]);
+      long[] validity = chunkData.columnValidity[iCol];
+      if (validity != null) {
+        bytes += 16 + 8L * validity.length;
+      }
+      columnBytes[iCol] += bytes;
+      chunkBytes += bytes;
+    }
+    nChunks++;
+    nRows += nChunkRows;
+    fetchNanos += nanos;
+    nextNanos += chunkNextNanos;
+    fetchAllocatedBytes = addAllocated(fetchAllocatedBytes, allocatedBytes);
+    chunkHistory.addLast(new long[] {nChunkRows, nanos, chunkBytes});
+    while (chunkHistory.size() > Math.max(0, maxChunkHistory)) {
+      chunkHistory.removeFirst();
+    }
+  }
+
+  /**
+   * Record a bound batch.
+   * @param nBatchRows Rows bound
+   * @param nanos Time spent binding, including addBatch()
+   * @param batchParamNanos Time spent in each parameter's binder
+   * @param allocatedBytes Bytes allocated while binding, or -1 if unknown
+   */
+  synchronized void recordBind(int nBatchRows, long nanos, long[] batchParamNanos,
+          long allocatedBytes) {
+    if (paramNanos.length < batchParamNanos.length) {
+      paramNanos = Arrays.copyOf(paramNanos, batchParamNanos.length);
+    }
+    for (int i = 0; i < batchParamNanos.length; i++) {
+      paramNanos[i] += batchParamNanos[i];
+    }
+    nBatches++;
+    nBindRows += nBatchRows;
+    bindNanos += nanos;
+    bindAllocatedBytes = addAllocated(bindAllocatedBytes, allocatedBytes);
+  }
+
+  /**
+   * Record an executeBatch() call.
+   * @param nanos Time spent in executeBatch()
+   */
+  synchronized void recordExecute(long nanos) {
+    executeNanos += nanos;
+  }
+
+  /**
+   * Record time the caller spent converting fetched chunks into its own data
+   * structures, like Matlab arrays and tables. The fetch path can't see this,
+   * so callers that want it counted report it here.
+   * @param nanos The time taken
+   */
+  public synchronized void recordAssembly(long nanos) {
+    assemblyNanos += nanos;
+  }
+
+  /**
+   * Add an allocation measurement to a total, which stays -1 once any
+   * measurement is unknown.
+   */
+  private static long addAllocated(long total, long allocatedBytes) {
+    return (total < 0 || allocatedBytes < 0) ? -1 : total + allocatedBytes;
+  }
+
+  /**
+   * Take a snapshot of the figures recorded so far.
+   * @return The snapshot
+   */
+  public synchronized Snapshot snapshot() {
+    int n = chunkHistory.size();
+    int[] chunkRows = new int[n];
+    long[] chunkNanos = new long[n];
+    long[] chunkBytes = new long[n];
+    int i = 0;
+    for (long[] chunk : chunkHistory) {
+      chunkRows[i] = (int) chunk[0];
+      chunkNanos[i] = chunk[1];
+      chunkBytes[i] = chunk[2];
+      i++;
+    }
+    return new Snapshot(this, chunkRows, chunkNanos, chunkBytes);
+  }
+
+  /**
+   * Clear all the recorded figures.
+   */
+  public synchronized void reset() {
+    nChunks = 0;
+    nRows = 0;
+    fetchNanos = 0;
+    nextNanos = 0;
+    columnNanos = new long[0];
+    columnBytes = new long[0];
+    fetchAllocatedBytes = 0;
+    assemblyNanos = 0;
+    chunkHistory.clear();
+    nBatches = 0;
+    nBindRows = 0;
+    bindNanos = 0;
+    executeNanos = 0;
+    paramNanos = new long[0];
+    bindAllocatedBytes = 0;
+  }
+
+  @Override
+  public String toString() {
+    return snapshot().toString();
+  }
+
+  /**
+   * An immutable copy of the figures recorded by a TransferMetrics. Times are
+   * in nanoseconds and sizes in bytes.
+   */
+  public static class Snapshot {
+    /** Column labels, or null if they weren't given. */
+    public final String[] columnLabels;
+    public final long nChunks;
+    public final long nRows;
+    /** Total time spent fetching chunks. */
+    public final long fetchNanos;
+    /** Time spent in ResultSet.next(), which is mostly waiting on the driver and network. */
+    public final long nextNanos;
+    /** Time spent fetching and converting each column's values. */
+    public final long[] columnNanos;
+    /** Estimated size of each column's buffered data. */
+    public final long[] columnBytes;
+    /** Bytes allocated by the fetching thread, or -1 if the JVM doesn't track it. */
+    public final long fetchAllocatedBytes;
+    /** Time the caller reported spending on converting the fetched data, with recordAssembly(). */
+    public final long assemblyNanos;
+    /** Rows in each of the most recent chunks. */
+    public final int[] chunkRows;
+    /** Time for each of the most recent chunks. */
+    public final long[] chunkNanos;
+    /** Estimated buffered size of each of the most recent chunks. */
+    public final long[] chunkBytes;
+    public final long nBatches;
+    public final long nBindRows;
+    /** Total time spent binding parameters and adding them to batches. */
+    public final long bindNanos;
+    /** Time spent in executeBatch(). */
+    public final long executeNanos;
+    /** Time spent in each parameter's binder. */
+    public final long[] paramNanos;
+    /** Bytes allocated by the binding thread, or -1 if the JVM doesn't track it. */
+    public final long bindAllocatedBytes;
+
+    private Snapshot(TransferMetrics m, int[] chunkRows, long[] chunkNanos, long[] chunkBytes) {
+      this.columnLabels = m.columnLabels == null ? null : m.columnLabels.clone();
+      this.nChunks = m.nChunks;
+      this.nRows = m.nRows;
+      this.fetchNanos = m.fetchNanos;
+      this.nextNanos = m.nextNanos;
+      this.columnNanos = m.columnNanos.clone();
+      this.columnBytes = m.columnBytes.clone();
+      this.fetchAllocatedBytes = m.fetchAllocatedBytes;
+      this.assemblyNanos = m.assemblyNanos;
+      this.chunkRows = chunkRows;
+      this.chunkNanos = chunkNanos;
+      this.chunkBytes = chunkBytes;
+      this.nBatches = m.nBatches;
+      this.nBindRows = m.nBindRows;
+      this.bindNanos = m.bindNanos;
+      this.executeNanos = m.executeNanos;
+      this.paramNanos = m.paramNanos.clone();
+      this.bindAllocatedBytes = m.bindAllocatedBytes;
+    }
+
+    /**
+     * Fetch throughput.
+     * @return Rows fetched per second of fetch time, or 0 if nothing was fetched
+     */
+    public double getRowsPerSecond() {
+      return fetchNanos == 0 ? 0 : nRows / (fetchNanos / 1e9);
+    }
+
+    /**
+     * Bind throughput, not counting executeBatch().
+     * @return Rows bound per second of bind time, or 0 if nothing was bound
+     */
+    public double getBindRowsPerSecond() {
+      return bindNanos == 0 ? 0 : nBindRows / (bindNanos / 1e9);
+    }
+
+    /**
+     * The estimated size of all the fetched data.
+     * @return The size, in bytes
+     */
+    public long getFetchedBytes() {
+      long out = 0;
+      for (long bytes : columnBytes) {
+        out += bytes;
+      }
+      return out;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("TransferMetrics:");
+      if (nChunks > 0) {
+        sb.append(String.format("%n  Fetch: %d rows in %d chunks, %.3f ms (%.3f ms in next()), "
+                + "%.0f rows/s, ~%d bytes, %s allocated", nRows, nChunks, fetchNanos / 1e6,
+                nextNanos / 1e6, getRowsPerSecond(), getFetchedBytes(),
+                fetchAllocatedBytes < 0 ? "unknown" : fetchAllocatedBytes + " bytes"));
+        if (assemblyNanos > 0) {
+          sb.append(String.format("; %.3f ms assembling", assemblyNanos / 1e6));
+        }
+        for (int iCol = 0; iCol < columnNanos.length; iCol++) {
+          String label = (columnLabels != null && iCol < columnLabels.length)
+                  ? columnLabels[iCol] : "#" + (iCol + 1);
+          sb.append(String.format("%n    %-24s %10.3f ms  ~%d bytes", label,
+                  columnNanos[iCol] / 1e6, columnBytes[iCol]));
+        }
+      }
+      if (nBatches > 0) {
+        sb.append(String.format("%n  Bind: %d rows in %d batches, %.3f ms binding, "
+                + "%.3f ms executing, %.0f rows/s, %s allocated", nBindRows, nBatches,
+                bindNanos / 1e6, executeNanos / 1e6, getBindRowsPerSecond(),
+                bindAllocatedBytes < 0 ? "unknown" : bindAllocatedBytes + " bytes"));
+        for (int i = 0; i < paramNanos.length; i++) {
+          sb.append(String.format("%n    param %-18d %10.3f ms", i + 1, paramNanos[i] / 1e6));
+        }
+      }
+      if (nChunks == 0 && nBatches == 0) {
+        sb.append(" nothing recorded");
+      }
+      return sb.toString();
+    }
+  }
+}
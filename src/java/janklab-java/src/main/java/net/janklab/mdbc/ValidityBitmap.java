@@ -0,0 +1,157 @@
+package net.janklab.mdbc;
+
+import java.util.Arrays;
+
+/**
+ * Utilities for packed validity bitmaps.
+ *
+ * A validity bitmap is a long[] with one bit per row: bit (i % 64) of word
+ * (i / 64) is set if row i holds a real value, and clear if it was SQL NULL.
+ * A null bitmap reference means "all rows are valid"; column buffers return
+ * null when a chunk had no NULLs, so the common case costs nothing.
+ */
+public class ValidityBitmap {
+
+  private ValidityBitmap() {
+  }
+
+  /**
+   * The number of long words needed to hold a bitmap of n bits.
+   * @param n Number of bits (rows)
+   * @return Number of words
+   */
+  public static int words(int n) {
+    return (n + 63) >>> 6;
+  }
+
+  /**
+   * Test whether a given row is valid (non-NULL).
+   * @param validity The validity bitmap, or null if all rows are valid
+   * @param i The 0-based row index
+   * @return true if the row holds a real value
+   */
+  public static boolean isValid(long[] validity, int i) {
+    return validity == null || (validity[i >>> 6] & (1L << i)) != 0;
+  }
+
+  /**
+   * Count the NULL rows in a bitmap.
+   * @param validity The validity bitmap, or null if all rows are valid
+   * @param n The number of rows the bitmap covers
+   * @return The number of NULL rows
+   */
+  public static int countNulls(long[] validity, int n) {
+    if (validity == null) {
+      return 0;
+    }
+    int nValid = 0;
+    int nFullWords = n >>> 6;
+    for (int i = 0; i < nFullWords; i++) {
+      nValid += Long.bitCount(validity[i]);
+    }
+    int nTail = n & 63;
+    if (nTail != 0) {
+      nValid += Long.bitCount(validity[nFullWords] & ((1L << nTail) - 1));
+    }
+    return n - nValid;
+  }
+
+  /**
+   * Build a validity bitmap from a bitmap of NULL rows. The unused high bits of
+   * the last word are left clear.
+   * @param nullBits Bitmap with a bit set for each NULL row; may be longer or 
+   * shorter than needed. Rows past its end are taken to be valid.
+   * @param n The number of rows
+   * @return A new validity bitmap of exactly words(n) words
+   */
+  public static long[] fromNullBits(long[] nullBits, int n) {
+    int nWords = words(n);
+    long[] out = new long[nWords];
+    int nNullWords = Math.min(nWords, nullBits.length);
+    for (int i = 0; i < nNullWords; i++) {
+      out[i] = ~nullBits[i];
+    }
+    if (nNullWords < nWords) {
+      Arrays.fill(out, nNullWords, nWords, -1L);
+    }
+    int nTail = n & 63;
+    if (nTail != 0) {
+      out[nWords - 1] &= (1L << nTail) - 1;
+    }
+    return out;
+  }
+
+  /**
+   * Concatenate validity bitmaps end to end.
+   * @param parts The validity bitmaps, any of which may be null for "all valid"
+   * @param counts The number of rows covered by each bitmap
+   * @return The combined validity bitmap, or null if all the parts were null
+   */
+  public static long[] concat(long[][] parts, int[] counts) {
+    boolean anyNulls = false;
+    long nTotal = 0;
+    for (int i = 0; i < parts.length; i++) {
+      anyNulls |= parts[i] != null;
+      nTotal += counts[i];
+    }
+    if (!anyNulls) {
+      return null;
+    }
+    if (nTotal > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Combined bitmap is too long: " + nTotal + " rows");
+    }
+    long[] out = new long[words((int) nTotal)];
+    int offset = 0;
+    for (int iPart = 0; iPart < parts.length; iPart++) {
+      long[] part = parts[iPart];
+      int n = counts[iPart];
+      if (part == null) {
+        setRange(out, offset, n);
+      } else if ((offset & 63) == 0) {
+        System.arraycopy(part, 0, out, offset >>> 6, words(n));
+      } else {
+        int shift = offset & 63;
+        int base = offset >>> 6;
+        for (int i = 0; i < words(n); i++) {
+          out[base + i] |= part[i] << shift;
+          if (base + i + 1 < out.length) {
+            out[base + i + 1] |= part[i] >>> (64 - shift);
+          }
+        }
+      }
+      offset += n;
+    }
+    int nTail = offset & 63;
+    if (nTail != 0) {
+      out[out.length - 1] &= (1L << nTail) - 1;
+    }
+    return out;
+  }
+
+  /**
+   * Set bits [from, from+n) of a bitmap.
+   */
+  private static void setRange(long[] bits, int from, int n) {
+    for (int i = from; i < from + n; i++) {
+      bits[i >>> 6] |= 1L << i;
+    }
+  }
+
+  /**
+   * Expand a validity bitmap into a per-row NULL mask. This is the form that's
+   * handiest on the Matlab side, where it converts to a logical array.
+   * @param validity The validity bitmap, or null if all rows are valid
+   * @param n The number of rows
+   * @return boolean[] that is true for each NULL row
+   */
+  public static boolean[] toNullMask(long[] validity, int n) {
+    boolean[] out = new boolean[n];
+    if (validity == null) {
+      return out;
+    }
+    for (int i = 0; i < n; i++) {
+      out[i] = (validity[i >>> 6] & (1L << i)) == 0;
+    }
+    return out;
+  }
+}
@@ -0,0 +1,63 @@
+package net.janklab.mdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the SQLWarnings raised by a ResultSet during a fetch, up to a limit.
+ * Warnings are cleared from the ResultSet as they are collected, so each one
+ * is only reported once.
+ */
+class WarningAccumulator {
+  
+  private final int maxWarnings;
+  private final List<SQLWarning> warnings = new ArrayList<>();
+  private final List<Integer> warningRows = new ArrayList<>();
+  private int nDropped = 0;
+  
+  WarningAccumulator(int maxWarnings) {
+    this.maxWarnings = maxWarnings;
+  }
+  
+  /**
+   * Collect any warnings currently pending on the ResultSet.
+   * @param rs The ResultSet to check
+   * @param row The row the warnings are attributed to, or -1 for none
+   * @throws SQLException If something goes wrong
+   */
+  void collect(ResultSet rs, int row) throws SQLException {
+    SQLWarning warning = rs.getWarnings();
+    if (warning == null) {
+      return;
+    }
+    while (warning != null) {
+      if (warnings.size() < maxWarnings) {
+        warnings.add(warning);
+        warningRows.add(row);
+      } else {
+        nDropped++;
+      }
+      warning = warning.getNextWarning();
+    }
+    rs.clearWarnings();
+  }
+  
+  SQLWarning[] getWarnings() {
+    return warnings.toArray(new SQLWarning[0]);
+  }
+  
+  int[] getWarningRows() {
+    int[] out = new int[warningRows.size()];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = warningRows.get(i);
+    }
+    return out;
+  }
+  
+  int getNDropped() {
+    return nDropped;
+  }
+}
@@ -2,7 +2,9 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import net.janklab.mdbc.ColumnBuffer;
+import net.janklab.mdbc.ValidityBitmap;
 
 /**
  *
@@ -12,11 +14,67 @@ public abstract class AbstractColumnBuffer implements ColumnBuffer {
   protected int colIndex;
   protected ResultSet rs;
   protected String colLabel;
+  /** Number of values buffered since the last attach. */
+  protected int nRows;
+  /** Bitmap with a bit set for each NULL row. Allocated on the first NULL. */
+  private long[] nullBits;
+  /** Whether any NULLs have been fetched since the last attach. */
+  private boolean hasNulls;
+  /** The capacity requested at attach time. */
+  private int capacity;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
     this.rs = rs;
     this.colIndex = colIndex;
     this.colLabel = rs.getMetaData().getColumnLabel(colIndex);
+    this.nRows = 0;
+    this.capacity = capacity;
+    if (hasNulls) {
+      Arrays.fill(nullBits, 0L);
+      hasNulls = false;
+    }
+  }
+  
+  /**
+   * Record that a row is NULL. Subclasses call this from fetchNextValue() when
+   * wasNull() is true, in addition to buffering whatever placeholder value
+   * they use for NULL.
+   * @param row The 0-based row index within the current chunk
+   */
+  protected final void markNull(int row) {
+    int word = row >>> 6;
+    if (nullBits == null || word >= nullBits.length) {
+      // Cover at least as many rows as the value buffer holds, growing the same way
+      // it does, so a chunk that outgrows its preallocation doesn't regrow this for
+      // every later NULL
+      int nRowsToCover = Math.max(row + 1, BufferArrays.initialCapacity(capacity));
+      if (nullBits != null) {
+        nRowsToCover = Math.max(nRowsToCover, BufferArrays.grownCapacity(nullBits.length << 6));
+      }
+      int nWords = ValidityBitmap.words(nRowsToCover);
+      nullBits = (nullBits == null) ? new long[nWords] : Arrays.copyOf(nullBits, nWords);
+    }
+    nullBits[word] |= 1L << row;
+    hasNulls = true;
+  }
+  
+  @Override
+  public long[] getValidity() {
+    return hasNulls ? ValidityBitmap.fromNullBits(nullBits, nRows) : null;
+  }
+  
+  /**
+   * Creates a new instance of this buffer's class using its no-arg constructor.
+   * Subclasses with configuration fields should override this to copy them.
+   */
+  @Override
+  public ColumnBuffer newInstance() {
+    try {
+      return getClass().getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot create new instance of " 
+              + getClass().getName(), e);
+    }
   }
 }
@@ -2,35 +2,37 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Fetches and buffers BINARY/VARBINARY data as byte[]s.
  */
 public class BinaryColumnBuffer extends AbstractColumnBuffer {
   
-  private List<byte[]> buf;
+  private byte[][] buf;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new ArrayList<>();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = new byte[BufferArrays.initialCapacity(capacity)][];
   }
   
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     byte[] val = rs.getBytes(colIndex);
     if (rs.wasNull()) {
-      buf.add(null);
+      markNull(nRows);
+      buf[nRows++] = null;
     } else {
-      buf.add(val);
+      buf[nRows++] = val;
     }
   }
 
   @Override
   public Object getBuffer() {
-    return buf.toArray(new byte[0][]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
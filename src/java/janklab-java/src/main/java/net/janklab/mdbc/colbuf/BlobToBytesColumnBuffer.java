@@ -2,27 +2,29 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Buffers BLOBs, retrieving their byte data and storing it as byte[] arrays.
  */
 public class BlobToBytesColumnBuffer extends AbstractColumnBuffer {
   
-  private List<byte[]> buf;
+  private byte[][] buf;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new ArrayList<>();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = new byte[BufferArrays.initialCapacity(capacity)][];
   }
   
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     java.sql.Blob blob = rs.getBlob(colIndex);
     if (rs.wasNull()) {
-      buf.add(null);
+      markNull(nRows);
+      buf[nRows++] = null;
     } else {
       long length = blob.length();
       if (length > Integer.MAX_VALUE) {
@@ -31,14 +33,14 @@ public class BlobToBytesColumnBuffer extends AbstractColumnBuffer {
         throw new SQLException("BLOB size exceeds MDBC maximum length");
       }
       byte[] val = blob.getBytes(1, (int) length);
-      buf.add(val);
+      buf[nRows++] = val;
       blob.free();
     }
   }
 
   @Override
   public Object getBuffer() {
-    return buf.toArray(new byte[0][]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
@@ -1,34 +1,38 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
- * Fetches and buffers values as boolean, returns boolean[].
+ * Fetches and buffers values as boolean, returns boolean[]. SQL NULLs are
+ * buffered as false and flagged in the validity bitmap.
  */
 public class BooleanColumnBuffer extends AbstractColumnBuffer {
-  private BooleanArrayList buf;
+  private boolean[] buf;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new BooleanArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     boolean val = rs.getBoolean(colIndex);
     if (rs.wasNull()) {
-      buf.add(false);
+      markNull(nRows);
+      buf[nRows++] = false;
     } else {
-      buf.add(val);
+      buf[nRows++] = val;
     }
   }
 
   @Override
   public boolean[] getBuffer() {
-    return buf.toArray(new boolean[0]);
+    return BufferArrays.trim(buf, nRows);
   }
     
 }
@@ -0,0 +1,253 @@
+package net.janklab.mdbc.colbuf;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.janklab.util.DictionaryEncodedStrings;
+import net.janklab.util.PackedStrings;
+
+/**
+ * Helpers for managing the raw arrays that ColumnBuffers fill by index.
+ *
+ * Buffers are sized up front to the expected chunk size, reused across chunks
+ * when they are big enough, and only copied on handoff when the chunk came up
+ * short. Only primitive arrays are reused; Matlab copies those on handoff, but
+ * it may hold on to object arrays (like String[]) by reference, so buffers of
+ * objects get a fresh array for each chunk.
+ */
+public class BufferArrays {
+
+  /**
+   * The largest number of rows that will be allocated up front for a single
+   * buffer. Larger capacity requests (like a "fetch everything" maxRows of
+   * Integer.MAX_VALUE) start out at this size and grow as needed.
+   */
+  public static final int MAX_PREALLOCATED_ROWS = 1 << 20;
+
+  private BufferArrays() {
+  }
+
+  /**
+   * The number of rows to allocate up front for a requested capacity.
+   * @param capacity The requested capacity, in rows
+   * @return The initial allocation size, in rows
+   */
+  public static int initialCapacity(int capacity) {
+    return Math.max(1, Math.min(capacity, MAX_PREALLOCATED_ROWS));
+  }
+
+  /**
+   * Compute the grown size for a buffer that is full.
+   */
+  static int grownCapacity(int length) {
+    int newLength = length + (length >> 1) + 1;
+    return newLength < 0 ? Integer.MAX_VALUE - 8 : newLength;
+  }
+
+  public static double[] reuse(double[] buf, int capacity) {
+    int n = initialCapacity(capacity);
+    return (buf != null && buf.length >= n) ? buf : new double[n];
+  }
+
+  public static long[] reuse(long[] buf, int capacity) {
+    int n = initialCapacity(capacity);
+    return (buf != null && buf.length >= n) ? buf : new long[n];
+  }
+
+  public static int[] reuse(int[] buf, int capacity) {
+    int n = initialCapacity(capacity);
+    return (buf != null && buf.length >= n) ? buf : new int[n];
+  }
+
+  public static float[] reuse(float[] buf, int capacity) {
+    int n = initialCapacity(capacity);
+    return (buf != null && buf.length >= n) ? buf : new float[n];
+  }
+
+  public static boolean[] reuse(boolean[] buf, int capacity) {
+    int n = initialCapacity(capacity);
+    return (buf != null && buf.length >= n) ? buf : new boolean[n];
+  }
+
+  public static double[] grow(double[] buf) {
+    return Arrays.copyOf(buf, grownCapacity(buf.length));
+  }
+
+  public static long[] grow(long[] buf) {
+    return Arrays.copyOf(buf, grownCapacity(buf.length));
+  }
+
+  public static int[] grow(int[] buf) {
+    return Arrays.copyOf(buf, grownCapacity(buf.length));
+  }
+
+  public static float[] grow(float[] buf) {
+    return Arrays.copyOf(buf, grownCapacity(buf.length));
+  }
+
+  public static boolean[] grow(boolean[] buf) {
+    return Arrays.copyOf(buf, grownCapacity(buf.length));
+  }
+
+  public static <T> T[] grow(T[] buf) {
+    return Arrays.copyOf(buf, grownCapacity(buf.length));
+  }
+
+  /**
+   * Get an exact-length array holding the first n values of buf. Returns buf
+   * itself, with no copying, if it is already exactly n long.
+   */
+  public static double[] trim(double[] buf, int n) {
+    return (buf.length == n) ? buf : Arrays.copyOf(buf, n);
+  }
+
+  public static long[] trim(long[] buf, int n) {
+    return (buf.length == n) ? buf : Arrays.copyOf(buf, n);
+  }
+
+  public static int[] trim(int[] buf, int n) {
+    return (buf.length == n) ? buf : Arrays.copyOf(buf, n);
+  }
+
+  public static float[] trim(float[] buf, int n) {
+    return (buf.length == n) ? buf : Arrays.copyOf(buf, n);
+  }
+
+  public static boolean[] trim(boolean[] buf, int n) {
+    return (buf.length == n) ? buf : Arrays.copyOf(buf, n);
+  }
+
+  public static <T> T[] trim(T[] buf, int n) {
+    return (buf.length == n) ? buf : Arrays.copyOf(buf, n);
+  }
+
+  /**
+   * Concatenate column buffer data end to end. The parts must all be arrays of
+   * the same type, as returned by ColumnBuffer.getBuffer(), or all be
+   * BufferedTimestampComponents, PackedBytes, PackedStrings, or
+   * DictionaryEncodedStrings.
+   * Primitive arrays are copied directly, without boxing.
+   * @param parts The buffer data to concatenate
+   * @return A new array (or BufferedTimestampComponents) holding all the parts
+   */
+  public static Object concat(List<?> parts) {
+    if (parts.isEmpty()) {
+      throw new IllegalArgumentException("No parts to concatenate");
+    }
+    Object first = parts.get(0);
+    if (first instanceof BufferedTimestampComponents) {
+      Object[] datenums = new Object[parts.size()];
+      Object[] nanos = new Object[parts.size()];
+      for (int i = 0; i < parts.size(); i++) {
+        BufferedTimestampComponents part = (BufferedTimestampComponents) parts.get(i);
+        datenums[i] = part.datenums;
+        nanos[i] = part.nanosOfDays;
+      }
+      return new BufferedTimestampComponents((double[]) concat(Arrays.asList(datenums)), 
+              (long[]) concat(Arrays.asList(nanos)));
+    }
+    if (first instanceof PackedBytes) {
+      List<PackedBytes> packedParts = new ArrayList<>(parts.size());
+      for (Object part : parts) {
+        packedParts.add((PackedBytes) part);
+      }
+      return PackedBytes.concat(packedParts);
+    }
+    if (first instanceof PackedStrings) {
+      List<PackedStrings> packedParts = new ArrayList<>(parts.size());
+      for (Object part : parts) {
+        packedParts.add((PackedStrings) part);
+      }
+      return PackedStrings.concat(packedParts);
+    }
+    if (first instanceof DictionaryEncodedStrings) {
+      List<DictionaryEncodedStrings> dictParts = new ArrayList<>(parts.size());
+      for (Object part : parts) {
+        dictParts.add((DictionaryEncodedStrings) part);
+      }
+      return DictionaryEncodedStrings.concat(dictParts);
+    }
+    if (first == null || !first.getClass().isArray()) {
+      throw new IllegalArgumentException("Cannot concatenate buffers of type " 
+              + (first == null ? "null" : first.getClass().getName()));
+    }
+    Class<?> arrayClass = first.getClass();
+    long nTotal = 0;
+    for (Object part : parts) {
+      if (part.getClass() != arrayClass) {
+        throw new IllegalArgumentException("Cannot concatenate buffers of different types: " 
+                + arrayClass.getName() + " and " + part.getClass().getName());
+      }
+      nTotal += Array.getLength(part);
+    }
+    if (nTotal > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Combined buffer is too long: " + nTotal + " rows");
+    }
+    Object out = Array.newInstance(arrayClass.getComponentType(), (int) nTotal);
+    int offset = 0;
+    for (Object part : parts) {
+      int n = Array.getLength(part);
+      System.arraycopy(part, 0, out, offset, n);
+      offset += n;
+    }
+    return out;
+  }
+
+  /**
+   * Estimate the memory used by a buffer in Matlab handoff format, including
+   * the objects it references.
+   * @param data The buffer, as returned by ColumnBuffer.getBuffer()
+   * @return The estimated size, in bytes
+   */
+  public static long estimateBytes(Object data) {
+    if (data == null) {
+      return 0;
+    } else if (data instanceof PackedStrings) {
+      PackedStrings ps = (PackedStrings) data;
+      return 48 + ps.data.length + 4L * ps.offsets.length;
+    } else if (data instanceof PackedBytes) {
+      PackedBytes pb = (PackedBytes) data;
+      return 48 + pb.getDataLength() + 8L * pb.offsets.length;
+    } else if (data instanceof DictionaryEncodedStrings) {
+      DictionaryEncodedStrings des = (DictionaryEncodedStrings) data;
+      return 32 + 4L * des.codes.length + estimateBytes(des.dictionary);
+    } else if (data instanceof BufferedTimestampComponents) {
+      BufferedTimestampComponents btc = (BufferedTimestampComponents) data;
+      return 48 + 8L * btc.datenums.length + 8L * btc.nanosOfDays.length;
+    } else if (data instanceof String[]) {
+      long out = 16 + 8L * ((String[]) data).length;
+      for (String str : (String[]) data) {
+        if (str != null) {
+          out += 40 + 2L * str.length();
+        }
+      }
+      return out;
+    } else if (data instanceof byte[][]) {
+      long out = 16 + 8L * ((byte[][]) data).length;
+      for (byte[] bytes : (byte[][]) data) {
+        if (bytes != null) {
+          out += 16 + bytes.length;
+        }
+      }
+      return out;
+    } else if (data.getClass().isArray()) {
+      Class<?> type = data.getClass().getComponentType();
+      long n = Array.getLength(data);
+      if (type == double.class || type == long.class) {
+        return 16 + 8 * n;
+      } else if (type == int.class || type == float.class) {
+        return 16 + 4 * n;
+      } else if (type == short.class || type == char.class) {
+        return 16 + 2 * n;
+      } else if (type == boolean.class || type == byte.class) {
+        return 16 + n;
+      } else {
+        // Some other object array; count the references plus a nominal object size
+        return 16 + 8 * n + 32 * n;
+      }
+    }
+    return 32;
+  }
+
+}
@@ -2,30 +2,52 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import net.janklab.mdbc.ColumnBuffer;
+import net.janklab.util.PackedStringArrayList;
 
 /**
  * Fetches CLOBs, buffering and returning them as Strings.
+ *
+ * If packed is set, they are buffered into a single byte array and returned
+ * as a PackedStrings instead of a String[].
  */
 public class ClobToStringsColumnBuffer extends AbstractColumnBuffer {
   
-  private List<String> buf;
+  private String[] buf;
+  private PackedStringArrayList packedBuf;
   
   /** If true, will fetch NCLOBs instead of CLOBs. */
   public boolean useNClob;
+  /** If true, buffer into a packed byte array and return a PackedStrings. */
+  public boolean packed;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new ArrayList<>();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    if (packed) {
+      if (packedBuf == null) {
+        packedBuf = new PackedStringArrayList(BufferArrays.initialCapacity(capacity));
+      }
+      packedBuf.clear();
+    } else {
+      buf = new String[BufferArrays.initialCapacity(capacity)];
+    }
   }
   
   @Override
   public void fetchNextValue() throws SQLException {
+    if (!packed && nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     java.sql.Clob clob = useNClob? rs.getNClob(colIndex) : rs.getClob(colIndex);
     if (rs.wasNull()) {
-      buf.add(null);
+      markNull(nRows);
+      if (packed) {
+        packedBuf.addNull();
+        nRows++;
+      } else {
+        buf[nRows++] = null;
+      }
     } else {
       long length = clob.length();
       if (length > Integer.MAX_VALUE) {
@@ -34,14 +56,30 @@ public class ClobToStringsColumnBuffer extends AbstractColumnBuffer {
         throw new SQLException("CLOB size exceeds MDBC maximum length");
       }
       String val = clob.getSubString(1, (int) length);
-      buf.add(val);
+      if (packed) {
+        packedBuf.add(val);
+        nRows++;
+      } else {
+        buf[nRows++] = val;
+      }
       clob.free();
     }
   }
 
+  @Override
+  public ColumnBuffer newInstance() {
+    ClobToStringsColumnBuffer out = new ClobToStringsColumnBuffer();
+    out.useNClob = useNClob;
+    out.packed = packed;
+    return out;
+  }
+
   @Override
   public Object getBuffer() {
-    return buf.toArray(new String[0]);
+    if (packed) {
+      return packedBuf.toPackedStrings();
+    }
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
\ No newline at end of file
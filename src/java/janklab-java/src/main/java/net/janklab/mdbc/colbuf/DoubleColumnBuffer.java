@@ -1,6 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -13,27 +12,31 @@ import java.sql.SQLException;
  * roundoff error.
  */
 public class DoubleColumnBuffer extends AbstractColumnBuffer {
-  private DoubleArrayList buf;
+  private double[] buf;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new DoubleArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     double val = rs.getDouble(colIndex);
     if (rs.wasNull()) {
-      buf.add(Double.NaN);
+      markNull(nRows);
+      buf[nRows++] = Double.NaN;
     } else {
-      buf.add(val);
+      buf[nRows++] = val;
     }
   }
 
   @Override
   public double[] getBuffer() {
-    return buf.toArray(new double[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
@@ -1,6 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -10,27 +9,31 @@ import java.sql.SQLException;
  * @author janke
  */
 public class FloatColumnBuffer extends AbstractColumnBuffer {
-  private FloatArrayList buf;
+  private float[] buf;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new FloatArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     float val = rs.getFloat(colIndex);
     if (rs.wasNull()) {
-      buf.add(Float.NaN);
+      markNull(nRows);
+      buf[nRows++] = Float.NaN;
     } else {
-      buf.add(val);
+      buf[nRows++] = val;
     }
   }
 
   @Override
   public float[] getBuffer() {
-    return buf.toArray(new float[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
@@ -1,38 +1,39 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.longs.LongArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import net.janklab.mdbc.ColumnBuffer;
 
 /**
  * A ColumnBuffer which fetches and buffers values as longs, corresponding to 
  * the SQL BIGINT type.
  * 
- * This does not have a way to handle SQL NULLs. It just passes along whatever
- * value was fetched.
+ * SQL NULLs are buffered as 0 and flagged in the validity bitmap, so the
+ * values can stay in their native long type.
  */
-public class LongColumnBuffer implements ColumnBuffer {
-  private ResultSet rs;
-  private int colIndex;
-  private LongArrayList buf;
+public class LongColumnBuffer extends AbstractColumnBuffer {
+  private long[] buf;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) {
-    this.rs = rs;
-    this.colIndex = colIndex;
-    buf = new LongArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     long val = rs.getLong(colIndex);
-    buf.add(val);
+    if (rs.wasNull()) {
+      markNull(nRows);
+    }
+    buf[nRows++] = val;
   }
 
   @Override
   public long[] getBuffer() {
-    return buf.toArray(new long[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
   
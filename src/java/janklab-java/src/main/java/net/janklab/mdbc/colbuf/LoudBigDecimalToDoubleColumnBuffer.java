@@ -1,6 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -27,7 +26,7 @@ import java.sql.SQLException;
  */
 public class LoudBigDecimalToDoubleColumnBuffer extends AbstractColumnBuffer {
 
-  private DoubleArrayList buf;
+  private double[] buf;
 
   /**
    * The threshold at which integer values of BigDecimals are subject to
@@ -38,17 +37,21 @@ public class LoudBigDecimalToDoubleColumnBuffer extends AbstractColumnBuffer {
           = new BigDecimal(9007199254740991L);
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new DoubleArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     // Value for buffering
     double doubleVal = rs.getDouble(colIndex);
     if (rs.wasNull()) {
-      buf.add(Double.NaN);
+      markNull(nRows);
+      buf[nRows++] = Double.NaN;
       return;
     }
     // Value for overflow detection
@@ -77,7 +80,7 @@ public class LoudBigDecimalToDoubleColumnBuffer extends AbstractColumnBuffer {
       }
     }
 
-    buf.add(doubleVal);
+    buf[nRows++] = doubleVal;
   }
   
   private void roundoffWarning(BigDecimal originalVal, 
@@ -93,7 +96,7 @@ public class LoudBigDecimalToDoubleColumnBuffer extends AbstractColumnBuffer {
 
   @Override
   public double[] getBuffer() {
-    return buf.toArray(new double[0]);
+    return BufferArrays.trim(buf, nRows);
   }
 
 }
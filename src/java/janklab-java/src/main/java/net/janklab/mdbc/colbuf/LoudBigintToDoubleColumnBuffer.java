@@ -1,6 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -10,25 +9,33 @@ import java.sql.SQLException;
  * raising a warning when overflow error occurs.
  */
 public class LoudBigintToDoubleColumnBuffer extends AbstractColumnBuffer {
-  private DoubleArrayList buf;
+  private double[] buf;
   
   public static final long ROUNDOFF_THRESHOLD = 9007199254740991L;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new DoubleArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     long val = rs.getLong(colIndex);
+    if (rs.wasNull()) {
+      markNull(nRows);
+      buf[nRows++] = Double.NaN;
+      return;
+    }
     long absVal = Math.abs(val);
     double doubleVal = absVal;
     if (absVal > ROUNDOFF_THRESHOLD) {
         roundoffWarning(val, doubleVal);
     }
-    buf.add(doubleVal);
+    buf[nRows++] = doubleVal;
   }
   
   private void roundoffWarning(long originalVal, 
@@ -41,7 +48,7 @@ public class LoudBigintToDoubleColumnBuffer extends AbstractColumnBuffer {
 
   @Override
   public double[] getBuffer() {
-    return buf.toArray(new double[0]);
+    return BufferArrays.trim(buf, nRows);
   }
 
 }
@@ -2,8 +2,6 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Fetches, buffers, and returns as java.lang.Object values.
@@ -12,27 +10,31 @@ import java.util.List;
  */
 public class ObjectColumnBuffer extends AbstractColumnBuffer {
   
-  private List<Object> buf;
+  private Object[] buf;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new ArrayList<>();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = new Object[BufferArrays.initialCapacity(capacity)];
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     Object val = rs.getObject(colIndex);
     if (rs.wasNull()) {
-      buf.add(null);
+      markNull(nRows);
+      buf[nRows++] = null;
     } else {
-      buf.add(val);
+      buf[nRows++] = val;
     }
   }
      
   @Override
   public Object[] getBuffer() {
-    return buf.toArray(new Object[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
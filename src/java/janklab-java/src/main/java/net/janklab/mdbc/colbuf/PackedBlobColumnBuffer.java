@@ -0,0 +1,169 @@
+package net.janklab.mdbc.colbuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import net.janklab.mdbc.ColumnBuffer;
+
+/**
+ * Buffers BLOB or BINARY/VARBINARY data packed into a single contiguous block,
+ * returned as a PackedBytes.
+ *
+ * Values are streamed from the driver in fixed-size reads straight into the
+ * packed data, instead of materializing a separate byte[] for each value. If a
+ * chunk's data grows past spillThreshold bytes, it is moved to a temp file and
+ * the rest of the chunk is streamed there; the file is memory-mapped when the
+ * buffer is handed off, and deleted when the buffer is re-attached for the
+ * next chunk.
+ */
+public class PackedBlobColumnBuffer extends AbstractColumnBuffer {
+
+  /** If true, read the column with getBinaryStream() instead of as a Blob, for BINARY/VARBINARY columns. */
+  public boolean binaryColumn = false;
+  /** Size of the data, in bytes, past which a chunk is spilled to a memory-mapped temp file. */
+  public long spillThreshold = 256L << 20;
+  /** Size of each read from the driver's stream, in bytes. */
+  public int readSize = 64 * 1024;
+
+  private long[] offsets;
+  private byte[] data;
+  private long dataLength;
+  private RandomAccessFile spill;
+  private File spillFile;
+  private byte[] scratch;
+
+  @Override
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    offsets = BufferArrays.reuse(offsets, capacity + 1);
+    offsets[0] = 0;
+    if (data == null) {
+      data = new byte[readSize];
+    }
+    dataLength = 0;
+    releaseSpill();
+  }
+
+  @Override
+  public void fetchNextValue() throws SQLException {
+    if (nRows + 1 == offsets.length) {
+      offsets = BufferArrays.grow(offsets);
+    }
+    InputStream in;
+    Blob blob = null;
+    if (binaryColumn) {
+      in = rs.getBinaryStream(colIndex);
+    } else {
+      blob = rs.getBlob(colIndex);
+      in = blob == null ? null : blob.getBinaryStream();
+    }
+    if (in == null || rs.wasNull()) {
+      markNull(nRows);
+    } else {
+      try {
+        readValue(in);
+        in.close();
+      } catch (IOException e) {
+        throw new SQLException("Error reading binary data for column " + colIndex + ": " + e, e);
+      }
+      if (blob != null) {
+        blob.free();
+      }
+    }
+    nRows++;
+    offsets[nRows] = dataLength;
+  }
+
+  private void readValue(InputStream in) throws IOException {
+    while (true) {
+      if (spill != null) {
+        int n = in.read(scratch, 0, scratch.length);
+        if (n < 0) {
+          return;
+        }
+        spill.write(scratch, 0, n);
+        dataLength += n;
+        continue;
+      }
+      if (dataLength + readSize > Math.min(spillThreshold, Integer.MAX_VALUE - 8)) {
+        startSpill();
+        continue;
+      }
+      if (dataLength + readSize > data.length) {
+        int newLength = (int) Math.min(Math.max(data.length + (data.length >> 1), 
+                dataLength + readSize), Integer.MAX_VALUE - 8L);
+        data = Arrays.copyOf(data, newLength);
+      }
+      int n = in.read(data, (int) dataLength, readSize);
+      if (n < 0) {
+        return;
+      }
+      dataLength += n;
+    }
+  }
+
+  private void startSpill() throws IOException {
+    spillFile = File.createTempFile("mdbc-blob-", ".bin");
+    spillFile.deleteOnExit();
+    spill = new RandomAccessFile(spillFile, "rw");
+    spill.write(data, 0, (int) dataLength);
+    scratch = new byte[readSize];
+  }
+
+  /**
+   * Delete the previous chunk's spill file, if any.
+   */
+  private void releaseSpill() throws SQLException {
+    if (spill == null) {
+      return;
+    }
+    try {
+      spill.close();
+    } catch (IOException e) {
+      throw new SQLException("Error closing BLOB spill file " + spillFile + ": " + e, e);
+    }
+    // This may fail on some platforms if the file is still mapped; deleteOnExit covers that
+    spillFile.delete();
+    spill = null;
+    spillFile = null;
+    scratch = null;
+  }
+
+  @Override
+  public Object getBuffer() {
+    long[] offs = BufferArrays.trim(offsets, nRows + 1);
+    if (spill == null) {
+      return new PackedBytes(offs, data);
+    }
+    try {
+      FileChannel channel = spill.getChannel();
+      int nSegments = (int) ((dataLength + PackedBytes.SEGMENT_SIZE - 1) / PackedBytes.SEGMENT_SIZE);
+      ByteBuffer[] segments = new ByteBuffer[nSegments];
+      for (int i = 0; i < nSegments; i++) {
+        long start = i * PackedBytes.SEGMENT_SIZE;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(PackedBytes.SEGMENT_SIZE, dataLength - start));
+      }
+      return new PackedBytes(offs, segments, spillFile);
+    } catch (IOException e) {
+      throw new IllegalStateException("Error mapping BLOB spill file " + spillFile + ": " + e, e);
+    }
+  }
+
+  @Override
+  public ColumnBuffer newInstance() {
+    PackedBlobColumnBuffer out = new PackedBlobColumnBuffer();
+    out.binaryColumn = binaryColumn;
+    out.spillThreshold = spillThreshold;
+    out.readSize = readSize;
+    return out;
+  }
+
+}
@@ -0,0 +1,220 @@
+package net.janklab.mdbc.colbuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A holder for a column of variable-length binary values, packed end to end
+ * into one contiguous block of bytes, with an offsets array marking where
+ * each value starts and ends.
+ *
+ * Value i occupies bytes [offsets[i], offsets[i+1]) of the data. NULLs are
+ * stored as empty values; use the column's validity bitmap to tell them apart.
+ *
+ * The data is either held on the heap in a byte[], or, if it was too large,
+ * in a memory-mapped temp file, split into segments of up to SEGMENT_SIZE
+ * bytes. The heap byte[] may be longer than the data it holds; only the
+ * first getDataLength() bytes are meaningful.
+ */
+public class PackedBytes {
+
+  /** Maximum size of each mapped segment of spilled data. */
+  public static final long SEGMENT_SIZE = 1L << 30;
+
+  /** Start offset of each value, plus a final end offset. Has size() + 1 elements. */
+  public final long[] offsets;
+  private final byte[] data;
+  private final ByteBuffer[] segments;
+  private final File spillFile;
+
+  /**
+   * Create a PackedBytes that holds its data on the heap.
+   * @param offsets The value offsets, with one more element than there are values
+   * @param data The packed value data; may be longer than needed
+   */
+  public PackedBytes(long[] offsets, byte[] data) {
+    this.offsets = offsets;
+    this.data = data;
+    this.segments = null;
+    this.spillFile = null;
+  }
+
+  /**
+   * Create a PackedBytes whose data is in memory-mapped segments of a file.
+   * @param offsets The value offsets, with one more element than there are values
+   * @param segments The mapped data, in consecutive segments of SEGMENT_SIZE
+   * bytes (except for the last)
+   * @param spillFile The file the segments are mapped from
+   */
+  public PackedBytes(long[] offsets, ByteBuffer[] segments, File spillFile) {
+    this.offsets = offsets;
+    this.data = null;
+    this.segments = segments;
+    this.spillFile = spillFile;
+  }
+
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * Whether the data was spilled to a memory-mapped file instead of held on the heap.
+   * @return true if spilled
+   */
+  public boolean isSpilled() {
+    return segments != null;
+  }
+
+  /**
+   * Get the heap data array, for bulk access.
+   * @return The packed data, or null if it was spilled to a file
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * Get just the filled part of the heap data array, for bulk conversion. The
+   * heap array is returned as is if it is exactly full; otherwise this copies.
+   * @return The first getDataLength() bytes of the packed data, or null if it
+   * was spilled to a file
+   */
+  public byte[] getTrimmedData() {
+    if (data == null) {
+      return null;
+    }
+    int len = (int) getDataLength();
+    return (data.length == len) ? data : Arrays.copyOf(data, len);
+  }
+
+  /**
+   * The total length of the packed data, in bytes.
+   * @return The data length
+   */
+  public long getDataLength() {
+    return offsets[offsets.length - 1];
+  }
+
+  public File getSpillFile() {
+    return spillFile;
+  }
+
+  /**
+   * The length of value i, in bytes.
+   * @param i The 0-based value index
+   * @return The length
+   */
+  public long length(int i) {
+    return offsets[i + 1] - offsets[i];
+  }
+
+  /**
+   * Copy out value i.
+   * @param i The 0-based value index
+   * @return A new byte[] holding the value
+   */
+  public byte[] get(int i) {
+    long len = length(i);
+    if (len > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Value " + i + " is too large for a byte[]: " + len + " bytes");
+    }
+    byte[] out = new byte[(int) len];
+    copy(offsets[i], out, 0, (int) len);
+    return out;
+  }
+
+  /**
+   * Copy bytes out of the packed data.
+   */
+  private void copy(long from, byte[] dest, int destPos, int len) {
+    if (data != null) {
+      System.arraycopy(data, (int) from, dest, destPos, len);
+      return;
+    }
+    while (len > 0) {
+      ByteBuffer segment = segments[(int) (from / SEGMENT_SIZE)].duplicate();
+      int segPos = (int) (from % SEGMENT_SIZE);
+      int n = Math.min(len, segment.capacity() - segPos);
+      segment.position(segPos);
+      segment.get(dest, destPos, n);
+      from += n;
+      destPos += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Write value i to a stream.
+   * @param i The 0-based value index
+   * @param out The stream to write to
+   * @throws IOException If writing fails
+   */
+  public void writeTo(int i, OutputStream out) throws IOException {
+    if (data != null) {
+      out.write(data, (int) offsets[i], (int) length(i));
+      return;
+    }
+    byte[] scratch = new byte[(int) Math.min(length(i), 1 << 16)];
+    long pos = offsets[i];
+    long end = offsets[i + 1];
+    while (pos < end) {
+      int n = (int) Math.min(scratch.length, end - pos);
+      copy(pos, scratch, 0, n);
+      out.write(scratch, 0, n);
+      pos += n;
+    }
+  }
+
+  /**
+   * Unpack into one byte[] per value, the same form BinaryColumnBuffer returns.
+   * @return The values
+   */
+  public byte[][] toByteArrays() {
+    byte[][] out = new byte[size()][];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = get(i);
+    }
+    return out;
+  }
+
+  /**
+   * Concatenate several PackedBytes into one that holds its data on the heap.
+   * @param parts The parts to concatenate
+   * @return A new PackedBytes holding all the parts' values, in order
+   */
+  public static PackedBytes concat(List<PackedBytes> parts) {
+    long nBytes = 0;
+    int n = 0;
+    for (PackedBytes part : parts) {
+      nBytes += part.getDataLength();
+      n += part.size();
+    }
+    if (nBytes > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Combined data is too large for the heap: " + nBytes + " bytes");
+    }
+    long[] offsets = new long[n + 1];
+    byte[] data = new byte[(int) nBytes];
+    int iVal = 0;
+    long base = 0;
+    for (PackedBytes part : parts) {
+      for (int i = 0; i < part.size(); i++) {
+        offsets[iVal + i] = base + part.offsets[i];
+      }
+      part.copy(0, data, (int) base, (int) part.getDataLength());
+      iVal += part.size();
+      base += part.getDataLength();
+    }
+    offsets[n] = base;
+    return new PackedBytes(offsets, data);
+  }
+
+  @Override
+  public String toString() {
+    return "PackedBytes: " + size() + " values, " + getDataLength() + " bytes"
+            + (isSpilled() ? " (spilled to " + spillFile + ")" : "");
+  }
+}
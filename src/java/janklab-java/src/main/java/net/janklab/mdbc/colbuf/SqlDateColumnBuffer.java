@@ -2,8 +2,6 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Fetches and buffers java.sql.Dates, returning java.sql.Date[]. Dates are 
@@ -11,7 +9,7 @@ import java.util.List;
  */
 public class SqlDateColumnBuffer extends AbstractColumnBuffer {
   
-  private List<java.sql.Date> buf;
+  private java.sql.Date[] buf;
   
   //private final Calendar utcCal;
   
@@ -20,24 +18,28 @@ public class SqlDateColumnBuffer extends AbstractColumnBuffer {
   }
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new ArrayList<>();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = new java.sql.Date[BufferArrays.initialCapacity(capacity)];
   }
   
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     java.sql.Date val = rs.getDate(colIndex);
     if (rs.wasNull()) {
-      buf.add(null);
+      markNull(nRows);
+      buf[nRows++] = null;
     } else {
-      buf.add(val);
+      buf[nRows++] = val;
     }
   }
 
   @Override
   public Object getBuffer() {
-    return buf.toArray(new java.sql.Date[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
@@ -1,6 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
@@ -13,29 +12,33 @@ import net.janklab.time.TimeUtil;
  */
 public class SqlDateToLocaldatenumColumnBuffer extends AbstractColumnBuffer {
   
-  private DoubleArrayList buf;
+  private double[] buf;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new DoubleArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     java.sql.Date sqlDate = rs.getDate(colIndex);
     if (rs.wasNull()) {
-      buf.add(Double.NaN);
+      markNull(nRows);
+      buf[nRows++] = Double.NaN;
     } else {
       LocalDate localDate = sqlDate.toLocalDate();
       double datenum = TimeUtil.javaLocalDate2datenum(localDate);
-      buf.add(datenum);
+      buf[nRows++] = datenum;
     }
   }
      
   @Override
   public double[] getBuffer() {
-    return buf.toArray(new double[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
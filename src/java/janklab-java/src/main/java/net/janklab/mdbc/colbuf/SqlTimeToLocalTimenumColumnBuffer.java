@@ -1,6 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -11,20 +10,24 @@ import java.sql.SQLException;
  */
 public class SqlTimeToLocalTimenumColumnBuffer extends AbstractColumnBuffer {
   
-  private DoubleArrayList buf;
+  private double[] buf;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new DoubleArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
   }
 
   @Override
   @SuppressWarnings("deprecation")
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     java.sql.Time sqlTime = rs.getTime(colIndex);
     if (rs.wasNull()) {
-      buf.add(Double.NaN);
+      markNull(nRows);
+      buf[nRows++] = Double.NaN;
       return;
     }
     // Even though DBMSes like PostgreSQL have time values precise to the microsecond,
@@ -34,12 +37,12 @@ public class SqlTimeToLocalTimenumColumnBuffer extends AbstractColumnBuffer {
     long offsetMillis = sqlTime.getTimezoneOffset() * 60L * 1000L;
     long localMillis = utcMillis - offsetMillis;
     double localMicros = localMillis * 1000;
-    buf.add(localMicros);
+    buf[nRows++] = localMicros;
   }
 
   @Override
   public Object getBuffer() {
-    return buf.toArray(new double[0]);
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
@@ -2,34 +2,76 @@ package net.janklab.mdbc.colbuf;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import net.janklab.mdbc.ColumnBuffer;
+import net.janklab.util.PackedStringArrayList;
 
 /**
  * A ColumnBuffer which fetches character data, buffers as Strings, and returns
  * it as java.lang.String[]. This is the basic generic char/string data buffer.
+ *
+ * If packed is set, the strings are instead encoded into a single byte array
+ * as they are fetched, and returned as a PackedStrings. The fetched String
+ * objects become garbage right away instead of being held for the whole chunk.
  */
 public class StringColumnBuffer extends AbstractColumnBuffer {
-  private List<String> buf;
+  private String[] buf;
+  private PackedStringArrayList packedBuf;
+  
+  /** If true, buffer into a packed byte array and return a PackedStrings. */
+  public boolean packed;
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new ArrayList<>();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    if (packed) {
+      if (packedBuf == null) {
+        packedBuf = new PackedStringArrayList(BufferArrays.initialCapacity(capacity));
+      }
+      packedBuf.clear();
+    } else {
+      buf = new String[BufferArrays.initialCapacity(capacity)];
+    }
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
-    buf.add(rs.getString(colIndex));
+    if (packed) {
+      String val = rs.getString(colIndex);
+      if (val == null) {
+        markNull(nRows);
+      }
+      packedBuf.add(val);
+      nRows++;
+      return;
+    }
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
+    String val = rs.getString(colIndex);
+    if (val == null) {
+      markNull(nRows);
+    }
+    buf[nRows++] = val;
+  }
+
+  @Override
+  public ColumnBuffer newInstance() {
+    StringColumnBuffer out = new StringColumnBuffer();
+    out.packed = packed;
+    return out;
   }
 
   /**
    * Get the accumulated buffer, converting to String[].
-   * @return String[] containing the buffered strings
+   * @return String[] containing the buffered strings, or a PackedStrings if
+   * packed is set
    */
   @Override
   public Object getBuffer() {
-    return buf.toArray(new String[0]);
+    if (packed) {
+      return packedBuf.toPackedStrings();
+    }
+    return BufferArrays.trim(buf, nRows);
   }
   
 }
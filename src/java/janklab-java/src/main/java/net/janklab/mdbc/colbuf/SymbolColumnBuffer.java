@@ -1,36 +1,78 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import net.janklab.mdbc.ColumnBuffer;
+import net.janklab.util.DictionaryEncodedStrings;
+import net.janklab.util.StringDictionary;
+import net.janklab.util.Symbol;
 
 /**
- * A ColumnBuffer which fetches character data, buffers as Strings, and returns
- * it as java.lang.String[]. This is the basic generic char/string data buffer.
+ * A ColumnBuffer which fetches character data and returns it as symbol codes
+ * in an int[].
+ *
+ * Strings are dictionary-encoded into a local dictionary for each chunk as
+ * they are fetched, so the global Symbol table is only consulted once per
+ * distinct value per chunk, when the buffer is handed off. With
+ * useLocalDictionary set, the global Symbol table is not touched at all, and
+ * the buffer is returned as a DictionaryEncodedStrings instead.
  */
 public class SymbolColumnBuffer extends AbstractColumnBuffer {
-  private IntArrayList buf;
+  /** 
+   * If true, return a DictionaryEncodedStrings holding this chunk's own codes
+   * and dictionary, instead of global symbol codes.
+   */
+  public boolean useLocalDictionary = false;
+  /** Codes into the local dictionary, or NULL_CODE. */
+  private int[] buf;
+  private int[] symbolBuf;
+  private final StringDictionary dictionary = new StringDictionary();
 
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    buf = new IntArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    buf = BufferArrays.reuse(buf, capacity);
+    dictionary.clear();
   }
 
   @Override
   public void fetchNextValue() throws SQLException {
+    if (nRows == buf.length) {
+      buf = BufferArrays.grow(buf);
+    }
     String str = rs.getString(colIndex);
-    int symbolVal = net.janklab.util.Symbol.encodeString(str);
-    buf.add(symbolVal);
+    if (str == null) {
+      markNull(nRows);
+      buf[nRows++] = DictionaryEncodedStrings.NULL_CODE;
+      return;
+    }
+    buf[nRows++] = dictionary.encode(str);
   }
 
   /**
-   * Get the accumulated buffer, converting to String[].
-   * @return String[] containing the buffered strings
+   * Get the accumulated buffer.
+   * @return int[] of symbol codes, with NULLs as symbol 0 (the empty string); 
+   * or a DictionaryEncodedStrings if useLocalDictionary is set
    */
   @Override
-  public int[] getBuffer() {
-    return buf.toArray(new int[0]);
+  public Object getBuffer() {
+    if (useLocalDictionary) {
+      return new DictionaryEncodedStrings(BufferArrays.trim(buf, nRows), dictionary.toArray());
+    }
+    int[] dictSymbols = Symbol.encodeStrings(dictionary.toArray());
+    symbolBuf = BufferArrays.reuse(symbolBuf, nRows);
+    for (int i = 0; i < nRows; i++) {
+      int code = buf[i];
+      symbolBuf[i] = code == DictionaryEncodedStrings.NULL_CODE ? 0 : dictSymbols[code];
+    }
+    return BufferArrays.trim(symbolBuf, nRows);
+  }
+  
+  @Override
+  public ColumnBuffer newInstance() {
+    SymbolColumnBuffer out = new SymbolColumnBuffer();
+    out.useLocalDictionary = useLocalDictionary;
+    return out;
   }
   
 }
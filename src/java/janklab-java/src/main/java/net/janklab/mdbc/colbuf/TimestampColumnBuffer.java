@@ -1,7 +1,5 @@
 package net.janklab.mdbc.colbuf;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
@@ -10,26 +8,32 @@ import java.sql.SQLException;
  * for coversion to a jl.time.timestamp.
  */
 public class TimestampColumnBuffer extends AbstractColumnBuffer {
-  private DoubleArrayList datenumBuf;
-  private LongArrayList nanosOfDayBuf;
+  private double[] datenumBuf;
+  private long[] nanosOfDayBuf;
   
   public static final long UNIX_TO_DATENUM_EPOCH_OFFSET_DAYS = 719529;
   public static final int MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
   
   @Override
-  public void attach(ResultSet rs, int colIndex) throws SQLException {
-    super.attach(rs, colIndex);
-    datenumBuf = new DoubleArrayList();
-    nanosOfDayBuf = new LongArrayList();
+  public void attach(ResultSet rs, int colIndex, int capacity) throws SQLException {
+    super.attach(rs, colIndex, capacity);
+    datenumBuf = BufferArrays.reuse(datenumBuf, capacity);
+    nanosOfDayBuf = BufferArrays.reuse(nanosOfDayBuf, capacity);
   }
 
   @Override
   @SuppressWarnings("deprecation")
   public void fetchNextValue() throws SQLException {
+    if (nRows == datenumBuf.length) {
+      datenumBuf = BufferArrays.grow(datenumBuf);
+      nanosOfDayBuf = BufferArrays.grow(nanosOfDayBuf);
+    }
     java.sql.Timestamp sqlDate = rs.getTimestamp(colIndex);
     if (rs.wasNull()) {
-      datenumBuf.add(Double.NaN);
-      nanosOfDayBuf.add(0);
+      markNull(nRows);
+      datenumBuf[nRows] = Double.NaN;
+      nanosOfDayBuf[nRows] = 0;
+      nRows++;
     } else {
       long time = sqlDate.getTime();
       // Work around time zone offset to get back to database's local value
@@ -42,15 +46,16 @@ public class TimestampColumnBuffer extends AbstractColumnBuffer {
       long extraNanos = nanosField % 1000000;
       long nanosOfDay = (millisOfDay * 1000000) + extraNanos;
       // Buffer
-      datenumBuf.add(datenum);
-      nanosOfDayBuf.add(nanosOfDay);
+      datenumBuf[nRows] = datenum;
+      nanosOfDayBuf[nRows] = nanosOfDay;
+      nRows++;
     }
   }
   
   @Override
   public BufferedTimestampComponents getBuffer() {
-    return new BufferedTimestampComponents(datenumBuf.toArray(new double[0]), 
-            nanosOfDayBuf.toArray(new long[0]));
+    return new BufferedTimestampComponents(BufferArrays.trim(datenumBuf, nRows), 
+            BufferArrays.trim(nanosOfDayBuf, nRows));
   }
 
 }
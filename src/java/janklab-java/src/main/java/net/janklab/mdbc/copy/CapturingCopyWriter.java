@@ -0,0 +1,59 @@
+package net.janklab.mdbc.copy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * A CopyWriter that just captures the COPY data stream in memory. This is a
+ * stand-in for a database connection, for checking what a loader produces.
+ */
+public class CapturingCopyWriter implements CopyWriter {
+  
+  private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+  private boolean isEnded = false;
+  private boolean isCancelled = false;
+  
+  @Override
+  public void writeToCopy(byte[] buf, int off, int len) throws SQLException {
+    if (isEnded || isCancelled) {
+      throw new SQLException("COPY operation is no longer in progress");
+    }
+    captured.write(buf, off, len);
+  }
+  
+  @Override
+  public long endCopy() throws SQLException {
+    isEnded = true;
+    return -1;
+  }
+  
+  @Override
+  public void cancelCopy() throws SQLException {
+    isCancelled = true;
+  }
+  
+  /**
+   * Get the bytes written so far.
+   * @return A copy of the captured data
+   */
+  public byte[] getBytes() {
+    return captured.toByteArray();
+  }
+  
+  /**
+   * Get the bytes written so far, decoded as UTF-8. Handy for text-format COPY data.
+   * @return The captured data as a string
+   */
+  public String getText() {
+    return new String(captured.toByteArray(), StandardCharsets.UTF_8);
+  }
+  
+  public boolean isEnded() {
+    return isEnded;
+  }
+  
+  public boolean isCancelled() {
+    return isCancelled;
+  }
+}
@@ -0,0 +1,35 @@
+package net.janklab.mdbc.copy;
+
+import java.sql.SQLException;
+
+/**
+ * A destination for an encoded COPY data stream, like a PostgreSQL
+ * "COPY ... FROM STDIN" in progress. This mirrors the driver's CopyIn
+ * operations, so loaders can be pointed at a real database connection or at a
+ * stand-in that just captures the bytes.
+ */
+public interface CopyWriter {
+  
+  /**
+   * Send a block of encoded COPY data.
+   * @param buf The buffer holding the data
+   * @param off The offset of the data in buf
+   * @param len The number of bytes to send
+   * @throws SQLException If something goes wrong
+   */
+  void writeToCopy(byte[] buf, int off, int len) throws SQLException;
+  
+  /**
+   * Finish the COPY operation.
+   * @return The number of rows loaded, or -1 if the destination doesn't know
+   * @throws SQLException If something goes wrong
+   */
+  long endCopy() throws SQLException;
+  
+  /**
+   * Abort the COPY operation, discarding the data sent so far.
+   * @throws SQLException If something goes wrong
+   */
+  void cancelCopy() throws SQLException;
+  
+}
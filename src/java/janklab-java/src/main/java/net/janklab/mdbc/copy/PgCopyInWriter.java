@@ -0,0 +1,96 @@
+package net.janklab.mdbc.copy;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A CopyWriter that sends data to a PostgreSQL server through the PgJDBC
+ * driver's CopyManager API.
+ *
+ * The driver is accessed through reflection, so janklab doesn't need PgJDBC to
+ * build; it only needs to be on the classpath when this is used.
+ */
+public class PgCopyInWriter implements CopyWriter {
+  
+  private final Object copyIn;
+  private final Method writeToCopyMethod;
+  private final Method endCopyMethod;
+  private final Method cancelCopyMethod;
+  
+  private PgCopyInWriter(Object copyIn, Class<?> copyInClass) throws NoSuchMethodException {
+    this.copyIn = copyIn;
+    this.writeToCopyMethod = copyInClass.getMethod("writeToCopy", byte[].class, int.class, int.class);
+    this.endCopyMethod = copyInClass.getMethod("endCopy");
+    this.cancelCopyMethod = copyInClass.getMethod("cancelCopy");
+  }
+  
+  /**
+   * Start a COPY ... FROM STDIN operation on a connection.
+   * @param conn A connection from the PgJDBC driver (or one that unwraps to one)
+   * @param copySql The COPY statement to run
+   * @return A writer for sending the COPY data
+   * @throws SQLException If the connection is not a PostgreSQL connection, or
+   * the COPY can't be started
+   */
+  public static PgCopyInWriter open(Connection conn, String copySql) throws SQLException {
+    Class<?> pgConnClass;
+    Class<?> copyManagerClass;
+    Class<?> copyInClass;
+    try {
+      pgConnClass = Class.forName("org.postgresql.PGConnection");
+      copyManagerClass = Class.forName("org.postgresql.copy.CopyManager");
+      copyInClass = Class.forName("org.postgresql.copy.CopyIn");
+    } catch (ClassNotFoundException e) {
+      throw new SQLException("PostgreSQL JDBC driver is not on the Java classpath", e);
+    }
+    if (!conn.isWrapperFor(pgConnClass)) {
+      throw new SQLException("Connection is not a PostgreSQL connection: " + conn);
+    }
+    Object pgConn = conn.unwrap(pgConnClass);
+    try {
+      Object copyManager = pgConnClass.getMethod("getCopyAPI").invoke(pgConn);
+      Object copyIn = copyManagerClass.getMethod("copyIn", String.class)
+              .invoke(copyManager, copySql);
+      return new PgCopyInWriter(copyIn, copyInClass);
+    } catch (InvocationTargetException e) {
+      throw unwrap(e);
+    } catch (ReflectiveOperationException e) {
+      throw new SQLException("Incompatible PostgreSQL JDBC driver: " + e, e);
+    }
+  }
+  
+  private static SQLException unwrap(InvocationTargetException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof SQLException) {
+      return (SQLException) cause;
+    }
+    return new SQLException("Error in COPY operation: " + cause, cause);
+  }
+  
+  private Object call(Method method, Object... args) throws SQLException {
+    try {
+      return method.invoke(copyIn, args);
+    } catch (InvocationTargetException e) {
+      throw unwrap(e);
+    } catch (IllegalAccessException e) {
+      throw new SQLException("Incompatible PostgreSQL JDBC driver: " + e, e);
+    }
+  }
+  
+  @Override
+  public void writeToCopy(byte[] buf, int off, int len) throws SQLException {
+    call(writeToCopyMethod, buf, off, len);
+  }
+  
+  @Override
+  public long endCopy() throws SQLException {
+    return (Long) call(endCopyMethod);
+  }
+  
+  @Override
+  public void cancelCopy() throws SQLException {
+    call(cancelCopyMethod);
+  }
+}
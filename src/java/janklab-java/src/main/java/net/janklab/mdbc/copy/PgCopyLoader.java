@@ -0,0 +1,607 @@
+package net.janklab.mdbc.copy;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.janklab.mdbc.ParamBinder;
+import net.janklab.mdbc.colbuf.BufferedTimestampComponents;
+import net.janklab.mdbc.params.DoubleParamBinder;
+import net.janklab.mdbc.params.JdbcTimeUtil;
+import net.janklab.mdbc.params.LocaldatenumToSqlDateParamBinder;
+import net.janklab.mdbc.params.StringParamBinder;
+import net.janklab.mdbc.params.SymbolParamBinder;
+import net.janklab.mdbc.params.TimeParamBinder;
+import net.janklab.mdbc.params.TimestampParamBinder;
+import net.janklab.util.Symbol;
+
+/**
+ * Bulk-loads columnar data into a PostgreSQL table using "COPY ... FROM STDIN",
+ * which is much faster than batched INSERTs.
+ *
+ * The columns take the same arrays that the ParamBinders do, in the same
+ * representations: doubles with NaN for NULL, symbol codes, datenums for dates,
+ * millis-of-day for times, and BufferedTimestampComponents for timestamps. Rows
+ * are encoded in PostgreSQL's text or binary COPY format and streamed to a
+ * CopyWriter in blocks of about flushBytes bytes.
+ *
+ * The binary format is more compact and skips parsing on the server, but its
+ * values must match the target columns' types exactly: double columns must go
+ * to float8, strings to text/varchar, and so on. The text format lets the
+ * server convert values to the column types.
+ *
+ * Symbol columns are loaded the same way SymbolParamBinder binds them: symbol 0
+ * (the empty string) is loaded as an empty string, or as NULL if the column was
+ * added from a binder that maps empty strings to NULLs.
+ */
+public class PgCopyLoader {
+
+  /** Offset from the Unix epoch (1970-01-01) to the PostgreSQL epoch (2000-01-01), in days. */
+  private static final long PG_EPOCH_OFFSET_DAYS = 10957;
+  private static final byte[] BINARY_SIGNATURE = {
+    'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0
+  };
+  private static final byte[] TEXT_NULL = {'\\', 'N'};
+
+  /** Whether to use the binary COPY format instead of text. */
+  public boolean binaryFormat = false;
+  /** Approximate number of bytes to encode before sending them to the writer. */
+  public int flushBytes = 1 << 16;
+
+  private final List<Column> columns = new ArrayList<>();
+  private byte[] out;
+  private int pos;
+
+  public void addDoubleColumn(double[] vals) {
+    addColumn(new DoubleColumn(vals));
+  }
+
+  public void addStringColumn(String[] vals) {
+    addColumn(new StringColumn(vals));
+  }
+
+  public void addSymbolColumn(int[] symbols) {
+    addSymbolColumn(symbols, false);
+  }
+
+  /**
+   * Add a symbol column.
+   * @param symbols The symbol codes
+   * @param mapEmptysToNulls Whether to load empty strings as NULLs
+   */
+  public void addSymbolColumn(int[] symbols, boolean mapEmptysToNulls) {
+    addColumn(new SymbolColumn(symbols, mapEmptysToNulls));
+  }
+
+  public void addTimestampColumn(BufferedTimestampComponents vals) {
+    addColumn(new TimestampColumn(vals));
+  }
+
+  /**
+   * Add a DATE column.
+   * @param datenums Local dates as datenums, with NaN for NULL
+   */
+  public void addDateColumn(double[] datenums) {
+    addColumn(new DateColumn(datenums));
+  }
+
+  /**
+   * Add a TIME column.
+   * @param millisOfDay Times as milliseconds of day, with NaN for NULL
+   */
+  public void addTimeColumn(double[] millisOfDay) {
+    addColumn(new TimeColumn(millisOfDay));
+  }
+
+  /**
+   * Whether {@link #addColumn(ParamBinder)} can load the given binder's data.
+   * Callers should check every column before starting a COPY and fall back to
+   * a batched insert if any column is not supported.
+   * @param binder The binder to check
+   * @return true if the binder's type can be loaded with COPY
+   */
+  public static boolean supports(ParamBinder binder) {
+    return binder instanceof DoubleParamBinder
+            || binder instanceof StringParamBinder
+            || binder instanceof SymbolParamBinder
+            || binder instanceof TimestampParamBinder
+            || binder instanceof LocaldatenumToSqlDateParamBinder
+            || binder instanceof TimeParamBinder;
+  }
+
+  /**
+   * Add a column using the buffer and type from a ParamBinder that has been
+   * set up for a batched insert.
+   * @param binder The binder whose buffer to load
+   * @throws IllegalArgumentException if the binder is not {@link #supports supported}
+   */
+  public void addColumn(ParamBinder binder) {
+    if (binder instanceof DoubleParamBinder) {
+      addDoubleColumn(((DoubleParamBinder) binder).getBuffer());
+    } else if (binder instanceof StringParamBinder) {
+      addStringColumn(((StringParamBinder) binder).getBuffer());
+    } else if (binder instanceof SymbolParamBinder) {
+      SymbolParamBinder symbolBinder = (SymbolParamBinder) binder;
+      addSymbolColumn(symbolBinder.getBuffer(), symbolBinder.isMapEmptysToNulls());
+    } else if (binder instanceof TimestampParamBinder) {
+      addTimestampColumn(((TimestampParamBinder) binder).getBuffer());
+    } else if (binder instanceof LocaldatenumToSqlDateParamBinder) {
+      addDateColumn(((LocaldatenumToSqlDateParamBinder) binder).getBuffer());
+    } else if (binder instanceof TimeParamBinder) {
+      addTimeColumn(((TimeParamBinder) binder).getBuffer());
+    } else {
+      throw new IllegalArgumentException("COPY loading is not supported for "
+              + binder.getClass().getName());
+    }
+  }
+
+  private void addColumn(Column column) {
+    if (!columns.isEmpty() && column.length() != columns.get(0).length()) {
+      throw new IllegalArgumentException("Inconsistent column lengths: column "
+              + (columns.size() + 1) + " has " + column.length() + " rows, but column 1 has "
+              + columns.get(0).length());
+    }
+    columns.add(column);
+  }
+
+  public int getNRows() {
+    return columns.isEmpty() ? 0 : columns.get(0).length();
+  }
+
+  /**
+   * Build the COPY statement for loading into the given table and columns,
+   * in this loader's format.
+   * @param table The table name, which may be qualified
+   * @param columnNames The column names, in the same order as the added columns
+   * @return The SQL for the COPY statement
+   */
+  public String copySql(String table, String[] columnNames) {
+    return "COPY " + table + " (" + String.join(", ", columnNames) + ") FROM STDIN"
+            + (binaryFormat ? " WITH (FORMAT binary)" : "");
+  }
+
+  /**
+   * Load the data over a PostgreSQL connection.
+   * @param conn The connection to use
+   * @param copySql The COPY statement to run, as from copySql()
+   * @return The number of rows loaded
+   * @throws SQLException If something goes wrong
+   */
+  public long load(Connection conn, String copySql) throws SQLException {
+    return load(PgCopyInWriter.open(conn, copySql));
+  }
+
+  /**
+   * Encode the data and send it to a COPY in progress. If anything goes wrong,
+   * the COPY is cancelled.
+   * @param writer The destination for the COPY data
+   * @return The number of rows loaded
+   * @throws SQLException If something goes wrong
+   */
+  public long load(CopyWriter writer) throws SQLException {
+    int nRows = getNRows();
+    int nCols = columns.size();
+    Column[] cols = columns.toArray(new Column[0]);
+    out = new byte[flushBytes + 256];
+    pos = 0;
+    try {
+      if (binaryFormat) {
+        write(BINARY_SIGNATURE, 0, BINARY_SIGNATURE.length);
+        writeInt(0); // flags
+        writeInt(0); // header extension length
+      }
+      for (int iRow = 0; iRow < nRows; iRow++) {
+        if (binaryFormat) {
+          writeShort(nCols);
+          for (int iCol = 0; iCol < nCols; iCol++) {
+            cols[iCol].writeBinary(this, iRow);
+          }
+        } else {
+          for (int iCol = 0; iCol < nCols; iCol++) {
+            if (iCol > 0) {
+              writeByte('\t');
+            }
+            cols[iCol].writeText(this, iRow);
+          }
+          writeByte('\n');
+        }
+        if (pos >= flushBytes) {
+          writer.writeToCopy(out, 0, pos);
+          pos = 0;
+        }
+      }
+      if (binaryFormat) {
+        writeShort(-1);
+      }
+      if (pos > 0) {
+        writer.writeToCopy(out, 0, pos);
+        pos = 0;
+      }
+    } catch (SQLException | RuntimeException e) {
+      try {
+        writer.cancelCopy();
+      } catch (SQLException e2) {
+        e.addSuppressed(e2);
+      }
+      throw e;
+    } finally {
+      out = null;
+    }
+    long nLoaded = writer.endCopy();
+    return nLoaded >= 0 ? nLoaded : nRows;
+  }
+
+  // Encoding primitives
+
+  private void ensureCapacity(int n) {
+    if (pos + n > out.length) {
+      out = Arrays.copyOf(out, Math.max(out.length * 2, pos + n));
+    }
+  }
+
+  private void write(byte[] bytes, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(bytes, off, out, pos, len);
+    pos += len;
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    out[pos++] = (byte) b;
+  }
+
+  private void writeShort(int v) {
+    ensureCapacity(2);
+    out[pos++] = (byte) (v >>> 8);
+    out[pos++] = (byte) v;
+  }
+
+  private void writeInt(int v) {
+    ensureCapacity(4);
+    out[pos++] = (byte) (v >>> 24);
+    out[pos++] = (byte) (v >>> 16);
+    out[pos++] = (byte) (v >>> 8);
+    out[pos++] = (byte) v;
+  }
+
+  private void writeLong(long v) {
+    writeInt((int) (v >>> 32));
+    writeInt((int) v);
+  }
+
+  private void writeAscii(String str) {
+    int n = str.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      out[pos++] = (byte) str.charAt(i);
+    }
+  }
+
+  /** Write an unsigned number, zero-padded to the given number of digits. */
+  private void writeDigits(long v, int nDigits) {
+    ensureCapacity(nDigits);
+    for (int i = nDigits - 1; i >= 0; i--) {
+      out[pos + i] = (byte) ('0' + (v % 10));
+      v /= 10;
+    }
+    pos += nDigits;
+  }
+
+  private void writeTextNull() {
+    write(TEXT_NULL, 0, TEXT_NULL.length);
+  }
+
+  private void writeBinaryNull() {
+    writeInt(-1);
+  }
+
+  /** Write a string in text format, escaping the characters COPY treats specially. */
+  private void writeEscapedText(String str) {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    ensureCapacity(bytes.length * 2);
+    for (byte b : bytes) {
+      switch (b) {
+        case '\\':
+          out[pos++] = '\\';
+          out[pos++] = '\\';
+          break;
+        case '\t':
+          out[pos++] = '\\';
+          out[pos++] = 't';
+          break;
+        case '\n':
+          out[pos++] = '\\';
+          out[pos++] = 'n';
+          break;
+        case '\r':
+          out[pos++] = '\\';
+          out[pos++] = 'r';
+          break;
+        default:
+          out[pos++] = b;
+      }
+    }
+  }
+
+  private void writeBinaryText(String str) {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    writeInt(bytes.length);
+    write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Write the date part of a date or timestamp. Years past 9999 are written in
+   * full, and years before 1 AD as BC years, which take a " BC" suffix after the
+   * whole value.
+   * @return Whether the value needs a " BC" suffix
+   */
+  private boolean writeTextDate(long epochDay) {
+    LocalDate date = LocalDate.ofEpochDay(epochDay);
+    int year = date.getYear();
+    boolean isBc = year < 1;
+    // ISO year 0 is 1 BC
+    long displayYear = isBc ? 1L - year : year;
+    if (displayYear > 9999) {
+      writeAscii(Long.toString(displayYear));
+    } else {
+      writeDigits(displayYear, 4);
+    }
+    writeByte('-');
+    writeDigits(date.getMonthValue(), 2);
+    writeByte('-');
+    writeDigits(date.getDayOfMonth(), 2);
+    return isBc;
+  }
+
+  private void writeBcSuffix() {
+    writeAscii(" BC");
+  }
+
+  private void writeTextTime(long nanosOfDay) {
+    long secs = nanosOfDay / 1_000_000_000L;
+    writeDigits(secs / 3600, 2);
+    writeByte(':');
+    writeDigits((secs / 60) % 60, 2);
+    writeByte(':');
+    writeDigits(secs % 60, 2);
+    long nanos = nanosOfDay % 1_000_000_000L;
+    if (nanos != 0) {
+      writeByte('.');
+      writeDigits(nanos, 9);
+    }
+  }
+
+  private static long datenumToEpochDay(double datenum) {
+    return (long) Math.floor(datenum - JdbcTimeUtil.UNIX_TO_DATENUM_EPOCH_OFFSET_DAYS);
+  }
+
+  // Columns
+
+  private abstract static class Column {
+    abstract int length();
+
+    abstract void writeText(PgCopyLoader w, int i);
+
+    abstract void writeBinary(PgCopyLoader w, int i);
+  }
+
+  private static class DoubleColumn extends Column {
+    final double[] vals;
+
+    DoubleColumn(double[] vals) {
+      this.vals = vals;
+    }
+
+    @Override
+    int length() {
+      return vals.length;
+    }
+
+    @Override
+    void writeText(PgCopyLoader w, int i) {
+      double v = vals[i];
+      if (Double.isNaN(v)) {
+        w.writeTextNull();
+      } else if (v == 0 && Double.doubleToRawLongBits(v) != 0) {
+        // -0.0, which would lose its sign as an integral value
+        w.writeAscii("-0");
+      } else if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+        // Integral values without the ".0", so they also load into integer columns
+        w.writeAscii(Long.toString((long) v));
+      } else {
+        w.writeAscii(Double.toString(v));
+      }
+    }
+
+    @Override
+    void writeBinary(PgCopyLoader w, int i) {
+      double v = vals[i];
+      if (Double.isNaN(v)) {
+        w.writeBinaryNull();
+      } else {
+        w.writeInt(8);
+        w.writeLong(Double.doubleToLongBits(v));
+      }
+    }
+  }
+
+  private static class StringColumn extends Column {
+    final String[] vals;
+
+    StringColumn(String[] vals) {
+      this.vals = vals;
+    }
+
+    @Override
+    int length() {
+      return vals.length;
+    }
+
+    @Override
+    void writeText(PgCopyLoader w, int i) {
+      if (vals[i] == null) {
+        w.writeTextNull();
+      } else {
+        w.writeEscapedText(vals[i]);
+      }
+    }
+
+    @Override
+    void writeBinary(PgCopyLoader w, int i) {
+      if (vals[i] == null) {
+        w.writeBinaryNull();
+      } else {
+        w.writeBinaryText(vals[i]);
+      }
+    }
+  }
+
+  private static class SymbolColumn extends Column {
+    final int[] symbols;
+    final boolean mapEmptysToNulls;
+
+    SymbolColumn(int[] symbols, boolean mapEmptysToNulls) {
+      this.symbols = symbols;
+      this.mapEmptysToNulls = mapEmptysToNulls;
+    }
+
+    @Override
+    int length() {
+      return symbols.length;
+    }
+
+    @Override
+    void writeText(PgCopyLoader w, int i) {
+      String val = decode(i);
+      if (val == null) {
+        w.writeTextNull();
+      } else {
+        w.writeEscapedText(val);
+      }
+    }
+
+    @Override
+    void writeBinary(PgCopyLoader w, int i) {
+      String val = decode(i);
+      if (val == null) {
+        w.writeBinaryNull();
+      } else {
+        w.writeBinaryText(val);
+      }
+    }
+
+    /** Decode a symbol, or return null if it is to be loaded as NULL. */
+    private String decode(int i) {
+      String val = Symbol.decodeSymbol(symbols[i]);
+      return (mapEmptysToNulls && val != null && val.isEmpty()) ? null : val;
+    }
+  }
+
+  private static class TimestampColumn extends Column {
+    final BufferedTimestampComponents vals;
+
+    TimestampColumn(BufferedTimestampComponents vals) {
+      this.vals = vals;
+    }
+
+    @Override
+    int length() {
+      return vals.datenums.length;
+    }
+
+    @Override
+    void writeText(PgCopyLoader w, int i) {
+      double datenum = vals.datenums[i];
+      if (Double.isNaN(datenum)) {
+        w.writeTextNull();
+      } else {
+        boolean isBc = w.writeTextDate(datenumToEpochDay(datenum));
+        w.writeByte(' ');
+        w.writeTextTime(vals.nanosOfDays[i]);
+        if (isBc) {
+          w.writeBcSuffix();
+        }
+      }
+    }
+
+    @Override
+    void writeBinary(PgCopyLoader w, int i) {
+      double datenum = vals.datenums[i];
+      if (Double.isNaN(datenum)) {
+        w.writeBinaryNull();
+      } else {
+        long pgDay = datenumToEpochDay(datenum) - PG_EPOCH_OFFSET_DAYS;
+        long micros = pgDay * 86_400_000_000L + vals.nanosOfDays[i] / 1000;
+        w.writeInt(8);
+        w.writeLong(micros);
+      }
+    }
+  }
+
+  private static class DateColumn extends Column {
+    final double[] datenums;
+
+    DateColumn(double[] datenums) {
+      this.datenums = datenums;
+    }
+
+    @Override
+    int length() {
+      return datenums.length;
+    }
+
+    @Override
+    void writeText(PgCopyLoader w, int i) {
+      if (Double.isNaN(datenums[i])) {
+        w.writeTextNull();
+      } else if (w.writeTextDate(datenumToEpochDay(datenums[i]))) {
+        w.writeBcSuffix();
+      }
+    }
+
+    @Override
+    void writeBinary(PgCopyLoader w, int i) {
+      if (Double.isNaN(datenums[i])) {
+        w.writeBinaryNull();
+      } else {
+        w.writeInt(4);
+        w.writeInt((int) (datenumToEpochDay(datenums[i]) - PG_EPOCH_OFFSET_DAYS));
+      }
+    }
+  }
+
+  private static class TimeColumn extends Column {
+    final double[] millisOfDay;
+
+    TimeColumn(double[] millisOfDay) {
+      this.millisOfDay = millisOfDay;
+    }
+
+    @Override
+    int length() {
+      return millisOfDay.length;
+    }
+
+    @Override
+    void writeText(PgCopyLoader w, int i) {
+      if (Double.isNaN(millisOfDay[i])) {
+        w.writeTextNull();
+      } else {
+        w.writeTextTime((long) millisOfDay[i] * 1_000_000L);
+      }
+    }
+
+    @Override
+    void writeBinary(PgCopyLoader w, int i) {
+      if (Double.isNaN(millisOfDay[i])) {
+        w.writeBinaryNull();
+      } else {
+        w.writeInt(8);
+        w.writeLong((long) millisOfDay[i] * 1000L);
+      }
+    }
+  }
+}
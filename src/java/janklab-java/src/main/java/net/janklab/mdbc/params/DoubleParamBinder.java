@@ -16,10 +16,24 @@ public class DoubleParamBinder extends ParamBinder {
     requireNonNull(buf);
     this.buf = buf;
   }
+  
+  @Override
+  public void clearBuffer() {
+    buf = null;
+  }
+  
+  public double[] getBuffer() {
+    return buf;
+  }
 
   @Override
   public void bindParam(int index) throws SQLException {
     requireAttached();
+    bindAttachedParam(index);
+  }
+
+  @Override
+  public void bindAttachedParam(int index) throws SQLException {
     if (Double.isNaN(buf[index]) && mapNaNsToNulls) {
       stmt.setNull(paramIndex, java.sql.Types.DOUBLE);
     } else {
@@ -12,10 +12,24 @@ public class StringParamBinder extends ParamBinder {
     requireNonNull(buf);
     this.buf = buf;
   }
+  
+  @Override
+  public void clearBuffer() {
+    buf = null;
+  }
+  
+  public String[] getBuffer() {
+    return buf;
+  }
 
   @Override
   public void bindParam(int index) throws SQLException {
     requireAttached();
+    bindAttachedParam(index);
+  }
+
+  @Override
+  public void bindAttachedParam(int index) throws SQLException {
     if (buf[index] == null) {
       stmt.setNull(paramIndex, java.sql.Types.CHAR);
     } else {
@@ -19,9 +19,31 @@ public class SymbolParamBinder extends ParamBinder {
     this.buf = buf;
   }
   
+  @Override
+  public void clearBuffer() {
+    buf = null;
+  }
+  
+  public int[] getBuffer() {
+    return buf;
+  }
+  
+  /**
+   * Whether empty strings, including symbol 0, are bound as NULLs.
+   * @return true if empty strings are bound as NULLs
+   */
+  public boolean isMapEmptysToNulls() {
+    return mapEmptysToNulls;
+  }
+  
   @Override
   public void bindParam(int index) throws SQLException {
     requireAttached();
+    bindAttachedParam(index);
+  }
+
+  @Override
+  public void bindAttachedParam(int index) throws SQLException {
     String val = Symbol.decodeSymbol(buf[index]);
     if (mapEmptysToNulls && StringUtils.isEmpty(val)) {
       stmt.setNull(paramIndex, java.sql.Types.CHAR);
@@ -25,9 +25,23 @@ public class TimeParamBinder extends ParamBinder {
     this.buf = buf;
   }
   
+  @Override
+  public void clearBuffer() {
+    buf = null;
+  }
+  
+  public double[] getBuffer() {
+    return buf;
+  }
+  
   @Override
   public void bindParam(int index) throws SQLException {  
     requireAttached();
+    bindAttachedParam(index);
+  }
+
+  @Override
+  public void bindAttachedParam(int index) throws SQLException {
     if (Double.isNaN(buf[index])) {
       stmt.setNull(paramIndex, java.sql.Types.TIME);
     } else {
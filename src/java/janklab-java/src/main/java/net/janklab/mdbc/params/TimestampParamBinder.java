@@ -28,10 +28,24 @@ public class TimestampParamBinder extends ParamBinder {
     requireNonNull(buf);
     this.buf = buf;
   }
+  
+  @Override
+  public void clearBuffer() {
+    buf = null;
+  }
+  
+  public BufferedTimestampComponents getBuffer() {
+    return buf;
+  }
 
   @Override
   public void bindParam(int index) throws SQLException {
     requireAttached();
+    bindAttachedParam(index);
+  }
+
+  @Override
+  public void bindAttachedParam(int index) throws SQLException {
     if (Double.isNaN(buf.datenums[index])) {
       stmt.setNull(paramIndex, java.sql.Types.TIMESTAMP);
     } else {
@@ -0,0 +1,85 @@
+package net.janklab.util;
+
+import java.util.List;
+
+/**
+ * An array of strings in dictionary-encoded form: an int code for each element,
+ * indexing into an array of distinct strings. This is the same layout as a
+ * Matlab categorical, except that the codes are zero-indexed, and missing
+ * values are NULL_CODE instead of 0.
+ */
+public class DictionaryEncodedStrings {
+    
+    /** The code used for missing (null) values. */
+    public static final int NULL_CODE = -1;
+    
+    /** The code for each element, or NULL_CODE for nulls. */
+    public final int[] codes;
+    /** The distinct strings, indexed by code. */
+    public final String[] dictionary;
+    
+    public DictionaryEncodedStrings(int[] codes, String[] dictionary) {
+        this.codes = codes;
+        this.dictionary = dictionary;
+    }
+    
+    public int size() {
+        return codes.length;
+    }
+    
+    /**
+     * Decode to plain strings.
+     * @return The strings, with null for missing values
+     */
+    public String[] decode() {
+        String[] out = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            int code = codes[i];
+            out[i] = code == NULL_CODE ? null : dictionary[code];
+        }
+        return out;
+    }
+    
+    /**
+     * Convert to global Symbol codes. This adds each distinct string to the
+     * global symbol table once, instead of once per element. Missing values
+     * become symbol 0, the empty string.
+     * @return The symbol codes
+     */
+    public int[] toSymbols() {
+        int[] dictSymbols = Symbol.encodeStrings(dictionary);
+        int[] out = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            int code = codes[i];
+            out[i] = code == NULL_CODE ? 0 : dictSymbols[code];
+        }
+        return out;
+    }
+    
+    /**
+     * Concatenate several dictionary-encoded arrays, merging their dictionaries.
+     * @param parts The arrays to concatenate
+     * @return A new array holding all the parts' elements, in order
+     */
+    public static DictionaryEncodedStrings concat(List<DictionaryEncodedStrings> parts) {
+        StringDictionary dict = new StringDictionary();
+        int n = 0;
+        for (DictionaryEncodedStrings part : parts) {
+            n += part.codes.length;
+        }
+        int[] codes = new int[n];
+        int offset = 0;
+        for (DictionaryEncodedStrings part : parts) {
+            int[] remap = new int[part.dictionary.length];
+            for (int i = 0; i < remap.length; i++) {
+                remap[i] = dict.encode(part.dictionary[i]);
+            }
+            for (int i = 0; i < part.codes.length; i++) {
+                int code = part.codes[i];
+                codes[offset + i] = code == NULL_CODE ? NULL_CODE : remap[code];
+            }
+            offset += part.codes.length;
+        }
+        return new DictionaryEncodedStrings(codes, dict.toArray());
+    }
+}
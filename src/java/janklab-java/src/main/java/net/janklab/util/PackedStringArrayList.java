@@ -0,0 +1,250 @@
+package net.janklab.util;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of strings, stored in the packed form of PackedStrings.
+ *
+ * Strings are encoded straight into one byte array as they are added, so each
+ * add() allocates nothing beyond occasional growth of the backing arrays.
+ * The data starts out as Latin-1, and is converted to UTF-8 the first time a
+ * string with a character outside Latin-1 is added. Not thread-safe.
+ */
+public class PackedStringArrayList {
+
+    private static final int MAX_DATA_LENGTH = Integer.MAX_VALUE - 8;
+
+    private byte[] data;
+    private int dataLength;
+    private int[] offsets;
+    private int size;
+    private long[] nullBits;
+    private boolean isLatin1 = true;
+
+    public PackedStringArrayList() {
+        this(16);
+    }
+
+    /**
+     * @param initialCapacity The number of strings to allocate space for up front
+     */
+    public PackedStringArrayList(int initialCapacity) {
+        offsets = new int[Math.max(1, initialCapacity) + 1];
+        data = new byte[Math.max(16, initialCapacity * 8)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of bytes of string data held so far.
+     * @return The data length
+     */
+    public int getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Add a string.
+     * @param str The string to add. May be null.
+     */
+    public void add(String str) {
+        if (str == null) {
+            addNull();
+            return;
+        }
+        int len = str.length();
+        if (isLatin1) {
+            ensureDataCapacity(len);
+            int start = dataLength;
+            for (int i = 0; i < len; i++) {
+                char c = str.charAt(i);
+                if (c > 0xFF) {
+                    // Doesn't fit in Latin-1; switch over to UTF-8 and redo this string
+                    dataLength = start;
+                    switchToUtf8();
+                    addUtf8(str);
+                    return;
+                }
+                data[dataLength++] = (byte) c;
+            }
+            endValue();
+        } else {
+            addUtf8(str);
+        }
+    }
+
+    /**
+     * Add a null. It takes up no string data.
+     */
+    public void addNull() {
+        if (nullBits == null) {
+            nullBits = new long[(offsets.length + 63) >>> 6];
+        } else if ((size >>> 6) >= nullBits.length) {
+            nullBits = Arrays.copyOf(nullBits, nullBits.length * 2);
+        }
+        nullBits[size >>> 6] |= 1L << size;
+        endValue();
+    }
+
+    /**
+     * Add all the strings from another list, in order. The string data is copied
+     * across as bytes, without decoding it.
+     * @param other The list to add the strings from
+     */
+    public void addAll(PackedStringArrayList other) {
+        if (isLatin1 && !other.isLatin1) {
+            switchToUtf8();
+        }
+        boolean recode = !isLatin1 && other.isLatin1;
+        for (int i = 0; i < other.size; i++) {
+            if (other.nullBits != null && (other.nullBits[i >>> 6] & (1L << i)) != 0) {
+                addNull();
+                continue;
+            }
+            int start = other.offsets[i];
+            int len = other.offsets[i + 1] - start;
+            if (recode) {
+                // Latin-1 chars take up to 2 bytes in UTF-8
+                ensureDataCapacity(2 * len);
+                for (int j = start; j < start + len; j++) {
+                    int c = other.data[j] & 0xFF;
+                    if (c < 0x80) {
+                        data[dataLength++] = (byte) c;
+                    } else {
+                        data[dataLength++] = (byte) (0xC0 | (c >> 6));
+                        data[dataLength++] = (byte) (0x80 | (c & 0x3F));
+                    }
+                }
+            } else {
+                ensureDataCapacity(len);
+                System.arraycopy(other.data, start, data, dataLength, len);
+                dataLength += len;
+            }
+            endValue();
+        }
+    }
+
+    /**
+     * Remove all the strings. The backing arrays are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+        dataLength = 0;
+        isLatin1 = true;
+        if (nullBits != null) {
+            Arrays.fill(nullBits, 0L);
+        }
+    }
+
+    /**
+     * Copy the contents out to a PackedStrings, with exactly-sized arrays.
+     * @return The packed strings
+     */
+    public PackedStrings toPackedStrings() {
+        long[] nulls = null;
+        if (nullBits != null) {
+            nulls = Arrays.copyOf(nullBits, (size + 63) >>> 6);
+            boolean any = false;
+            for (long word : nulls) {
+                any |= word != 0;
+            }
+            nulls = any ? nulls : null;
+        }
+        return new PackedStrings(Arrays.copyOf(data, dataLength), Arrays.copyOf(offsets, size + 1),
+                isLatin1, nulls);
+    }
+
+    private void endValue() {
+        if (size + 2 > offsets.length) {
+            int newLength = offsets.length + (offsets.length >> 1) + 1;
+            offsets = Arrays.copyOf(offsets, newLength < 0 ? MAX_DATA_LENGTH : newLength);
+        }
+        size++;
+        offsets[size] = dataLength;
+    }
+
+    private void ensureDataCapacity(int nMore) {
+        long needed = (long) dataLength + nMore;
+        if (needed <= data.length) {
+            return;
+        }
+        if (needed > MAX_DATA_LENGTH) {
+            throw new IllegalStateException("Too much string data for a single PackedStringArrayList: "
+                    + needed + " bytes");
+        }
+        long newLength = Math.min(MAX_DATA_LENGTH, Math.max(needed, data.length + (data.length >> 1)));
+        data = Arrays.copyOf(data, (int) newLength);
+    }
+
+    /**
+     * Encode a string as UTF-8 onto the end of the data. Unpaired surrogates
+     * become '?', the same as String.getBytes() does.
+     */
+    private void addUtf8(String str) {
+        int len = str.length();
+        // At most 3 bytes per char; a surrogate pair is 2 chars and 4 bytes
+        ensureDataCapacity(len * 3);
+        byte[] d = data;
+        int j = dataLength;
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                d[j++] = (byte) c;
+            } else if (c < 0x800) {
+                d[j++] = (byte) (0xC0 | (c >> 6));
+                d[j++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len
+                        && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    d[j++] = (byte) (0xF0 | (cp >> 18));
+                    d[j++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    d[j++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    d[j++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    d[j++] = '?';
+                }
+            } else {
+                d[j++] = (byte) (0xE0 | (c >> 12));
+                d[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                d[j++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        dataLength = j;
+        endValue();
+    }
+
+    /**
+     * Re-encode the Latin-1 data held so far as UTF-8.
+     */
+    private void switchToUtf8() {
+        int nHigh = 0;
+        for (int i = 0; i < dataLength; i++) {
+            if (data[i] < 0) {
+                nHigh++;
+            }
+        }
+        if (nHigh > 0) {
+            ensureDataCapacity(nHigh);
+            // Work backwards so it can be done in place
+            int j = dataLength + nHigh;
+            int iVal = size;
+            for (int i = dataLength - 1; i >= 0; i--) {
+                while (iVal > 0 && offsets[iVal] > i) {
+                    offsets[iVal--] = j;
+                }
+                int c = data[i] & 0xFF;
+                if (c < 0x80) {
+                    data[--j] = (byte) c;
+                } else {
+                    data[--j] = (byte) (0x80 | (c & 0x3F));
+                    data[--j] = (byte) (0xC0 | (c >> 6));
+                }
+            }
+            dataLength += nHigh;
+        }
+        isLatin1 = false;
+    }
+}
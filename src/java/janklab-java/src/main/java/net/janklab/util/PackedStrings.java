@@ -0,0 +1,186 @@
+package net.janklab.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * An array of strings packed end to end into one byte[], with an offsets array
+ * marking where each string starts and ends.
+ *
+ * String i occupies bytes [offsets[i], offsets[i+1]) of data. The bytes are
+ * Latin-1 if every string fits in it, and UTF-8 otherwise. This takes a small
+ * fraction of the memory of a String[] of short strings, which spends 40-odd
+ * bytes of object headers and references on every element. Strings are only
+ * materialized when asked for, with get() or toStringArray().
+ *
+ * Nulls are stored as empty strings, with a bit set in a null bitmap.
+ * Build these with a PackedStringArrayList.
+ */
+public class PackedStrings {
+
+    /** The packed string data, in Latin-1 or UTF-8. */
+    public final byte[] data;
+    /** Start offset of each string, plus a final end offset. Has size() + 1 elements. */
+    public final int[] offsets;
+    /** True if data is Latin-1 (ISO-8859-1), false if it is UTF-8. */
+    public final boolean isLatin1;
+    /** Bitmap with a bit set for each null, or null if there are no nulls. */
+    private final long[] nullBits;
+
+    public PackedStrings(byte[] data, int[] offsets, boolean isLatin1, long[] nullBits) {
+        this.data = data;
+        this.offsets = offsets;
+        this.isLatin1 = isLatin1;
+        this.nullBits = nullBits;
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    public boolean isNull(int i) {
+        return nullBits != null && (nullBits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public boolean hasNulls() {
+        return nullBits != null;
+    }
+
+    private Charset charset() {
+        return isLatin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Materialize string i.
+     * @param i The 0-based index
+     * @return The string, or null if it is null
+     */
+    public String get(int i) {
+        if (isNull(i)) {
+            return null;
+        }
+        return new String(data, offsets[i], offsets[i + 1] - offsets[i], charset());
+    }
+
+    /**
+     * Materialize all the strings.
+     * @return The strings, with null for nulls
+     */
+    public String[] toStringArray() {
+        String[] out = new String[size()];
+        Charset cs = charset();
+        for (int i = 0; i < out.length; i++) {
+            if (!isNull(i)) {
+                out[i] = new String(data, offsets[i], offsets[i + 1] - offsets[i], cs);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Get the offsets of each string in UTF-16 code units (Java/Matlab chars)
+     * instead of bytes. This lets a caller decode the whole data block to chars
+     * at once and then slice it up, without materializing each String.
+     * @return The char offsets, with size() + 1 elements
+     */
+    public int[] getCharOffsets() {
+        if (isLatin1) {
+            return offsets;
+        }
+        int[] out = new int[offsets.length];
+        int nChars = 0;
+        for (int i = 0; i < size(); i++) {
+            out[i] = nChars;
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                int b = data[j] & 0xFF;
+                if ((b & 0xC0) != 0x80) {
+                    // Lead byte; 4-byte sequences are a surrogate pair in UTF-16
+                    nChars += (b & 0xF8) == 0xF0 ? 2 : 1;
+                }
+            }
+        }
+        out[size()] = nChars;
+        return out;
+    }
+
+    /**
+     * Concatenate several PackedStrings. The result is Latin-1 if all the parts
+     * are, and UTF-8 otherwise.
+     * @param parts The arrays to concatenate
+     * @return A new PackedStrings holding all the parts' strings, in order
+     */
+    public static PackedStrings concat(List<PackedStrings> parts) {
+        boolean isLatin1 = true;
+        boolean hasNulls = false;
+        for (PackedStrings part : parts) {
+            isLatin1 &= part.isLatin1;
+            hasNulls |= part.hasNulls();
+        }
+        long nBytes = 0;
+        int n = 0;
+        PackedStrings[] converted = new PackedStrings[parts.size()];
+        for (int iPart = 0; iPart < converted.length; iPart++) {
+            PackedStrings part = parts.get(iPart);
+            converted[iPart] = (part.isLatin1 && !isLatin1) ? part.toUtf8() : part;
+            nBytes += converted[iPart].data.length;
+            n += part.size();
+        }
+        if (nBytes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Combined data is too large: " + nBytes + " bytes");
+        }
+        byte[] data = new byte[(int) nBytes];
+        int[] offsets = new int[n + 1];
+        long[] nullBits = hasNulls ? new long[(n + 63) >>> 6] : null;
+        int iVal = 0;
+        int base = 0;
+        for (PackedStrings part : converted) {
+            System.arraycopy(part.data, 0, data, base, part.data.length);
+            for (int i = 0; i < part.size(); i++) {
+                offsets[iVal + i] = base + part.offsets[i];
+                if (part.isNull(i)) {
+                    nullBits[(iVal + i) >>> 6] |= 1L << (iVal + i);
+                }
+            }
+            iVal += part.size();
+            base += part.data.length;
+        }
+        offsets[n] = base;
+        return new PackedStrings(data, offsets, isLatin1, nullBits);
+    }
+
+    /**
+     * Re-encode Latin-1 data as UTF-8.
+     */
+    private PackedStrings toUtf8() {
+        int nBytes = data.length;
+        for (byte b : data) {
+            if (b < 0) {
+                nBytes++;
+            }
+        }
+        byte[] out = new byte[nBytes];
+        int[] outOffsets = new int[offsets.length];
+        int j = 0;
+        for (int i = 0; i < size(); i++) {
+            outOffsets[i] = j;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int c = data[k] & 0xFF;
+                if (c < 0x80) {
+                    out[j++] = (byte) c;
+                } else {
+                    out[j++] = (byte) (0xC0 | (c >> 6));
+                    out[j++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+        outOffsets[size()] = j;
+        return new PackedStrings(out, outOffsets, false, nullBits);
+    }
+
+    @Override
+    public String toString() {
+        return "PackedStrings: " + size() + " strings, " + data.length + " bytes of "
+                + (isLatin1 ? "Latin-1" : "UTF-8");
+    }
+}
@@ -0,0 +1,148 @@
+package net.janklab.util;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary that assigns dense int codes (0, 1, 2, ...) to distinct strings,
+ * in order of first appearance.
+ *
+ * This is an open-addressing hash table on primitive arrays, so encoding a
+ * string that's already present allocates nothing: no boxed Integers and no
+ * map entries. It's meant for dictionary-encoding a column of strings, where
+ * most values are repeats. Not thread-safe.
+ */
+public class StringDictionary {
+    
+    /** Hash table slots, holding (code + 1), or 0 for an empty slot. */
+    private int[] slots;
+    /** The strings, indexed by code. */
+    private String[] values;
+    /** The hash of each string, indexed by code, so we rarely call equals(). */
+    private int[] hashes;
+    private int size;
+    private int mask;
+    
+    public StringDictionary() {
+        this(16);
+    }
+    
+    /**
+     * @param expectedSize The number of distinct strings expected
+     */
+    public StringDictionary(int expectedSize) {
+        int nSlots = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        slots = new int[nSlots];
+        mask = nSlots - 1;
+        values = new String[Math.max(4, expectedSize)];
+        hashes = new int[values.length];
+    }
+    
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Get the code for a string, adding it to the dictionary if it is not
+     * already present.
+     * @param str The string to encode. Must not be null.
+     * @return The code for the string
+     */
+    public int encode(String str) {
+        int h = str.hashCode();
+        int i = mix(h) & mask;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0) {
+                break;
+            }
+            int code = slot - 1;
+            if (hashes[code] == h && str.equals(values[code])) {
+                return code;
+            }
+            i = (i + 1) & mask;
+        }
+        int code = size;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        values[code] = str;
+        hashes[code] = h;
+        slots[i] = code + 1;
+        size++;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return code;
+    }
+    
+    /**
+     * Get the code for a string, without adding it.
+     * @param str The string to look up
+     * @return The code for the string, or -1 if it is not in the dictionary
+     */
+    public int lookup(String str) {
+        int h = str.hashCode();
+        int i = mix(h) & mask;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            int code = slot - 1;
+            if (hashes[code] == h && str.equals(values[code])) {
+                return code;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+    
+    private void rehash(int nSlots) {
+        slots = new int[nSlots];
+        mask = nSlots - 1;
+        for (int code = 0; code < size; code++) {
+            int i = mix(hashes[code]) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = code + 1;
+        }
+    }
+    
+    /**
+     * Get the string for a code.
+     * @param code A code previously returned by encode()
+     * @return The string
+     */
+    public String decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IndexOutOfBoundsException("Code " + code + " is out of range for dictionary of size " + size);
+        }
+        return values[code];
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Get the dictionary's strings, indexed by code.
+     * @return A new array of the strings
+     */
+    public String[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+    
+    /**
+     * Remove all the strings, keeping the allocated capacity for reuse.
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(slots, 0);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+}
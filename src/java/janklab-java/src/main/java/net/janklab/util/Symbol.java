@@ -1,53 +1,193 @@
 package net.janklab.util;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Backing for the compact symbol string representation at the Matlab layer. This
- * class maintains the global symbol table and provides block translation of 
+ * class maintains the global symbol table and provides block translation of
  * numeric symbol ids into their corresponding strings.
+ *
+ * The symbol table is safe to use from multiple threads. The string-to-id map
+ * is split into lock stripes by hash, so concurrent encoders only contend when
+ * they hit the same stripe. The id-to-string map is an append-only array of
+ * pages indexed directly by symbol id, so decoding takes no locks and does no
+ * boxing. Large bulk encodes and decodes are spread across cores.
  */
 public class Symbol {
-    static Map<String,Integer> symbolMap = new HashMap<>();
-    static Map<Integer,String> reverseMap = new HashMap<>();
-    private static int nextSymbol = 0;
-    
+
+    private static final int N_STRIPES = 64;
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    /** Bulk operations on at least this many elements are done in parallel. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private static final Stripe[] stripes = new Stripe[N_STRIPES];
+    private static final AtomicInteger nextSymbol = new AtomicInteger();
+    /** Reverse map: symbol id -> string, in pages of PAGE_SIZE. Only ever appended to. */
+    private static volatile String[][] pages = new String[0][];
+
     static {
-        // Special case: 0 is always the empty string, so we always have a known 
+        for (int i = 0; i < N_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        // Special case: 0 is always the empty string, so we always have a known
         // valid default value for objects at the Matlab layer
         encodeString("");
     }
-    
+
     public static String[] decodeSymbols(int[] symbols) {
         String[] out = new String[symbols.length];
-        for (int i = 0; i < symbols.length; i++) {
-            out[i] = reverseMap.get(symbols[i]);
+        if (symbols.length >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, symbols.length).parallel()
+                    .forEach(i -> out[i] = decodeSymbol(symbols[i]));
+        } else {
+            for (int i = 0; i < symbols.length; i++) {
+                out[i] = decodeSymbol(symbols[i]);
+            }
         }
         return out;
     }
-    
+
     public static String decodeSymbol(int symbol) {
-        return reverseMap.get(symbol);
+        String[][] ps = pages;
+        int iPage = symbol >>> PAGE_BITS;
+        if (symbol < 0 || iPage >= ps.length) {
+            return null;
+        }
+        String[] page = ps[iPage];
+        if (page != null) {
+            String str = page[symbol & PAGE_MASK];
+            if (str != null) {
+                return str;
+            }
+        }
+        // Not visible yet; it may have been assigned by another thread that
+        // this one hasn't synchronized with. Check under its stripe's lock.
+        return symbol < nextSymbol.get() ? decodeSlow(symbol) : null;
+    }
+
+    private static String decodeSlow(int symbol) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                String[] page = pages[symbol >>> PAGE_BITS];
+                if (page != null && page[symbol & PAGE_MASK] != null) {
+                    return page[symbol & PAGE_MASK];
+                }
+            }
+        }
+        return null;
     }
-    
+
     public static int[] encodeStrings(String[] strings) {
         int[] out = new int[strings.length];
-        for (int i = 0; i < strings.length; i++) {
-            out[i] = encodeString(strings[i]);
+        if (strings.length >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, strings.length).parallel()
+                    .forEach(i -> out[i] = encodeString(strings[i]));
+        } else {
+            for (int i = 0; i < strings.length; i++) {
+                out[i] = encodeString(strings[i]);
+            }
         }
         return out;
     }
-    
+
     public static int encodeString(String string) {
-        Integer symbol = symbolMap.get(string);
-        if (symbol == null) {
+        int h = string.hashCode();
+        Stripe stripe = stripes[(h ^ (h >>> 16)) & (N_STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.encode(string, h);
+        }
+    }
+
+    /**
+     * Get the number of symbols defined so far.
+     * @return The number of symbols
+     */
+    public static int size() {
+        return nextSymbol.get();
+    }
+
+    /**
+     * Record the string for a newly-assigned symbol id in the reverse map.
+     */
+    private static void publish(int symbol, String string) {
+        int iPage = symbol >>> PAGE_BITS;
+        String[][] ps = pages;
+        if (iPage >= ps.length || ps[iPage] == null) {
+            ps = addPage(iPage);
+        }
+        ps[iPage][symbol & PAGE_MASK] = string;
+    }
+
+    private static synchronized String[][] addPage(int iPage) {
+        String[][] ps = pages;
+        if (iPage >= ps.length) {
+            ps = Arrays.copyOf(ps, Math.max(iPage + 1, ps.length * 2));
+        }
+        if (ps[iPage] == null) {
+            ps[iPage] = new String[PAGE_SIZE];
+        }
+        pages = ps;
+        return ps;
+    }
+
+    /**
+     * One lock stripe of the string-to-id map: an open-addressing hash table
+     * on primitive arrays. Callers must hold the stripe's lock.
+     */
+    private static class Stripe {
+        private String[] keys = new String[16];
+        private int[] hashes = new int[16];
+        private int[] ids = new int[16];
+        private int size;
+
+        int encode(String string, int h) {
+            int mask = keys.length - 1;
+            int i = (h * 0x9E3779B9) >>> 8 & mask;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (hashes[i] == h && key.equals(string)) {
+                    return ids[i];
+                }
+                i = (i + 1) & mask;
+            }
             // new string value
-            symbol = nextSymbol++;
-            string = string.intern();
-            symbolMap.put(string, symbol);
-            reverseMap.put(symbol, string);
+            int symbol = nextSymbol.getAndIncrement();
+            publish(symbol, string);
+            keys[i] = string;
+            hashes[i] = h;
+            ids[i] = symbol;
+            size++;
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return symbol;
+        }
+
+        private void rehash() {
+            String[] oldKeys = keys;
+            int[] oldHashes = hashes;
+            int[] oldIds = ids;
+            int n = oldKeys.length * 2;
+            keys = new String[n];
+            hashes = new int[n];
+            ids = new int[n];
+            int mask = n - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == null) {
+                    continue;
+                }
+                int i = (oldHashes[j] * 0x9E3779B9) >>> 8 & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                hashes[i] = oldHashes[j];
+                ids[i] = oldIds[j];
+            }
         }
-        return symbol;
     }
 }
@@ -27,6 +27,14 @@ public class SymbolArrayList {
     public void add(int sym) {
         syms.add(sym);
     }
+
+    public void addAll(SymbolArrayList other) {
+        syms.addAll(other.syms);
+    }
+
+    public int size() {
+        return syms.size();
+    }
     
     public int[] getSymbols() {
         return syms.toArray();
@@ -0,0 +1,337 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.janklab.mdbc.stub.StubConnection;
+import net.janklab.mdbc.stub.StubDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for JLConnectionPool, run against StubDriver connections.
+ */
+public class JLConnectionPoolTest {
+
+  private static final AtomicInteger URL_COUNTER = new AtomicInteger();
+
+  private StubDriver driver;
+  private String url;
+  private JLConnectionPool pool;
+
+  @Before
+  public void setUp() throws SQLException {
+    driver = StubDriver.register();
+    // A fresh URL per test, so each test sees only its own connections
+    url = StubDriver.URL_PREFIX + "pool" + URL_COUNTER.incrementAndGet();
+    pool = new JLConnectionPool(new DriverManagerConnectionFactory(url, "tester", null));
+    // Tests drive eviction directly
+    pool.evictionIntervalMillis = 0;
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  private StubConnection stub(JLConnection conn) {
+    return (StubConnection) conn.jdbcConn;
+  }
+
+  @Test
+  public void releasedConnectionIsReused() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    assertEquals(1, pool.getActiveCount());
+    pool.releaseConnection(c1);
+    assertEquals(0, pool.getActiveCount());
+    assertEquals(1, pool.getIdleCount());
+
+    JLConnection c2 = pool.getConnection();
+    assertSame(c1, c2);
+    assertEquals(1, pool.getCreated());
+    assertEquals(2, pool.getBorrows());
+    assertEquals(1, driver.connectionsFor(url).size());
+    pool.releaseConnection(c2);
+  }
+
+  @Test
+  public void concurrentBorrowsGetDistinctConnections() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    JLConnection c2 = pool.getConnection();
+    assertNotSame(c1, c2);
+    assertEquals(2, pool.size());
+    pool.releaseConnection(c1);
+    pool.releaseConnection(c2);
+    assertEquals(2, pool.getIdleCount());
+  }
+
+  @Test
+  public void mostRecentlyReleasedIsBorrowedFirst() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    JLConnection c2 = pool.getConnection();
+    pool.releaseConnection(c1);
+    pool.releaseConnection(c2);
+    assertSame(c2, pool.getConnection());
+  }
+
+  @Test
+  public void borrowWaitsForReleaseWhenFull() throws Exception {
+    pool.maxSize = 1;
+    pool.maxWaitMillis = 10000;
+    final JLConnection c1 = pool.getConnection();
+    Thread releaser = new Thread(() -> {
+      try {
+        Thread.sleep(100);
+        pool.releaseConnection(c1);
+      } catch (InterruptedException | SQLException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    releaser.start();
+    JLConnection c2 = pool.getConnection();
+    releaser.join();
+    assertSame(c1, c2);
+    assertEquals(1, pool.getCreated());
+    assertTrue("Borrow should have waited for the release", pool.getMaxWaitMillis() >= 50);
+    assertEquals(0, pool.getTimeouts());
+    pool.releaseConnection(c2);
+  }
+
+  @Test
+  public void borrowTimesOutWhenFull() throws SQLException {
+    pool.maxSize = 1;
+    pool.maxWaitMillis = 50;
+    JLConnection c1 = pool.getConnection();
+    long t0 = System.nanoTime();
+    try {
+      pool.getConnection();
+      fail("Expected SQLTimeoutException");
+    } catch (SQLTimeoutException e) {
+      // Expected
+    }
+    assertTrue(System.nanoTime() - t0 >= 40 * 1000000L);
+    assertEquals(1, pool.getTimeouts());
+    assertEquals(1, pool.size());
+    pool.releaseConnection(c1);
+  }
+
+  @Test
+  public void invalidIdleConnectionIsReplacedOnBorrow() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    stub(c1).isValid = false;
+
+    JLConnection c2 = pool.getConnection();
+    assertNotSame(c1, c2);
+    assertEquals(1, pool.getValidationFailures());
+    assertTrue(stub(c1).isClosed());
+    assertEquals(1, pool.size());
+    assertEquals(2, driver.connectionsFor(url).size());
+    pool.releaseConnection(c2);
+  }
+
+  @Test
+  public void validationUsesIsValidByDefault() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    pool.getConnection();
+    assertEquals(1, stub(c1).getIsValidCount());
+    assertTrue(stub(c1).getExecutedSql().isEmpty());
+  }
+
+  @Test
+  public void validationQueryIsRunOnBorrow() throws SQLException {
+    pool.validationQuery = "SELECT 1";
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    assertSame(c1, pool.getConnection());
+    assertEquals(1, stub(c1).getExecutedSql().size());
+    assertEquals("SELECT 1", stub(c1).getExecutedSql().get(0));
+    assertEquals(0, stub(c1).getIsValidCount());
+  }
+
+  @Test
+  public void failedValidationQueryReplacesConnection() throws SQLException {
+    pool.validationQuery = "SELECT 1";
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    stub(c1).isValid = false;
+    assertNotSame(c1, pool.getConnection());
+    assertEquals(1, pool.getValidationFailures());
+  }
+
+  @Test
+  public void noValidationWhenDisabled() throws SQLException {
+    pool.validateOnBorrow = false;
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    stub(c1).isValid = false;
+    assertSame(c1, pool.getConnection());
+    assertEquals(0, stub(c1).getIsValidCount());
+  }
+
+  @Test
+  public void idleConnectionsAreEvicted() throws Exception {
+    pool.idleTimeoutMillis = 1;
+    JLConnection c1 = pool.getConnection();
+    JLConnection c2 = pool.getConnection();
+    pool.releaseConnection(c1);
+    pool.releaseConnection(c2);
+    Thread.sleep(20);
+
+    assertEquals(2, pool.evictIdle());
+    assertEquals(0, pool.size());
+    assertTrue(stub(c1).isClosed());
+    assertTrue(stub(c2).isClosed());
+    assertEquals(2, pool.getDestroyed());
+  }
+
+  @Test
+  public void evictionKeepsMinSize() throws Exception {
+    pool.idleTimeoutMillis = 1;
+    pool.minSize = 1;
+    JLConnection c1 = pool.getConnection();
+    JLConnection c2 = pool.getConnection();
+    pool.releaseConnection(c1);
+    pool.releaseConnection(c2);
+    Thread.sleep(20);
+
+    assertEquals(1, pool.evictIdle());
+    assertEquals(1, pool.size());
+    // The longest-idle connection goes first
+    assertTrue(stub(c1).isClosed());
+    assertFalse(stub(c2).isClosed());
+  }
+
+  @Test
+  public void recentlyUsedConnectionsAreNotEvicted() throws SQLException {
+    pool.idleTimeoutMillis = 60000;
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    assertEquals(0, pool.evictIdle());
+    assertEquals(1, pool.size());
+  }
+
+  @Test
+  public void releaseRollsBackAndRestoresAutoCommit() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    c1.jdbcConn.setAutoCommit(false);
+    pool.releaseConnection(c1);
+
+    StubConnection stub = stub(c1);
+    assertEquals(1, stub.getRollbackCount());
+    assertTrue(stub.getAutoCommit());
+    assertFalse(stub.isClosed());
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void releaseInAutoCommitModeDoesNotRollBack() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    assertEquals(0, stub(c1).getRollbackCount());
+  }
+
+  @Test
+  public void releasingClosedConnectionDropsIt() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    c1.jdbcConn.close();
+    pool.releaseConnection(c1);
+    assertEquals(0, pool.size());
+    assertEquals(1, pool.getDestroyed());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void doubleReleaseFails() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    pool.releaseConnection(c1);
+    pool.releaseConnection(c1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void releasingForeignConnectionFails() throws SQLException {
+    JLConnection other = new DriverManagerConnectionFactory(url, null, null).getConnection();
+    pool.releaseConnection(other);
+  }
+
+  @Test
+  public void invalidatedConnectionIsClosed() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    pool.invalidateConnection(c1);
+    assertTrue(stub(c1).isClosed());
+    assertEquals(0, pool.size());
+    assertNotSame(c1, pool.getConnection());
+  }
+
+  @Test
+  public void failedConnectFreesItsSlot() throws SQLException {
+    pool.maxSize = 1;
+    driver.setFailConnect(url, true);
+    try {
+      pool.getConnection();
+      fail("Expected SQLException");
+    } catch (SQLException e) {
+      // Expected
+    }
+    driver.setFailConnect(url, false);
+    pool.maxWaitMillis = 0;
+    pool.getConnection();
+    assertEquals(1, pool.size());
+  }
+
+  @Test
+  public void fillToMinSizeOpensIdleConnections() throws SQLException {
+    pool.minSize = 3;
+    pool.fillToMinSize();
+    assertEquals(3, pool.size());
+    assertEquals(3, pool.getIdleCount());
+  }
+
+  @Test
+  public void closeClosesIdleAndLaterReleasedConnections() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    JLConnection c2 = pool.getConnection();
+    pool.releaseConnection(c1);
+    pool.close();
+    assertTrue(stub(c1).isClosed());
+    assertFalse(stub(c2).isClosed());
+
+    pool.releaseConnection(c2);
+    assertTrue(stub(c2).isClosed());
+    assertEquals(0, pool.size());
+  }
+
+  @Test(expected = SQLException.class)
+  public void closedPoolRefusesBorrows() throws SQLException {
+    pool.close();
+    pool.getConnection();
+  }
+
+  @Test
+  public void pooledConnectionsCacheStatements() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    assertEquals(pool.statementCacheSize, c1.statementCacheSize);
+    JLPreparedStatement stmt = c1.prepareStatement("SELECT 1");
+    c1.releaseStatement(stmt);
+    assertSame(stmt, c1.prepareStatement("SELECT 1"));
+    assertEquals(1, stub(c1).getPrepareCount());
+    pool.releaseConnection(c1);
+  }
+
+  @Test
+  public void connectionsUseFactoryUser() throws SQLException {
+    JLConnection c1 = pool.getConnection();
+    List<StubConnection> opened = driver.connectionsFor(url);
+    assertEquals(1, opened.size());
+    assertEquals("tester", opened.get(0).info.getProperty("user"));
+    pool.releaseConnection(c1);
+  }
+}
@@ -0,0 +1,131 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.janklab.mdbc.colbuf.BufferedTimestampComponents;
+import net.janklab.mdbc.params.DoubleParamBinder;
+import net.janklab.mdbc.params.LocaldatenumToSqlDateParamBinder;
+import net.janklab.mdbc.params.StringParamBinder;
+import net.janklab.mdbc.params.SymbolParamBinder;
+import net.janklab.mdbc.params.TimeParamBinder;
+import net.janklab.mdbc.params.TimestampParamBinder;
+import net.janklab.mdbc.stub.StubConnection;
+import net.janklab.mdbc.stub.StubPreparedStatement;
+import net.janklab.util.Symbol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares binding rows with a ParamBindPlan against calling
+ * ParamBinder.bindParam() for each parameter, which also checks that the
+ * binder is attached on every value.
+ *
+ * As in RowFetchPlanBenchmark, the "doubles" mix has one binder class and the
+ * "mixed" mix has six. The statement is a StubPreparedStatement, so this
+ * measures MDBC's per-value binding overhead without any driver work. See
+ * RowFetchPlanBenchmark for how to run it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParamBindPlanBenchmark {
+
+  @Param({"10000"})
+  public int nRows;
+
+  @Param({"doubles", "mixed"})
+  public String paramMix;
+
+  private StubPreparedStatement stmt;
+  private List<ParamBinder> binders;
+
+  @Setup
+  public void setUp() throws SQLException {
+    double[] doubles = new double[nRows];
+    String[] strings = new String[nRows];
+    int[] symbols = new int[nRows];
+    double[] datenums = new double[nRows];
+    long[] nanosOfDay = new long[nRows];
+    double[] timenums = new double[nRows];
+    for (int i = 0; i < nRows; i++) {
+      doubles[i] = i * 0.5;
+      strings[i] = "row " + i;
+      symbols[i] = Symbol.encodeString("sym" + (i % 16));
+      datenums[i] = 737000 + i % 1000;
+      nanosOfDay[i] = (i % 86400) * 1000000000L;
+      timenums[i] = (i % 86400) / 86400.0;
+    }
+    stmt = new StubPreparedStatement(new StubConnection("jdbc:stub:bench", null),
+            "INSERT INTO t VALUES (?, ?, ?, ?, ?, ?)");
+    binders = new ArrayList<>();
+    if (paramMix.equals("doubles")) {
+      for (int i = 0; i < 3; i++) {
+        DoubleParamBinder binder = new DoubleParamBinder();
+        binder.setBuffer(doubles);
+        binders.add(binder);
+      }
+    } else if (paramMix.equals("mixed")) {
+      DoubleParamBinder doubleBinder = new DoubleParamBinder();
+      doubleBinder.setBuffer(doubles);
+      StringParamBinder stringBinder = new StringParamBinder();
+      stringBinder.setBuffer(strings);
+      SymbolParamBinder symbolBinder = new SymbolParamBinder();
+      symbolBinder.setBuffer(symbols);
+      TimestampParamBinder timestampBinder = new TimestampParamBinder();
+      timestampBinder.setBuffer(new BufferedTimestampComponents(datenums, nanosOfDay));
+      LocaldatenumToSqlDateParamBinder dateBinder = new LocaldatenumToSqlDateParamBinder();
+      dateBinder.setBuffer(datenums);
+      TimeParamBinder timeBinder = new TimeParamBinder();
+      timeBinder.setBuffer(timenums);
+      binders.add(doubleBinder);
+      binders.add(stringBinder);
+      binders.add(symbolBinder);
+      binders.add(timestampBinder);
+      binders.add(dateBinder);
+      binders.add(timeBinder);
+    } else {
+      throw new IllegalArgumentException("Unknown param mix: " + paramMix);
+    }
+    for (int i = 0; i < binders.size(); i++) {
+      binders.get(i).attach(stmt, i + 1);
+    }
+  }
+
+  @Benchmark
+  public long bindWithPlan() throws SQLException {
+    ParamBindPlan plan = new ParamBindPlan(binders);
+    for (int i = 0; i < nRows; i++) {
+      plan.bindRow(i);
+      stmt.addBatch();
+    }
+    stmt.clearBatch();
+    return stmt.getRowsAdded();
+  }
+
+  @Benchmark
+  public long bindThroughBaseClass() throws SQLException {
+    final List<ParamBinder> bs = binders;
+    for (int i = 0; i < nRows; i++) {
+      for (int j = 0; j < bs.size(); j++) {
+        bs.get(j).bindParam(i);
+      }
+      stmt.addBatch();
+    }
+    stmt.clearBatch();
+    return stmt.getRowsAdded();
+  }
+}
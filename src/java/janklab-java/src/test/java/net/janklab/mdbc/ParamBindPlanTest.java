@@ -0,0 +1,129 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.janklab.mdbc.colbuf.BufferedTimestampComponents;
+import net.janklab.mdbc.params.DoubleParamBinder;
+import net.janklab.mdbc.params.StringParamBinder;
+import net.janklab.mdbc.params.SymbolParamBinder;
+import net.janklab.mdbc.params.TimestampParamBinder;
+import net.janklab.mdbc.stub.StubConnection;
+import net.janklab.mdbc.stub.StubPreparedStatement;
+import net.janklab.util.Symbol;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for ParamBindPlan. Its performance is measured by ParamBindPlanBenchmark.
+ */
+public class ParamBindPlanTest {
+
+  /** A subclass of a known binder class, which must go through the generic path. */
+  private static class CountingDoubleParamBinder extends DoubleParamBinder {
+    int nBinds;
+
+    @Override
+    public void bindParam(int index) throws SQLException {
+      nBinds++;
+      super.bindParam(index);
+    }
+  }
+
+  private static StubPreparedStatement statement() {
+    return new StubPreparedStatement(new StubConnection("jdbc:stub:bind", null),
+            "INSERT INTO t VALUES (?, ?, ?, ?, ?)");
+  }
+
+  private static List<ParamBinder> binders(StubPreparedStatement stmt) {
+    DoubleParamBinder doubleBinder = new DoubleParamBinder();
+    doubleBinder.setBuffer(new double[] {1.5, Double.NaN});
+    StringParamBinder stringBinder = new StringParamBinder();
+    stringBinder.setBuffer(new String[] {"a", null});
+    SymbolParamBinder symbolBinder = new SymbolParamBinder();
+    symbolBinder.setBuffer(new int[] {Symbol.encodeString("sym"), 0});
+    TimestampParamBinder timestampBinder = new TimestampParamBinder();
+    timestampBinder.setBuffer(new BufferedTimestampComponents(
+            new double[] {719529, Double.NaN}, new long[] {1000000000L, 0}));
+    CountingDoubleParamBinder countingBinder = new CountingDoubleParamBinder();
+    countingBinder.setBuffer(new double[] {7, 8});
+    List<ParamBinder> out = new ArrayList<>(Arrays.asList(doubleBinder, stringBinder,
+            symbolBinder, timestampBinder, countingBinder));
+    for (int i = 0; i < out.size(); i++) {
+      out.get(i).attach(stmt, i + 1);
+    }
+    return out;
+  }
+
+  private static Object[] boundRow(StubPreparedStatement stmt, int nParams) {
+    Object[] out = new Object[nParams];
+    for (int i = 0; i < nParams; i++) {
+      out[i] = stmt.getParam(i + 1);
+    }
+    return out;
+  }
+
+  @Test
+  public void bindsSameValuesAsBaseClassCalls() throws SQLException {
+    StubPreparedStatement planned = statement();
+    StubPreparedStatement generic = statement();
+    List<ParamBinder> plannedBinders = binders(planned);
+    List<ParamBinder> genericBinders = binders(generic);
+    ParamBindPlan plan = new ParamBindPlan(plannedBinders);
+    assertEquals(5, plan.getNParams());
+    for (int iRow = 0; iRow < 2; iRow++) {
+      plan.bindRow(iRow);
+      for (ParamBinder binder : genericBinders) {
+        binder.bindParam(iRow);
+      }
+      assertArrayEquals("row " + iRow, boundRow(generic, 5), boundRow(planned, 5));
+    }
+  }
+
+  @Test
+  public void bindsValuesAndNulls() throws SQLException {
+    StubPreparedStatement stmt = statement();
+    ParamBindPlan plan = new ParamBindPlan(binders(stmt));
+    plan.bindRow(0);
+    assertEquals(1.5, stmt.getParam(1));
+    assertEquals("a", stmt.getParam(2));
+    assertEquals("sym", stmt.getParam(3));
+    assertEquals(new Timestamp(1000), stmt.getParam(4));
+    plan.bindRow(1);
+    assertNull(stmt.getParam(1));
+    assertNull(stmt.getParam(2));
+    assertEquals("", stmt.getParam(3));
+    assertNull(stmt.getParam(4));
+  }
+
+  @Test
+  public void subclassesUseTheirOwnBind() throws SQLException {
+    StubPreparedStatement stmt = statement();
+    List<ParamBinder> binders = binders(stmt);
+    ParamBindPlan plan = new ParamBindPlan(binders);
+    plan.bindRow(0);
+    plan.bindRow(1);
+    assertEquals(2, ((CountingDoubleParamBinder) binders.get(4)).nBinds);
+    assertEquals(8.0, stmt.getParam(5));
+  }
+
+  @Test(expected = SQLException.class)
+  public void unattachedBinderIsRejectedUpFront() throws SQLException {
+    DoubleParamBinder binder = new DoubleParamBinder();
+    binder.setBuffer(new double[] {1});
+    new ParamBindPlan(Arrays.<ParamBinder>asList(binder));
+  }
+
+  @Test
+  public void timedBindAccumulatesPerParam() throws SQLException {
+    StubPreparedStatement stmt = statement();
+    ParamBindPlan plan = new ParamBindPlan(binders(stmt));
+    long[] paramNanos = new long[plan.getNParams()];
+    plan.bindRowTimed(0, System.nanoTime(), paramNanos);
+    assertEquals("a", stmt.getParam(2));
+  }
+}
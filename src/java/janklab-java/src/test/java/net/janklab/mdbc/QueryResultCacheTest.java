@@ -0,0 +1,297 @@
+package net.janklab.mdbc;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import net.janklab.mdbc.QueryResultCache.CachedResult;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for QueryResultCache and its Capture.
+ */
+public class QueryResultCacheTest {
+
+  private static final String URL = "jdbc:stub:cache";
+  private static final String USER = "tester";
+
+  private QueryResultCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new QueryResultCache();
+  }
+
+  /** A one-column double result with nRows rows. */
+  private static ResultSetFetchResult doubles(int nRows) {
+    double[] vals = new double[nRows];
+    for (int i = 0; i < nRows; i++) {
+      vals[i] = i;
+    }
+    return new ResultSetFetchResult(new Object[] {vals}, new long[1][], nRows, true);
+  }
+
+  private static CachedResult result(int nRows) {
+    return new CachedResult(doubles(nRows), null, new String[] {"double"});
+  }
+
+  private static RowSetMetaDataImpl metaData() throws SQLException {
+    RowSetMetaDataImpl md = new RowSetMetaDataImpl();
+    md.setColumnCount(1);
+    md.setColumnLabel(1, "x");
+    md.setColumnName(1, "x");
+    md.setColumnType(1, Types.DOUBLE);
+    md.setColumnTypeName(1, "float8");
+    return md;
+  }
+
+  private CachedResult get(String sql) {
+    return cache.get(URL, USER, sql, null);
+  }
+
+  private boolean put(String sql, CachedResult result) {
+    return cache.put(URL, USER, sql, null, result);
+  }
+
+  @Test
+  public void putThenGetHits() {
+    CachedResult r = result(10);
+    assertTrue(put("q1", r));
+    assertSame(r, get("q1"));
+    assertEquals(1, cache.getHits());
+    assertEquals(r.bytes, cache.getBytes());
+  }
+
+  @Test
+  public void missesAreCounted() {
+    assertNull(get("q1"));
+    assertEquals(1, cache.getMisses());
+    assertEquals(0, cache.getHits());
+  }
+
+  @Test
+  public void keyIncludesUrlAndUser() {
+    put("q1", result(1));
+    assertNull(cache.get("jdbc:stub:other", USER, "q1", null));
+    assertNull(cache.get(URL, "someone else", "q1", null));
+    assertNotNull(cache.get(URL, USER, "q1", null));
+  }
+
+  @Test
+  public void paramsAreComparedByValue() {
+    CachedResult r = result(1);
+    cache.put(URL, USER, "q", new Object[] {1.0, "abc", new double[] {1, 2}}, r);
+    // Equal contents in fresh arrays, including a nested array, hit
+    assertSame(r, cache.get(URL, USER, "q", new Object[] {1.0, "abc", new double[] {1, 2}}));
+    assertNull(cache.get(URL, USER, "q", new Object[] {1.0, "abc", new double[] {1, 3}}));
+    assertNull(cache.get(URL, USER, "q", new Object[] {2.0, "abc", new double[] {1, 2}}));
+    assertNull(cache.get(URL, USER, "q", new Object[] {1.0, "abc"}));
+  }
+
+  @Test
+  public void nullAndEmptyParamsAreTheSameKey() {
+    CachedResult r = result(1);
+    cache.put(URL, USER, "q", null, r);
+    assertSame(r, cache.get(URL, USER, "q", new Object[0]));
+  }
+
+  @Test
+  public void paramsAreCopiedOnPut() {
+    CachedResult r = result(1);
+    Object[] params = {1.0};
+    cache.put(URL, USER, "q", params, r);
+    params[0] = 2.0;
+    assertSame(r, cache.get(URL, USER, "q", new Object[] {1.0}));
+  }
+
+  @Test
+  public void putReplacesExistingResult() {
+    CachedResult r1 = result(10);
+    CachedResult r2 = result(20);
+    put("q", r1);
+    put("q", r2);
+    assertSame(r2, get("q"));
+    assertEquals(1, cache.size());
+    assertEquals(r2.bytes, cache.getBytes());
+  }
+
+  @Test
+  public void leastRecentlyUsedIsEvictedByBytes() {
+    CachedResult r1 = result(100);
+    CachedResult r2 = result(100);
+    CachedResult r3 = result(100);
+    cache.maxBytes = r1.bytes + r2.bytes + r3.bytes - 1;
+    put("q1", r1);
+    put("q2", r2);
+    // Touch q1, so q2 is the least recently used
+    get("q1");
+    put("q3", r3);
+
+    assertNull(get("q2"));
+    assertSame(r1, get("q1"));
+    assertSame(r3, get("q3"));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(r1.bytes + r3.bytes, cache.getBytes());
+  }
+
+  @Test
+  public void bigResultEvictsSeveralSmallOnes() {
+    CachedResult big = result(1000);
+    cache.maxBytes = big.bytes + result(10).bytes;
+    put("s1", result(10));
+    put("s2", result(10));
+    put("s3", result(10));
+    put("big", big);
+    assertSame(big, get("big"));
+    assertNull(get("s1"));
+    assertNull(get("s2"));
+    assertNotNull(get("s3"));
+    assertTrue(cache.getBytes() <= cache.maxBytes);
+  }
+
+  @Test
+  public void resultBiggerThanCacheIsNotCached() {
+    CachedResult r = result(1000);
+    put("small", result(1));
+    cache.maxBytes = r.bytes - 1;
+    assertFalse(put("q", r));
+    assertNull(get("q"));
+    // Nothing was evicted to make room for it
+    assertNotNull(get("small"));
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void expiredResultIsDropped() throws InterruptedException {
+    cache.put(URL, USER, "q", null, result(1), 20, null);
+    assertNotNull(get("q"));
+    Thread.sleep(40);
+    assertNull(get("q"));
+    assertEquals(1, cache.getExpirations());
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  public void defaultTtlAppliesWhenNoneGiven() throws InterruptedException {
+    cache.defaultTtlMillis = 20;
+    put("q", result(1));
+    cache.put(URL, USER, "forever", null, result(1), 0, null);
+    Thread.sleep(40);
+    assertNull(get("q"));
+    assertNotNull(get("forever"));
+  }
+
+  @Test
+  public void invalidateTagRemovesTaggedResults() {
+    CachedResult r1 = result(1);
+    CachedResult r2 = result(2);
+    CachedResult r3 = result(3);
+    cache.put(URL, USER, "q1", null, r1, 0, new String[] {"orders"});
+    cache.put(URL, USER, "q2", null, r2, 0, new String[] {"orders", "customers"});
+    cache.put(URL, USER, "q3", null, r3, 0, new String[] {"customers"});
+
+    assertEquals(2, cache.invalidateTag("orders"));
+    assertNull(get("q1"));
+    assertNull(get("q2"));
+    assertSame(r3, get("q3"));
+    assertEquals(2, cache.getInvalidations());
+    assertEquals(r3.bytes, cache.getBytes());
+    assertEquals(0, cache.invalidateTag("orders"));
+  }
+
+  @Test
+  public void invalidateSingleQuery() {
+    put("q1", result(1));
+    put("q2", result(1));
+    assertTrue(cache.invalidate(URL, USER, "q1", null));
+    assertFalse(cache.invalidate(URL, USER, "q1", null));
+    assertNull(get("q1"));
+    assertNotNull(get("q2"));
+  }
+
+  @Test
+  public void invalidateAllEmptiesCache() {
+    put("q1", result(1));
+    put("q2", result(1));
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+    assertEquals(2, cache.getInvalidations());
+  }
+
+  @Test
+  public void captureCombinesChunks() throws SQLException {
+    QueryResultCache.Capture capture = new QueryResultCache.Capture(metaData(),
+            new String[] {"double"});
+    capture.add(new ResultSetFetchResult(new Object[] {new double[] {1, 2}}, new long[1][], 2,
+            false));
+    capture.add(new ResultSetFetchResult(new Object[] {new double[] {3}}, new long[1][], 1,
+            true));
+    CachedResult r = capture.finish();
+    assertEquals(3, r.result.nRows);
+    assertArrayEquals(new double[] {1, 2, 3}, (double[]) r.result.bufferedColumnData[0], 0);
+    assertEquals("x", r.metaData.getColumnLabel(1));
+    assertArrayEquals(new String[] {"double"}, r.conversionNames);
+  }
+
+  @Test
+  public void captureCopiesChunkData() throws SQLException {
+    // Column buffers reuse their arrays, so the capture must not keep them
+    QueryResultCache.Capture capture = new QueryResultCache.Capture(metaData(),
+            new String[] {"double"});
+    double[] reused = {1, 2};
+    capture.add(new ResultSetFetchResult(new Object[] {reused}, new long[1][], 2, true));
+    reused[0] = 99;
+    CachedResult r = capture.finish();
+    assertArrayEquals(new double[] {1, 2}, (double[]) r.result.bufferedColumnData[0], 0);
+  }
+
+  @Test
+  public void captureStopsAtMaxBytes() throws SQLException {
+    ResultSetFetchResult chunk = doubles(100);
+    long chunkBytes = QueryResultCache.estimateBytes(chunk);
+    QueryResultCache.Capture capture = new QueryResultCache.Capture(metaData(),
+            new String[] {"double"}, 2 * chunkBytes);
+    capture.add(chunk);
+    capture.add(doubles(100));
+    assertFalse(capture.isOverLimit());
+    capture.add(doubles(100));
+    assertTrue(capture.isOverLimit());
+    // Once over, later chunks are ignored, and there's no result to cache
+    capture.add(doubles(1));
+    assertTrue(capture.isOverLimit());
+    assertNull(capture.finish());
+  }
+
+  @Test
+  public void captureAtExactlyMaxBytesIsKept() throws SQLException {
+    ResultSetFetchResult chunk = doubles(100);
+    QueryResultCache.Capture capture = new QueryResultCache.Capture(metaData(),
+            new String[] {"double"}, QueryResultCache.estimateBytes(chunk));
+    capture.add(chunk);
+    assertFalse(capture.isOverLimit());
+    CachedResult r = capture.finish();
+    assertNotNull(r);
+    cache.maxBytes = r.bytes;
+    assertTrue(put("q", r));
+  }
+
+  @Test
+  public void snapshotMetaDataSurvivesWithoutSource() throws SQLException {
+    RowSetMetaDataImpl md = metaData();
+    ResultSetMetaData copy = QueryResultCache.snapshotMetaData(md);
+    md.setColumnLabel(1, "changed");
+    assertEquals("x", copy.getColumnLabel(1));
+    assertEquals(Types.DOUBLE, copy.getColumnType(1));
+    assertEquals("float8", copy.getColumnTypeName(1));
+  }
+}
@@ -0,0 +1,115 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import net.janklab.mdbc.colbuf.BooleanColumnBuffer;
+import net.janklab.mdbc.colbuf.DoubleColumnBuffer;
+import net.janklab.mdbc.colbuf.LongColumnBuffer;
+import net.janklab.mdbc.colbuf.StringColumnBuffer;
+import net.janklab.mdbc.colbuf.SymbolColumnBuffer;
+import net.janklab.mdbc.colbuf.TimestampColumnBuffer;
+import net.janklab.mdbc.stub.StubResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares fetching rows with a RowFetchPlan against calling
+ * ColumnBuffer.fetchNextValue() through the interface for each column.
+ *
+ * The "doubles" mix has a single buffer class, so the interface call site
+ * stays monomorphic and both should be about the same. The "mixed" mix has six
+ * buffer classes, which makes the interface call site megamorphic; that is
+ * the case RowFetchPlan is for. The ResultSet is an in-memory StubResultSet, so
+ * this measures MDBC's per-cell overhead without any driver work.
+ *
+ * The JMH benchmarks under src/test are run from the test classpath, e.g.:
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     "-Dexec.args=-cp %classpath org.openjdk.jmh.Main RowFetchPlanBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RowFetchPlanBenchmark {
+
+  @Param({"10000"})
+  public int nRows;
+
+  @Param({"doubles", "mixed"})
+  public String columnMix;
+
+  private StubResultSet rs;
+  private ColumnBuffer[] buffers;
+
+  @Setup
+  public void setUp() throws SQLException {
+    double[] doubles = new double[nRows];
+    long[] longs = new long[nRows];
+    boolean[] booleans = new boolean[nRows];
+    String[] strings = new String[nRows];
+    String[] symbols = new String[nRows];
+    Timestamp[] timestamps = new Timestamp[nRows];
+    for (int i = 0; i < nRows; i++) {
+      doubles[i] = i * 0.5;
+      longs[i] = i;
+      booleans[i] = i % 2 == 0;
+      strings[i] = "row " + i;
+      symbols[i] = "sym" + (i % 16);
+      timestamps[i] = new Timestamp(1500000000000L + i * 1000L);
+    }
+    if (columnMix.equals("doubles")) {
+      rs = new StubResultSet(doubles, doubles.clone(), doubles.clone());
+      buffers = new ColumnBuffer[] {new DoubleColumnBuffer(), new DoubleColumnBuffer(),
+        new DoubleColumnBuffer()};
+    } else if (columnMix.equals("mixed")) {
+      rs = new StubResultSet(doubles, longs, booleans, strings, symbols, timestamps);
+      buffers = new ColumnBuffer[] {new DoubleColumnBuffer(), new LongColumnBuffer(),
+        new BooleanColumnBuffer(), new StringColumnBuffer(), new SymbolColumnBuffer(),
+        new TimestampColumnBuffer()};
+    } else {
+      throw new IllegalArgumentException("Unknown column mix: " + columnMix);
+    }
+  }
+
+  private void attach() throws SQLException {
+    rs.beforeFirst();
+    for (int iCol = 0; iCol < buffers.length; iCol++) {
+      buffers[iCol].attach(rs, iCol + 1, nRows);
+    }
+  }
+
+  @Benchmark
+  public Object fetchWithPlan() throws SQLException {
+    attach();
+    RowFetchPlan plan = new RowFetchPlan(buffers);
+    while (rs.next()) {
+      plan.fetchRow();
+    }
+    return buffers[0].getBuffer();
+  }
+
+  @Benchmark
+  public Object fetchThroughInterface() throws SQLException {
+    attach();
+    final ColumnBuffer[] bufs = buffers;
+    while (rs.next()) {
+      for (ColumnBuffer buf : bufs) {
+        buf.fetchNextValue();
+      }
+    }
+    return buffers[0].getBuffer();
+  }
+}
@@ -0,0 +1,144 @@
+package net.janklab.mdbc;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import net.janklab.mdbc.colbuf.BooleanColumnBuffer;
+import net.janklab.mdbc.colbuf.BufferedTimestampComponents;
+import net.janklab.mdbc.colbuf.DoubleColumnBuffer;
+import net.janklab.mdbc.colbuf.LongColumnBuffer;
+import net.janklab.mdbc.colbuf.StringColumnBuffer;
+import net.janklab.mdbc.colbuf.TimestampColumnBuffer;
+import net.janklab.mdbc.stub.StubResultSet;
+import net.janklab.util.PackedStrings;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for RowFetchPlan. Its performance is measured by RowFetchPlanBenchmark.
+ */
+public class RowFetchPlanTest {
+
+  /** A subclass of a known buffer class, which must go through the generic path. */
+  private static class CountingDoubleColumnBuffer extends DoubleColumnBuffer {
+    int nFetches;
+
+    @Override
+    public void fetchNextValue() throws SQLException {
+      nFetches++;
+      super.fetchNextValue();
+    }
+  }
+
+  private static StubResultSet resultSet() throws SQLException {
+    return new StubResultSet(
+            new double[] {1.5, 2.5, 3.5},
+            new long[] {10, 20, 30},
+            new boolean[] {true, false, true},
+            new String[] {"a", null, "c"},
+            new Timestamp[] {new Timestamp(0), null, new Timestamp(86400000L)},
+            new double[] {7, 8, 9});
+  }
+
+  private static ColumnBuffer[] buffers() {
+    return new ColumnBuffer[] {new DoubleColumnBuffer(), new LongColumnBuffer(),
+      new BooleanColumnBuffer(), new StringColumnBuffer(), new TimestampColumnBuffer(),
+      new CountingDoubleColumnBuffer()};
+  }
+
+  private static void attach(ColumnBuffer[] buffers, StubResultSet rs) throws SQLException {
+    for (int iCol = 0; iCol < buffers.length; iCol++) {
+      buffers[iCol].attach(rs, iCol + 1, 3);
+    }
+  }
+
+  @Test
+  public void fetchesSameValuesAsInterfaceCalls() throws SQLException {
+    StubResultSet rs = resultSet();
+    ColumnBuffer[] planned = buffers();
+    attach(planned, rs);
+    RowFetchPlan plan = new RowFetchPlan(planned);
+    while (rs.next()) {
+      plan.fetchRow();
+    }
+
+    rs.beforeFirst();
+    ColumnBuffer[] generic = buffers();
+    attach(generic, rs);
+    while (rs.next()) {
+      for (ColumnBuffer buf : generic) {
+        buf.fetchNextValue();
+      }
+    }
+
+    for (int iCol = 0; iCol < planned.length; iCol++) {
+      assertEquals("column " + (iCol + 1), contents(generic[iCol]), contents(planned[iCol]));
+    }
+    assertEquals("[1.5, 2.5, 3.5] valid=null", contents(planned[0]));
+    assertEquals("[a, null, c] valid=[5]", contents(planned[3]));
+  }
+
+  /** The buffered values and validity of a column, as a comparable string. */
+  private static String contents(ColumnBuffer buffer) {
+    Object data = buffer.getBuffer();
+    String values;
+    if (data instanceof BufferedTimestampComponents) {
+      BufferedTimestampComponents ts = (BufferedTimestampComponents) data;
+      values = Arrays.toString(ts.datenums) + " " + Arrays.toString(ts.nanosOfDays);
+    } else if (data instanceof PackedStrings) {
+      values = Arrays.toString(((PackedStrings) data).toStringArray());
+    } else {
+      values = Arrays.deepToString(new Object[] {data});
+      values = values.substring(1, values.length() - 1);
+    }
+    return values + " valid=" + Arrays.toString(buffer.getValidity());
+  }
+
+  @Test
+  public void subclassesUseTheirOwnFetch() throws SQLException {
+    StubResultSet rs = resultSet();
+    ColumnBuffer[] buffers = buffers();
+    attach(buffers, rs);
+    RowFetchPlan plan = new RowFetchPlan(buffers);
+    while (rs.next()) {
+      plan.fetchRow();
+    }
+    assertEquals(3, ((CountingDoubleColumnBuffer) buffers[5]).nFetches);
+    assertArrayEquals(new double[] {7, 8, 9}, (double[]) buffers[5].getBuffer(), 0);
+  }
+
+  @Test
+  public void nullsAreFlagged() throws SQLException {
+    StubResultSet rs = resultSet();
+    ColumnBuffer[] buffers = buffers();
+    attach(buffers, rs);
+    RowFetchPlan plan = new RowFetchPlan(buffers);
+    while (rs.next()) {
+      plan.fetchRow();
+    }
+    long[] validity = buffers[4].getValidity();
+    assertTrue(ValidityBitmap.isValid(validity, 0));
+    assertFalse(ValidityBitmap.isValid(validity, 1));
+    assertTrue(ValidityBitmap.isValid(validity, 2));
+    BufferedTimestampComponents ts = (BufferedTimestampComponents) buffers[4].getBuffer();
+    assertEquals(3, ts.datenums.length);
+  }
+
+  @Test
+  public void timedFetchAccumulatesPerColumn() throws SQLException {
+    StubResultSet rs = resultSet();
+    ColumnBuffer[] buffers = buffers();
+    attach(buffers, rs);
+    RowFetchPlan plan = new RowFetchPlan(buffers);
+    long[] columnNanos = new long[buffers.length];
+    long t = System.nanoTime();
+    while (rs.next()) {
+      t = plan.fetchRowTimed(t, columnNanos);
+    }
+    assertTrue(t > 0);
+    assertArrayEquals(new long[] {10, 20, 30}, (long[]) buffers[1].getBuffer());
+  }
+}
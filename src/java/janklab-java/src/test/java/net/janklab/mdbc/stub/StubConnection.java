@@ -0,0 +1,141 @@
+package net.janklab.mdbc.stub;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A Connection for tests that tracks its transaction state and the SQL run on
+ * it, without talking to a database.
+ *
+ * Statements it creates just record their SQL. Tests can flip isValid to make
+ * Connection.isValid() and validation queries fail.
+ */
+public class StubConnection extends UnsupportedConnection {
+
+  public final String url;
+  public final Properties info;
+  /** What isValid() returns, and whether statements' execute() succeeds. */
+  public volatile boolean isValid = true;
+
+  private boolean isClosed;
+  private boolean autoCommit = true;
+  private int nRollbacks;
+  private int nCommits;
+  private int nIsValidCalls;
+  private int nPrepares;
+  private final List<String> executedSql = new ArrayList<>();
+
+  public StubConnection(String url, Properties info) {
+    this.url = url;
+    this.info = info;
+  }
+
+  public synchronized int getRollbackCount() {
+    return nRollbacks;
+  }
+
+  public synchronized int getCommitCount() {
+    return nCommits;
+  }
+
+  public synchronized int getIsValidCount() {
+    return nIsValidCalls;
+  }
+
+  /**
+   * The number of prepareStatement() calls, which is the number of round
+   * trips a real driver would make to prepare statements.
+   * @return The prepare count
+   */
+  public synchronized int getPrepareCount() {
+    return nPrepares;
+  }
+
+  /**
+   * The SQL run through statements created by this connection, in order.
+   * @return A snapshot of the executed SQL
+   */
+  public synchronized List<String> getExecutedSql() {
+    return new ArrayList<>(executedSql);
+  }
+
+  synchronized void recordExecute(String sql) throws SQLException {
+    checkUsable();
+    executedSql.add(sql);
+  }
+
+  synchronized void checkUsable() throws SQLException {
+    requireOpen();
+    if (!isValid) {
+      throw new SQLException("Stub connection is broken");
+    }
+  }
+
+  private void requireOpen() throws SQLException {
+    if (isClosed) {
+      throw new SQLException("Connection is closed");
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    isClosed = true;
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return isClosed;
+  }
+
+  @Override
+  public synchronized boolean isValid(int timeout) {
+    nIsValidCalls++;
+    return !isClosed && isValid;
+  }
+
+  @Override
+  public synchronized boolean getAutoCommit() throws SQLException {
+    requireOpen();
+    return autoCommit;
+  }
+
+  @Override
+  public synchronized void setAutoCommit(boolean autoCommit) throws SQLException {
+    requireOpen();
+    this.autoCommit = autoCommit;
+  }
+
+  @Override
+  public synchronized void commit() throws SQLException {
+    requireOpen();
+    nCommits++;
+  }
+
+  @Override
+  public synchronized void rollback() throws SQLException {
+    requireOpen();
+    nRollbacks++;
+  }
+
+  @Override
+  public synchronized void clearWarnings() throws SQLException {
+    requireOpen();
+  }
+
+  @Override
+  public synchronized Statement createStatement() throws SQLException {
+    requireOpen();
+    return new StubStatement(this);
+  }
+
+  @Override
+  public synchronized PreparedStatement prepareStatement(String sql) throws SQLException {
+    requireOpen();
+    nPrepares++;
+    return new StubPreparedStatement(this, sql);
+  }
+}
@@ -0,0 +1,113 @@
+package net.janklab.mdbc.stub;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC Driver for tests that hands out StubConnections for "jdbc:stub:" URLs.
+ *
+ * Each URL has its own list of the connections opened for it, so tests can
+ * use a unique URL and inspect just their own connections. Call register()
+ * before connecting through DriverManager.
+ */
+public class StubDriver implements Driver {
+
+  public static final String URL_PREFIX = "jdbc:stub:";
+
+  private static final StubDriver INSTANCE = new StubDriver();
+  private static boolean isRegistered;
+
+  private final List<StubConnection> connections = new ArrayList<>();
+  private final List<String> failingUrls = new ArrayList<>();
+
+  /**
+   * Register the driver with DriverManager, if it isn't already.
+   * @return The registered driver
+   * @throws SQLException If registration fails
+   */
+  public static synchronized StubDriver register() throws SQLException {
+    if (!isRegistered) {
+      DriverManager.registerDriver(INSTANCE);
+      isRegistered = true;
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * The connections opened so far for a URL, in the order they were opened.
+   * @param url The JDBC URL
+   * @return A snapshot of the connections
+   */
+  public synchronized List<StubConnection> connectionsFor(String url) {
+    List<StubConnection> out = new ArrayList<>();
+    for (StubConnection conn : connections) {
+      if (conn.url.equals(url)) {
+        out.add(conn);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Make connecting to a URL fail, or succeed again.
+   * @param url The JDBC URL
+   * @param fail Whether connect() should throw for it
+   */
+  public synchronized void setFailConnect(String url, boolean fail) {
+    failingUrls.remove(url);
+    if (fail) {
+      failingUrls.add(url);
+    }
+  }
+
+  @Override
+  public synchronized Connection connect(String url, Properties info) throws SQLException {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+    if (failingUrls.contains(url)) {
+      throw new SQLException("Stub connection refused: " + url);
+    }
+    StubConnection conn = new StubConnection(url, info);
+    connections.add(conn);
+    return conn;
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException("StubDriver does not use java.util.logging");
+  }
+}
@@ -0,0 +1,153 @@
+package net.janklab.mdbc.stub;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * A PreparedStatement for tests that keeps the parameters bound for the
+ * current row and counts the rows added to its batch.
+ *
+ * Only the setXxx() methods that MDBC's param binders use are implemented.
+ * Bound values are boxed into a reused array, so this is cheap enough to
+ * drive binding benchmarks with. Date and time values are copied, since the
+ * binders reuse theirs from row to row; Calendar arguments are ignored.
+ */
+public class StubPreparedStatement extends UnsupportedPreparedStatement {
+
+  public final String sql;
+  private final StubConnection conn;
+  private Object[] params = new Object[8];
+  private int nBatchRows;
+  private long nRowsAdded;
+  private boolean isClosed;
+
+  public StubPreparedStatement(StubConnection conn, String sql) {
+    this.conn = conn;
+    this.sql = sql;
+  }
+
+  /**
+   * The value bound to a parameter for the current row. SQL NULLs read as null.
+   * @param paramIndex The 1-based parameter index
+   * @return The bound value
+   */
+  public Object getParam(int paramIndex) {
+    return paramIndex <= params.length ? params[paramIndex - 1] : null;
+  }
+
+  /**
+   * The total number of rows passed to addBatch() over this statement's life.
+   * @return The row count
+   */
+  public long getRowsAdded() {
+    return nRowsAdded;
+  }
+
+  private void set(int paramIndex, Object value) throws SQLException {
+    if (isClosed) {
+      throw new SQLException("Statement is closed");
+    }
+    if (paramIndex > params.length) {
+      params = Arrays.copyOf(params, Math.max(paramIndex, 2 * params.length));
+    }
+    params[paramIndex - 1] = value;
+  }
+
+  @Override
+  public void setDouble(int paramIndex, double x) throws SQLException {
+    set(paramIndex, x);
+  }
+
+  @Override
+  public void setString(int paramIndex, String x) throws SQLException {
+    set(paramIndex, x);
+  }
+
+  @Override
+  public void setTimestamp(int paramIndex, Timestamp x) throws SQLException {
+    set(paramIndex, x == null ? null : x.clone());
+  }
+
+  @Override
+  public void setTimestamp(int paramIndex, Timestamp x, Calendar cal) throws SQLException {
+    setTimestamp(paramIndex, x);
+  }
+
+  @Override
+  public void setDate(int paramIndex, Date x) throws SQLException {
+    set(paramIndex, x == null ? null : x.clone());
+  }
+
+  @Override
+  public void setDate(int paramIndex, Date x, Calendar cal) throws SQLException {
+    setDate(paramIndex, x);
+  }
+
+  @Override
+  public void setTime(int paramIndex, Time x) throws SQLException {
+    set(paramIndex, x == null ? null : x.clone());
+  }
+
+  @Override
+  public void setTime(int paramIndex, Time x, Calendar cal) throws SQLException {
+    setTime(paramIndex, x);
+  }
+
+  @Override
+  public void setNull(int paramIndex, int sqlType) throws SQLException {
+    set(paramIndex, null);
+  }
+
+  @Override
+  public void setObject(int paramIndex, Object x) throws SQLException {
+    set(paramIndex, x);
+  }
+
+  @Override
+  public void clearParameters() {
+    Arrays.fill(params, null);
+  }
+
+  @Override
+  public void addBatch() throws SQLException {
+    if (isClosed) {
+      throw new SQLException("Statement is closed");
+    }
+    nBatchRows++;
+    nRowsAdded++;
+  }
+
+  @Override
+  public void clearBatch() {
+    nBatchRows = 0;
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException {
+    conn.checkUsable();
+    int[] counts = new int[nBatchRows];
+    Arrays.fill(counts, 1);
+    nBatchRows = 0;
+    return counts;
+  }
+
+  @Override
+  public Connection getConnection() {
+    return conn;
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return isClosed;
+  }
+}
@@ -0,0 +1,212 @@
+package net.janklab.mdbc.stub;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import javax.sql.rowset.RowSetMetaDataImpl;
+
+/**
+ * An in-memory, forward-only ResultSet for tests and benchmarks.
+ *
+ * Each column is given as an array: double[], long[], float[], boolean[],
+ * String[], Timestamp[], Date[], Time[], or BigDecimal[]. The getXxx()
+ * methods that MDBC's column buffers use read straight from those arrays, so
+ * this is cheap enough to benchmark fetching with. A null element of an object
+ * array is a SQL NULL; primitive columns have no NULLs. beforeFirst() rewinds,
+ * so one instance can be fetched repeatedly.
+ */
+public class StubResultSet extends UnsupportedResultSet {
+
+  private final Object[] columns;
+  private final int nRows;
+  private final RowSetMetaDataImpl metaData;
+  private int iRow = -1;
+  private boolean wasNull;
+  private boolean isClosed;
+  private int fetchSize;
+
+  /**
+   * @param columns The column data, one array per column, all the same length
+   * @throws SQLException If building the metadata fails
+   */
+  public StubResultSet(Object... columns) throws SQLException {
+    this.columns = columns.clone();
+    this.nRows = columns.length == 0 ? 0 : Array.getLength(columns[0]);
+    this.metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(columns.length);
+    for (int i = 0; i < columns.length; i++) {
+      if (Array.getLength(columns[i]) != nRows) {
+        throw new IllegalArgumentException("Column " + (i + 1) + " has "
+                + Array.getLength(columns[i]) + " rows; expected " + nRows);
+      }
+      metaData.setColumnLabel(i + 1, "col" + (i + 1));
+      metaData.setColumnName(i + 1, "col" + (i + 1));
+      metaData.setColumnType(i + 1, sqlTypeOf(columns[i]));
+    }
+  }
+
+  private static int sqlTypeOf(Object column) {
+    if (column instanceof double[]) {
+      return Types.DOUBLE;
+    } else if (column instanceof long[]) {
+      return Types.BIGINT;
+    } else if (column instanceof float[]) {
+      return Types.REAL;
+    } else if (column instanceof boolean[]) {
+      return Types.BOOLEAN;
+    } else if (column instanceof String[]) {
+      return Types.VARCHAR;
+    } else if (column instanceof Timestamp[]) {
+      return Types.TIMESTAMP;
+    } else if (column instanceof Date[]) {
+      return Types.DATE;
+    } else if (column instanceof Time[]) {
+      return Types.TIME;
+    } else if (column instanceof BigDecimal[]) {
+      return Types.NUMERIC;
+    } else {
+      throw new IllegalArgumentException("Unsupported column array type: "
+              + column.getClass().getName());
+    }
+  }
+
+  private Object column(int columnIndex) throws SQLException {
+    if (isClosed) {
+      throw new SQLException("ResultSet is closed");
+    }
+    if (iRow < 0 || iRow >= nRows) {
+      throw new SQLException("Not on a row");
+    }
+    return columns[columnIndex - 1];
+  }
+
+  private <T> T value(T val) {
+    wasNull = val == null;
+    return val;
+  }
+
+  @Override
+  public boolean next() throws SQLException {
+    if (isClosed) {
+      throw new SQLException("ResultSet is closed");
+    }
+    if (iRow < nRows) {
+      iRow++;
+    }
+    return iRow < nRows;
+  }
+
+  @Override
+  public void beforeFirst() {
+    iRow = -1;
+  }
+
+  @Override
+  public boolean wasNull() {
+    return wasNull;
+  }
+
+  @Override
+  public double getDouble(int columnIndex) throws SQLException {
+    wasNull = false;
+    return ((double[]) column(columnIndex))[iRow];
+  }
+
+  @Override
+  public long getLong(int columnIndex) throws SQLException {
+    wasNull = false;
+    return ((long[]) column(columnIndex))[iRow];
+  }
+
+  @Override
+  public float getFloat(int columnIndex) throws SQLException {
+    wasNull = false;
+    return ((float[]) column(columnIndex))[iRow];
+  }
+
+  @Override
+  public boolean getBoolean(int columnIndex) throws SQLException {
+    wasNull = false;
+    return ((boolean[]) column(columnIndex))[iRow];
+  }
+
+  @Override
+  public String getString(int columnIndex) throws SQLException {
+    Object col = column(columnIndex);
+    if (col instanceof String[]) {
+      return value(((String[]) col)[iRow]);
+    }
+    Object val = getObject(columnIndex);
+    return val == null ? null : val.toString();
+  }
+
+  @Override
+  public Timestamp getTimestamp(int columnIndex) throws SQLException {
+    return value(((Timestamp[]) column(columnIndex))[iRow]);
+  }
+
+  @Override
+  public Date getDate(int columnIndex) throws SQLException {
+    return value(((Date[]) column(columnIndex))[iRow]);
+  }
+
+  @Override
+  public Time getTime(int columnIndex) throws SQLException {
+    return value(((Time[]) column(columnIndex))[iRow]);
+  }
+
+  @Override
+  public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+    return value(((BigDecimal[]) column(columnIndex))[iRow]);
+  }
+
+  @Override
+  public Object getObject(int columnIndex) throws SQLException {
+    Object col = column(columnIndex);
+    if (col instanceof Object[]) {
+      return value(((Object[]) col)[iRow]);
+    }
+    wasNull = false;
+    return Array.get(col, iRow);
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() {
+    return metaData;
+  }
+
+  @Override
+  public SQLWarning getWarnings() {
+    return null;
+  }
+
+  @Override
+  public void clearWarnings() {
+  }
+
+  @Override
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  @Override
+  public void setFetchSize(int rows) {
+    fetchSize = rows;
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return isClosed;
+  }
+}
@@ -0,0 +1,49 @@
+package net.janklab.mdbc.stub;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A Statement for tests that records the SQL it runs on its StubConnection.
+ */
+public class StubStatement extends UnsupportedStatement {
+
+  private final StubConnection conn;
+  private boolean isClosed;
+  private int queryTimeout;
+
+  public StubStatement(StubConnection conn) {
+    this.conn = conn;
+  }
+
+  @Override
+  public boolean execute(String sql) throws SQLException {
+    conn.recordExecute(sql);
+    return false;
+  }
+
+  @Override
+  public int getQueryTimeout() {
+    return queryTimeout;
+  }
+
+  @Override
+  public void setQueryTimeout(int seconds) {
+    queryTimeout = seconds;
+  }
+
+  @Override
+  public Connection getConnection() {
+    return conn;
+  }
+
+  @Override
+  public void close() {
+    isClosed = true;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return isClosed;
+  }
+}
@@ -0,0 +1,244 @@
+package net.janklab.mdbc.stub;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * A Statement whose methods all throw UnsupportedOperationException. Test stubs
+ * extend it and override just the methods they need.
+ */
+public abstract class UnsupportedStatement implements Statement {
+
+  /**
+   * The exception thrown by methods the stub doesn't implement.
+   * @param method The method's name
+   * @return The exception to throw
+   */
+  protected UnsupportedOperationException unsupported(String method) {
+    return new UnsupportedOperationException(getClass().getSimpleName()
+            + " does not implement " + method + "()");
+  }
+
+  @Override
+  public void addBatch(String p1) throws SQLException {
+    throw unsupported("addBatch");
+  }
+
+  @Override
+  public void cancel() throws SQLException {
+    throw unsupported("cancel");
+  }
+
+  @Override
+  public void clearBatch() throws SQLException {
+    throw unsupported("clearBatch");
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    throw unsupported("clearWarnings");
+  }
+
+  @Override
+  public void close() throws SQLException {
+    throw unsupported("close");
+  }
+
+  @Override
+  public void closeOnCompletion() throws SQLException {
+    throw unsupported("closeOnCompletion");
+  }
+
+  @Override
+  public boolean execute(String p1, int[] p2) throws SQLException {
+    throw unsupported("execute");
+  }
+
+  @Override
+  public boolean execute(String p1, String[] p2) throws SQLException {
+    throw unsupported("execute");
+  }
+
+  @Override
+  public boolean execute(String p1, int p2) throws SQLException {
+    throw unsupported("execute");
+  }
+
+  @Override
+  public boolean execute(String p1) throws SQLException {
+    throw unsupported("execute");
+  }
+
+  @Override
+  public int[] executeBatch() throws SQLException {
+    throw unsupported("executeBatch");
+  }
+
+  @Override
+  public ResultSet executeQuery(String p1) throws SQLException {
+    throw unsupported("executeQuery");
+  }
+
+  @Override
+  public int executeUpdate(String p1, int[] p2) throws SQLException {
+    throw unsupported("executeUpdate");
+  }
+
+  @Override
+  public int executeUpdate(String p1, String[] p2) throws SQLException {
+    throw unsupported("executeUpdate");
+  }
+
+  @Override
+  public int executeUpdate(String p1, int p2) throws SQLException {
+    throw unsupported("executeUpdate");
+  }
+
+  @Override
+  public int executeUpdate(String p1) throws SQLException {
+    throw unsupported("executeUpdate");
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    throw unsupported("getConnection");
+  }
+
+  @Override
+  public int getFetchDirection() throws SQLException {
+    throw unsupported("getFetchDirection");
+  }
+
+  @Override
+  public int getFetchSize() throws SQLException {
+    throw unsupported("getFetchSize");
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() throws SQLException {
+    throw unsupported("getGeneratedKeys");
+  }
+
+  @Override
+  public int getMaxFieldSize() throws SQLException {
+    throw unsupported("getMaxFieldSize");
+  }
+
+  @Override
+  public int getMaxRows() throws SQLException {
+    throw unsupported("getMaxRows");
+  }
+
+  @Override
+  public boolean getMoreResults() throws SQLException {
+    throw unsupported("getMoreResults");
+  }
+
+  @Override
+  public boolean getMoreResults(int p1) throws SQLException {
+    throw unsupported("getMoreResults");
+  }
+
+  @Override
+  public int getQueryTimeout() throws SQLException {
+    throw unsupported("getQueryTimeout");
+  }
+
+  @Override
+  public ResultSet getResultSet() throws SQLException {
+    throw unsupported("getResultSet");
+  }
+
+  @Override
+  public int getResultSetConcurrency() throws SQLException {
+    throw unsupported("getResultSetConcurrency");
+  }
+
+  @Override
+  public int getResultSetHoldability() throws SQLException {
+    throw unsupported("getResultSetHoldability");
+  }
+
+  @Override
+  public int getResultSetType() throws SQLException {
+    throw unsupported("getResultSetType");
+  }
+
+  @Override
+  public int getUpdateCount() throws SQLException {
+    throw unsupported("getUpdateCount");
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    throw unsupported("getWarnings");
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() throws SQLException {
+    throw unsupported("isCloseOnCompletion");
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    throw unsupported("isClosed");
+  }
+
+  @Override
+  public boolean isPoolable() throws SQLException {
+    throw unsupported("isPoolable");
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> p1) throws SQLException {
+    throw unsupported("isWrapperFor");
+  }
+
+  @Override
+  public void setCursorName(String p1) throws SQLException {
+    throw unsupported("setCursorName");
+  }
+
+  @Override
+  public void setEscapeProcessing(boolean p1) throws SQLException {
+    throw unsupported("setEscapeProcessing");
+  }
+
+  @Override
+  public void setFetchDirection(int p1) throws SQLException {
+    throw unsupported("setFetchDirection");
+  }
+
+  @Override
+  public void setFetchSize(int p1) throws SQLException {
+    throw unsupported("setFetchSize");
+  }
+
+  @Override
+  public void setMaxFieldSize(int p1) throws SQLException {
+    throw unsupported("setMaxFieldSize");
+  }
+
+  @Override
+  public void setMaxRows(int p1) throws SQLException {
+    throw unsupported("setMaxRows");
+  }
+
+  @Override
+  public void setPoolable(boolean p1) throws SQLException {
+    throw unsupported("setPoolable");
+  }
+
+  @Override
+  public void setQueryTimeout(int p1) throws SQLException {
+    throw unsupported("setQueryTimeout");
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> p1) throws SQLException {
+    throw unsupported("unwrap");
+  }
+}
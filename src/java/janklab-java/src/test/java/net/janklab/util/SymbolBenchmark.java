@@ -0,0 +1,105 @@
+package net.janklab.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures contention on the global Symbol table: encoding and decoding
+ * already-known strings from several threads at once, and a mix of encoders
+ * and decoders running together.
+ *
+ * Each thread walks the strings in its own order, so threads spread across the
+ * lock stripes the way independent fetches would. Compare the per-op times
+ * with a single-threaded run (-t 1) to see how much contention costs. Run it
+ * like the benchmarks in net.janklab.mdbc, e.g.:
+ *
+ *   mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     "-Dexec.args=-cp %classpath org.openjdk.jmh.Main SymbolBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SymbolBenchmark {
+
+    @Param({"100000"})
+    public int nDistinct;
+
+    private String[] strings;
+    private int[] symbols;
+
+    @Setup
+    public void setUp() {
+        strings = new String[nDistinct];
+        for (int i = 0; i < nDistinct; i++) {
+            strings[i] = "SymbolBenchmark:" + i;
+        }
+        symbols = Symbol.encodeStrings(strings);
+    }
+
+    /** Per-thread position in the strings, stepping by a stride prime to nDistinct. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int i;
+        private int step;
+
+        @Setup
+        public void setUp(SymbolBenchmark bench) {
+            i = (System.identityHashCode(this) & 0x7fffffff) % bench.nDistinct;
+            step = 7919;
+            while (gcd(step, bench.nDistinct) != 1) {
+                step += 2;
+            }
+        }
+
+        int next(int n) {
+            i = (i + step) % n;
+            return i;
+        }
+
+        private static int gcd(int a, int b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int encodeKnown(Cursor cursor) {
+        return Symbol.encodeString(strings[cursor.next(nDistinct)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String decodeKnown(Cursor cursor) {
+        return Symbol.decodeSymbol(symbols[cursor.next(nDistinct)]);
+    }
+
+    @Benchmark
+    @Group("encodeAndDecode")
+    @GroupThreads(2)
+    public int mixedEncode(Cursor cursor) {
+        return Symbol.encodeString(strings[cursor.next(nDistinct)]);
+    }
+
+    @Benchmark
+    @Group("encodeAndDecode")
+    @GroupThreads(2)
+    public String mixedDecode(Cursor cursor) {
+        return Symbol.decodeSymbol(symbols[cursor.next(nDistinct)]);
+    }
+}
@@ -0,0 +1,215 @@
+package net.janklab.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the global Symbol table, including concurrent use. Contention is
+ * measured by SymbolBenchmark.
+ *
+ * The symbol table is global and never shrinks, so each test uses strings
+ * with its own prefix.
+ */
+public class SymbolTest {
+
+    private static final AtomicInteger PREFIX_COUNTER = new AtomicInteger();
+    private static final int N_THREADS = 8;
+
+    private static String[] strings(int n) {
+        String prefix = "SymbolTest" + PREFIX_COUNTER.incrementAndGet() + ":";
+        String[] out = new String[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = prefix + i;
+        }
+        return out;
+    }
+
+    /** Run a task on N_THREADS threads at once and collect their results. */
+    private static <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < N_THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> out = new ArrayList<>();
+            for (Future<T> future : futures) {
+                out.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return out;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void emptyStringIsSymbolZero() {
+        assertEquals(0, Symbol.encodeString(""));
+        assertEquals("", Symbol.decodeSymbol(0));
+    }
+
+    @Test
+    public void encodeIsStableAndDecodeRoundTrips() {
+        String[] strs = strings(1000);
+        int[] symbols = Symbol.encodeStrings(strs);
+        assertArrayEquals(symbols, Symbol.encodeStrings(strs));
+        assertArrayEquals(strs, Symbol.decodeSymbols(symbols));
+        for (int i = 1; i < symbols.length; i++) {
+            assertTrue(symbols[i] != symbols[i - 1]);
+        }
+    }
+
+    @Test
+    public void unknownSymbolsDecodeToNull() {
+        assertNull(Symbol.decodeSymbol(-1));
+        assertNull(Symbol.decodeSymbol(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void parallelBulkOperationsMatchSerialOnes() {
+        String[] strs = strings(Symbol.PARALLEL_THRESHOLD + 1000);
+        int[] bulk = Symbol.encodeStrings(strs);
+        for (int i = 0; i < strs.length; i++) {
+            assertEquals(Symbol.encodeString(strs[i]), bulk[i]);
+        }
+        assertArrayEquals(strs, Symbol.decodeSymbols(bulk));
+    }
+
+    @Test
+    public void concurrentEncodersAgreeOnSymbols() throws Exception {
+        // Every thread encodes the same new strings, each in a different order,
+        // so they race to assign each symbol
+        String[] strs = strings(20000);
+        AtomicInteger nextThread = new AtomicInteger();
+        List<int[]> results = runConcurrently(() -> {
+            int offset = nextThread.getAndIncrement() * strs.length / N_THREADS;
+            int[] out = new int[strs.length];
+            for (int k = 0; k < strs.length; k++) {
+                int i = (k + offset) % strs.length;
+                out[i] = Symbol.encodeString(strs[i]);
+            }
+            return out;
+        });
+        int[] expected = results.get(0);
+        for (int[] result : results) {
+            assertArrayEquals(expected, result);
+        }
+        // Each string got its own symbol, which decodes back to it
+        assertEquals(strs.length, Arrays.stream(expected).distinct().count());
+        assertArrayEquals(strs, Symbol.decodeSymbols(expected));
+    }
+
+    @Test
+    public void symbolsDecodeOnOtherThreadsRightAfterEncoding() throws Exception {
+        // Decoders get each symbol as soon as an encoder assigns it, so they
+        // see freshly published pages and slots
+        String[] strs = strings(50000);
+        BlockingQueue<int[]> handoff = new ArrayBlockingQueue<>(1024);
+        AtomicInteger nextThread = new AtomicInteger();
+        int nEncoders = N_THREADS / 2;
+        List<Integer> nBad = runConcurrently(() -> {
+            int iThread = nextThread.getAndIncrement();
+            if (iThread < nEncoders) {
+                for (int i = iThread; i < strs.length; i += nEncoders) {
+                    handoff.put(new int[] {i, Symbol.encodeString(strs[i])});
+                }
+                for (int i = 0; i < N_THREADS - nEncoders; i++) {
+                    // One end marker per decoder, from each encoder
+                    handoff.put(new int[] {-1, -1});
+                }
+                return 0;
+            }
+            int bad = 0;
+            int nEnded = 0;
+            while (nEnded < nEncoders) {
+                int[] item = handoff.take();
+                if (item[0] < 0) {
+                    nEnded++;
+                } else if (!strs[item[0]].equals(Symbol.decodeSymbol(item[1]))) {
+                    bad++;
+                }
+            }
+            return bad;
+        });
+        for (int bad : nBad) {
+            assertEquals(0, bad);
+        }
+    }
+
+    @Test
+    public void symbolsBelowSizeAlwaysDecode() throws Exception {
+        // size() counts a symbol as soon as its id is taken, before its string
+        // is published, so decoders racing on it hit the locked slow path
+        String[] strs = strings(50000);
+        AtomicInteger nextThread = new AtomicInteger();
+        AtomicInteger nEncodersDone = new AtomicInteger();
+        int nEncoders = N_THREADS / 2;
+        List<Integer> nBad = runConcurrently(() -> {
+            int iThread = nextThread.getAndIncrement();
+            if (iThread < nEncoders) {
+                for (int i = iThread; i < strs.length; i += nEncoders) {
+                    Symbol.encodeString(strs[i]);
+                }
+                nEncodersDone.incrementAndGet();
+                return 0;
+            }
+            int bad = 0;
+            int nChecked = Symbol.size();
+            boolean isLastPass = false;
+            while (!isLastPass) {
+                isLastPass = nEncodersDone.get() == nEncoders;
+                int n = Symbol.size();
+                for (int symbol = nChecked; symbol < n; symbol++) {
+                    if (Symbol.decodeSymbol(symbol) == null) {
+                        bad++;
+                    }
+                }
+                nChecked = n;
+            }
+            return bad;
+        });
+        for (int bad : nBad) {
+            assertEquals(0, bad);
+        }
+    }
+
+    @Test
+    public void concurrentBulkEncodesAgree() throws Exception {
+        String[] strs = strings(Symbol.PARALLEL_THRESHOLD);
+        List<int[]> results = runConcurrently(() -> Symbol.encodeStrings(strs));
+        for (int[] result : results) {
+            assertArrayEquals(results.get(0), result);
+        }
+        assertArrayEquals(strs, Symbol.decodeSymbols(results.get(0)));
+    }
+
+    @Test
+    public void sizeCountsNewSymbols() {
+        String[] strs = strings(100);
+        int before = Symbol.size();
+        Symbol.encodeStrings(strs);
+        Symbol.encodeStrings(strs);
+        // Other tests may be adding symbols at the same time, but never fewer
+        assertTrue(Symbol.size() - before >= strs.length);
+    }
+}
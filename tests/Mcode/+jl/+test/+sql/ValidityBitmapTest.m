@@ -0,0 +1,36 @@
+classdef ValidityBitmapTest < matlab.unittest.TestCase
+    % Tests the net.janklab.mdbc.ValidityBitmap Java class
+    
+    methods (Test)
+        function testFromNullBitsShorterThanChunk(t)
+        % Tests fromNullBits() on a chunk longer than the preallocated null bitmap
+        %
+        % Column buffers preallocate their null bitmap for at most 2^20 rows, and
+        % only grow it when a NULL lands past its end, so a long chunk whose NULLs
+        % all come early has a bitmap shorter than the chunk.
+        
+        nRows = 1.5e6;
+        nullBits = zeros(1, 2^20 / 64, 'int64');
+        nullBits(1) = int64(1);
+        validity = net.janklab.mdbc.ValidityBitmap.fromNullBits(nullBits, nRows);
+        t.verifyEqual(numel(validity), ceil(nRows / 64));
+        t.verifyEqual(net.janklab.mdbc.ValidityBitmap.countNulls(validity, nRows), 1);
+        mask = net.janklab.mdbc.ValidityBitmap.toNullMask(validity, nRows);
+        t.verifyEqual(numel(mask), nRows);
+        t.verifyEqual(find(mask), 1, 'Only row 1 is NULL');
+        end
+        
+        function testFromNullBitsLongerThanChunk(t)
+        % Tests fromNullBits() with a null bitmap left over from a longer chunk
+        
+        nullBits = zeros(1, 4, 'int64');
+        nullBits(1) = int64(2);
+        nullBits(4) = int64(-1);
+        validity = net.janklab.mdbc.ValidityBitmap.fromNullBits(nullBits, 70);
+        t.verifyEqual(numel(validity), 2);
+        mask = net.janklab.mdbc.ValidityBitmap.toNullMask(validity, 70);
+        t.verifyEqual(find(mask), 2, 'Only row 2 is NULL');
+        end
+    end
+    
+end